@@ -0,0 +1,21 @@
+package adhoc.aodv;
+
+import adhoc.aodv.pdu.UserDataPacket;
+
+/**
+ * A user packet handed to Node.sendAsync(). The outcome is reported through its future instead of the listeners
+ * @author Rabie
+ *
+ */
+class AsyncUserDataPacket extends UserDataPacket {
+	private final SendFuture future;
+
+	AsyncUserDataPacket(int destinationAddress, byte[] data, int sourceAddress, SendFuture future){
+		super(0, destinationAddress, data, sourceAddress);
+		this.future = future;
+	}
+
+	SendFuture getFuture(){
+		return future;
+	}
+}
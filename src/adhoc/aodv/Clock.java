@@ -0,0 +1,25 @@
+package adhoc.aodv;
+
+/**
+ * The source of the current time used by the protocol: the alive times of the routes, the hello and expiry timers
+ * and the deadlines of queued packets. A node uses the clock of its TimerScheduler, which is the system clock
+ * unless the node is given a scheduler with a VirtualClock
+ * @author Rabie
+ *
+ */
+public interface Clock {
+	/**
+	 * the wall clock, System.currentTimeMillis()
+	 */
+	public static final Clock SYSTEM = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * @return returns the current time in milliseconds
+	 */
+	public long currentTimeMillis();
+}
@@ -34,6 +34,21 @@ public interface Constants {
 	// hello package type
 	public static final byte HELLO_PDU = 6; 
 	
+	// several user packets to the same next hop in one frame
+	public static final byte AGGREGATE_PDU = 7;
+	
+	// a part of a user message which is too large for one frame
+	public static final byte SEGMENT_PDU = 8;
+	
+	// the maximum size of a user message which is split into segments, equivalent 1mb
+	public static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+	
+	//the time a message which is being put back together waits for its missing segments
+	public static final int REASSEMBLY_TIMEOUT = 5000;
+	
+	//the maximum number of messages which are being put back together at once by a node
+	public static final int MAX_REASSEMBLIES = 16;
+	
 	//alive time for a route 
 	public static final int ROUTE_ALIVETIME = 3000;
 	
@@ -44,5 +59,21 @@ public interface Constants {
 	
 	//the amount of time to store a RREQ entry before the entry dies
 	public static final int PATH_DESCOVERY_TIME = 3000;
+	
+	//the number of notifications queued for a listener. The notifications which do not fit are dropped
+	public static final int MAX_QUEUED_NOTIFICATIONS = 1024;
+	//default bounds of the sender queues. The byte bounds must allow at least one packet of the maximum size
+	public static final int MAX_QUEUED_CONTROL_PACKETS = 1024;
+	public static final int MAX_QUEUED_USER_PACKETS = 1024;
+	public static final int MAX_QUEUED_USER_BYTES = 4 * 1024 * 1024;
+	public static final int MAX_QUEUED_FORWARD_PACKETS = 1024;
+	public static final int MAX_QUEUED_FORWARD_BYTES = 4 * 1024 * 1024;
+	
+	//the time a packet may wait in a sender queue which drops expired packets
+	public static final int MAX_QUEUEING_TIME = 2000;
+	
+	//the number of forwarded and local user packets sent in each round of the sender. Protocol messages are always sent first
+	public static final int FORWARDED_PACKETS_PER_ROUND = 2;
+	public static final int LOCAL_PACKETS_PER_ROUND = 1;
 
 }
@@ -0,0 +1,279 @@
+package adhoc.aodv;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import adhoc.etc.Debug;
+
+/**
+ * Delivers the notifications of a node to its listeners.
+ * The notifications are queued in bounded lanes, one for the received data and one for the other notifications,
+ * so the data does not wait behind the route events. A lane is drained by one task at a time on the dispatch executor,
+ * which by default is a thread pool of the dispatcher, so a slow listener does not hold up the receiver, sender or timer thread
+ * raising the notification. A notification which does not fit into a full lane is dropped and counted.
+ * A listener registered with its own queue has lanes of its own, so it can not hold up the other listeners.
+ * The listeners without their own queue share one pair of lanes and are called in turn.
+ * The listeners are only called directly by the raising thread if Node.DIRECT_DISPATCH is set as the executor,
+ * or while the node is not running, e.g. for a packet rejected by sendData() before the node is started.
+ * @author Rabie
+ *
+ */
+class ListenerDispatcher {
+	private CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+	//the listeners without a queue of their own, and the lanes they share
+	private CopyOnWriteArrayList<NodeListener> sharedListeners = new CopyOnWriteArrayList<NodeListener>();
+	private Lane sharedDataLane = new Lane(sharedListeners);
+	private Lane sharedEventLane = new Lane(sharedListeners);
+	//the executor set by the application, or null if the dispatch threads are used
+	private volatile Executor dispatchExecutor = null;
+	private volatile ExecutorService dispatchThreads = null;
+	private AtomicLong droppedNotifications = new AtomicLong(0);
+
+	/**
+	 * @param executor the executor which calls the listeners, or null if the dispatch threads should call them
+	 */
+	void setDispatchExecutor(Executor executor){
+		dispatchExecutor = executor;
+	}
+
+	Executor getDispatchExecutor(){
+		Executor executor = dispatchExecutor;
+		if(executor == null){
+			return dispatchThreads;
+		}
+		return executor;
+	}
+
+	/**
+	 * Starts the dispatch threads, which call the listeners unless another executor is set.
+	 * Each lane being drained takes one thread of the pool
+	 */
+	void startThread(){
+		dispatchThreads = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Stops the dispatch threads once the notifications already handed to them are delivered
+	 */
+	void stopThread(){
+		ExecutorService threads = dispatchThreads;
+		dispatchThreads = null;
+		if(threads != null){
+			threads.shutdown();
+		}
+	}
+
+	void addListener(NodeListener listener, boolean ownQueue){
+		if(ownQueue){
+			registrations.add(new Registration(listener));
+		} else {
+			sharedListeners.add(listener);
+		}
+	}
+
+	/**
+	 * @return returns true if the listener were registered
+	 */
+	boolean removeListener(NodeListener listener){
+		for(Registration registration : registrations){
+			if(registration.listener == listener){
+				return registrations.remove(registration);
+			}
+		}
+		return sharedListeners.remove(listener);
+	}
+
+	boolean hasListeners(){
+		return !registrations.isEmpty() || !sharedListeners.isEmpty();
+	}
+
+	/**
+	 * @return returns the number of notifications dropped because the lane of a listener were full
+	 */
+	long getDroppedNotificationCount(){
+		return droppedNotifications.get();
+	}
+
+	void dataReceived(int senderNodeAddress, byte[] data, int offset, int length){
+		if(!hasListeners()){
+			return;
+		}
+		Event event = new Event(ObserverConst.DATA_RECEIVED, senderNodeAddress, data, offset, length);
+		if(!sharedListeners.isEmpty()){
+			sharedDataLane.dispatch(event);
+		}
+		for(Registration registration : registrations){
+			registration.dataLane.dispatch(event);
+		}
+	}
+
+	void valueNotification(int type, int value){
+		if(!hasListeners()){
+			return;
+		}
+		Event event = new Event(type, value, null, 0, 0);
+		if(!sharedListeners.isEmpty()){
+			sharedEventLane.dispatch(event);
+		}
+		for(Registration registration : registrations){
+			registration.eventLane.dispatch(event);
+		}
+	}
+
+	/**
+	 * @return returns an executor which runs tasks the way the lanes are run: on the dispatch executor,
+	 * or directly while the node is not running
+	 */
+	Executor asExecutor(){
+		return new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				ListenerDispatcher.this.execute(task);
+			}
+		};
+	}
+
+	/**
+	 * Runs the task on the dispatch executor, or directly if the node is not running
+	 */
+	private void execute(Runnable task){
+		Executor executor = getDispatchExecutor();
+		if(executor == null){
+			task.run();
+			return;
+		}
+		try{
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			//the dispatch threads were stopped meanwhile
+			task.run();
+		}
+	}
+
+	/**
+	 * A notification to be delivered to a listener. The types are the ones defined by ObserverConst
+	 */
+	private static class Event {
+		private final int type;
+		private final int value;
+		private final byte[] data;
+		private final int offset;
+		private final int length;
+
+		Event(int type, int value, byte[] data, int offset, int length){
+			this.type = type;
+			this.value = value;
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		void deliverTo(NodeListener listener){
+			switch (type) {
+			case ObserverConst.DATA_RECEIVED:
+				//every listener gets its own view, so reading the buffer does not affect the other listeners
+				listener.onDataReceived(value, ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer());
+				break;
+			case ObserverConst.ROUTE_CREATED:
+				listener.onRouteCreated(value);
+				break;
+			case ObserverConst.ROUTE_INVALID:
+				listener.onRouteInvalid(value);
+				break;
+			case ObserverConst.ROUTE_ESTABLISHMENT_FAILURE:
+				listener.onRouteEstablishmentFailure(value);
+				break;
+			case ObserverConst.DATA_SENT_SUCCESS:
+				listener.onDataSent(value);
+				break;
+			case ObserverConst.INVALID_DESTINATION_ADDRESS:
+				listener.onInvalidDestinationAddress(value);
+				break;
+			case ObserverConst.DATA_SIZE_EXCEEDES_MAX:
+				listener.onDataSizeExceeded(value);
+				break;
+			case ObserverConst.DATA_DROPPED:
+				listener.onDataDropped(value);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * A listener with lanes of its own
+	 */
+	private class Registration {
+		final NodeListener listener;
+		final Lane dataLane;
+		final Lane eventLane;
+
+		Registration(NodeListener listener){
+			this.listener = listener;
+			List<NodeListener> listeners = new CopyOnWriteArrayList<NodeListener>();
+			listeners.add(listener);
+			dataLane = new Lane(listeners);
+			eventLane = new Lane(listeners);
+		}
+	}
+
+	/**
+	 * A bounded queue of notifications to the given listeners, which are delivered one at a time and in order.
+	 * At most one task drains the lane at a time
+	 */
+	private class Lane implements Runnable {
+		private final List<NodeListener> listeners;
+		private BlockingQueue<Event> events = new ArrayBlockingQueue<Event>(Constants.MAX_QUEUED_NOTIFICATIONS);
+		private AtomicBoolean isDraining = new AtomicBoolean(false);
+
+		Lane(List<NodeListener> listeners){
+			this.listeners = listeners;
+		}
+
+		void dispatch(Event event){
+			if(!events.offer(event)){
+				droppedNotifications.incrementAndGet();
+				Debug.print(Debug.WARN, "Node: a listener is too slow, a notification were dropped");
+				return;
+			}
+			scheduleDrain();
+		}
+
+		private void scheduleDrain(){
+			if(isDraining.compareAndSet(false, true)){
+				execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			Event event = events.poll();
+			while(event != null){
+				for(NodeListener listener : listeners){
+					try{
+						event.deliverTo(listener);
+					} catch (RuntimeException e) {
+						//a failing listener must not stop the thread delivering the notification
+						Debug.print(Debug.ERROR, "Node: listener failed: "+e);
+					}
+				}
+				event = events.poll();
+			}
+			isDraining.set(false);
+			//a notification may have been queued after the lane were found empty
+			if(!events.isEmpty()){
+				scheduleDrain();
+			}
+		}
+	}
+}
@@ -3,18 +3,28 @@ package adhoc.aodv;
 import java.net.BindException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Observable;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 import adhoc.aodv.exception.InvalidNodeAddressException;
 import adhoc.aodv.pdu.AodvPDU;
+import adhoc.aodv.pdu.Packet;
 import adhoc.aodv.pdu.UserDataPacket;
 import adhoc.etc.Debug;
+import adhoc.transport.Transport;
+import adhoc.udp.UdpTransport;
 
 
 
 /**
+ * Applications are notified through NodeListener implementations registered with addListener(),
+ * which are called by the dispatch executor of the node. Observers are still supported and are notified
+ * one at a time by a separate notifier thread, so a slow observer does not delay the listeners.
  * <pre>Note - Any observers should implement their update methods in the following way:
 public void update(Observable o, Object arg) {
 	MessageToObserver msg = (MessageToObserver)arg;
@@ -51,6 +61,10 @@ public void update(Observable o, Object arg) {
 		destination = (Integer)msg.getContainedData();
 		...
 		break;
+	case ObserverConst.DATA_DROPPED:
+		userPacketID = (Integer)msg.getContainedData();
+		...
+		break;
 	default:
 		break;
 	}
@@ -60,19 +74,39 @@ public void update(Observable o, Object arg) {
  *
  */
 public class Node extends Observable implements Runnable {
+	/**
+	 * The dispatch executor which makes the listeners be called directly by the library thread raising the notification,
+	 * see setDispatchExecutor(). A slow listener then holds up the protocol
+	 */
+	public static final Executor DIRECT_DISPATCH = new Executor() {
+		@Override
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
 	private int nodeAddress;
 	private int nodeSequenceNumber = Constants.FIRST_SEQUENCE_NUMBER;
 	private int nodeBroadcastID = Constants.FIRST_BROADCAST_ID;
     private Sender sender;
     private Receiver receiver;
     private RouteTableManager routeTableManager;
+    private TimerScheduler timers;
+    //false if the scheduler is shared with other nodes, and started and stopped by its owner
+    private boolean ownsTimers;
+    private Transport transport;
     private Object sequenceNumberLock = 0;
     private Thread notifierThread;
     private Queue<MessageToObserver> messagesForObservers;
+    private ListenerDispatcher listeners = new ListenerDispatcher();
+    private volatile ReceiveBuffer receiveBuffer = null;
+    //received data waiting for room in a receive buffer with the BLOCK policy. Only used by the receiver thread,
+    //which takes no more data while any is waiting, so it holds at most the packets of one frame
+    private Queue<ReceivedPacket> dataWaitingForRoom = new ArrayDeque<ReceivedPacket>();
     private volatile boolean keepRunning = true;
+    private volatile boolean isRunning = false;
 
 	/**
-	 * Creates an instance of the Node class
+	 * Creates an instance of the Node class which communicates over UDP on the ad-hoc network
 	 * @param nodeAddress
 	 * @throws InvalidNodeAddressException Is thrown if the given node address is outside of the valid interval of node addresses
 	 * @throws SocketException is cast if the node failed to instantiate port connections to the ad-hoc network
@@ -80,16 +114,59 @@ public class Node extends Observable implements Runnable {
 	 * @throws BindException this exception is thrown if network interface already is connected to a another network 
 	 */
     public Node(int nodeAddress) throws InvalidNodeAddressException, SocketException, UnknownHostException, BindException {
+    	this(nodeAddress, createUdpTransport(nodeAddress));
+    }
+    
+	/**
+	 * Creates an instance of the Node class which communicates through the given transport
+	 * @param nodeAddress
+	 * @param transport the network layer used to send and receive packets
+	 * @throws InvalidNodeAddressException Is thrown if the given node address is outside of the valid interval of node addresses
+	 */
+    public Node(int nodeAddress, Transport transport) throws InvalidNodeAddressException {
+    	this(nodeAddress, transport, new TimerScheduler(), true);
+    }
+    
+	/**
+	 * Creates an instance of the Node class which runs its protocol timers on the given scheduler, and reads the time from its clock.
+	 * The scheduler may be shared by several nodes. It is not started or stopped by the node: a scheduler using the system clock
+	 * must be started with TimerScheduler.startThread(), and a scheduler using a VirtualClock is driven with TimerScheduler.advanceTo()
+	 * @param nodeAddress
+	 * @param transport the network layer used to send and receive packets
+	 * @param timers the scheduler which runs the protocol timers of the node
+	 * @throws InvalidNodeAddressException Is thrown if the given node address is outside of the valid interval of node addresses
+	 */
+    public Node(int nodeAddress, Transport transport, TimerScheduler timers) throws InvalidNodeAddressException {
+    	this(nodeAddress, transport, timers, false);
+    }
+    
+    private Node(int nodeAddress, Transport transport, TimerScheduler timers, boolean ownsTimers) throws InvalidNodeAddressException {
+    	checkNodeAddress(nodeAddress);
+    	this.nodeAddress = nodeAddress;
+    	this.transport = transport;
+    	this.timers = timers;
+    	this.ownsTimers = ownsTimers;
+    	routeTableManager = new RouteTableManager(nodeAddress, this, timers);
+        sender = new Sender(this, nodeAddress, routeTableManager, transport, timers);
+        receiver = new Receiver(sender, nodeAddress, this, routeTableManager);
+    	messagesForObservers = new ConcurrentLinkedQueue<MessageToObserver>();
+    	transport.setPacketListener(receiver);
+    }
+    
+    private static void checkNodeAddress(int nodeAddress) throws InvalidNodeAddressException {
     	if(nodeAddress > Constants.MAX_VALID_NODE_ADDRESS 
     			|| nodeAddress < Constants.MIN_VALID_NODE_ADDRESS){
     		//given address is out of the valid range
     		throw new InvalidNodeAddressException();
     	}
-    	this.nodeAddress = nodeAddress;
-    	routeTableManager = new RouteTableManager(nodeAddress, this);
-        sender = new Sender(this, nodeAddress, routeTableManager);
-        receiver = new Receiver(sender, nodeAddress, this, routeTableManager);
-    	messagesForObservers = new ConcurrentLinkedQueue<MessageToObserver>();
+    }
+    
+    /**
+     * The address is validated before any ports are opened
+     */
+    private static Transport createUdpTransport(int nodeAddress) throws InvalidNodeAddressException, SocketException, UnknownHostException, BindException {
+    	checkNodeAddress(nodeAddress);
+    	return new UdpTransport(nodeAddress);
     }
     
     /**
@@ -100,9 +177,15 @@ public class Node extends Observable implements Runnable {
      */
     public void startThread(){
     	keepRunning = true;
-    	routeTableManager.startTimerThread();
+    	isRunning = true;
+    	listeners.startThread();
+    	if(ownsTimers){
+    		timers.startThread();
+    	}
+    	routeTableManager.startTimers();
 		sender.startThread();
 		receiver.startThread();
+		transport.startThread();
     	notifierThread = new Thread(this);
     	notifierThread.start();
     	Debug.print("Node: all library threads are running");
@@ -113,14 +196,25 @@ public class Node extends Observable implements Runnable {
      * 
      * Note: using this method tells the running threads to terminate. 
      * This means that it does not insure that any remaining userpackets is sent before termination.
+     * The packets which are not sent are reported as dropped, and their futures fail with a PacketDroppedException.
      * Such behavior can be achieved by monitoring the notifications by registering as an observer.
      */
     public void stopThread(){
     	keepRunning = false;
+    	isRunning = false;
+    	transport.stopThread();
     	receiver.stopThread();
     	sender.stopThread();
-    	routeTableManager.stopTimerThread();
+    	routeTableManager.stopTimers();
+    	if(ownsTimers){
+    		timers.stopThread();
+    	}
     	notifierThread.interrupt();
+    	listeners.stopThread();
+    	ReceiveBuffer buffer = receiveBuffer;
+    	if(buffer != null){
+    		buffer.complete();
+    	}
     	Debug.print("Node: all library threads are stopped");
     }
 
@@ -128,12 +222,216 @@ public class Node extends Observable implements Runnable {
      * Method to be used by the application layer to send data to a single destination node or all neighboring nodes (broadcast).
      * @param packetIdentifier is an ID that is associated for this packet. This is given from the application layer to identify which packet failed or succeed in sending
      * @param destinationAddress the address of the destination node. Should be set to Constants.BROADCAST_ADDRESS if the data is to be broadcasted. 
-     * @param data an array of bytes containing the desired data to send. Note that the size of the data may not exceed Constants.MAX_PACKAGE_SIZE
+     * @param data an array of bytes containing the desired data to send. Note that the size of the data may not exceed Constants.MAX_PACKAGE_SIZE, unless segmentation is enabled, see enableSegmentation()
+     * The packet is reported as dropped if it does not fit in the outbound queue, see getUserQueue()
      */
     public void sendData(int packetIdentifier, int destinationAddress, byte[] data){
     	sender.queueUserMessageFromNode(new UserDataPacket(packetIdentifier,destinationAddress, data, nodeAddress));
     }
+    
+    /**
+     * Sends data like sendData(), but reports the outcome through the returned future instead of the listeners and observers.
+     * The future fails with a RouteEstablishmentFailureException if no route to the destination could be found
+     * @param destinationAddress the address of the destination node, or Constants.BROADCAST_ADDRESS
+     * @param data an array of bytes containing the desired data to send. Note that the size of the data may not exceed Constants.MAX_PACKAGE_SIZE, unless segmentation is enabled, see enableSegmentation()
+     * @return returns the future which is completed when the data is sent or given up
+     */
+    public SendFuture sendAsync(int destinationAddress, byte[] data){
+    	SendFuture future = new SendFuture();
+    	sender.queueUserMessageFromNode(new AsyncUserDataPacket(destinationAddress, data, nodeAddress, future));
+    	return future;
+    }
+    
+    /**
+     * Registers a listener which is called for every notification of this node. The listener gets queues of its own,
+     * so it does not hold up the other listeners, see addListener(NodeListener, boolean)
+     * @param listener the listener to register
+     */
+    public void addListener(NodeListener listener){
+    	listeners.addListener(listener, true);
+    }
+    
+    /**
+     * Registers a listener which is called for every notification of this node.
+     * The notifications are queued in two bounded queues, one for the received data and one for the other notifications,
+     * and each queue is delivered one notification at a time and in order. A notification which does not fit into a full queue
+     * is dropped, see getDroppedNotificationCount()
+     * @param listener the listener to register
+     * @param ownQueue if true the listener gets queues of its own, which keeps a slow listener from holding up the others.
+     * Otherwise it shares the queues of the other listeners registered without their own queue, which are called in turn
+     */
+    public void addListener(NodeListener listener, boolean ownQueue){
+    	listeners.addListener(listener, ownQueue);
+    }
+    
+    /**
+     * @param listener the listener which should no longer be notified
+     * @return returns true if the listener were registered
+     */
+    public boolean removeListener(NodeListener listener){
+    	return listeners.removeListener(listener);
+    }
+    
+    /**
+     * @return returns the number of notifications which were dropped because a listener fell too far behind
+     */
+    public long getDroppedNotificationCount(){
+    	return listeners.getDroppedNotificationCount();
+    }
+    
+    /**
+     * Sets the executor which calls the listeners, and delivers the received packets to the subscriber of the receive buffer.
+     * By default they are called by the dispatch threads of the node, which are started and stopped with the node,
+     * so a slow listener does not hold up the receiver, sender and timer threads.
+     * DIRECT_DISPATCH makes the library threads call the listeners themselves, which saves a thread handoff
+     * for listeners that return at once
+     * @param executor the executor to use, or null to use the dispatch threads of the node
+     */
+    public void setDispatchExecutor(Executor executor){
+    	listeners.setDispatchExecutor(executor);
+    }
 	
+    /**
+     * Makes the node keep received data in a bounded buffer, which the application pulls from with receive() and drainTo(),
+     * or subscribes to through the returned publisher. The subscriber is called by the dispatch executor, see setDispatchExecutor().
+     * The listeners and observers are still notified about the received data, and are not held up by a full buffer
+     * @param capacity the maximum number of received packets kept in the buffer
+     * @param overflowPolicy what to do when the buffer is full: ReceiveBuffer.DROP_NEWEST, ReceiveBuffer.DROP_OLDEST or ReceiveBuffer.BLOCK
+     * @return returns the buffer, which also is a publisher of the received packets
+     * @throws IllegalStateException thrown if the node is running
+     */
+    public ReceiveBuffer enableReceiveBuffer(int capacity, int overflowPolicy){
+    	if(isRunning){
+    		throw new IllegalStateException("Node: the receive buffer must be enabled before the node is started");
+    	}
+    	ReceiveBuffer buffer = new ReceiveBuffer(capacity, overflowPolicy);
+    	buffer.setDeliveryExecutor(listeners.asExecutor());
+    	buffer.setRoomListener(new Runnable() {
+    		@Override
+    		public void run() {
+    			receiver.roomAvailable();
+    		}
+    	});
+    	if(overflowPolicy == ReceiveBuffer.BLOCK){
+    		receiver.setDataQueueCapacity(capacity);
+    	} else {
+    		receiver.setDataQueueCapacity(Integer.MAX_VALUE);
+    	}
+    	receiveBuffer = buffer;
+    	return buffer;
+    }
+    
+    /**
+     * Waits for data sent to this node. Requires that enableReceiveBuffer() has been called
+     * @param timeout the maximum time to wait in milliseconds
+     * @return returns the oldest received packet, or null if no data arrived before the timeout
+     * @throws InterruptedException
+     */
+    public ReceivedPacket receive(long timeout) throws InterruptedException {
+    	return getReceiveBuffer().receive(timeout);
+    }
+    
+    /**
+     * Moves the received packets into the given collection without waiting. Requires that enableReceiveBuffer() has been called
+     * @param collection the collection which to add the packets to
+     * @param maxPackets the maximum number of packets to move
+     * @return returns the number of packets moved
+     */
+    public int drainTo(Collection<? super ReceivedPacket> collection, int maxPackets){
+    	return getReceiveBuffer().drainTo(collection, maxPackets);
+    }
+    
+    /**
+     * @return returns a publisher of the received packets, which delivers no more packets than its subscriber requests.
+     * Requires that enableReceiveBuffer() has been called
+     */
+    public PacketPublisher getReceivedPacketPublisher(){
+    	return getReceiveBuffer();
+    }
+    
+    /**
+     * Makes the node pack small user packets to the same next hop into one frame, which saves the per frame overhead
+     * of the link when many small packets are sent. A packet waits at most the linger time for other packets to share its frame.
+     * Packets are reported as sent once their frame is sent, and as failed if the frame can not be sent. Should be called before the node is started
+     * @param maxFrameSize the maximum size of a frame in bytes, at most Constants.MAX_PACKAGE_SIZE
+     * @param lingerTime the maximum time in milliseconds a packet waits for other packets
+     */
+    public void enableAggregation(int maxFrameSize, long lingerTime){
+    	sender.enableAggregation(maxFrameSize, lingerTime);
+    }
+    
+    /**
+     * Makes the node split the packets it sends which are larger than the MTU into segments, so messages up to
+     * Constants.MAX_MESSAGE_SIZE can be sent. The segments are put back together at the destination, and the message
+     * is delivered as one packet. A message is reported as sent once all its segments are sent, and as failed once
+     * when one of them fails. Should be called before the node is started
+     * @param mtu the maximum size of a frame in bytes, at most Constants.MAX_PACKAGE_SIZE
+     */
+    public void enableSegmentation(int mtu){
+    	sender.enableSegmentation(mtu);
+    }
+    
+    /**
+     * The queue of packets sent from this node. It is bounded by the number of packets and their size, including the packets
+     * waiting for a route to be discovered. By default a packet which does not fit is rejected and reported as dropped
+     * @return returns the queue, whose bounds and overflow policy may be changed and whose gauges may be read
+     */
+    public OutboundQueue<UserDataPacket> getUserQueue(){
+    	return sender.getUserQueue();
+    }
+    
+    /**
+     * The queue of packets from other nodes which are forwarded by this node. It has a budget of its own,
+     * so forwarded traffic can not crowd out the packets sent from this node. By default the oldest packet is dropped when it is full.
+     * NOTE: the packets are queued by the receiver thread, so the BLOCK policy holds up every incoming packet while the queue is full
+     * @return returns the queue, whose bounds and overflow policy may be changed and whose gauges may be read
+     */
+    public OutboundQueue<UserDataPacket> getForwardQueue(){
+    	return sender.getForwardQueue();
+    }
+    
+    /**
+     * The queue of the routing protocol messages. Messages which the route discovery of this node depends on
+     * are always queued, the others are rejected when the queue is full
+     * @return returns the queue, whose bounds may be changed and whose gauges may be read
+     */
+    public OutboundQueue<Packet> getControlQueue(){
+    	return sender.getControlQueue();
+    }
+    
+    /**
+     * The number of received packets which the receiver thread has not handled yet. A growing backlog means that
+     * the packets arrive faster than the receiver thread can hand them on
+     * @return returns the number of received packets waiting for or being handled by the receiver thread
+     */
+    public int getReceiveBacklog(){
+    	return receiver.getUnhandledMessageCount();
+    }
+    
+    private ReceiveBuffer getReceiveBuffer(){
+    	ReceiveBuffer buffer = receiveBuffer;
+    	if(buffer == null){
+    		throw new IllegalStateException("Node: the receive buffer is not enabled");
+    	}
+    	return buffer;
+    }
+	
+    /**
+     * Used by simulations to tell when the nodes have finished reacting to the packets and timers of the current time.
+     * Packets waiting for a route to be discovered do not count, since only a timer or a received packet can release them
+     * @return returns true if the node has no received packets left to handle and nothing to send
+     */
+    public boolean isIdle(){
+    	return receiver.isIdle() && sender.isIdle();
+    }
+    
+    /**
+     * @return returns the clock which the protocol of this node reads the time from
+     */
+    public Clock getClock(){
+    	return timers.getClock();
+    }
+    
     /**
      * Method for getting the current sequence number for this node
      * @return an integer value of the current sequence number
@@ -199,11 +497,37 @@ public class Node extends Observable implements Runnable {
 	/**
 	 * Notifies the application layer about 
 	 * @param senderNodeAddess the source node which sent a message
-	 * @param data the actual data which the application message contained
+	 * @param data the array holding the data which the application message contained. It is handed on without being copied
+	 * @param offset the index in data where the application message starts
+	 * @param length the length of the application message
+	 */
+	protected void notifyAboutDataReceived(int senderNodeAddess, byte[] data, int offset, int length) {	
+		ReceiveBuffer buffer = receiveBuffer;
+		if(buffer != null){
+			ReceivedPacket packet = new ReceivedPacket(senderNodeAddess, data, offset, length);
+			if(!dataWaitingForRoom.isEmpty() || !buffer.offer(packet)){
+				//the receiver thread goes on with the routing messages, and takes no more data until there is room
+				dataWaitingForRoom.add(packet);
+			}
+		}
+		listeners.dataReceived(senderNodeAddess, data, offset, length);
+		if(countObservers() > 0){
+			queueForObservers(new PacketToObserver(senderNodeAddess,data,offset,length,ObserverConst.DATA_RECEIVED));
+		}
+	}
+	
+	/**
+	 * Moves the received data waiting for room into the receive buffer. Called by the receiver thread
+	 * @return returns true if no data is left waiting for room
 	 */
-	protected void notifyAboutDataReceived(int senderNodeAddess, byte[] data) {	
-		 messagesForObservers.add(new PacketToObserver(senderNodeAddess,data,ObserverConst.DATA_RECEIVED));
-		 wakeNotifierThread();
+	boolean deliverWaitingData(){
+		while(!dataWaitingForRoom.isEmpty()){
+			if(!receiveBuffer.offer(dataWaitingForRoom.peek())){
+				return false;
+			}
+			dataWaitingForRoom.poll();
+		}
+		return true;
 	}
 	
 	/**
@@ -211,8 +535,7 @@ public class Node extends Observable implements Runnable {
 	 * @param nodeAddress is the unreachable destination
 	 */
 	protected void notifyAboutRouteEstablishmentFailure(int faliedToReachAddress) {
-		messagesForObservers.add(new ValueToObserver(faliedToReachAddress, ObserverConst.ROUTE_ESTABLISHMENT_FAILURE));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.ROUTE_ESTABLISHMENT_FAILURE, faliedToReachAddress);
 	}
 	
 	/**
@@ -221,8 +544,7 @@ public class Node extends Observable implements Runnable {
 	 * @param packetIdentifier the ID of a packet which the above layer can recognize
 	 */
 	protected void notifyAboutDataSentSucces(int packetIdentifier){
-		messagesForObservers.add(new ValueToObserver(packetIdentifier, ObserverConst.DATA_SENT_SUCCESS));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.DATA_SENT_SUCCESS, packetIdentifier);
 	}
 	
 	/**
@@ -230,26 +552,44 @@ public class Node extends Observable implements Runnable {
 	 * @param packetIdentifier an integer that identifies the user packet with bad destination address 
 	 */
 	protected void notifyAboutInvalidAddressGiven(int packetIdentifier){
-		messagesForObservers.add(new ValueToObserver(packetIdentifier, ObserverConst.INVALID_DESTINATION_ADDRESS));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.INVALID_DESTINATION_ADDRESS, packetIdentifier);
 	}
 	
 	protected void notifyAboutSizeLimitExceeded(int packetIdentifier){
-		messagesForObservers.add(new ValueToObserver(packetIdentifier, ObserverConst.DATA_SIZE_EXCEEDES_MAX));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.DATA_SIZE_EXCEEDES_MAX, packetIdentifier);
+	}
+	
+	/**
+	 * Notifies the observer(s) that a user packet were rejected or dropped by the outbound queue
+	 * @param packetIdentifier an integer that identifies the dropped user packet
+	 */
+	protected void notifyAboutDataDropped(int packetIdentifier){
+		notifyListenersAndObservers(ObserverConst.DATA_DROPPED, packetIdentifier);
 	}
 	
 	protected void notifyAboutRouteToDestIsInvalid(int destinationAddress){
-		messagesForObservers.add(new ValueToObserver(destinationAddress, ObserverConst.ROUTE_INVALID));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.ROUTE_INVALID, destinationAddress);
 	}
 	
 	protected void notifyAboutNewNodeReachable(int destinationAddress){
-		messagesForObservers.add(new ValueToObserver(destinationAddress, ObserverConst.ROUTE_CREATED));
-		wakeNotifierThread();
+		notifyListenersAndObservers(ObserverConst.ROUTE_CREATED, destinationAddress);
 	}
 	
-	private void wakeNotifierThread(){
+	/**
+	 * Hands a notification to the listeners, and to the observers if any are registered
+	 */
+	private void notifyListenersAndObservers(int type, int value){
+		listeners.valueNotification(type, value);
+		if(countObservers() > 0){
+			queueForObservers(new ValueToObserver(value, type));
+		}
+	}
+	
+	/**
+	 * Queues the message for the notifier thread, which passes it on to the observers
+	 */
+	private void queueForObservers(MessageToObserver message){
+		messagesForObservers.add(message);
 		synchronized (messagesForObservers) {
 			messagesForObservers.notify();
 		}
@@ -296,18 +636,27 @@ public class Node extends Observable implements Runnable {
 	}
 	
 	/**
-	 * This class presents a received package from another node, to the application layer
+	 * This class presents a received package from another node, to the application layer.
+	 * The data is a slice of the received frame, use getData() to read it without a copy being made
 	 * @author Rabie
 	 *
 	 */
 	public class PacketToObserver implements MessageToObserver{
 		private byte[] data;
+		private int offset;
+		private int length;
 		private int senderNodeAddress;
 		private int type;
 		
 		public PacketToObserver(int senderNodeAddress, byte[] data, int msgType) {
+			this(senderNodeAddress, data, 0, data.length, msgType);
+		}
+		
+		public PacketToObserver(int senderNodeAddress, byte[] data, int offset, int length, int msgType) {
 			type = msgType;
 			this.data = data;
+			this.offset = offset;
+			this.length = length;
 			this.senderNodeAddress = senderNodeAddress;
 		}
 		
@@ -321,11 +670,27 @@ public class Node extends Observable implements Runnable {
 
 		/**
 		 * A method to retrieve the data sent
-		 * @return returns a byte array containing the data which 
+		 * @return returns a read-only buffer positioned at the data which
 		 * where sent by another node with this node as destination
 		 */
+		public ByteBuffer getData(){
+			return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+		}
+
+		/**
+		 * A method to retrieve the data sent
+		 * @return returns a byte array containing the data which 
+		 * where sent by another node with this node as destination.
+		 * NOTE: the data is copied into a new array unless it spans the whole received frame
+		 */
 		@Override
 		public Object getContainedData() {
+			if(offset != 0 || length != data.length){
+				byte[] copy = new byte[length];
+				System.arraycopy(data, offset, copy, 0, length);
+				data = copy;
+				offset = 0;
+			}
 			return data;
 		}
 
@@ -0,0 +1,52 @@
+package adhoc.aodv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An implementation of NodeListener which ignores every notification.
+ * Extend this class and override the notifications of interest
+ * @author Rabie
+ *
+ */
+public class NodeAdapter implements NodeListener {
+
+	@Override
+	public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+
+	}
+
+	@Override
+	public void onRouteCreated(int destinationAddress) {
+
+	}
+
+	@Override
+	public void onRouteInvalid(int destinationAddress) {
+
+	}
+
+	@Override
+	public void onRouteEstablishmentFailure(int destinationAddress) {
+
+	}
+
+	@Override
+	public void onDataSent(int packetIdentifier) {
+
+	}
+
+	@Override
+	public void onInvalidDestinationAddress(int packetIdentifier) {
+
+	}
+
+	@Override
+	public void onDataSizeExceeded(int packetIdentifier) {
+
+	}
+
+	@Override
+	public void onDataDropped(int packetIdentifier) {
+
+	}
+}
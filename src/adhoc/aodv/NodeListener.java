@@ -0,0 +1,65 @@
+package adhoc.aodv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Typed notifications from a Node to the application layer. Register an implementation with Node.addListener().
+ * The methods are called by the dispatch executor of the node, see Node.setDispatchExecutor().
+ * Extend NodeAdapter to only implement the notifications of interest
+ * @author Rabie
+ *
+ */
+public interface NodeListener {
+
+	/**
+	 * Called when data were sent by another node with this node as destination
+	 * @param senderNodeAddress the unique address of the sending node
+	 * @param data a read-only buffer positioned at the received data. It is a view of the received frame, not a copy
+	 */
+	public void onDataReceived(int senderNodeAddress, ByteBuffer data);
+
+	/**
+	 * Called when a route to a destination is created
+	 * @param destinationAddress the destination which can be reached
+	 */
+	public void onRouteCreated(int destinationAddress);
+
+	/**
+	 * Called when a route to a destination is no longer valid
+	 * @param destinationAddress the destination which can not be reached any longer
+	 */
+	public void onRouteInvalid(int destinationAddress);
+
+	/**
+	 * Called when no route to a destination could be found.
+	 * Note: any messages that had same destination has been removed from sending
+	 * @param destinationAddress the unreachable destination
+	 */
+	public void onRouteEstablishmentFailure(int destinationAddress);
+
+	/**
+	 * Called when a packet is sent successfully from this node.
+	 * NOTE: This does not guarantee that the packet also is received at the destination node
+	 * @param packetIdentifier the ID given when the packet were handed to Node.sendData()
+	 */
+	public void onDataSent(int packetIdentifier);
+
+	/**
+	 * Called when a packet could not be sent since its destination address is invalid
+	 * @param packetIdentifier the ID given when the packet were handed to Node.sendData()
+	 */
+	public void onInvalidDestinationAddress(int packetIdentifier);
+
+	/**
+	 * Called when a packet could not be sent since it exceeds the maximum size
+	 * @param packetIdentifier the ID given when the packet were handed to Node.sendData()
+	 */
+	public void onDataSizeExceeded(int packetIdentifier);
+
+	/**
+	 * Called when a packet were not sent since the outbound queue of the node were full, the packet waited in it for too long,
+	 * or the transport failed to send it
+	 * @param packetIdentifier the ID given when the packet were handed to Node.sendData()
+	 */
+	public void onDataDropped(int packetIdentifier);
+}
@@ -39,6 +39,10 @@ public void update(Observable o, Object arg) {
 		destination = (Integer)msg.getContainedData();
 		...
 		break;
+	case ObserverConst.DATA_DROPPED:
+		userPacketID = (Integer)msg.getContainedData();
+		...
+		break;
 	default:
 		break;
 }
@@ -61,5 +65,8 @@ public interface ObserverConst {
 	public static final int INVALID_DESTINATION_ADDRESS = 5;
 	
 	public static final int DATA_SIZE_EXCEEDES_MAX = 6;
+	
+	//the packet were rejected or dropped by the outbound queue of the node, or the transport failed to send it
+	public static final int DATA_DROPPED = 7;
 
 }
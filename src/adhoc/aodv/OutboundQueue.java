@@ -0,0 +1,467 @@
+package adhoc.aodv;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+import adhoc.aodv.pdu.Packet;
+
+/**
+ * A queue of packets waiting for the sender thread, bounded both by the number of packets and by their encoded size.
+ * When a packet does not fit, the overflow policy decides if the caller waits, if the packet is rejected,
+ * or if queued packets are dropped to make room.
+ * The queue also counts the packets which the sender has taken out but is holding back, e.g. while a route is discovered,
+ * so those count against the same budget.
+ * The packets are kept in one flow per destination, and the flows are served in turn one packet at a time,
+ * so a destination with a large backlog does not delay the packets to the other destinations.
+ * The packets to the same destination are taken out in the order they were added.
+ * The gauges may be read by any thread
+ * @author Rabie
+ *
+ */
+public class OutboundQueue<T extends Packet> {
+	/**
+	 * the caller waits until there is room in the queue.
+	 * NOTE: a notification handler which is called by the sender thread must not send data through a blocking queue
+	 */
+	public static final int BLOCK = 0;
+	/**
+	 * the packet which did not fit is rejected, and its sender is notified
+	 */
+	public static final int REJECT = 1;
+	/**
+	 * the packet which has waited longest in the flow with most packets is dropped to make room
+	 */
+	public static final int DROP_OLDEST = 2;
+	/**
+	 * a packet which has waited longer than the maximum queueing time is dropped instead of being sent.
+	 * A packet which does not fit after the expired packets are dropped is rejected
+	 */
+	public static final int DROP_EXPIRED = 3;
+
+	//the flow used for packets whose destination is outside the address interval, so they still are taken out and reported
+	private static final int INVALID_ADDRESS_FLOW = Constants.BROADCAST_ADDRESS + 1;
+
+	//the queued packets of each destination, indexed by the destination address. Created when first used
+	private final ArrayDeque<QueuedPacket<T>>[] flows;
+	//the flows in the order they are served. A flow may stay in the ring after it became empty, it is then skipped
+	private final int[] ring = new int[INVALID_ADDRESS_FLOW + 1];
+	private final boolean[] isInRing = new boolean[INVALID_ADDRESS_FLOW + 1];
+	private int ringHead = 0;
+	private int ringSize = 0;
+	private int queuedPackets = 0;
+	//the limits and counters below are guarded by this
+	private int maxPackets;
+	private int maxBytes;
+	private int overflowPolicy;
+	private long maxQueueingTime;
+	private int queuedBytes = 0;
+	private int heldPackets = 0;
+	private int heldBytes = 0;
+	private int highWatermark = 0;
+	private long droppedPackets = 0;
+	private long rejectedPackets = 0;
+	private int waitingProducers = 0;
+	private boolean isClosed = false;
+	//the clock which the deadlines of the DROP_EXPIRED policy are read from
+	private volatile Clock clock = Clock.SYSTEM;
+
+	/**
+	 * @param maxPackets the maximum number of packets in the queue, including the ones held back
+	 * @param maxBytes the maximum encoded size of the packets in the queue, including the ones held back
+	 * @param overflowPolicy one of BLOCK, REJECT, DROP_OLDEST or DROP_EXPIRED
+	 * @param maxQueueingTime the time in milliseconds a packet may wait in the queue when the DROP_EXPIRED policy is used
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public OutboundQueue(int maxPackets, int maxBytes, int overflowPolicy, long maxQueueingTime){
+		flows = new ArrayDeque[INVALID_ADDRESS_FLOW + 1];
+		setLimits(maxPackets, maxBytes, overflowPolicy, maxQueueingTime);
+	}
+
+	void setClock(Clock clock){
+		this.clock = clock;
+	}
+
+	/**
+	 * Changes the bounds of the queue. Packets which already are queued are kept even if they exceed the new bounds
+	 * @param maxPackets the maximum number of packets in the queue, including the ones held back
+	 * @param maxBytes the maximum encoded size of the packets in the queue, including the ones held back
+	 * @param overflowPolicy one of BLOCK, REJECT, DROP_OLDEST or DROP_EXPIRED
+	 * @param maxQueueingTime the time in milliseconds a packet may wait in the queue when the DROP_EXPIRED policy is used
+	 */
+	public synchronized void setLimits(int maxPackets, int maxBytes, int overflowPolicy, long maxQueueingTime){
+		if(maxPackets <= 0 || maxBytes <= 0){
+			throw new IllegalArgumentException("OutboundQueue: the bounds must be positive");
+		}
+		if(overflowPolicy < BLOCK || overflowPolicy > DROP_EXPIRED){
+			throw new IllegalArgumentException("OutboundQueue: unknown overflow policy: "+overflowPolicy);
+		}
+		if(overflowPolicy == DROP_EXPIRED && maxQueueingTime <= 0){
+			throw new IllegalArgumentException("OutboundQueue: the maximum queueing time must be positive");
+		}
+		this.maxPackets = maxPackets;
+		this.maxBytes = maxBytes;
+		this.overflowPolicy = overflowPolicy;
+		this.maxQueueingTime = maxQueueingTime;
+		//waiting producers may fit within the new bounds
+		notifyAll();
+	}
+
+	/**
+	 * Adds a packet to the queue according to the overflow policy
+	 * @param packet the packet to add
+	 * @param dropped the list which the packets dropped to make room are added to
+	 * @return returns false if the packet were rejected
+	 * @throws InterruptedException thrown if the BLOCK policy is used and the thread is interrupted while waiting
+	 */
+	synchronized boolean offer(T packet, List<T> dropped) throws InterruptedException {
+		int size = packet.getEncodedSize();
+		while(!fits(size)){
+			if(isClosed || size > maxBytes){
+				//the packet would never fit
+				rejectedPackets++;
+				return false;
+			}
+			switch (overflowPolicy) {
+			case BLOCK:
+				waitingProducers++;
+				try{
+					wait();
+				} finally {
+					waitingProducers--;
+				}
+				break;
+			case DROP_OLDEST:
+				if(!dropOldest(dropped)){
+					//only packets which can not be dropped are left
+					rejectedPackets++;
+					return false;
+				}
+				break;
+			case DROP_EXPIRED:
+				if(dropExpiredFromAllFlows(clock.currentTimeMillis(), dropped) == 0){
+					rejectedPackets++;
+					return false;
+				}
+				break;
+			default:
+				rejectedPackets++;
+				return false;
+			}
+		}
+		add(packet, size);
+		return true;
+	}
+
+	/**
+	 * Adds a packet without regard to the bounds. The packet is never dropped.
+	 * Used for messages which the protocol can not do without
+	 * @param packet the packet to add
+	 */
+	synchronized void add(T packet){
+		enqueue(new QueuedPacket<T>(packet, packet.getEncodedSize(), Long.MAX_VALUE, true));
+	}
+
+	private void add(T packet, int size){
+		long deadline = overflowPolicy == DROP_EXPIRED ? clock.currentTimeMillis() + maxQueueingTime : Long.MAX_VALUE;
+		enqueue(new QueuedPacket<T>(packet, size, deadline, false));
+	}
+
+	private void enqueue(QueuedPacket<T> queued){
+		int flowIndex = getFlowIndex(queued.packet.getDestinationAddress());
+		ArrayDeque<QueuedPacket<T>> flow = flows[flowIndex];
+		if(flow == null){
+			flow = new ArrayDeque<QueuedPacket<T>>();
+			flows[flowIndex] = flow;
+		}
+		flow.add(queued);
+		if(!isInRing[flowIndex]){
+			isInRing[flowIndex] = true;
+			ring[(ringHead + ringSize) % ring.length] = flowIndex;
+			ringSize++;
+		}
+		queuedPackets++;
+		queuedBytes += queued.size;
+		updateHighWatermark();
+	}
+
+	private static int getFlowIndex(int destinationAddress){
+		if(destinationAddress < Constants.MIN_VALID_NODE_ADDRESS || destinationAddress > Constants.BROADCAST_ADDRESS){
+			return INVALID_ADDRESS_FLOW;
+		}
+		return destinationAddress;
+	}
+
+	private void updateHighWatermark(){
+		if(queuedPackets + heldPackets > highWatermark){
+			highWatermark = queuedPackets + heldPackets;
+		}
+	}
+
+	private boolean fits(int size){
+		return queuedPackets + heldPackets < maxPackets && queuedBytes + heldBytes + size <= maxBytes;
+	}
+
+	/**
+	 * Takes the next packet out of the queue. The flows are served in turn, and the oldest packet of the flow is taken.
+	 * Packets of the flow which have passed their deadline are dropped instead
+	 * @param currentTime the current system time
+	 * @param dropped the list which the expired packets are added to
+	 * @return returns the next packet, or null if the queue is empty
+	 */
+	synchronized T poll(long currentTime, List<T> dropped){
+		while(ringSize > 0){
+			int flowIndex = ring[ringHead];
+			ringHead = (ringHead + 1) % ring.length;
+			ringSize--;
+			ArrayDeque<QueuedPacket<T>> flow = flows[flowIndex];
+			dropExpired(flow, currentTime, dropped);
+			QueuedPacket<T> head = flow.poll();
+			if(head == null){
+				isInRing[flowIndex] = false;
+				continue;
+			}
+			if(flow.isEmpty()){
+				isInRing[flowIndex] = false;
+			} else {
+				//the flow is served again after the other flows
+				ring[(ringHead + ringSize) % ring.length] = flowIndex;
+				ringSize++;
+			}
+			queuedPackets--;
+			queuedBytes -= head.size;
+			if(waitingProducers > 0){
+				notifyAll();
+			}
+			return head.packet;
+		}
+		return null;
+	}
+
+	/**
+	 * Takes the next packet out of the queue like poll(), but keeps counting it as held back until release() is called.
+	 * Used when the sender may hold the packet back, so the bounds of the queue are kept while it decides
+	 * @param currentTime the current system time
+	 * @param dropped the list which the expired packets are added to
+	 * @return returns the next packet, or null if the queue is empty
+	 */
+	synchronized T pollAndHold(long currentTime, List<T> dropped){
+		T packet = poll(currentTime, dropped);
+		if(packet != null){
+			hold(packet);
+		}
+		return packet;
+	}
+
+	/**
+	 * Drops the oldest packet, which is allowed to be dropped, of the flow with most packets
+	 * @return returns false if no packet could be dropped
+	 */
+	private boolean dropOldest(List<T> dropped){
+		ArrayDeque<QueuedPacket<T>> longest = null;
+		for(int i = 0; i < ringSize; i++){
+			ArrayDeque<QueuedPacket<T>> flow = flows[ring[(ringHead + i) % ring.length]];
+			if(longest == null || flow.size() > longest.size()){
+				longest = flow;
+			}
+		}
+		if(longest != null && dropOldest(longest, dropped)){
+			return true;
+		}
+		//the longest flow only held packets which can not be dropped
+		for(int i = 0; i < ringSize; i++){
+			if(dropOldest(flows[ring[(ringHead + i) % ring.length]], dropped)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean dropOldest(ArrayDeque<QueuedPacket<T>> flow, List<T> dropped){
+		Iterator<QueuedPacket<T>> it = flow.iterator();
+		while(it.hasNext()){
+			QueuedPacket<T> queued = it.next();
+			if(!queued.isPinned){
+				it.remove();
+				queuedPackets--;
+				queuedBytes -= queued.size;
+				droppedPackets++;
+				dropped.add(queued.packet);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int dropExpiredFromAllFlows(long currentTime, List<T> dropped){
+		int count = 0;
+		for(int i = 0; i < ringSize; i++){
+			count += dropExpired(flows[ring[(ringHead + i) % ring.length]], currentTime, dropped);
+		}
+		return count;
+	}
+
+	/**
+	 * Drops the packets of a flow whose deadline has passed.
+	 * The deadlines are increasing through a flow, so the scan stops at the first packet which still has time left.
+	 * Packets which can not be dropped are skipped
+	 * @return returns the number of packets dropped
+	 */
+	private int dropExpired(ArrayDeque<QueuedPacket<T>> flow, long currentTime, List<T> dropped){
+		int count = 0;
+		Iterator<QueuedPacket<T>> it = flow.iterator();
+		while(it.hasNext()){
+			QueuedPacket<T> queued = it.next();
+			if(queued.isPinned){
+				continue;
+			}
+			if(queued.deadline > currentTime){
+				break;
+			}
+			it.remove();
+			queuedPackets--;
+			queuedBytes -= queued.size;
+			dropped.add(queued.packet);
+			count++;
+		}
+		droppedPackets += count;
+		if(count > 0 && waitingProducers > 0){
+			notifyAll();
+		}
+		return count;
+	}
+
+	/**
+	 * Removes every queued packet to the given destination
+	 * @param destinationAddress the destination which to look for
+	 * @param removed the list which the removed packets are added to
+	 */
+	synchronized void removeDestination(int destinationAddress, List<T> removed){
+		ArrayDeque<QueuedPacket<T>> flow = flows[getFlowIndex(destinationAddress)];
+		if(flow == null){
+			return;
+		}
+		Iterator<QueuedPacket<T>> it = flow.iterator();
+		while(it.hasNext()){
+			QueuedPacket<T> queued = it.next();
+			if(queued.packet.getDestinationAddress() == destinationAddress){
+				it.remove();
+				queuedPackets--;
+				queuedBytes -= queued.size;
+				removed.add(queued.packet);
+			}
+		}
+		if(waitingProducers > 0){
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Counts a packet which were taken out of the queue, but is held back by the sender, against the bounds of the queue
+	 */
+	synchronized void hold(T packet){
+		heldPackets++;
+		heldBytes += packet.getEncodedSize();
+		updateHighWatermark();
+	}
+
+	/**
+	 * Stops counting a packet which were held back by the sender, since it is sent or given up
+	 */
+	synchronized void release(T packet){
+		heldPackets--;
+		heldBytes -= packet.getEncodedSize();
+		if(waitingProducers > 0){
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Makes the queue reject the packets which do not fit, instead of letting the caller wait. Used when the sender is stopped
+	 */
+	synchronized void close(){
+		isClosed = true;
+		notifyAll();
+	}
+
+	synchronized void open(){
+		isClosed = false;
+	}
+
+	synchronized boolean isEmpty(){
+		return queuedPackets == 0;
+	}
+
+	/**
+	 * @return returns the number of packets in the queue, not counting the ones held back
+	 */
+	public synchronized int size(){
+		return queuedPackets;
+	}
+
+	/**
+	 * @return returns the encoded size of the packets in the queue, not counting the ones held back
+	 */
+	public synchronized int getQueuedBytes(){
+		return queuedBytes;
+	}
+
+	/**
+	 * @return returns the number of packets held back by the sender, e.g. while a route to their destination is discovered
+	 */
+	public synchronized int getHeldPacketCount(){
+		return heldPackets;
+	}
+
+	public synchronized int getHeldBytes(){
+		return heldBytes;
+	}
+
+	/**
+	 * @return returns the largest number of packets which has been queued and held back at once
+	 */
+	public synchronized int getHighWatermark(){
+		return highWatermark;
+	}
+
+	/**
+	 * @return returns the number of queued packets which were dropped, either to make room or because their deadline passed
+	 */
+	public synchronized long getDroppedPacketCount(){
+		return droppedPackets;
+	}
+
+	/**
+	 * @return returns the number of packets which were not let into the queue
+	 */
+	public synchronized long getRejectedPacketCount(){
+		return rejectedPackets;
+	}
+
+	public synchronized int getMaxPackets(){
+		return maxPackets;
+	}
+
+	public synchronized int getMaxBytes(){
+		return maxBytes;
+	}
+
+	public synchronized int getOverflowPolicy(){
+		return overflowPolicy;
+	}
+
+	private static class QueuedPacket<T> {
+		final T packet;
+		final int size;
+		final long deadline;
+		//true if the packet must not be dropped
+		final boolean isPinned;
+
+		QueuedPacket(T packet, int size, long deadline, boolean isPinned){
+			this.packet = packet;
+			this.size = size;
+			this.deadline = deadline;
+			this.isPinned = isPinned;
+		}
+	}
+}
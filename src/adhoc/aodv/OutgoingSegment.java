@@ -0,0 +1,22 @@
+package adhoc.aodv;
+
+import adhoc.aodv.pdu.SegmentPacket;
+
+/**
+ * A segment of a message sent from this node. The outcome is reported for the message as a whole
+ * @author Rabie
+ *
+ */
+class OutgoingSegment extends SegmentPacket {
+	private final SegmentedMessage message;
+
+	OutgoingSegment(SegmentedMessage message, int packetIdentifier, int destinationAddress, byte[] data, int sourceAddress,
+					int messageID, int segmentSize, int segmentIndex){
+		super(packetIdentifier, destinationAddress, data, sourceAddress, messageID, segmentSize, segmentIndex);
+		this.message = message;
+	}
+
+	SegmentedMessage getMessage(){
+		return message;
+	}
+}
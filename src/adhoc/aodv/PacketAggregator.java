@@ -0,0 +1,176 @@
+package adhoc.aodv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.aodv.exception.PacketDroppedException;
+import adhoc.aodv.pdu.AggregatePacket;
+import adhoc.aodv.pdu.UserDataPacket;
+import adhoc.etc.Debug;
+import adhoc.transport.Transport;
+
+/**
+ * Packs user packets to the same next hop into one frame, which is sent when the next packet would not fit
+ * or when the first packet of the frame has waited for the linger time.
+ * A frame holding a single packet is sent as the bare packet. The outcome of every packet is reported to the
+ * frame listener once its frame is sent or has failed. Only used by the sender thread
+ * @author Rabie
+ *
+ */
+class PacketAggregator {
+	/**
+	 * Told about the packets of each frame once the frame is sent or has failed
+	 */
+	interface FrameListener {
+		void packetsSent(List<UserDataPacket> packets);
+		
+		/**
+		 * @param reason a DataExceedsMaxSizeException, or a PacketDroppedException if the transport failed to send the frame
+		 */
+		void packetsFailed(List<UserDataPacket> packets, AodvException reason);
+	}
+	
+	private final Transport transport;
+	private final FrameListener frameListener;
+	private final int maxFrameSize;
+	private final long lingerTime;
+	//the frame being filled for each next hop, indexed by the next hop address
+	private final AggregatePacket[] openFrames = new AggregatePacket[Constants.MAX_VALID_NODE_ADDRESS + 1];
+	//the packets in the open frame of each next hop, which are reported when the frame is flushed
+	private final List<List<UserDataPacket>> openPackets = new ArrayList<List<UserDataPacket>>(Constants.MAX_VALID_NODE_ADDRESS + 1);
+	private final long[] flushTimes = new long[Constants.MAX_VALID_NODE_ADDRESS + 1];
+	//the next hops which have an open frame, in the order the frames were opened
+	private final int[] openNextHops = new int[Constants.MAX_VALID_NODE_ADDRESS + 1];
+	private int numberOfOpenFrames = 0;
+
+	/**
+	 * @param transport the transport which the frames are sent through
+	 * @param maxFrameSize the maximum size of a frame in bytes
+	 * @param lingerTime the maximum time in milliseconds a packet waits for other packets to share its frame
+	 * @param frameListener the listener which the outcome of the packets is reported to
+	 */
+	PacketAggregator(Transport transport, int maxFrameSize, long lingerTime, FrameListener frameListener){
+		if(maxFrameSize > Constants.MAX_PACKAGE_SIZE || maxFrameSize <= AggregatePacket.HEADER_SIZE + AggregatePacket.PACKET_HEADER_SIZE){
+			throw new IllegalArgumentException("PacketAggregator: the frame size must be within the maximum package size: "+maxFrameSize);
+		}
+		if(lingerTime < 0){
+			throw new IllegalArgumentException("PacketAggregator: the linger time can not be negative");
+		}
+		this.transport = transport;
+		this.maxFrameSize = maxFrameSize;
+		this.lingerTime = lingerTime;
+		this.frameListener = frameListener;
+		for(int i = 0; i <= Constants.MAX_VALID_NODE_ADDRESS; i++){
+			openPackets.add(new ArrayList<UserDataPacket>());
+		}
+	}
+
+	/**
+	 * Adds the packet to the frame of the next hop. A packet which is too large to share a frame is sent at once,
+	 * after the open frame of the next hop so the packets keep their order. The outcome is reported to the frame listener
+	 * @param nextHop the neighbour which the packet is sent to
+	 * @param packet the packet to send
+	 * @param currentTime the current system time
+	 */
+	void send(int nextHop, UserDataPacket packet, long currentTime){
+		byte[] frame = packet.toBytes();
+		if(AggregatePacket.HEADER_SIZE + AggregatePacket.PACKET_HEADER_SIZE + frame.length > maxFrameSize){
+			flush(nextHop);
+			List<UserDataPacket> packets = new ArrayList<UserDataPacket>(1);
+			packets.add(packet);
+			sendFrame(nextHop, frame, packets);
+			return;
+		}
+		AggregatePacket open = openFrames[nextHop];
+		if(open != null && open.getEncodedSizeWith(frame.length) > maxFrameSize){
+			flush(nextHop);
+			open = null;
+		}
+		if(open == null){
+			open = new AggregatePacket(nextHop);
+			openFrames[nextHop] = open;
+			flushTimes[nextHop] = currentTime + lingerTime;
+			openNextHops[numberOfOpenFrames++] = nextHop;
+		}
+		open.addFrame(frame);
+		openPackets.get(nextHop).add(packet);
+	}
+
+	boolean hasOpenFrames(){
+		return numberOfOpenFrames > 0;
+	}
+
+	/**
+	 * @return returns the time the oldest open frame should be sent, or Long.MAX_VALUE if no frame is open
+	 */
+	long getNextFlushTime(){
+		if(numberOfOpenFrames == 0){
+			return Long.MAX_VALUE;
+		}
+		//the frames are opened in order, and all wait for the same linger time
+		return flushTimes[openNextHops[0]];
+	}
+
+	/**
+	 * Sends the frames which have waited for the linger time
+	 * @param currentTime the current system time
+	 */
+	void flushDue(long currentTime){
+		while(numberOfOpenFrames > 0 && flushTimes[openNextHops[0]] <= currentTime){
+			flush(openNextHops[0]);
+		}
+	}
+
+	void flushAll(){
+		while(numberOfOpenFrames > 0){
+			flush(openNextHops[0]);
+		}
+	}
+
+	/**
+	 * Sends the open frame of the next hop, if any
+	 */
+	private void flush(int nextHop){
+		AggregatePacket open = openFrames[nextHop];
+		if(open == null){
+			return;
+		}
+		openFrames[nextHop] = null;
+		for(int i = 0; i < numberOfOpenFrames; i++){
+			if(openNextHops[i] == nextHop){
+				System.arraycopy(openNextHops, i + 1, openNextHops, i, numberOfOpenFrames - i - 1);
+				numberOfOpenFrames--;
+				break;
+			}
+		}
+		List<UserDataPacket> packets = openPackets.get(nextHop);
+		openPackets.set(nextHop, new ArrayList<UserDataPacket>());
+		if(open.getNumberOfPackets() == 1){
+			sendFrame(nextHop, open.getFrame(0), packets);
+		} else {
+			sendFrame(nextHop, open.toBytes(), packets);
+		}
+	}
+
+	/**
+	 * Sends a frame and reports the outcome of the packets it holds
+	 */
+	private void sendFrame(int nextHop, byte[] frame, List<UserDataPacket> packets){
+		try {
+			if(transport.sendPacket(nextHop, frame)){
+				frameListener.packetsSent(packets);
+			} else {
+				frameListener.packetsFailed(packets, new PacketDroppedException("PacketAggregator: the transport did not send the frame to "+nextHop));
+			}
+		} catch (IOException e) {
+			Debug.print(Debug.WARN, "PacketAggregator: IOException when sending a frame to: ", nextHop);
+			frameListener.packetsFailed(packets, new PacketDroppedException("PacketAggregator: the transport failed to send the frame to "+nextHop));
+		} catch (DataExceedsMaxSizeException e) {
+			Debug.print(Debug.ERROR, "PacketAggregator: frame exceeded the maximum size when sending it to: ", nextHop);
+			frameListener.packetsFailed(packets, e);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package adhoc.aodv;
+
+/**
+ * A source of received packets which are pushed to a subscriber no faster than it requests them.
+ * Follows the contract of the reactive streams Publisher: the subscriber gets onSubscribe() first,
+ * then at most as many onNext() calls as it has requested through its PacketSubscription
+ * @author Rabie
+ *
+ */
+public interface PacketPublisher {
+
+	/**
+	 * @param subscriber the subscriber which should receive the packets. 
+	 * Only one subscriber is served at a time, a second one is rejected through onError()
+	 */
+	public void subscribe(PacketSubscriber subscriber);
+}
@@ -0,0 +1,27 @@
+package adhoc.aodv;
+
+/**
+ * Receives packets from a PacketPublisher, see PacketPublisher for the order of the calls
+ * @author Rabie
+ *
+ */
+public interface PacketSubscriber {
+
+	/**
+	 * Called once before any packet is delivered
+	 * @param subscription used to request packets and to cancel the subscription
+	 */
+	public void onSubscribe(PacketSubscription subscription);
+
+	public void onNext(ReceivedPacket packet);
+
+	/**
+	 * Called if the subscription failed. No further calls are made
+	 */
+	public void onError(Throwable error);
+
+	/**
+	 * Called when the publisher will not deliver any more packets, e.g. because the node has been stopped
+	 */
+	public void onComplete();
+}
@@ -0,0 +1,20 @@
+package adhoc.aodv;
+
+/**
+ * The link between a PacketPublisher and its subscriber
+ * @author Rabie
+ *
+ */
+public interface PacketSubscription {
+
+	/**
+	 * Allows the publisher to deliver the given number of packets more
+	 * @param n the number of packets, must be positive
+	 */
+	public void request(long n);
+
+	/**
+	 * Stops the delivery of packets. Packets which are not delivered stay in the receive buffer
+	 */
+	public void cancel();
+}
@@ -0,0 +1,127 @@
+package adhoc.aodv;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import adhoc.aodv.pdu.SegmentPacket;
+import adhoc.etc.Debug;
+
+/**
+ * Puts the messages split into segments back together. The buffer of a message is allocated at its full length
+ * when its first segment arrives, and every segment is copied straight to its place.
+ * A message whose segments do not all arrive within the reassembly timeout is given up, and at most
+ * Constants.MAX_REASSEMBLIES messages are put together at once. Only used by the receiver thread
+ * @author Rabie
+ *
+ */
+class Reassembler {
+	//the messages being put together, keyed by the source address and the message ID
+	private HashMap<Long, Reassembly> reassemblies = new HashMap<Long, Reassembly>();
+	private long expiredMessages = 0;
+
+	/**
+	 * Adds a received segment to its message
+	 * @param segment the received segment
+	 * @param currentTime the current system time
+	 * @return returns the whole message if this were its last missing segment, otherwise null
+	 */
+	byte[] add(SegmentPacket segment, long currentTime){
+		expire(currentTime);
+		if(segment.getMessageLength() > Constants.MAX_MESSAGE_SIZE){
+			Debug.print(Debug.WARN, "Reassembler: dropped a segment of a message exceeding the maximum size from: ", segment.getSourceNodeAddress());
+			return null;
+		}
+		Long key = Long.valueOf(((long)segment.getSourceNodeAddress() << 32) | (segment.getMessageID() & 0xffffffffL));
+		Reassembly reassembly = reassemblies.get(key);
+		if(reassembly == null){
+			if(reassemblies.size() >= Constants.MAX_REASSEMBLIES){
+				dropOldest();
+			}
+			reassembly = new Reassembly(segment, currentTime + Constants.REASSEMBLY_TIMEOUT);
+			reassemblies.put(key, reassembly);
+		} else if(!reassembly.isSameMessage(segment)){
+			Debug.print(Debug.WARN, "Reassembler: dropped a segment which does not match its message from: ", segment.getSourceNodeAddress());
+			return null;
+		}
+		if(reassembly.add(segment)){
+			reassemblies.remove(key);
+			return reassembly.buffer;
+		}
+		return null;
+	}
+
+	/**
+	 * @return returns the number of messages being put together
+	 */
+	int size(){
+		return reassemblies.size();
+	}
+
+	/**
+	 * @return returns the number of messages given up because segments were missing
+	 */
+	long getExpiredMessageCount(){
+		return expiredMessages;
+	}
+
+	private void expire(long currentTime){
+		Iterator<Reassembly> it = reassemblies.values().iterator();
+		while(it.hasNext()){
+			if(it.next().deadline <= currentTime){
+				it.remove();
+				expiredMessages++;
+			}
+		}
+	}
+
+	private void dropOldest(){
+		Long oldestKey = null;
+		long oldestDeadline = Long.MAX_VALUE;
+		for(Map.Entry<Long, Reassembly> entry : reassemblies.entrySet()){
+			if(entry.getValue().deadline < oldestDeadline){
+				oldestDeadline = entry.getValue().deadline;
+				oldestKey = entry.getKey();
+			}
+		}
+		reassemblies.remove(oldestKey);
+		expiredMessages++;
+	}
+
+	/**
+	 * A message being put together
+	 */
+	private static class Reassembly {
+		final byte[] buffer;
+		final int segmentSize;
+		final BitSet receivedSegments;
+		final long deadline;
+		int receivedBytes = 0;
+
+		Reassembly(SegmentPacket first, long deadline){
+			buffer = new byte[first.getMessageLength()];
+			segmentSize = first.getSegmentSize();
+			receivedSegments = new BitSet(first.getNumberOfSegments());
+			this.deadline = deadline;
+		}
+
+		boolean isSameMessage(SegmentPacket segment){
+			return segment.getMessageLength() == buffer.length && segment.getSegmentSize() == segmentSize;
+		}
+
+		/**
+		 * @return returns true if the message is complete
+		 */
+		boolean add(SegmentPacket segment){
+			int index = segment.getSegmentIndex();
+			if(!receivedSegments.get(index)){
+				receivedSegments.set(index);
+				System.arraycopy(	segment.getDataArray(), segment.getDataOffset(),
+									buffer, index * segmentSize, segment.getDataLength()	);
+				receivedBytes += segment.getDataLength();
+			}
+			return receivedBytes == buffer.length;
+		}
+	}
+}
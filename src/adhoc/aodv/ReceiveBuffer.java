@@ -0,0 +1,290 @@
+package adhoc.aodv;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded buffer of the packets received by a node, which the application pulls from with Node.receive() and
+ * Node.drainTo(), or subscribes to through the PacketPublisher view.
+ * When the buffer is full the overflow policy decides which packet is given up, or if the receiver waits for room
+ * @author Rabie
+ *
+ */
+public class ReceiveBuffer implements PacketPublisher {
+	/**
+	 * the packet which did not fit into the buffer is dropped
+	 */
+	public static final int DROP_NEWEST = 0;
+	/**
+	 * the packet which has waited longest in the buffer is dropped to make room
+	 */
+	public static final int DROP_OLDEST = 1;
+	/**
+	 * the packet waits until there is room in the buffer. A node stops taking received data while the buffer is full,
+	 * and bounds its queue of received data by the capacity of the buffer, so the transport waits for room once that queue
+	 * is full as well. The routing messages are queued apart from the data and are still handled meanwhile.
+	 * NOTE: the packets forwarded by the node wait behind the data as well
+	 */
+	public static final int BLOCK = 2;
+
+	private final ArrayBlockingQueue<ReceivedPacket> packets;
+	private final int overflowPolicy;
+	private final AtomicLong droppedPackets = new AtomicLong(0);
+	private final AtomicReference<Subscription> subscription = new AtomicReference<Subscription>();
+	//the executor which delivers to the subscriber the packets added to the buffer, or null if the adding thread delivers them
+	private volatile Executor deliveryExecutor = null;
+	//told when packets are taken out of the buffer
+	private volatile Runnable roomListener = null;
+
+	/**
+	 * @param capacity the maximum number of packets kept in the buffer
+	 * @param overflowPolicy one of DROP_NEWEST, DROP_OLDEST or BLOCK
+	 */
+	public ReceiveBuffer(int capacity, int overflowPolicy){
+		if(overflowPolicy != DROP_NEWEST && overflowPolicy != DROP_OLDEST && overflowPolicy != BLOCK){
+			throw new IllegalArgumentException("ReceiveBuffer: unknown overflow policy: "+overflowPolicy);
+		}
+		packets = new ArrayBlockingQueue<ReceivedPacket>(capacity);
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Adds a received packet to the buffer according to the overflow policy
+	 * @param packet the packet to add
+	 * @throws InterruptedException thrown if the BLOCK policy is used and the thread is interrupted while waiting
+	 */
+	public void add(ReceivedPacket packet) throws InterruptedException {
+		if(overflowPolicy == BLOCK){
+			packets.put(packet);
+			packetAdded();
+		} else {
+			offer(packet);
+		}
+	}
+
+	/**
+	 * Adds a received packet to the buffer according to the overflow policy without waiting. Called by the node when data is received
+	 * @param packet the packet to add
+	 * @return returns false if the BLOCK policy is used and the buffer is full
+	 */
+	public boolean offer(ReceivedPacket packet){
+		switch (overflowPolicy) {
+		case BLOCK:
+			if(!packets.offer(packet)){
+				return false;
+			}
+			break;
+		case DROP_OLDEST:
+			while(!packets.offer(packet)){
+				if(packets.poll() != null){
+					droppedPackets.incrementAndGet();
+				}
+			}
+			break;
+		default:
+			if(!packets.offer(packet)){
+				droppedPackets.incrementAndGet();
+			}
+			break;
+		}
+		packetAdded();
+		return true;
+	}
+
+	/**
+	 * Has the subscriber, if any, served with the added packet
+	 */
+	private void packetAdded(){
+		final Subscription current = subscription.get();
+		if(current == null){
+			return;
+		}
+		Executor executor = deliveryExecutor;
+		if(executor == null){
+			current.drain();
+		} else {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					current.drain();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Tells the room listener that packets were taken out of the buffer
+	 */
+	private void packetsTaken(){
+		Runnable listener = roomListener;
+		if(listener != null){
+			listener.run();
+		}
+	}
+
+	/**
+	 * Used by the node, so its receiver thread does not call the subscriber
+	 * @param executor the executor which delivers the added packets to the subscriber, or null if the adding thread delivers them
+	 */
+	void setDeliveryExecutor(Executor executor){
+		deliveryExecutor = executor;
+	}
+
+	/**
+	 * Used by the node to go on with the data waiting for room
+	 * @param listener the task which is run by the thread taking packets out of the buffer
+	 */
+	void setRoomListener(Runnable listener){
+		roomListener = listener;
+	}
+
+	/**
+	 * Waits for a packet to arrive
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return returns the oldest packet in the buffer, or null if no packet arrived before the timeout
+	 * @throws InterruptedException
+	 */
+	public ReceivedPacket receive(long timeout) throws InterruptedException {
+		ReceivedPacket packet = packets.poll(timeout, TimeUnit.MILLISECONDS);
+		if(packet != null){
+			packetsTaken();
+		}
+		return packet;
+	}
+
+	/**
+	 * Moves the packets in the buffer into the given collection without waiting
+	 * @param collection the collection which to add the packets to
+	 * @param maxPackets the maximum number of packets to move
+	 * @return returns the number of packets moved
+	 */
+	public int drainTo(Collection<? super ReceivedPacket> collection, int maxPackets){
+		int drained = packets.drainTo(collection, maxPackets);
+		if(drained > 0){
+			packetsTaken();
+		}
+		return drained;
+	}
+
+	public int size(){
+		return packets.size();
+	}
+
+	public int getOverflowPolicy(){
+		return overflowPolicy;
+	}
+
+	/**
+	 * @return returns the number of packets dropped since the buffer were created because it were full
+	 */
+	public long getDroppedPacketCount(){
+		return droppedPackets.get();
+	}
+
+	@Override
+	public void subscribe(PacketSubscriber subscriber) {
+		Subscription newSubscription = new Subscription(subscriber);
+		if(!subscription.compareAndSet(null, newSubscription)){
+			subscriber.onSubscribe(new PacketSubscription() {
+				@Override
+				public void request(long n) {
+				}
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("ReceiveBuffer: only one subscriber is allowed at a time"));
+			return;
+		}
+		subscriber.onSubscribe(newSubscription);
+	}
+
+	/**
+	 * Completes the current subscription, if any. Used when the node is stopped
+	 */
+	void complete(){
+		Subscription current = subscription.getAndSet(null);
+		if(current != null){
+			current.complete();
+		}
+	}
+
+	/**
+	 * Delivers packets to the subscriber while it has outstanding demand.
+	 * The delivery is done by whichever thread finds work to do, either a thread requesting more packets
+	 * or the delivery executor after a packet is added, but never by two threads at once
+	 */
+	private class Subscription implements PacketSubscription {
+		private final PacketSubscriber subscriber;
+		private final AtomicLong requested = new AtomicLong(0);
+		//the number of times drain() has been called without the calls being served yet
+		private final AtomicInteger pendingDrains = new AtomicInteger(0);
+		private volatile boolean isCancelled = false;
+		private volatile boolean isCompleted = false;
+
+		Subscription(PacketSubscriber subscriber){
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if(n <= 0){
+				cancel();
+				subscriber.onError(new IllegalArgumentException("ReceiveBuffer: the number of requested packets must be positive"));
+				return;
+			}
+			long current, next;
+			do{
+				current = requested.get();
+				next = current + n;
+				if(next < 0){
+					//the demand is unbounded
+					next = Long.MAX_VALUE;
+				}
+			} while(!requested.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			isCancelled = true;
+			subscription.compareAndSet(this, null);
+		}
+
+		void complete(){
+			isCompleted = true;
+			drain();
+		}
+
+		void drain(){
+			if(pendingDrains.getAndIncrement() != 0){
+				//another thread is delivering, and will look again before it stops
+				return;
+			}
+			int missed = 1;
+			do{
+				while(!isCancelled && requested.get() > 0){
+					ReceivedPacket packet = packets.poll();
+					if(packet == null){
+						break;
+					}
+					if(requested.get() != Long.MAX_VALUE){
+						requested.decrementAndGet();
+					}
+					packetsTaken();
+					subscriber.onNext(packet);
+				}
+				if(isCompleted && !isCancelled){
+					isCancelled = true;
+					subscriber.onComplete();
+				}
+				missed = pendingDrains.addAndGet(-missed);
+			} while(missed != 0);
+		}
+	}
+}
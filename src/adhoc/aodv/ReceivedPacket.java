@@ -0,0 +1,41 @@
+package adhoc.aodv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Data received from another node, as returned by Node.receive() and the received packet publisher.
+ * The data is a view of the received frame and is not copied
+ * @author Rabie
+ *
+ */
+public class ReceivedPacket {
+	private final int senderNodeAddress;
+	private final byte[] data;
+	private final int offset;
+	private final int length;
+
+	public ReceivedPacket(int senderNodeAddress, byte[] data, int offset, int length){
+		this.senderNodeAddress = senderNodeAddress;
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return returns an integer value representing the unique address of the sending node
+	 */
+	public int getSenderNodeAddress(){
+		return senderNodeAddress;
+	}
+
+	/**
+	 * @return returns a read-only buffer positioned at the data which where sent to this node
+	 */
+	public ByteBuffer getData(){
+		return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+	}
+
+	public int getDataLength(){
+		return length;
+	}
+}
@@ -1,30 +1,32 @@
 package adhoc.aodv;
 
-import java.net.BindException;
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import adhoc.aodv.exception.AodvException;
 import adhoc.aodv.exception.BadPduFormatException;
-import adhoc.aodv.exception.NoSuchRouteException;
-import adhoc.aodv.exception.RouteNotValidException;
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.pdu.AggregatePacket;
 import adhoc.aodv.pdu.HelloPacket;
 import adhoc.aodv.pdu.RERR;
 import adhoc.aodv.pdu.RREP;
 import adhoc.aodv.pdu.RREQ;
+import adhoc.aodv.pdu.SegmentPacket;
 import adhoc.aodv.pdu.UserDataPacket;
 import adhoc.aodv.routes.ForwardRouteEntry;
 import adhoc.etc.Debug;
-import adhoc.udp.UdpReceiver;
+import adhoc.transport.PacketListener;
 
-public class Receiver implements Runnable {
+public class Receiver implements Runnable, PacketListener {
 	private Sender sender;
+	//the received protocol messages, which are handled before the data. The queue is also the lock of the data queue
 	private Queue<Message> receivedMessages;
+	//the received user data, bounded while the node keeps its received data in a buffer with the BLOCK policy
+	private Queue<Message> receivedData = new ArrayDeque<Message>();
+	private int dataQueueCapacity = Integer.MAX_VALUE;
 	private RouteTableManager routeTableManager;
-	private UdpReceiver udpReceiver;
 	private int nodeAddress;
 	private Thread receiverThread;
 
@@ -32,20 +34,20 @@ public class Receiver implements Runnable {
      */
     private Node parent;
 	private volatile boolean keepRunning = true;
+	private Reassembler reassembler = new Reassembler();
+	//the received messages which are queued or being handled
+	private AtomicInteger unhandledMessages = new AtomicInteger(0);
 
-	public Receiver(Sender sender, int nodeAddress, Node parent, RouteTableManager routeTableManager) throws SocketException, UnknownHostException, BindException {
+	public Receiver(Sender sender, int nodeAddress, Node parent, RouteTableManager routeTableManager) {
 		this.parent = parent;
 		this.nodeAddress = nodeAddress;
 		this.sender = sender;
 		receivedMessages = new ConcurrentLinkedQueue<Message>();
 		this.routeTableManager = routeTableManager;
-		udpReceiver = new UdpReceiver(this, nodeAddress);
-
 	}
 
 	public void startThread(){
 		keepRunning = true;
-		udpReceiver.startThread();
 		receiverThread = new Thread(this);
 		receiverThread.start();
 	}
@@ -55,20 +57,60 @@ public class Receiver implements Runnable {
 	 */
 	public void stopThread() {
 		keepRunning = false;
-		udpReceiver.stopThread();
+		synchronized (receivedMessages) {
+			//releases the transport threads waiting for room in the data queue
+			receivedMessages.notifyAll();
+		}
 		receiverThread.interrupt();
 	}
 	
+	/**
+	 * Bounds the queue of received user data. A transport thread handing on data while the queue is full waits for room,
+	 * while the protocol messages are still queued and handled. Should be called before the receiver thread is started
+	 * @param capacity the maximum number of received data frames waiting to be handled
+	 */
+	void setDataQueueCapacity(int capacity){
+		synchronized (receivedMessages) {
+			dataQueueCapacity = capacity;
+		}
+	}
+	
+	/**
+	 * Wakes the receiver thread when the application has made room in the receive buffer of the node
+	 */
+	void roomAvailable(){
+		synchronized (receivedMessages) {
+			receivedMessages.notifyAll();
+		}
+	}
+	
+	/**
+	 * Takes the next message to handle, the protocol messages first. The user data is only taken once the node
+	 * has room for the data received before. Must be called while holding the lock of receivedMessages
+	 * @return returns the message, or null if there is none to handle
+	 */
+	private Message nextMessage(){
+		Message msg = receivedMessages.poll();
+		if(msg == null && parent.deliverWaitingData()){
+			msg = receivedData.poll();
+			if(msg != null){
+				//a transport thread may be waiting for room
+				receivedMessages.notifyAll();
+			}
+		}
+		return msg;
+	}
+	
 	public void run() {
 			while (keepRunning) {
 				try {
+					Message msg;
 					synchronized (receivedMessages) {
-						while (receivedMessages.isEmpty()) {
+						while ((msg = nextMessage()) == null) {
 							receivedMessages.wait();
 						}
 					}
 	
-					Message msg = receivedMessages.poll();
 					if(msg.senderNodeAddress != nodeAddress){
 						try {
 							switch (msg.getType()) {
@@ -93,9 +135,18 @@ public class Receiver implements Runnable {
 								routeErrorRecived(rerr);
 								break;
 							case Constants.USER_DATA_PACKET_PDU:
-								UserDataPacket userDataPacket = new UserDataPacket();
-								userDataPacket.parseBytes(msg.data);
-								userDataPacketReceived(userDataPacket);
+							case Constants.SEGMENT_PDU:
+								userDataFrameReceived(msg.data);
+								break;
+							case Constants.AGGREGATE_PDU:
+								AggregatePacket aggregate = new AggregatePacket();
+								aggregate.parseBytes(msg.data);
+								for (int i = 0; i < aggregate.getNumberOfPackets(); i++) {
+									byte[] frame = aggregate.getFrame(i);
+									if (frame[0] == Constants.USER_DATA_PACKET_PDU || frame[0] == Constants.SEGMENT_PDU) {
+										userDataFrameReceived(frame);
+									}
+								}
 								break;
 		
 							default:
@@ -107,6 +158,7 @@ public class Receiver implements Runnable {
 						}
 					} else {
 					}
+					unhandledMessages.decrementAndGet();
 				} catch (InterruptedException e) {
 					// Thread Stopped
 				}
@@ -114,33 +166,65 @@ public class Receiver implements Runnable {
 	}
 
 	/**
-	 * Method used by the lower network layer to queue messages for later processing
+	 * Method used by the lower network layer to queue messages for later processing.
+	 * User data waits for room if the data queue is bounded and full, the protocol messages are always queued
 	 * 
 	 * @param senderNodeAddress Is the address of the node that sent a message
 	 * @param msg is an array of bytes which contains the sent data
 	 */
-	public void addMessage(int senderNodeAddress, byte[] msg) {
-		receivedMessages.add(new Message(senderNodeAddress, msg));
+	@Override
+	public void packetReceived(int senderNodeAddress, byte[] msg) {
+		Message message = new Message(senderNodeAddress, msg);
 		synchronized (receivedMessages) {
-			receivedMessages.notify();
+			if(message.isUserData()){
+				try {
+					while(receivedData.size() >= dataQueueCapacity){
+						if(!keepRunning){
+							Debug.print(Debug.WARN, "Receiver: the node is stopped, received data were dropped");
+							return;
+						}
+						receivedMessages.wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				receivedData.add(message);
+			} else {
+				receivedMessages.add(message);
+			}
+			unhandledMessages.incrementAndGet();
+			receivedMessages.notifyAll();
 		}
 	}
 
+	/**
+	 * @return returns true if every received message has been handled
+	 */
+	boolean isIdle(){
+		return unhandledMessages.get() == 0;
+	}
+
+	/**
+	 * @return returns the number of received messages which are queued or being handled
+	 */
+	int getUnhandledMessageCount(){
+		return unhandledMessages.get();
+	}
+
 	/**
 	 * Handles a HelloHeader, when such a message is received from a neighbor
 	 * 
 	 * @param hello is the HelloHeader message received
 	 */
 	private void helloMessageReceived(HelloPacket hello) {
-		try {
-			routeTableManager.setValid(hello.getSourceAddress(), hello.getSourceSeqNr());
-		} catch (NoSuchRouteException e) {
+		if (!routeTableManager.setValid(hello.getSourceAddress(), hello.getSourceSeqNr())) {
 			routeTableManager.createForwardRouteEntry(	hello.getSourceAddress(),
 														hello.getSourceAddress(),
 														hello.getSourceSeqNr(),
 														1,	true);
 		}
-		Debug.print("Receiver: received hello pdu from: "+hello.getSourceAddress());
+		Debug.print(Debug.DEBUG, "Receiver: received hello pdu from: ", hello.getSourceAddress());
 	}
 
 	/**
@@ -156,7 +240,7 @@ public class Receiver implements Runnable {
 		if(routeTableManager.createForwardRouteEntry(	senderNodeAddress,
 													senderNodeAddress,
 													Constants.UNKNOWN_SEQUENCE_NUMBER, 1, true)){
-			Debug.print("Receiver: RREP where received and route to: "+senderNodeAddress+" where created with destSeq: "+Constants.UNKNOWN_SEQUENCE_NUMBER);
+			Debug.print(Debug.DEBUG, "Receiver: RREP where received and route to: ", senderNodeAddress, " where created with destSeq: ", Constants.UNKNOWN_SEQUENCE_NUMBER);
 		}
 		rrep.incrementHopCount();
 
@@ -165,52 +249,56 @@ public class Receiver implements Runnable {
 			sender.queuePDUmessage(rrep);
 		
 			// handle the first part of the route (reverse route) - from this node to the one which originated a RREQ
-			try {
+			ForwardRouteEntry reverseRoute = routeTableManager.lookupValidForwardRouteEntry(rrep.getSourceAddress());
+			if (reverseRoute != null) {
 				//add the sender node to precursors list of the reverse route
-				ForwardRouteEntry reverseRoute = routeTableManager.getForwardRouteEntry(rrep.getSourceAddress());
 				reverseRoute.addPrecursorAddress(senderNodeAddress);
 				rrepRoutePrecursorAddress = reverseRoute.getNextHop();
-			} catch (AodvException e) {
-				//no reverse route is currently known so the RREP is not sure to reach the originator of the RREQ
 			}
+			//otherwise no reverse route is currently known so the RREP is not sure to reach the originator of the RREQ
 		}
 		// handle the second part of the route - from this node to the destination address in the RREP
-		try {
-			ForwardRouteEntry oldRoute = routeTableManager.getForwardRouteEntry(rrep.getDestinationAddress());
+		ForwardRouteEntry oldRoute = routeTableManager.lookupForwardRouteEntry(rrep.getDestinationAddress());
+		if (oldRoute != null && oldRoute.isValid()) {
 			if(rrepRoutePrecursorAddress != -1){
 				oldRoute.addPrecursorAddress(rrepRoutePrecursorAddress);
 			}
 			//see if the RREP contains updates (better seqNum or hopCountNum) to the old route
-				routeTableManager.updateForwardRouteEntry(oldRoute,
-						new ForwardRouteEntry(	rrep.getDestinationAddress(),
-												senderNodeAddress,
-												rrep.getHopCount(),
-												rrep.getDestinationSequenceNumber(),
-												oldRoute.getPrecursors()));
-		} catch (NoSuchRouteException e) {
-			ArrayList<Integer> precursorNode = new ArrayList<Integer>();
-			if(rrepRoutePrecursorAddress != -1){
-				precursorNode.add(rrepRoutePrecursorAddress);
+			try {
+				ForwardRouteEntry newRoute = new ForwardRouteEntry(	rrep.getDestinationAddress(),
+																	senderNodeAddress,
+																	rrep.getHopCount(),
+																	rrep.getDestinationSequenceNumber()	);
+				newRoute.addPrecursorsOf(oldRoute);
+				routeTableManager.updateForwardRouteEntry(oldRoute, newRoute);
+			} catch (AodvException e) {
+				//the route were removed by the timer since it were looked up
+				createRouteFromRREP(rrep, senderNodeAddress, rrepRoutePrecursorAddress);
 			}
-			routeTableManager.createForwardRouteEntry(	rrep.getDestinationAddress(), 
-														senderNodeAddress, 
-														rrep.getDestinationSequenceNumber(),
-														rrep.getHopCount(),
-														precursorNode, true);
-		} catch (RouteNotValidException e) {
+		} else if (oldRoute == null) {
+			createRouteFromRREP(rrep, senderNodeAddress, rrepRoutePrecursorAddress);
+		} else {
 			//FIXME den er gal paa den
-			Debug.print("Receiver: FATAL ERROR");
-			try {
-				//update the previously known route with the better route contained in the RREP
-				routeTableManager.setValid(rrep.getDestinationAddress(), rrep.getDestinationSequenceNumber());
-				if(rrepRoutePrecursorAddress != -1){
-					routeTableManager.getForwardRouteEntry(rrep.getDestinationAddress()).addPrecursorAddress(rrepRoutePrecursorAddress);
-				}
-			}catch (AodvException e1) {
-				 
+			Debug.print(Debug.ERROR, "Receiver: FATAL ERROR");
+			//update the previously known route with the better route contained in the RREP
+			if(routeTableManager.setValid(rrep.getDestinationAddress(), rrep.getDestinationSequenceNumber())
+					&& rrepRoutePrecursorAddress != -1){
+				oldRoute.addPrecursorAddress(rrepRoutePrecursorAddress);
 			}
 		}
 	}
+	
+	private void createRouteFromRREP(RREP rrep, int senderNodeAddress, int rrepRoutePrecursorAddress){
+		ArrayList<Integer> precursorNode = new ArrayList<Integer>();
+		if(rrepRoutePrecursorAddress != -1){
+			precursorNode.add(rrepRoutePrecursorAddress);
+		}
+		routeTableManager.createForwardRouteEntry(	rrep.getDestinationAddress(), 
+													senderNodeAddress, 
+													rrep.getDestinationSequenceNumber(),
+													rrep.getHopCount(),
+													precursorNode, true);
+	}
 
 	/**
 	 * Handles a RREQ message when received
@@ -226,7 +314,7 @@ public class Receiver implements Runnable {
 		if(routeTableManager.createForwardRouteEntry(	senderNodeAddress,
 													senderNodeAddress,
 													Constants.UNKNOWN_SEQUENCE_NUMBER, 1, true)){
-			Debug.print("Receiver: RREQ where received from: "+senderNodeAddress+" and route where created with destSeq: "+Constants.UNKNOWN_SEQUENCE_NUMBER);
+			Debug.print(Debug.DEBUG, "Receiver: RREQ where received from: ", senderNodeAddress, " and route where created with destSeq: ", Constants.UNKNOWN_SEQUENCE_NUMBER);
 		}
 		
 		// Increments the hopCount and Adds the RREQ to the table
@@ -234,54 +322,46 @@ public class Receiver implements Runnable {
 		routeTableManager.createRouteRequestEntry(rreq, true);
 
 		//a reverse route may already exists, so we need to compare route info value to know what to update
-		try {
-			ForwardRouteEntry oldRoute = routeTableManager.getForwardRouteEntry(rreq.getSourceAddress());
-			
+		ForwardRouteEntry oldRoute = routeTableManager.lookupForwardRouteEntry(rreq.getSourceAddress());
+		if (oldRoute != null && oldRoute.isValid()) {
 			if(isIncomingRouteInfoBetter(	rreq.getSourceSequenceNumber(),
 											oldRoute.getDestinationSequenceNumber(),
 											rreq.getHopCount(),
 											oldRoute.getHopCount())){
 				//remove the old entry and then replace with new information
-				routeTableManager.updateForwardRouteEntry(oldRoute,
-						new ForwardRouteEntry(	rreq.getSourceAddress(),
-												senderNodeAddress,
-												rreq.getHopCount(),
-												rreq.getSourceSequenceNumber(),
-												oldRoute.getPrecursors()));
+				try {
+					ForwardRouteEntry newRoute = new ForwardRouteEntry(	rreq.getSourceAddress(),
+																		senderNodeAddress,
+																		rreq.getHopCount(),
+																		rreq.getSourceSequenceNumber()	);
+					newRoute.addPrecursorsOf(oldRoute);
+					routeTableManager.updateForwardRouteEntry(oldRoute, newRoute);
+				} catch (AodvException e) {
+					//the route were removed by the timer since it were looked up
+					createReverseRoute(rreq, senderNodeAddress);
+				}
 			}
-		} catch (NoSuchRouteException e) {
+		} else if (oldRoute == null
+				|| !routeTableManager.setValid(rreq.getSourceAddress(), rreq.getSourceSequenceNumber())) {
 			// Creates a reverse route for the RREP that may be received later on
-			routeTableManager.createForwardRouteEntry(	rreq.getSourceAddress(),
-														senderNodeAddress,
-														rreq.getSourceSequenceNumber(),
-														rreq.getHopCount(), true);
-		} catch (RouteNotValidException e) {
-			try {
-				routeTableManager.setValid(rreq.getSourceAddress(), rreq.getSourceSequenceNumber());
-			} catch (NoSuchRouteException e1) {
-				routeTableManager.createForwardRouteEntry(	rreq.getSourceAddress(),
-															senderNodeAddress,
-															rreq.getSourceSequenceNumber(),
-															rreq.getHopCount(), true);
-			}
+			createReverseRoute(rreq, senderNodeAddress);
 		}
 
 		//check if this node is the destination,
 		RREP rrep = null;
-		try {
-			if (rreq.getDestinationAddress() == nodeAddress) {
-				if(parent.getNextSequenceNumber(parent.getCurrentSequenceNumber()) == rreq.getDestinationSequenceNumber()){
-					parent.getNextSequenceNumber();
-				}
-				// the RREQ has reached it's destination, so this node has to reply with a RREP
-				rrep = new RREP(	rreq.getSourceAddress(),
-									nodeAddress,
-									rreq.getSourceSequenceNumber(),
-									parent.getCurrentSequenceNumber()	);
-			} else {
-				//this node is not the destination of the RREQ so we need to check if we have the requested route
-				ForwardRouteEntry entry = routeTableManager.getForwardRouteEntry(rreq.getDestinationAddress());
-
+		if (rreq.getDestinationAddress() == nodeAddress) {
+			if(parent.getNextSequenceNumber(parent.getCurrentSequenceNumber()) == rreq.getDestinationSequenceNumber()){
+				parent.getNextSequenceNumber();
+			}
+			// the RREQ has reached it's destination, so this node has to reply with a RREP
+			rrep = new RREP(	rreq.getSourceAddress(),
+								nodeAddress,
+								rreq.getSourceSequenceNumber(),
+								parent.getCurrentSequenceNumber()	);
+		} else {
+			//this node is not the destination of the RREQ so we need to check if we have the requested route
+			ForwardRouteEntry entry = routeTableManager.lookupForwardRouteEntry(rreq.getDestinationAddress());
+			if (entry != null && entry.isValid()) {
 				// If a valid route exists with a seqNum thats is grater or equal to the RREQ, then send a RREP
 				if (isIncomingSeqNrBetter(entry.getDestinationSequenceNumber(), rreq.getDestinationSequenceNumber())) {
 					rrep = new RREP(	rreq.getSourceAddress(),
@@ -297,27 +377,26 @@ public class Receiver implements Runnable {
 											rreq.getHopCount()	);
 					sender.queuePDUmessage(gRrep);
 				}
+			} else if (entry != null) {
+				//this node know a route but it is not active any longer.
+				rreq.setDestSeqNum(getMaximumSeqNum(entry.getDestinationSequenceNumber(), rreq.getDestinationSequenceNumber()));
 			}
-		} catch (NoSuchRouteException e) {
-			//this node is an intermediate node, but do not know a route to the desired destination
-		} catch (RouteNotValidException e) {
-			//this node know a route but it is not active any longer.
-			try {
-				int maxSeqNum = getMaximumSeqNum(routeTableManager.getLastKnownDestSeqNum(rreq.getDestinationAddress()),
-													rreq.getDestinationSequenceNumber()	);
-				rreq.setDestSeqNum(maxSeqNum);
-			} catch (NoSuchRouteException e1) {
-				//table route were deleted by the timer
-			}
-		} finally {
-			//if a RREP is created, then send it, otherwise broadcast the RREQ
-			if (rrep == null) {
-				sender.queuePDUmessage(rreq);
-			} else {
-				sender.queuePDUmessage(rrep);
-			}
+			//otherwise this node is an intermediate node, but do not know a route to the desired destination
+		}
+		//if a RREP is created, then send it, otherwise broadcast the RREQ
+		if (rrep == null) {
+			sender.queuePDUmessage(rreq);
+		} else {
+			sender.queuePDUmessage(rrep);
 		}
 	}
+	
+	private void createReverseRoute(RREQ rreq, int senderNodeAddress){
+		routeTableManager.createForwardRouteEntry(	rreq.getSourceAddress(),
+													senderNodeAddress,
+													rreq.getSourceSequenceNumber(),
+													rreq.getHopCount(), true);
+	}
 
 	/**
 	 * Handles a RERR message when received
@@ -325,39 +404,71 @@ public class Receiver implements Runnable {
 	 * @param rerrMsg is the received error message
 	 */
 	private void routeErrorRecived(RERR rerrMsg) {
-		Debug.print("Receiver: RRER received, unreachableNode: "+rerrMsg.getUnreachableNodeAddress());
-		try {
-			ForwardRouteEntry entry = routeTableManager.getForwardRouteEntry(
-															rerrMsg.getUnreachableNodeAddress());
-
+		Debug.print(Debug.DEBUG, "Receiver: RRER received, unreachableNode: ", rerrMsg.getUnreachableNodeAddress());
+		//the destinations which are unreachable from this node as well are reported onwards in a single message
+		RERR rerr = new RERR(new ArrayList<Integer>());
+		for (int i = 0; i < rerrMsg.getNumberOfUnreachableNodes(); i++) {
+			int unreachableNodeAddress = rerrMsg.getUnreachableNodeAddress(i);
+			int unreachableNodeSequenceNumber = rerrMsg.getUnreachableNodeSequenceNumber(i);
+			ForwardRouteEntry entry = routeTableManager.lookupValidForwardRouteEntry(unreachableNodeAddress);
 			//only send a RERR if the message contain a seqNum that is greater or equal to the entry known in the table
-			if (isIncomingSeqNrBetter(rerrMsg.getUnreachableNodeSequenceNumber(),
-										entry.getDestinationSequenceNumber()))
-			{
-				RERR rerr = new RERR(	rerrMsg.getUnreachableNodeAddress(),
-										rerrMsg.getUnreachableNodeSequenceNumber(), 
-										entry.getPrecursors()	);
-				sender.queuePDUmessage(rerr);
-				routeTableManager.setInvalid(rerrMsg.getUnreachableNodeAddress(), rerrMsg.getUnreachableNodeSequenceNumber());
+			//otherwise no route is known so we do not have to react on the error message
+			if (entry != null && isIncomingSeqNrBetter(unreachableNodeSequenceNumber, entry.getDestinationSequenceNumber())) {
+				rerr.addUnreachableNode(unreachableNodeAddress, unreachableNodeSequenceNumber);
+				for (int precursor = entry.nextPrecursor(0); precursor >= 0; precursor = entry.nextPrecursor(precursor + 1)) {
+					rerr.addDestinationAddress(precursor);
+				}
+				routeTableManager.setInvalid(unreachableNodeAddress, unreachableNodeSequenceNumber);
 			}
-		} catch (AodvException e) {
-			//no route is known so we do not have to react on the error message
+		}
+		if (rerr.getNumberOfUnreachableNodes() > 0) {
+			sender.queuePDUmessage(rerr);
 		}
 	}
 
 	/**
-	 * Handles a userDataPacket when received
-	 * @param userData is the received packet
-	 * @param senderNodeAddress the originator of the message
+	 * Handles a received frame holding a user data packet or a segment of one
+	 * @param frame the frame, which is owned by this node
+	 * @throws BadPduFormatException thrown if the frame is not a valid user data packet
 	 */
-	private void userDataPacketReceived(UserDataPacket userData) {
-		if (userData.getDestinationAddress() == nodeAddress 
-				|| userData.getDestinationAddress() == Constants.BROADCAST_ADDRESS	) {
-			parent.notifyAboutDataReceived(userData.getSourceNodeAddress(), userData.getData());
+	private void userDataFrameReceived(byte[] frame) throws BadPduFormatException {
+		int destinationAddress = UserDataPacket.readDestinationAddress(frame);
+		if (destinationAddress == nodeAddress && frame[0] == Constants.SEGMENT_PDU) {
+			SegmentPacket segment = new SegmentPacket();
+			segment.parseBytes(frame);
+			segmentReceived(segment);
+		} else if (destinationAddress == nodeAddress || destinationAddress == Constants.BROADCAST_ADDRESS) {
+			UserDataPacket userDataPacket = new UserDataPacket();
+			userDataPacket.parseBytes(frame);
+			userDataPacketReceived(userDataPacket);
 		} else {
-			sender.queueUserMessageToForward(userData);
+			//the packet is only passed through this node, so the frame is sent on as it were received
+			sender.queueUserMessageToForward(UserDataPacket.createForwardedPacket(frame));
+		}
+	}
+
+	/**
+	 * Adds a segment received with this node as destination to its message, and delivers the message when it is whole
+	 * @param segment is the received segment
+	 */
+	private void segmentReceived(SegmentPacket segment) {
+		byte[] message = reassembler.add(segment, parent.getClock().currentTimeMillis());
+		if (message != null) {
+			parent.notifyAboutDataReceived(segment.getSourceNodeAddress(), message, 0, message.length);
 		}
 	}
+
+	/**
+	 * Handles a userDataPacket when received with this node as destination.
+	 * Packets to other nodes are forwarded without being parsed, see run()
+	 * @param userData is the received packet
+	 */
+	private void userDataPacketReceived(UserDataPacket userData) {
+		parent.notifyAboutDataReceived(	userData.getSourceNodeAddress(),
+										userData.getDataArray(),
+										userData.getDataOffset(),
+										userData.getDataLength()	);
+	}
 	
 	/**
 	 * Computes the maximum of the two sequence numbers, such that the possibility of rollover is taken to account
@@ -389,7 +500,7 @@ public class Receiver implements Runnable {
 	 * @param currentSeqNum the sequence number contained in a known forward route
 	 * @return returns true if incomingSeqNum > currentSeqNum OR incomingSeqNum == currentSeqNum AND incomingHopCount < currentHopCount  
 	 */
-	protected static boolean isIncomingRouteInfoBetter(int incomingSeqNum, int currentSeqNum, int incomingHopCount, int currentHopCount) {
+	public static boolean isIncomingRouteInfoBetter(int incomingSeqNum, int currentSeqNum, int incomingHopCount, int currentHopCount) {
 		if (Math.abs(incomingSeqNum - currentSeqNum) > Constants.SEQUENCE_NUMBER_INTERVAL) {
 
 			if ((incomingSeqNum % Constants.SEQUENCE_NUMBER_INTERVAL) >= (currentSeqNum % Constants.SEQUENCE_NUMBER_INTERVAL)) {
@@ -428,12 +539,23 @@ public class Receiver implements Runnable {
 			this.data = data;
 		}
 
-		public byte getType() throws NumberFormatException {
-			String[] s = new String(data).split(";", 2);
-			if(s.length == 2){
-				return Byte.parseByte(s[0]);
-			} else
-				throw new NumberFormatException();
+		/**
+		 * @return returns the pdu type, which is always the first byte of an encoded packet
+		 * @throws BadPduFormatException thrown if the message is empty
+		 */
+		public byte getType() throws BadPduFormatException {
+			if(data.length == 0){
+				throw new BadPduFormatException("Receiver: received an empty message");
+			}
+			return data[0];
+		}
+
+		/**
+		 * @return returns true if the message is a frame of user data, which may have to wait for room
+		 */
+		public boolean isUserData(){
+			return data.length > 0 && (data[0] == Constants.USER_DATA_PACKET_PDU
+					|| data[0] == Constants.SEGMENT_PDU || data[0] == Constants.AGGREGATE_PDU);
 		}
 	}
 }
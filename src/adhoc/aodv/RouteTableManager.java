@@ -15,31 +15,30 @@ import adhoc.aodv.routes.RouteRequestTable;
 
 public class RouteTableManager {
 
-	private volatile boolean keepRunning = true;
 	private ForwardRouteTable forwardRouteTable;
 	private RouteRequestTable routeRequestTable;
-	private final Object tableLocks = new Integer(0);
-	private TimeoutNotifier timeoutNotifier;
+	private TimerScheduler timers;
+	private final TimerScheduler.TimerTask expiryTimer = new ExpiryTimer();
 	private int nodeAddress;
 	private Node parent;
 
-	public RouteTableManager(int nodeAddress, Node parent) {
+	public RouteTableManager(int nodeAddress, Node parent, TimerScheduler timers) {
 		this.nodeAddress = nodeAddress;
 		this.parent = parent;
-		forwardRouteTable = new ForwardRouteTable();
-		routeRequestTable = new RouteRequestTable();
-		timeoutNotifier = new TimeoutNotifier();
+		this.timers = timers;
+		forwardRouteTable = new ForwardRouteTable(timers.getClock());
+		routeRequestTable = new RouteRequestTable(timers.getClock());
 	}
 
-	public void startTimerThread(){
-		keepRunning = true;
-		timeoutNotifier = new TimeoutNotifier();
-		timeoutNotifier.start();	
+	/**
+	 * Starts expiring the entries of the tables, including the entries added while the timers were stopped
+	 */
+	public void startTimers(){
+		timers.schedule(expiryTimer, getNextExpiryTime());
 	}
 	
-	public void stopTimerThread() {
-		keepRunning = false;
-		timeoutNotifier.stopThread();
+	public void stopTimers() {
+		timers.cancel(expiryTimer);
 	}
 
 	
@@ -63,10 +62,7 @@ public class RouteTableManager {
 		
 		if (routeRequestTable.addRouteRequestEntry(entry, setTimer)) {
 			if(setTimer){
-				//notify the timer since the RREQ table (the sorted list) isn't empty at this point
-				synchronized (tableLocks) {
-					tableLocks.notify();
-				}
+				timers.schedule(expiryTimer, entry.getAliveTimeLeft());
 			}
 			return true;
 		}
@@ -108,9 +104,7 @@ public class RouteTableManager {
 			return false;
 		}
 		if (forwardRouteTable.addForwardRouteEntry(forwardRouteEntry)) {
-			synchronized (tableLocks) {
-				tableLocks.notify();
-			}
+			timers.schedule(expiryTimer, forwardRouteEntry.getAliveTimeLeft());
 			if(notifyObserver){
 				parent.notifyAboutNewNodeReachable(destinationNodeAddress);
 			}
@@ -132,12 +126,8 @@ public class RouteTableManager {
 	 * @return returns true if such a valid forward route exist with the seq number or higher 
 	 */
 	protected boolean validForwardRouteExists(int destinationAddress, int destinationSequenceNumber) {
-		RouteEntry forwardRoute;
-		try {
-			forwardRoute = (ForwardRouteEntry) forwardRouteTable.getForwardRouteEntry(destinationAddress);
-		} catch (NoSuchRouteException e) {
-			return false;
-		} catch (RouteNotValidException e) {
+		RouteEntry forwardRoute = forwardRouteTable.lookupForwardRouteEntry(destinationAddress);
+		if (forwardRoute == null || !((ForwardRouteEntry)forwardRoute).isValid()) {
 			return false;
 		}
 
@@ -161,17 +151,34 @@ public class RouteTableManager {
 		return (RouteRequestEntry) routeRequestTable.getRouteRequestEntry(sourceAddress, broadcastID, removeEntry);
 	}
 
-	protected ForwardRouteEntry getForwardRouteEntry(int destinationAddress) throws NoSuchRouteException, RouteNotValidException {
-		return forwardRouteTable.getForwardRouteEntry(destinationAddress);
+	/**
+	 * Looks up the route to a destination. Callers must check ForwardRouteEntry.isValid() before using the route for forwarding
+	 * @param destinationAddress the destination which to search for
+	 * @return returns the known route whether it is valid or not, or null if no table information is known about the destination
+	 */
+	protected ForwardRouteEntry lookupForwardRouteEntry(int destinationAddress) {
+		return forwardRouteTable.lookupForwardRouteEntry(destinationAddress);
+	}
+	
+	/**
+	 * @param destinationAddress the destination which to search for
+	 * @return returns the known route if it is valid, otherwise null
+	 */
+	protected ForwardRouteEntry lookupValidForwardRouteEntry(int destinationAddress) {
+		ForwardRouteEntry entry = forwardRouteTable.lookupForwardRouteEntry(destinationAddress);
+		if(entry != null && entry.isValid()){
+			return entry;
+		}
+		return null;
 	}
 
 	protected void updateForwardRouteEntry(ForwardRouteEntry oldEntry, ForwardRouteEntry newEntry) throws NoSuchRouteException{
 		if (Receiver.isIncomingRouteInfoBetter(	newEntry.getDestinationSequenceNumber(), oldEntry.getDestinationSequenceNumber(), 
 												newEntry.getHopCount(),	oldEntry.getHopCount())) {
 			if(forwardRouteTable.updateForwardRouteEntry(newEntry)){
-				synchronized (tableLocks) {
-					tableLocks.notify();
-				}
+				timers.schedule(expiryTimer, newEntry.getAliveTimeLeft());
+				parent.queuePDUmessage(new InternalMessage(	Constants.FORWARD_ROUTE_CREATED,
+															newEntry.getDestinationAddress())	);
 			}
 		}
 	}
@@ -180,10 +187,6 @@ public class RouteTableManager {
 		return forwardRouteTable.removeEntry(destinationAddress);
 	}
 
-	protected int getLastKnownDestSeqNum(int destinationAddress) throws NoSuchRouteException {
-		return forwardRouteTable.getLastKnownDestSeqNumber(destinationAddress);
-	}
-	
 	protected ArrayList<Integer> getPrecursors(int destinaitonAdrress){
 		return forwardRouteTable.getPrecursors(destinaitonAdrress);
 	}
@@ -192,25 +195,24 @@ public class RouteTableManager {
 	 * Makes a forward route valid, updates it sequence number if necessary and resets the AliveTimeLeft
 	 * @param destinationAddress used to determine which forward route to set valid
 	 * @param newDestinationSeqNumber this destSeqNum is only set in the entry if it is greater that the existing destSeqNum
-	 * @throws NoSuchRouteException thrown if no table information is known about the destination
+	 * @return returns false if no table information is known about the destination
 	 */
-	protected void setValid(int destinationAddress, int newDestinationSeqNumber) throws NoSuchRouteException {
-		forwardRouteTable.setValid(destinationAddress, newDestinationSeqNumber,true);
+	protected boolean setValid(int destinationAddress, int newDestinationSeqNumber) {
+		ForwardRouteEntry entry = forwardRouteTable.lookupForwardRouteEntry(destinationAddress);
+		boolean wasValid = entry != null && entry.isValid();
+		if(!forwardRouteTable.setValid(destinationAddress, newDestinationSeqNumber,true)){
+			return false;
+		}
+		if(!wasValid){
+			//an invalid route became usable again, which the sender treats as a new route
+			parent.queuePDUmessage(new InternalMessage(	Constants.FORWARD_ROUTE_CREATED,
+														destinationAddress)	);
+		}
+		return true;
 	}
 	
-	protected void setInvalid(int destinationAddress, int newDestinationSeqNumber) throws NoSuchRouteException {
-		forwardRouteTable.setValid(destinationAddress,newDestinationSeqNumber,false);
-	}
-
-	/**
-	 * 
-	 * @param destinationAddress
-	 * @return
-	 * @throws NoSuchRouteException thrown if no table information is known about the destination
-	 * @throws RouteNotValidException thrown if a route were found, but is marked as invalid
-	 */
-	protected int getHopCount(int destinationAddress) throws NoSuchRouteException, RouteNotValidException {
-		return ((ForwardRouteEntry) forwardRouteTable.getForwardRouteEntry(destinationAddress)).getHopCount();
+	protected boolean setInvalid(int destinationAddress, int newDestinationSeqNumber) {
+		return forwardRouteTable.setValid(destinationAddress,newDestinationSeqNumber,false);
 	}
 
 	/**
@@ -222,120 +224,92 @@ public class RouteTableManager {
 	 */
 	protected void setRouteRequestTimer(int sourceAddress, int broadcastID) throws NoSuchRouteException {
 		routeRequestTable.setRouteRequestTimer(sourceAddress, broadcastID);
-		//wake the timer thread since a RREQ should be monitored
-		synchronized (tableLocks) {
-			tableLocks.notify();
-		}
+		//the RREQ should be monitored, so the timer must run no later than its new deadline
+		timers.schedule(expiryTimer, getNextExpiryTime());
 	}
 
-	private class TimeoutNotifier extends Thread {
-		public TimeoutNotifier() {
-			super("TimeoutNotifier");
+	/**
+	 * @return returns the earliest time an entry of the tables expires, or TimerScheduler.NEVER if the tables are empty
+	 */
+	private long getNextExpiryTime() {
+		long nextExpiryTime = TimerScheduler.NEVER;
+		try {
+			nextExpiryTime = routeRequestTable.getNextRouteToExpire().getAliveTimeLeft();
+		} catch (NoSuchRouteException e) {
+
 		}
-		
-		public void run() {
-			while (keepRunning) {
-				try {
-					synchronized (tableLocks) {
-						while (routeRequestTable.isEmpty() && forwardRouteTable.isEmpty()) {
-							tableLocks.wait();
-						}
-					}
-					long time = getMinimumTime() - System.currentTimeMillis();
-					//Debug.print("Timer is sleeping for: "+time+" millSec");
-					if (time > 0) {
-						sleep(time);
-					}
-	
-					try {
-						// Route Request clean up
-						RouteRequestEntry route = (RouteRequestEntry) routeRequestTable.getNextRouteToExpire();
-						while (route.getAliveTimeLeft() <= System.currentTimeMillis()) {
-							routeRequestTable.removeEntry(route.getSourceAddress(), route.getBroadcastID());
-							//Debug.print(route.toString());
-							if (route.getSourceAddress() == nodeAddress) {
-								if (!validForwardRouteExists(route.getDestinationAddress(), route.getDestinationSequenceNumber())) {
-									if (route.resend()) {
-										//create a new RREQ message to broadcast
-										RREQ newReq = new RREQ(nodeAddress,
-																route.getDestinationAddress(),
-																parent.getCurrentSequenceNumber(),
-																route.getDestinationSequenceNumber(),
-																parent.getNextBroadcastID());
-										//update the RREQ entry
-										route.setBroadcastID(newReq.getBroadcastId());
-										//reinsert the entry with no timer
-										routeRequestTable.addRouteRequestEntry(route, false);
-										//let the sender broadcast the RREQ
-										parent.queuePDUmessage(newReq);
-									} else {
-										// all RREQ retires is used. Notify the application layer
-										parent.queuePDUmessage(new InternalMessage(Constants.RREQ_FAILURE_PDU, route.getDestinationAddress()));
-										parent.notifyAboutRouteEstablishmentFailure(route.getDestinationAddress());
-									}
-								}
-							}
-							route = (RouteRequestEntry) routeRequestTable.getNextRouteToExpire();
-						}
-					} catch (NoSuchRouteException e) {
-						// route request table is empty
-					}
-	
-					// Forward Route Cleanup
-					ForwardRouteEntry froute;
-					try {
-						froute = (ForwardRouteEntry) forwardRouteTable.getNextRouteToExpire();
-	
-						while (froute.getAliveTimeLeft() <= System.currentTimeMillis()) {
-							
-							//is froute a neighbour?
-							if (froute.getHopCount() == 1 && froute.isValid()) {
-								forwardRouteTable.toString();
-								setInvalid(froute.getDestinationAddress(), froute.getDestinationSequenceNumber());
-								parent.notifyAboutRouteToDestIsInvalid(froute.getDestinationAddress());
-								
-								for(RERR rerr :forwardRouteTable.findBrokenRoutes(froute.getDestinationAddress())){
-									parent.queuePDUmessage(rerr);
-								}
-							}
-							else if (froute.isValid()) {
-								forwardRouteTable.setValid(froute.getDestinationAddress(), froute.getDestinationSequenceNumber(), false);
-								parent.notifyAboutRouteToDestIsInvalid(froute.getDestinationAddress());
-							} 
-							else {
-								forwardRouteTable.removeEntry(froute.getDestinationAddress());
-							}
-							froute = (ForwardRouteEntry) forwardRouteTable.getNextRouteToExpire();
+		try {
+			nextExpiryTime = Math.min(nextExpiryTime, forwardRouteTable.getNextRouteToExpire().getAliveTimeLeft());
+		} catch (NoSuchRouteException e) {
+
+		}
+		return nextExpiryTime;
+	}
+
+	/**
+	 * Expires the route request entries and forward routes whose time has run out, all in one run
+	 */
+	private class ExpiryTimer implements TimerScheduler.TimerTask {
+		@Override
+		public long run(long currentTime) {
+			// Route Request clean up
+			for (RouteRequestEntry route : routeRequestTable.pollExpiredEntries(currentTime)) {
+				routeRequestTable.removeEntry(route.getSourceAddress(), route.getBroadcastID());
+				//Debug.print(route.toString());
+				if (route.getSourceAddress() == nodeAddress) {
+					if (!validForwardRouteExists(route.getDestinationAddress(), route.getDestinationSequenceNumber())) {
+						if (route.resend()) {
+							//create a new RREQ message to broadcast
+							RREQ newReq = new RREQ(nodeAddress,
+													route.getDestinationAddress(),
+													parent.getCurrentSequenceNumber(),
+													route.getDestinationSequenceNumber(),
+													parent.getNextBroadcastID());
+							//update the RREQ entry
+							route.setBroadcastID(newReq.getBroadcastId());
+							//reinsert the entry with no timer
+							routeRequestTable.addRouteRequestEntry(route, false);
+							//let the sender broadcast the RREQ
+							parent.queuePDUmessage(newReq);
+						} else {
+							// all RREQ retires is used. Notify the application layer
+							parent.queuePDUmessage(new InternalMessage(Constants.RREQ_FAILURE_PDU, route.getDestinationAddress()));
+							parent.notifyAboutRouteEstablishmentFailure(route.getDestinationAddress());
 						}
-					} catch (NoSuchRouteException e1) {
-						// ForwardRoute table is empty
+					} else {
+						//the discovery succeeded, make sure packets waiting for the route are released
+						parent.queuePDUmessage(new InternalMessage(Constants.FORWARD_ROUTE_CREATED, route.getDestinationAddress()));
 					}
-				} catch (InterruptedException e) {
-
 				}
 			}
-		}
 
-		private long getMinimumTime() {
-			long a = Long.MAX_VALUE, b = Long.MAX_VALUE;
-			try {
-				a = routeRequestTable.getNextRouteToExpire().getAliveTimeLeft();
-			} catch (NoSuchRouteException e) {
-
-			}
-			try {
-				b = forwardRouteTable.getNextRouteToExpire().getAliveTimeLeft();
-			} catch (NoSuchRouteException e2) {
-				if(a == Long.MAX_VALUE){
-					return -1;
+			// Forward Route Cleanup
+			for (ForwardRouteEntry froute : forwardRouteTable.pollExpiredEntries(currentTime)) {
+				if (froute.getAliveTimeLeft() > currentTime) {
+					//the route were used after it expired, and is already scheduled again
+					continue;
+				}
+				//is froute a neighbour?
+				if (froute.getHopCount() == 1 && froute.isValid()) {
+					if (setInvalid(froute.getDestinationAddress(), froute.getDestinationSequenceNumber())) {
+						parent.notifyAboutRouteToDestIsInvalid(froute.getDestinationAddress());
+						
+						RERR rerr = forwardRouteTable.findBrokenRoutes(froute.getDestinationAddress());
+						if (rerr != null) {
+							parent.queuePDUmessage(rerr);
+						}
+					}
+				}
+				else if (froute.isValid()) {
+					if (setInvalid(froute.getDestinationAddress(), froute.getDestinationSequenceNumber())) {
+						parent.notifyAboutRouteToDestIsInvalid(froute.getDestinationAddress());
+					}
+				} 
+				else {
+					forwardRouteTable.removeEntry(froute.getDestinationAddress());
 				}
-				return a;
 			}
-			return (a < b ? a : b);
-		}
-
-		public void stopThread() {
-			this.interrupt();
+			return getNextExpiryTime();
 		}
 	}
-}
+}
\ No newline at end of file
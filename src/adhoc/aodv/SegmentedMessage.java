@@ -0,0 +1,50 @@
+package adhoc.aodv;
+
+/**
+ * Keeps track of the segments of a message sent from this node. The message is sent when every segment is sent,
+ * and fails as soon as one segment fails, after which the remaining segments are given up
+ * @author Rabie
+ *
+ */
+class SegmentedMessage {
+	private final SendFuture future;
+	//guarded by this, since a segment may be rejected by the thread queueing the message
+	private int segmentsLeft;
+	private volatile boolean isFailed = false;
+
+	/**
+	 * @param numberOfSegments the number of segments the message is split into
+	 * @param future the future of the message, or null if the node is notified about the outcome
+	 */
+	SegmentedMessage(int numberOfSegments, SendFuture future){
+		segmentsLeft = numberOfSegments;
+		this.future = future;
+	}
+
+	SendFuture getFuture(){
+		return future;
+	}
+
+	/**
+	 * @return returns true if this were the last segment, and the message has not failed
+	 */
+	synchronized boolean segmentSent(){
+		segmentsLeft--;
+		return segmentsLeft == 0 && !isFailed;
+	}
+
+	/**
+	 * @return returns true if the message had not failed before, so the failure should be reported
+	 */
+	synchronized boolean fail(){
+		if(isFailed){
+			return false;
+		}
+		isFailed = true;
+		return true;
+	}
+
+	boolean isFailed(){
+		return isFailed;
+	}
+}
@@ -0,0 +1,144 @@
+package adhoc.aodv;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import adhoc.aodv.exception.AodvException;
+
+/**
+ * The result of a packet handed to Node.sendAsync(). The future is completed by the sender thread,
+ * either when the packet is sent to the next hop or when it is given up. The reason of a failure is one of
+ * RouteEstablishmentFailureException, InvalidNodeAddressException, DataExceedsMaxSizeException, or PacketDroppedException
+ * if the packet were rejected or dropped by the outbound queue, the transport failed to send it, or the node were stopped.
+ * NOTE: a packet being sent does not guarantee that it also is received at the destination node
+ * @author Rabie
+ *
+ */
+public class SendFuture implements Future<Void> {
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile AodvException failure = null;
+	//the callback which to call on completion, or null. Guarded by this
+	private SendCallback callback = null;
+	private boolean isCompleted = false;
+
+	/**
+	 * Called when the future is completed
+	 */
+	public interface SendCallback {
+		public void onSent(SendFuture future);
+
+		/**
+		 * @param reason the reason why the packet could not be sent
+		 */
+		public void onFailure(SendFuture future, AodvException reason);
+	}
+
+	/**
+	 * Sets the callback which is called by the sender thread when the future is completed,
+	 * or directly if it already is completed. A future has at most one callback
+	 * @param callback the callback to call
+	 */
+	public void setCallback(SendCallback callback){
+		synchronized (this) {
+			if(!isCompleted){
+				this.callback = callback;
+				return;
+			}
+		}
+		notifyCallback(callback);
+	}
+
+	void completeSent(){
+		complete(null);
+	}
+
+	void completeFailed(AodvException reason){
+		complete(reason);
+	}
+
+	private void complete(AodvException reason){
+		SendCallback completionCallback;
+		synchronized (this) {
+			if(isCompleted){
+				return;
+			}
+			failure = reason;
+			isCompleted = true;
+			completionCallback = callback;
+			callback = null;
+		}
+		done.countDown();
+		if(completionCallback != null){
+			notifyCallback(completionCallback);
+		}
+	}
+
+	private void notifyCallback(SendCallback completionCallback){
+		if(failure == null){
+			completionCallback.onSent(this);
+		} else {
+			completionCallback.onFailure(this, failure);
+		}
+	}
+
+	/**
+	 * @return returns true if the packet were sent
+	 */
+	public boolean isSent(){
+		return isDone() && failure == null;
+	}
+
+	/**
+	 * @return returns the reason why the packet could not be sent, or null if it were sent or the future is not completed
+	 */
+	public AodvException getFailure(){
+		return failure;
+	}
+
+	/**
+	 * A packet can not be taken back once it is handed to the node
+	 * @return returns false
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * Waits until the packet is sent
+	 * @throws ExecutionException thrown if the packet could not be sent. The cause is the reason of the failure
+	 */
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if(!done.await(timeout, unit)){
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private Void getResult() throws ExecutionException {
+		if(failure != null){
+			throw new ExecutionException(failure);
+		}
+		return null;
+	}
+}
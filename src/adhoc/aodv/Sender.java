@@ -1,11 +1,12 @@
 package adhoc.aodv;
 
 import java.io.IOException;
-import java.net.BindException;
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.SizeLimitExceededException;
 
@@ -13,137 +14,309 @@ import adhoc.aodv.exception.AodvException;
 import adhoc.aodv.exception.DataExceedsMaxSizeException;
 import adhoc.aodv.exception.InvalidNodeAddressException;
 import adhoc.aodv.exception.NoSuchRouteException;
+import adhoc.aodv.exception.PacketDroppedException;
+import adhoc.aodv.exception.RouteEstablishmentFailureException;
 import adhoc.aodv.pdu.AodvPDU;
 import adhoc.aodv.pdu.HelloPacket;
+import adhoc.aodv.pdu.InternalMessage;
 import adhoc.aodv.pdu.Packet;
 import adhoc.aodv.pdu.RERR;
 import adhoc.aodv.pdu.RREQ;
+import adhoc.aodv.pdu.SegmentPacket;
 import adhoc.aodv.pdu.UserDataPacket;
+import adhoc.aodv.routes.ForwardRouteEntry;
 import adhoc.etc.Debug;
-import adhoc.udp.UdpSender;
+import adhoc.transport.Transport;
 
 public class Sender implements Runnable{
 	private Node parent;
     private int nodeAddress;
-    private NeighbourBroadcaster neighborBroadcaster;
-    private Queue<Packet> pduMessages;
-    private Queue<UserDataPacket> userMessagesToForward;
-    private Queue<UserDataPacket> userMessagesFromNode;
+    private TimerScheduler timers;
+    private final TimerScheduler.TimerTask helloTimer = new HelloTimer();
+    private final TimerScheduler.TimerTask flushTimer = new FlushTimer();
+    private Clock clock;
+    //the queues are bounded, forwarded packets and packets from this node each have their own budget
+    private OutboundQueue<Packet> pduMessages;
+    private OutboundQueue<UserDataPacket> userMessagesToForward;
+    private OutboundQueue<UserDataPacket> userMessagesFromNode;
+    //packets from this node waiting for a route discovery to finish, keyed by destination. Only used by the sender thread.
+    //They are counted as held back by userMessagesFromNode
+    private HashMap<Integer, Queue<UserDataPacket>> pendingUserMessages;
+    //packets dropped from the queues by the sender thread, waiting to be reported. Only used by the sender thread
+    private List<UserDataPacket> droppedLocalMessages = new ArrayList<UserDataPacket>();
+    private List<UserDataPacket> droppedUserMessages = new ArrayList<UserDataPacket>();
+    private List<Packet> droppedPackets = new ArrayList<Packet>();
     private final Object queueLock = new Integer(0);
     private RouteTableManager routeTableManager;
-    private UdpSender udpSender;
-    private boolean isRREQsent = false;
+    private Transport transport;
     private volatile boolean keepRunning = true;
+    //the outcomes of sending a user packet
+    private static final int SENT = 0;
+    private static final int NO_ROUTE = 1;
+    private static final int SEND_FAILED = 2;
+    //the packet were added to a frame of the aggregator, which reports the outcome when the frame is sent
+    private static final int AGGREGATED = 3;
+    //packs user packets to the same next hop into shared frames, or null if every packet is sent in a frame of its own
+    private volatile PacketAggregator aggregator = null;
+    //set by the flush timer when the oldest open frame of the aggregator is due
+    private volatile boolean isFlushDue = false;
+    //false while the sender thread waits for packets. Guarded by queueLock
+    private boolean isWorking = false;
+    //the maximum frame size of the packets from this node, larger packets are split into segments. 0 if segmentation is disabled
+    private volatile int segmentationMtu = 0;
+    private AtomicInteger nextMessageID = new AtomicInteger(0);
+    private static final int NO_NOTIFICATION = -1;
     private Thread senderThread;
     
-    public Sender(Node parent,int nodeAddress, RouteTableManager routeTableManager) throws SocketException, UnknownHostException, BindException {
+    public Sender(Node parent,int nodeAddress, RouteTableManager routeTableManager, Transport transport, TimerScheduler timers) {
     	this.parent = parent;
         this.nodeAddress = nodeAddress;
-        neighborBroadcaster = new NeighbourBroadcaster();
-		udpSender = new UdpSender();
-        pduMessages = new ConcurrentLinkedQueue<Packet>();
-        userMessagesToForward = new ConcurrentLinkedQueue<UserDataPacket>();
-        userMessagesFromNode = new ConcurrentLinkedQueue<UserDataPacket>();
+        this.timers = timers;
+        this.clock = timers.getClock();
+		this.transport = transport;
+        pduMessages = new OutboundQueue<Packet>(	Constants.MAX_QUEUED_CONTROL_PACKETS, Integer.MAX_VALUE,
+        											OutboundQueue.REJECT, Constants.MAX_QUEUEING_TIME	);
+        userMessagesToForward = new OutboundQueue<UserDataPacket>(	Constants.MAX_QUEUED_FORWARD_PACKETS, Constants.MAX_QUEUED_FORWARD_BYTES,
+        															OutboundQueue.DROP_OLDEST, Constants.MAX_QUEUEING_TIME	);
+        userMessagesFromNode = new OutboundQueue<UserDataPacket>(	Constants.MAX_QUEUED_USER_PACKETS, Constants.MAX_QUEUED_USER_BYTES,
+        															OutboundQueue.REJECT, Constants.MAX_QUEUEING_TIME	);
+        pduMessages.setClock(clock);
+        userMessagesToForward.setClock(clock);
+        userMessagesFromNode.setClock(clock);
+        pendingUserMessages = new HashMap<Integer, Queue<UserDataPacket>>();
         this.routeTableManager = routeTableManager;
         
     }
     
     public void startThread(){
     	keepRunning = true;
-    	neighborBroadcaster = new NeighbourBroadcaster();
-    	neighborBroadcaster.start();
+    	pduMessages.open();
+    	userMessagesToForward.open();
+    	userMessagesFromNode.open();
+    	timers.schedule(helloTimer, clock.currentTimeMillis() + Constants.BROADCAST_INTERVAL);
     	senderThread = new Thread(this);
     	senderThread.start();
     }
     
     public void stopThread(){
     	keepRunning = false;
-    	neighborBroadcaster.stopBroadcastThread();
+    	timers.cancel(helloTimer);
+    	timers.cancel(flushTimer);
     	senderThread.interrupt();
+    	//callers waiting for room are released, since the queues are no longer drained
+    	pduMessages.close();
+    	userMessagesToForward.close();
+    	userMessagesFromNode.close();
     }
     
+    /**
+     * @return returns true if the sender thread has nothing to send. Packets waiting for a route do not count
+     */
+    boolean isIdle(){
+    	synchronized (queueLock) {
+    		return !isWorking && !isFlushDue && pduMessages.isEmpty() && userMessagesToForward.isEmpty() && userMessagesFromNode.isEmpty();
+    	}
+    }
+    
+    OutboundQueue<Packet> getControlQueue(){
+    	return pduMessages;
+    }
+    
+    OutboundQueue<UserDataPacket> getForwardQueue(){
+    	return userMessagesToForward;
+    }
+    
+    OutboundQueue<UserDataPacket> getUserQueue(){
+    	return userMessagesFromNode;
+    }
+    
+    /**
+     * Protocol messages are sent before any user data, so routes are kept up under a backlog of data.
+     * The user data is sent in rounds where forwarded packets get a larger share than the packets from this node,
+     * and the protocol messages queued meanwhile are sent before each data packet.
+     * Within each queue the destinations are served in turn
+     */
     public void run(){
     	while(keepRunning){
         	try {
+	        	PacketAggregator currentAggregator = aggregator;
 	        	synchronized(queueLock){
-	    			while(pduMessages.isEmpty() && userMessagesToForward.isEmpty() && (isRREQsent || userMessagesFromNode.isEmpty())){
+	    			while(pduMessages.isEmpty() && userMessagesToForward.isEmpty() && userMessagesFromNode.isEmpty() && !isFlushDue){
+	    				isWorking = false;
 	    				queueLock.wait();
 	    			}
+	    			isWorking = true;
 	    		}
-	    		
-	        	//Handle user data messages that is to be sent from this node
-	        	if(!isRREQsent){
-		        	if(!userMessagesFromNode.isEmpty()){
-			    		UserDataPacket userData = userMessagesFromNode.peek();
-			    		while(userData != null){
-			    			try{
-								if(!sendUserDataPacket(userData)){
-									isRREQsent = true;
-									//do not process any user messages before the head is sent
-									break;
-								} else {
-									parent.notifyAboutDataSentSucces(userData.getPacketID());
-								}
-							} catch (DataExceedsMaxSizeException e) {
-								parent.notifyAboutSizeLimitExceeded(userData.getPacketID());
-			    			} catch (InvalidNodeAddressException e) {
-			    				parent.notifyAboutInvalidAddressGiven(userData.getPacketID());
-							}
-			    			//it is expected that the queue still has the same userDataHeader object as head
-				    		userMessagesFromNode.poll();
-			    			userData = userMessagesFromNode.peek();
-			    		}
-		        	}
+	        	if(currentAggregator != null){
+	        		isFlushDue = false;
+	        		currentAggregator.flushDue(clock.currentTimeMillis());
+	        	}
+	        	sendProtocolMessages();
+	        	for(int i = 0; i < Constants.FORWARDED_PACKETS_PER_ROUND && forwardNextUserMessage(); i++){
+	        		sendProtocolMessages();
+	        	}
+	        	for(int i = 0; i < Constants.LOCAL_PACKETS_PER_ROUND && sendNextUserMessageFromNode(); i++){
+	        		sendProtocolMessages();
+	        	}
+	        	reportDroppedMessages();
+	        	if(currentAggregator != null && currentAggregator.hasOpenFrames()){
+	        		//wake up when the oldest open frame is due
+	        		timers.schedule(flushTimer, currentAggregator.getNextFlushTime());
 	        	}
-	        	
-	        	//Handles messages user data messages (received by other nodes) that are to be forwarded
-	    		UserDataPacket userData = userMessagesToForward.peek();
-	    		while(userData != null){
-	    			try{
-			    		if(!sendUserDataPacket(userData)){
-			    			//do not process any user messages before the head is sent
-			    			break;
-			    		}
-	    			} catch (InvalidNodeAddressException e) {
-						Debug.print(e.getStackTrace().toString());
-					} catch (DataExceedsMaxSizeException e) {
-						Debug.print(e.getStackTrace().toString());
-					}
-	    			//it is expected that the queue still has the same userDataHeader object as head
-	    			userMessagesToForward.poll();
-	    			userData = userMessagesToForward.peek();
-	    		}
-	    		
-	    		// Handle protocol messages
-	    		Packet packet = pduMessages.poll();
-	    		while(packet != null){
-	    			if(packet instanceof AodvPDU){
-	    				AodvPDU pdu = (AodvPDU)packet;
-	    				try {
-							handleAodvPDU(pdu);
-						} catch (InvalidNodeAddressException e) {
-							Debug.print(e.getMessage());
-						} catch (DataExceedsMaxSizeException e) {
-							Debug.print("FATAL ERROR: Aodv packet could not be sent because data size exceeded limit");
-						}
-	    			} else if(packet instanceof HelloPacket){
-	    				try {
-							broadcastPacket(packet);
-							Debug.print("Sender: broadcasting hello message");
-						} catch (DataExceedsMaxSizeException e) {
-							Debug.print(e.getStackTrace().toString());
-						}
-	    			} else {
-						Debug.print("Sender queue contained an unknown message Packet PDU!");
-	    			}
-		    		packet = pduMessages.poll();
-	    		}
     		} catch (InterruptedException e) {
 
     		}
-    	}    	
+    	}
+    	PacketAggregator currentAggregator = aggregator;
+    	if(currentAggregator != null){
+    		currentAggregator.flushAll();
+    	}
+    	failUnsentUserMessages();
+    }
+    
+    /**
+     * Gives up the packets from this node which are left when the sender thread stops, so no future is left waiting.
+     * The queue is closed before it is emptied, so no packet can be added afterwards
+     */
+    private void failUnsentUserMessages(){
+    	userMessagesFromNode.close();
+    	for(Queue<UserDataPacket> pending : pendingUserMessages.values()){
+    		for(UserDataPacket userData : pending){
+    			userMessagesFromNode.release(userData);
+    			reportUnsentUserDataPacket(userData);
+    		}
+    	}
+    	pendingUserMessages.clear();
+    	UserDataPacket userData = userMessagesFromNode.poll(clock.currentTimeMillis(), droppedLocalMessages);
+    	while(userData != null){
+    		reportUnsentUserDataPacket(userData);
+    		userData = userMessagesFromNode.poll(clock.currentTimeMillis(), droppedLocalMessages);
+    	}
+    	reportDroppedMessages();
+    }
+    
+    /**
+     * Makes the sender pack user packets to the same next hop into shared frames. Should be called before the node is started
+     * @param maxFrameSize the maximum size of a frame in bytes, at most Constants.MAX_PACKAGE_SIZE
+     * @param lingerTime the maximum time in milliseconds a packet waits for other packets to share its frame
+     */
+    void enableAggregation(int maxFrameSize, long lingerTime){
+    	aggregator = new PacketAggregator(transport, maxFrameSize, lingerTime, new FrameReport());
+    }
+    
+    /**
+     * Makes the sender split the packets from this node which are larger than the MTU into segments
+     * @param mtu the maximum size of a frame in bytes, at most Constants.MAX_PACKAGE_SIZE
+     */
+    void enableSegmentation(int mtu){
+    	if(mtu > Constants.MAX_PACKAGE_SIZE || mtu <= SegmentPacket.HEADER_SIZE){
+    		throw new IllegalArgumentException("Sender: the MTU must be larger than the segment header and within the maximum package size: "+mtu);
+    	}
+    	segmentationMtu = mtu;
     }
     
+    /**
+     * Sends a user packet to a neighbour, through the aggregator if it is enabled
+     * @return returns SENT, SEND_FAILED or AGGREGATED
+     */
+    private int sendToNextHop(int nextHop, UserDataPacket packet) throws IOException, DataExceedsMaxSizeException {
+    	PacketAggregator currentAggregator = aggregator;
+    	if(currentAggregator == null){
+    		return transport.sendPacket(nextHop, packet.toBytes()) ? SENT : SEND_FAILED;
+    	}
+    	currentAggregator.send(nextHop, packet, clock.currentTimeMillis());
+    	return AGGREGATED;
+    }
+    
+    /**
+     * Sends every queued protocol message
+     */
+    private void sendProtocolMessages(){
+		Packet packet = pduMessages.poll(clock.currentTimeMillis(), droppedPackets);
+		while(packet != null){
+			if(packet instanceof AodvPDU){
+				AodvPDU pdu = (AodvPDU)packet;
+				try {
+					handleAodvPDU(pdu);
+				} catch (InvalidNodeAddressException e) {
+					Debug.print(e.getMessage());
+				} catch (DataExceedsMaxSizeException e) {
+					Debug.print("FATAL ERROR: Aodv packet could not be sent because data size exceeded limit");
+				}
+			} else if(packet instanceof HelloPacket){
+				try {
+					broadcastPacket(packet);
+					Debug.print("Sender: broadcasting hello message");
+				} catch (DataExceedsMaxSizeException e) {
+					Debug.print(e.getStackTrace().toString());
+				}
+			} else {
+				Debug.print("Sender queue contained an unknown message Packet PDU!");
+			}
+    		packet = pduMessages.poll(clock.currentTimeMillis(), droppedPackets);
+		}
+    }
+    
+    /**
+     * Handles the next user data message (received by other nodes) that is to be forwarded
+     * @return returns false if no packet were waiting
+     */
+    private boolean forwardNextUserMessage(){
+		UserDataPacket userData = userMessagesToForward.poll(clock.currentTimeMillis(), droppedUserMessages);
+		if(userData == null){
+			return false;
+		}
+		try{
+			//if no route is known a RERR is sent and the other packets to the destination are removed
+    		if(sendUserDataPacket(userData) == SEND_FAILED){
+    			Debug.print(Debug.WARN, "Sender: the transport failed to forward a packet to: ", userData.getDestinationAddress());
+    		}
+		} catch (InvalidNodeAddressException e) {
+			Debug.print(e.getStackTrace().toString());
+		} catch (DataExceedsMaxSizeException e) {
+			Debug.print(e.getStackTrace().toString());
+		}
+		return true;
+    }
+    
+    /**
+     * Handles the next user data message that is to be sent from this node.
+     * Packets to a destination which is being discovered are held back without blocking the other destinations
+     * @return returns false if no packet were waiting
+     */
+    private boolean sendNextUserMessageFromNode(){
+		//the packet is counted against the queue until it is sent or given up
+		UserDataPacket userData = userMessagesFromNode.pollAndHold(clock.currentTimeMillis(), droppedLocalMessages);
+		if(userData == null){
+			return false;
+		}
+		Queue<UserDataPacket> pending = pendingUserMessages.get(userData.getDestinationAddress());
+		if(pending != null){
+			//keep the order of the packets to the destination
+			pending.add(userData);
+		} else {
+			sendUserDataPacketFromNode(userData);
+		}
+		return true;
+    }
+    
+    /**
+     * Reports the packets which waited too long in the queues and were dropped by the sender thread
+     */
+    private void reportDroppedMessages(){
+		for(UserDataPacket expired : droppedLocalMessages){
+			reportDroppedUserDataPacket(expired);
+		}
+		droppedLocalMessages.clear();
+		if(!droppedUserMessages.isEmpty()){
+			Debug.print(Debug.WARN, "Sender: packets to forward waited too long and were dropped: ", droppedUserMessages.size());
+			droppedUserMessages.clear();
+		}
+		if(!droppedPackets.isEmpty()){
+			Debug.print(Debug.WARN, "Sender: protocol messages waited too long and were dropped: ", droppedPackets.size());
+			droppedPackets.clear();
+		}
+    }
     
     private void handleAodvPDU(AodvPDU pdu) throws InvalidNodeAddressException, DataExceedsMaxSizeException{
 		switch (pdu.getType()) {
@@ -161,37 +334,34 @@ public class Sender implements Runnable{
 				
 			case Constants.RREP_PDU:						
 				if(!sendAodvPacket(pdu,pdu.getSourceAddress())){
-					Debug.print("Sender: Did not have a forward route for sending back the RREP message to: "+pdu.getSourceAddress()+" the requested destination is: "+pdu.getDestinationAddress());
+					Debug.print(Debug.WARN, "Sender: Did not have a forward route for sending back the RREP message to: ", pdu.getSourceAddress(), " the requested destination is: ", pdu.getDestinationAddress());
 				}
 				break;
 				
 			case Constants.RERR_PDU:
 				RERR rerr = (RERR)pdu;
+				//the same message is sent to every precursor of the broken routes
 				for(int nodeAddress: rerr.getAllDestAddresses()){
-					if(!sendAodvPacket(new RERR(	rerr.getUnreachableNodeAddress(),
-											rerr.getUnreachableNodeSequenceNumber(),
-											nodeAddress	), nodeAddress)){
+					if(!sendAodvPacket(rerr, nodeAddress)){
 						Debug.print("Sender: Did not have a forward route for sending the RERR message!!");
 					}
 				}
 				break;
 				
 			case Constants.RREQ_FAILURE_PDU:
-				cleanUserDataPacketsFromNode(pdu.getDestinationAddress());
-				isRREQsent = false;
-				synchronized (queueLock) {
-					queueLock.notify();
+				//the packets waiting for the route are dropped
+				Queue<UserDataPacket> pending = pendingUserMessages.remove(pdu.getDestinationAddress());
+				if(pending != null){
+					for(UserDataPacket userData : pending){
+						userMessagesFromNode.release(userData);
+						dropUserDataPacketFromNode(userData);
+					}
 				}
+				cleanUserDataPacketsFromNode(pdu.getDestinationAddress());
 				break;
 				
 			case Constants.FORWARD_ROUTE_CREATED:
-				UserDataPacket userPacket = userMessagesFromNode.peek();
-				if(userPacket != null && pdu.getDestinationAddress() == userPacket.getDestinationAddress()){
-					isRREQsent = false;
-					synchronized (queueLock) {
-						queueLock.notify();
-					}
-				}
+				sendPendingUserMessages(pdu.getDestinationAddress());
 				break;
 				
 			default:
@@ -206,7 +376,7 @@ public class Sender implements Runnable{
      */
 	private boolean broadcastPacket(Packet packet) throws DataExceedsMaxSizeException {
 			try {
-				return udpSender.sendPacket(Constants.BROADCAST_ADDRESS, packet.toBytes());
+				return transport.broadcastPacket(packet.toBytes());
 			} catch (IOException e) {
 				Debug.print(e.getStackTrace().toString());
 				return false;
@@ -214,57 +384,52 @@ public class Sender implements Runnable{
 	}
 	
 	
-	private boolean sendUserDataPacket(UserDataPacket packet) throws DataExceedsMaxSizeException, InvalidNodeAddressException{
+	/**
+	 * Sends a user packet along the known route to its destination. If no route is known a packet from this node starts a route discovery,
+	 * while for a forwarded packet the source is told about the broken route
+	 * @param packet the packet to send
+	 * @return returns SENT if the packet were handed to the transport, AGGREGATED if it were added to a frame of the aggregator,
+	 * NO_ROUTE if no valid route is known or SEND_FAILED if the transport failed to send the packet
+	 */
+	private int sendUserDataPacket(UserDataPacket packet) throws DataExceedsMaxSizeException, InvalidNodeAddressException{
 		if(		packet.getDestinationAddress() != Constants.BROADCAST_ADDRESS
 				&& packet.getDestinationAddress() >= Constants.MIN_VALID_NODE_ADDRESS
 				&& packet.getDestinationAddress() <= Constants.MAX_VALID_NODE_ADDRESS){
 			if(packet.getDestinationAddress() == nodeAddress){
 				throw new InvalidNodeAddressException("Sender: It is not allowed to send to our own address: "+nodeAddress);
 			}
-			try {
-				int nextHop = routeTableManager.getForwardRouteEntry(packet.getDestinationAddress()).getNextHop();
+			ForwardRouteEntry route = routeTableManager.lookupForwardRouteEntry(packet.getDestinationAddress());
+			if(route != null && route.isValid()){
 				try {
-					return udpSender.sendPacket(nextHop, packet.toBytes());
+					return sendToNextHop(route.getNextHop(), packet);
 				} catch (IOException e) {
-					Debug.print(e.getStackTrace().toString());
-					return false;
+					Debug.print(Debug.WARN, "Sender: IOExeption when trying to send a user packet to: ", packet.getDestinationAddress());
+					return SEND_FAILED;
 				}
-			}catch (DataExceedsMaxSizeException e){
-				throw new DataExceedsMaxSizeException();
-			} catch (AodvException e) {
+			}
+			//the last known sequence number is kept in the table after the route became invalid
+			int lastKnownDestSeqNum = Constants.UNKNOWN_SEQUENCE_NUMBER;
+			if(route != null){
+				lastKnownDestSeqNum = route.getDestinationSequenceNumber();
+			}
+			if(packet.getSourceNodeAddress() == nodeAddress){
 				//Discover the route to the desired destination
 				//if a route to the destination isn't request before
-				try {
-					int lastKnownDestSeqNum = routeTableManager.getLastKnownDestSeqNum(packet.getDestinationAddress());
-					if(packet.getSourceNodeAddress() == nodeAddress){
-						//Discover the route to the desired destination
-						//if a route to the destination isn't request before
-						if(!createNewRREQ(packet.getDestinationAddress(), lastKnownDestSeqNum, false)){
-							Debug.print("Sender: Failed to add new RREQ entry to the request table. Src: "+nodeAddress+" broadID: "+parent.getCurrentBroadcastID());
-							return false;
-						}
-					} else {
-						queuePDUmessage(new RERR(	packet.getDestinationAddress(), 
-													lastKnownDestSeqNum,
-													packet.getSourceNodeAddress()	)	);
-						cleanUserDataPacketsToForward(packet.getDestinationAddress());
-					}
-				} catch (NoSuchRouteException e1) {
-					if(packet.getSourceNodeAddress() == nodeAddress){
-						//Discover the route to the desired destination
-						//if a route to the destination isn't request before
-						createNewRREQ(packet.getDestinationAddress(), Constants.UNKNOWN_SEQUENCE_NUMBER, false);
-					} else {
-						queuePDUmessage(new RERR(	packet.getDestinationAddress(), 
-													Constants.UNKNOWN_SEQUENCE_NUMBER,
-													packet.getSourceNodeAddress()	)	);
-						cleanUserDataPacketsToForward(packet.getDestinationAddress());
-					}
+				if(!createNewRREQ(packet.getDestinationAddress(), lastKnownDestSeqNum, false)){
+					Debug.print(Debug.WARN, "Sender: Failed to add new RREQ entry to the request table. Src: ", nodeAddress, " broadID: ", parent.getCurrentBroadcastID());
+					//report the discovery as failed so the packets put on hold are released
+					queuePDUmessage(new InternalMessage(Constants.RREQ_FAILURE_PDU, packet.getDestinationAddress()));
+					parent.notifyAboutRouteEstablishmentFailure(packet.getDestinationAddress());
 				}
-				return false;
+			} else {
+				queuePDUmessage(new RERR(	packet.getDestinationAddress(), 
+											lastKnownDestSeqNum,
+											packet.getSourceNodeAddress()	)	);
+				cleanUserDataPacketsToForward(packet.getDestinationAddress());
 			}
+			return NO_ROUTE;
 		} else if( packet.getDestinationAddress() == Constants.BROADCAST_ADDRESS){
-			return broadcastPacket(packet);
+			return broadcastPacket(packet) ? SENT : SEND_FAILED;
 		} else {
 			 throw new InvalidNodeAddressException("Sender: got request to send a user packet which had  an invalid node address: "+packet.getDestinationAddress());
 		}
@@ -281,13 +446,17 @@ public class Sender implements Runnable{
     private boolean sendAodvPacket(AodvPDU packet, int destinationNodeAddress) throws InvalidNodeAddressException{
     	if(destinationNodeAddress >= Constants.MIN_VALID_NODE_ADDRESS 
     			&& destinationNodeAddress <= Constants.MAX_VALID_NODE_ADDRESS){
+			ForwardRouteEntry route = routeTableManager.lookupValidForwardRouteEntry(destinationNodeAddress);
+			if(route == null){
+				return false;
+			}
 			try {
-				int nextHop = routeTableManager.getForwardRouteEntry(destinationNodeAddress).getNextHop();
-		    		return udpSender.sendPacket(nextHop, packet.toBytes());
+		    		return transport.sendPacket(route.getNextHop(), packet.toBytes());
 			} catch (IOException e) {
-				Debug.print("Sender: IOExeption when trying to send a packet to: "+destinationNodeAddress);
+				Debug.print(Debug.WARN, "Sender: IOExeption when trying to send a packet to: ", destinationNodeAddress);
 				return false;
-			} catch (AodvException e){
+			} catch (DataExceedsMaxSizeException e) {
+				Debug.print(Debug.ERROR, "Sender: AODV packet exceeded the maximum size when trying to send it to: ", destinationNodeAddress);
 				return false;
 			}
     	} else {
@@ -295,6 +464,154 @@ public class Sender implements Runnable{
     	}
     }
     
+    /**
+     * Sends a packet originated by this node, and notifies the node about the outcome.
+     * If no route is known the packet is put on hold for the route discovery started by sendUserDataPacket(),
+     * while a packet which the transport failed to send is reported as dropped.
+     * Unless the packet is put on hold it is released from the queue before it is reported, so the room is available to the caller
+     * @param userData the packet to send, held back by userMessagesFromNode
+     * @return returns false if the packet were put on hold
+     */
+    private boolean sendUserDataPacketFromNode(UserDataPacket userData){
+    	if(userData instanceof OutgoingSegment && ((OutgoingSegment)userData).getMessage().isFailed()){
+    		//the failure of the message is already reported
+    		userMessagesFromNode.release(userData);
+    		return true;
+    	}
+    	try{
+    		int result = sendUserDataPacket(userData);
+    		if(result == NO_ROUTE){
+    			Queue<UserDataPacket> pending = new LinkedList<UserDataPacket>();
+    			pending.add(userData);
+    			pendingUserMessages.put(userData.getDestinationAddress(), pending);
+    			return false;
+    		}
+    		userMessagesFromNode.release(userData);
+    		if(result == SENT){
+    			reportSent(userData);
+    		} else if(result == SEND_FAILED){
+    			reportFailure(	userData,
+    							new PacketDroppedException("Sender: the transport failed to send the packet to "+userData.getDestinationAddress()),
+    							ObserverConst.DATA_DROPPED	);
+    		}
+    	} catch (DataExceedsMaxSizeException e) {
+    		userMessagesFromNode.release(userData);
+    		reportFailure(userData, e, ObserverConst.DATA_SIZE_EXCEEDES_MAX);
+    	} catch (InvalidNodeAddressException e) {
+    		userMessagesFromNode.release(userData);
+    		reportFailure(userData, e, ObserverConst.INVALID_DESTINATION_ADDRESS);
+    	}
+    	return true;
+    }
+    
+    /**
+     * Gives up a packet from this node since no route to its destination could be found.
+     * Only packets sent with Node.sendAsync() are reported, the others are covered by the route establishment failure notification
+     * @param userData the packet which is dropped
+     */
+    private void dropUserDataPacketFromNode(UserDataPacket userData){
+    	reportFailure(	userData,
+    					new RouteEstablishmentFailureException("Sender: no route to "+userData.getDestinationAddress()+" could be established"),
+    					NO_NOTIFICATION	);
+    }
+    
+    /**
+     * Reports a packet from this node which were rejected or dropped by its queue
+     * @param userData the packet which is dropped
+     */
+    private void reportDroppedUserDataPacket(UserDataPacket userData){
+    	reportFailure(	userData,
+    					new PacketDroppedException("Sender: the packet to "+userData.getDestinationAddress()+" were dropped by the outbound queue"),
+    					ObserverConst.DATA_DROPPED	);
+    }
+    
+    /**
+     * Reports a packet from this node which were not sent before the node were stopped
+     * @param userData the packet which is dropped
+     */
+    private void reportUnsentUserDataPacket(UserDataPacket userData){
+    	reportFailure(	userData,
+    					new PacketDroppedException("Sender: the node were stopped before the packet to "+userData.getDestinationAddress()+" were sent"),
+    					ObserverConst.DATA_DROPPED	);
+    }
+    
+    /**
+     * Reports that a packet from this node is sent. A segment is only reported when it is the last one of its message
+     */
+    private void reportSent(UserDataPacket userData){
+    	SendFuture future = null;
+    	if(userData instanceof OutgoingSegment){
+    		SegmentedMessage message = ((OutgoingSegment)userData).getMessage();
+    		if(!message.segmentSent()){
+    			return;
+    		}
+    		future = message.getFuture();
+    	} else if(userData instanceof AsyncUserDataPacket){
+    		future = ((AsyncUserDataPacket)userData).getFuture();
+    	}
+    	if(future != null){
+    		future.completeSent();
+    	} else {
+    		parent.notifyAboutDataSentSucces(userData.getPacketID());
+    	}
+    }
+    
+    /**
+     * Reports that a packet from this node could not be sent. A segment fails its whole message, which is reported once
+     * @param reason the reason which the future of the packet fails with
+     * @param notificationType the ObserverConst notification of the node, or NO_NOTIFICATION
+     */
+    private void reportFailure(UserDataPacket userData, AodvException reason, int notificationType){
+    	SendFuture future = null;
+    	if(userData instanceof OutgoingSegment){
+    		SegmentedMessage message = ((OutgoingSegment)userData).getMessage();
+    		if(!message.fail()){
+    			return;
+    		}
+    		future = message.getFuture();
+    	} else if(userData instanceof AsyncUserDataPacket){
+    		future = ((AsyncUserDataPacket)userData).getFuture();
+    	}
+    	if(future != null){
+    		future.completeFailed(reason);
+    		return;
+    	}
+    	switch (notificationType) {
+    	case ObserverConst.DATA_SIZE_EXCEEDES_MAX:
+    		parent.notifyAboutSizeLimitExceeded(userData.getPacketID());
+    		break;
+    	case ObserverConst.INVALID_DESTINATION_ADDRESS:
+    		parent.notifyAboutInvalidAddressGiven(userData.getPacketID());
+    		break;
+    	case ObserverConst.DATA_DROPPED:
+    		parent.notifyAboutDataDropped(userData.getPacketID());
+    		break;
+    	default:
+    		break;
+    	}
+    }
+    
+    /**
+     * Sends the packets which were put on hold while a route to the destination were discovered
+     * @param destinationAddress the destination which a route were created to
+     */
+    private void sendPendingUserMessages(int destinationAddress){
+    	Queue<UserDataPacket> pending = pendingUserMessages.remove(destinationAddress);
+    	if(pending == null){
+    		return;
+    	}
+    	UserDataPacket userData = pending.poll();
+    	while(userData != null){
+    		if(!sendUserDataPacketFromNode(userData)){
+    			//the route were lost again, so the remaining packets wait for the new discovery as well.
+    			//They are still counted as held back
+    			pendingUserMessages.get(destinationAddress).addAll(pending);
+    			return;
+    		}
+    		userData = pending.poll();
+    	}
+    }
+    
     /**
      * 
      * Creates and queues a new RREQ
@@ -317,47 +634,135 @@ public class Sender implements Runnable{
     }
     
     /**
-     * Method for queuing protocol messages for sending
+     * Method for queuing protocol messages for sending.
+     * Internal messages and route requests from this node are always queued, since the route discovery depends on them.
+     * Other messages are dropped if the queue is full, the protocol recovers from lost messages
      * @param aodvPDU is the Protocol Data Unit to be queued. 
      */
     protected void queuePDUmessage(AodvPDU aodvPDU){
-    	pduMessages.add(aodvPDU);
-    	synchronized (queueLock) {
-    		queueLock.notify();	
-		}
+    	if(aodvPDU instanceof InternalMessage
+    			|| (aodvPDU.getType() == Constants.RREQ_PDU && aodvPDU.getSourceAddress() == nodeAddress)){
+    		pduMessages.add(aodvPDU);
+    		wakeSender();
+    	} else {
+    		queueControlPacket(aodvPDU);
+    	}
     }
     
     private void queueHelloPacket(Packet helloPacket){
-    	pduMessages.add(helloPacket);
-    	synchronized (queueLock) {
-    		queueLock.notify();
-		}
+    	queueControlPacket(helloPacket);
     }
     
+    private void queueControlPacket(Packet packet){
+    	List<Packet> dropped = new ArrayList<Packet>(0);
+    	try {
+    		if(!pduMessages.offer(packet, dropped)){
+    			Debug.print(Debug.WARN, "Sender: the protocol message queue is full, dropped a message to: ", packet.getDestinationAddress());
+    			return;
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return;
+    	}
+    	if(!dropped.isEmpty()){
+    		Debug.print(Debug.WARN, "Sender: the protocol message queue is full, dropped messages: ", dropped.size());
+    	}
+    	wakeSender();
+    }
 
+    /**
+     * Queues a packet received by another node for forwarding. Packets which do not fit are dropped silently,
+     * since the source is not known to this node
+     * @param userData the packet to forward
+     */
     protected void queueUserMessageToForward(UserDataPacket userData){
-    	userMessagesToForward.add(userData);
-    	synchronized (queueLock) {
-			queueLock.notify();
-		}
+    	List<UserDataPacket> dropped = new ArrayList<UserDataPacket>(0);
+    	try {
+    		if(!userMessagesToForward.offer(userData, dropped)){
+    			Debug.print(Debug.WARN, "Sender: the forward queue is full, dropped a packet to: ", userData.getDestinationAddress());
+    			return;
+    		}
+    	} catch (InterruptedException e) {
+    		//the receiver is being stopped
+    		Thread.currentThread().interrupt();
+    		return;
+    	}
+    	if(!dropped.isEmpty()){
+    		Debug.print(Debug.WARN, "Sender: the forward queue is full, dropped packets: ", dropped.size());
+    	}
+    	wakeSender();
     }
     
+    /**
+     * Queues a packet from this node. A packet which is rejected or dropped by the queue is reported to the node.
+     * If segmentation is enabled a packet larger than the MTU is queued as segments.
+     * Broadcasts are never segmented, since the neighbours do not reassemble them, so a broadcast larger than the MTU is rejected
+     * @param userPacket the packet to send
+     */
     protected void queueUserMessageFromNode(UserDataPacket userPacket){
-    	userMessagesFromNode.add(userPacket);
+    	int mtu = segmentationMtu;
+    	if(mtu > 0 && userPacket.getEncodedSize() > mtu){
+    		if(userPacket.getDestinationAddress() == Constants.BROADCAST_ADDRESS){
+    			reportFailure(userPacket, new DataExceedsMaxSizeException(), ObserverConst.DATA_SIZE_EXCEEDES_MAX);
+    			return;
+    		}
+    		queueSegments(userPacket, mtu);
+    	} else {
+    		offerUserMessageFromNode(userPacket);
+    	}
+    }
+    
+    /**
+     * Splits a packet from this node into segments which fit the MTU, and queues them.
+     * If a segment is rejected the message fails and the remaining segments are not queued
+     */
+    private void queueSegments(UserDataPacket userPacket, int mtu){
+    	if(userPacket.getDataLength() > Constants.MAX_MESSAGE_SIZE){
+    		reportFailure(userPacket, new DataExceedsMaxSizeException(), ObserverConst.DATA_SIZE_EXCEEDES_MAX);
+    		return;
+    	}
+    	int segmentSize = mtu - SegmentPacket.HEADER_SIZE;
+    	int numberOfSegments = (userPacket.getDataLength() + segmentSize - 1) / segmentSize;
+    	SendFuture future = null;
+    	if(userPacket instanceof AsyncUserDataPacket){
+    		future = ((AsyncUserDataPacket)userPacket).getFuture();
+    	}
+    	SegmentedMessage message = new SegmentedMessage(numberOfSegments, future);
+    	int messageID = nextMessageID.incrementAndGet();
+    	byte[] data = userPacket.getData();
+    	for(int i = 0; i < numberOfSegments && !message.isFailed(); i++){
+    		offerUserMessageFromNode(new OutgoingSegment(	message, userPacket.getPacketID(), userPacket.getDestinationAddress(),
+    														data, nodeAddress, messageID, segmentSize, i	));
+    	}
+    }
+    
+    private void offerUserMessageFromNode(UserDataPacket userPacket){
+    	List<UserDataPacket> dropped = new ArrayList<UserDataPacket>(0);
+    	boolean isQueued;
+    	try {
+    		isQueued = userMessagesFromNode.offer(userPacket, dropped);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		isQueued = false;
+    	}
+    	for(UserDataPacket userData : dropped){
+    		reportDroppedUserDataPacket(userData);
+    	}
+    	if(!isQueued){
+    		reportDroppedUserDataPacket(userPacket);
+    		return;
+    	}
+    	wakeSender();
+    }
+    
+    private void wakeSender(){
     	synchronized (queueLock) {
     		queueLock.notify();
 		}
     }
     
-    
     private void cleanUserDataPacketsToForward(int destinationAddress){
-    	synchronized (userMessagesToForward) {
-			for(UserDataPacket msg: userMessagesToForward){
-				if(msg.getDestinationAddress() == destinationAddress){
-					userMessagesToForward.remove(msg);
-				}
-			}
-		}
+    	userMessagesToForward.removeDestination(destinationAddress, new ArrayList<UserDataPacket>());
     }
     
     /**
@@ -365,37 +770,64 @@ public class Sender implements Runnable{
      * @param destinationAddress the destination which to look for
      */
     private void cleanUserDataPacketsFromNode(int destinationAddress){
-    	synchronized (userMessagesFromNode) {
-			for(UserDataPacket msg: userMessagesFromNode){
-				if(msg.getDestinationAddress() == destinationAddress){
-					userMessagesFromNode.remove(msg);
-				}
-			}
-		}
+    	List<UserDataPacket> removed = new ArrayList<UserDataPacket>();
+    	userMessagesFromNode.removeDestination(destinationAddress, removed);
+    	for(UserDataPacket msg : removed){
+    		dropUserDataPacketFromNode(msg);
+    	}
     }
     
-    
-    private class NeighbourBroadcaster extends Thread {
-    	private volatile boolean keepBroadcasting = true;
-
-    	public NeighbourBroadcaster() {
-			super("NeighbourBroadcaster");
-		}
-    	
-    	public void stopBroadcastThread(){
-    		keepBroadcasting = false;
-    		this.interrupt();
+    /**
+     * Reports the packets from this node once the aggregator has sent or given up their frame
+     */
+    private class FrameReport implements PacketAggregator.FrameListener {
+    	@Override
+    	public void packetsSent(List<UserDataPacket> packets){
+    		for(UserDataPacket userData : packets){
+    			if(userData.getSourceNodeAddress() == nodeAddress){
+    				reportSent(userData);
+    			}
+    		}
     	}
     	
-    	public void run(){
-			while(keepBroadcasting){
-				try {
-    				sleep(Constants.BROADCAST_INTERVAL);
-    				queueHelloPacket(new HelloPacket(nodeAddress,parent.getCurrentSequenceNumber()));
-	    		} catch (InterruptedException e) {
-	    			
-	    		}
-			}
+    	@Override
+    	public void packetsFailed(List<UserDataPacket> packets, AodvException reason){
+    		int notificationType = ObserverConst.DATA_DROPPED;
+    		if(reason instanceof DataExceedsMaxSizeException){
+    			notificationType = ObserverConst.DATA_SIZE_EXCEEDES_MAX;
+    		}
+    		for(UserDataPacket userData : packets){
+    			if(userData.getSourceNodeAddress() == nodeAddress){
+    				reportFailure(userData, reason, notificationType);
+    			} else {
+    				Debug.print(Debug.WARN, "Sender: the transport failed to forward a packet to: ", userData.getDestinationAddress());
+    			}
+    		}
+    	}
+    }
+    
+    
+    /**
+     * Queues a hello message every BROADCAST_INTERVAL, so the neighbours know this node is still in range
+     */
+    private class HelloTimer implements TimerScheduler.TimerTask {
+    	@Override
+    	public long run(long currentTime){
+    		queueHelloPacket(new HelloPacket(nodeAddress,parent.getCurrentSequenceNumber()));
+    		return currentTime + Constants.BROADCAST_INTERVAL;
+    	}
+    }
+    
+    /**
+     * Wakes the sender thread when the oldest open frame of the aggregator is due
+     */
+    private class FlushTimer implements TimerScheduler.TimerTask {
+    	@Override
+    	public long run(long currentTime){
+    		isFlushDue = true;
+    		wakeSender();
+    		//scheduled again by the sender while frames are open
+    		return TimerScheduler.NEVER;
     	}
     }
 }
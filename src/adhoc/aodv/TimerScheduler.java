@@ -0,0 +1,226 @@
+package adhoc.aodv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import adhoc.etc.Debug;
+
+/**
+ * Runs the protocol timers of a node on a single thread: the hello broadcasts and the expiry of route requests and forward routes.
+ * A timer is a task which is run when it is due and tells when it is due again, so the thread sleeps until the earliest timer
+ * and runs every due timer in the same wakeup. The route entries themselves are kept in the timing wheels of the tables,
+ * and a single timer expires all the entries which are due at once.
+ *
+ * A scheduler may be shared by several nodes, e.g. in a simulation. A scheduler with a VirtualClock is not run by a thread,
+ * but driven by advanceTo(), which moves the clock from one due time to the next and runs the timers on the calling thread
+ * @author Rabie
+ *
+ */
+public class TimerScheduler implements Runnable {
+	/**
+	 * the due time of a timer which should not run until it is scheduled again
+	 */
+	public static final long NEVER = Long.MAX_VALUE;
+
+	/**
+	 * A protocol timer. Run by the scheduler thread, which must not be blocked
+	 */
+	public interface TimerTask {
+		/**
+		 * @param currentTime the current time of the clock
+		 * @return returns the time the timer is due again, or NEVER
+		 */
+		long run(long currentTime);
+	}
+
+	private final Clock clock;
+	private final Object timerLock = new Integer(0);
+	//the registered timers. There are only a few per node, so they are searched linearly. Guarded by timerLock
+	private final List<Timer> timers = new ArrayList<Timer>();
+	//the timers being run, only used by the thread running them
+	private final List<Timer> dueTimers = new ArrayList<Timer>();
+	private volatile boolean keepRunning = true;
+	private Thread schedulerThread;
+
+	/**
+	 * Creates a scheduler using the system clock
+	 */
+	public TimerScheduler(){
+		this(Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock the clock which the due times are read from
+	 */
+	public TimerScheduler(Clock clock){
+		this.clock = clock;
+	}
+
+	public Clock getClock(){
+		return clock;
+	}
+
+	/**
+	 * Starts the thread which runs the timers when they are due. Not used with a VirtualClock
+	 */
+	public void startThread(){
+		if(clock instanceof VirtualClock){
+			throw new IllegalStateException("TimerScheduler: a scheduler with a virtual clock is driven by advanceTo()");
+		}
+		keepRunning = true;
+		schedulerThread = new Thread(this, "TimerScheduler");
+		schedulerThread.start();
+	}
+
+	public void stopThread(){
+		keepRunning = false;
+		if(schedulerThread != null){
+			schedulerThread.interrupt();
+		}
+	}
+
+	/**
+	 * Moves the virtual clock forward to the given time. The clock stops at every due time on the way,
+	 * where the due timers are run on the calling thread
+	 * @param time the time which to move the clock to
+	 */
+	public void advanceTo(long time){
+		if(!(clock instanceof VirtualClock)){
+			throw new IllegalStateException("TimerScheduler: only a virtual clock can be advanced");
+		}
+		VirtualClock virtualClock = (VirtualClock)clock;
+		long nextDueTime = getNextDueTime();
+		while(nextDueTime <= time){
+			virtualClock.advanceTo(nextDueTime);
+			runDueTimers(virtualClock.currentTimeMillis());
+			nextDueTime = getNextDueTime();
+		}
+		virtualClock.advanceTo(time);
+	}
+
+	/**
+	 * @return returns the earliest due time of the timers, or NEVER if no timer is scheduled
+	 */
+	public long getNextDueTime(){
+		synchronized (timerLock) {
+			long nextDueTime = NEVER;
+			for(Timer timer : timers){
+				if(timer.dueTime < nextDueTime){
+					nextDueTime = timer.dueTime;
+				}
+			}
+			return nextDueTime;
+		}
+	}
+
+	/**
+	 * Makes the timer run no later than the given time. A timer which already is due earlier keeps its due time,
+	 * since it tells its next due time when it runs
+	 * @param task the timer which to schedule
+	 * @param dueTime the time the timer is due
+	 */
+	public void schedule(TimerTask task, long dueTime){
+		synchronized (timerLock) {
+			Timer timer = find(task);
+			if(timer == null){
+				timer = new Timer(task);
+				timers.add(timer);
+			} else if(timer.dueTime <= dueTime){
+				return;
+			}
+			timer.dueTime = dueTime;
+			//the thread may be sleeping until a later timer
+			timerLock.notify();
+		}
+	}
+
+	/**
+	 * Removes the timer, which is not run again unless it is scheduled anew
+	 * @param task the timer which to remove
+	 */
+	public void cancel(TimerTask task){
+		synchronized (timerLock) {
+			Timer timer = find(task);
+			if(timer != null){
+				timers.remove(timer);
+			}
+		}
+	}
+
+	public void run(){
+		while(keepRunning){
+			try {
+				long currentTime;
+				synchronized (timerLock) {
+					while(true){
+						long nextDueTime = getNextDueTime();
+						currentTime = clock.currentTimeMillis();
+						if(nextDueTime <= currentTime){
+							break;
+						}
+						if(nextDueTime == NEVER){
+							timerLock.wait();
+						} else {
+							timerLock.wait(nextDueTime - currentTime);
+						}
+					}
+				}
+				runDueTimers(currentTime);
+			} catch (InterruptedException e) {
+
+			}
+		}
+	}
+
+	/**
+	 * Runs every timer which is due at the given time
+	 */
+	private void runDueTimers(long currentTime){
+		synchronized (timerLock) {
+			for(Timer timer : timers){
+				if(timer.dueTime <= currentTime){
+					//the timer is not due again until it has run, unless it is scheduled meanwhile
+					timer.dueTime = NEVER;
+					dueTimers.add(timer);
+				}
+			}
+		}
+		for(Timer timer : dueTimers){
+			long nextDueTime = runTimer(timer, currentTime);
+			synchronized (timerLock) {
+				if(nextDueTime < timer.dueTime && timers.contains(timer)){
+					timer.dueTime = nextDueTime;
+				}
+			}
+		}
+		dueTimers.clear();
+	}
+
+	private long runTimer(Timer timer, long currentTime){
+		try {
+			return timer.task.run(currentTime);
+		} catch (RuntimeException e) {
+			//a failing timer must not stop the other timers
+			Debug.print(Debug.ERROR, "TimerScheduler: timer failed: "+e);
+			return NEVER;
+		}
+	}
+
+	private Timer find(TimerTask task){
+		for(Timer timer : timers){
+			if(timer.task == task){
+				return timer;
+			}
+		}
+		return null;
+	}
+
+	private static class Timer {
+		private final TimerTask task;
+		private long dueTime = NEVER;
+
+		Timer(TimerTask task){
+			this.task = task;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package adhoc.aodv;
+
+/**
+ * A clock which only moves when it is advanced, so the protocol can be run in simulated time.
+ * Used together with a TimerScheduler which is driven by TimerScheduler.advanceTo() instead of its own thread,
+ * so every timeout of the protocol fires as soon as the simulation reaches it rather than after waiting for it
+ * @author Rabie
+ *
+ */
+public class VirtualClock implements Clock {
+	private volatile long currentTime;
+
+	/**
+	 * Creates a clock which starts at the current system time, so the times of a simulation look like real times
+	 */
+	public VirtualClock(){
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param startTime the time which the clock starts at
+	 */
+	public VirtualClock(long startTime){
+		currentTime = startTime;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return currentTime;
+	}
+
+	/**
+	 * Moves the clock forward. The clock never moves backwards
+	 * @param time the new time of the clock
+	 */
+	public synchronized void advanceTo(long time){
+		if(time > currentTime){
+			currentTime = time;
+		}
+	}
+
+	/**
+	 * @param duration the time in milliseconds which to move the clock forward
+	 */
+	public void advanceBy(long duration){
+		if(duration < 0){
+			throw new IllegalArgumentException("VirtualClock: the clock can not move backwards");
+		}
+		synchronized (this) {
+			currentTime += duration;
+		}
+	}
+}
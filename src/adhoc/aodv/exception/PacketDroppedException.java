@@ -0,0 +1,22 @@
+package adhoc.aodv.exception;
+
+/**
+ * Reported through a SendFuture when a packet is rejected or dropped by the outbound queue of the node,
+ * or when the transport fails to send it
+ */
+public class PacketDroppedException extends AodvException{
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public PacketDroppedException(){
+		
+	}
+	
+	public PacketDroppedException(String message) {
+		super(message);
+	}
+
+}
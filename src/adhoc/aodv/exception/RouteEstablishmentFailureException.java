@@ -0,0 +1,21 @@
+package adhoc.aodv.exception;
+
+/**
+ * Thrown, or reported through a SendFuture, when no route to the destination of a packet could be established
+ */
+public class RouteEstablishmentFailureException extends AodvException{
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public RouteEstablishmentFailureException(){
+		
+	}
+	
+	public RouteEstablishmentFailureException(String message) {
+		super(message);
+	}
+
+}
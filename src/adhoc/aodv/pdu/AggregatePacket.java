@@ -0,0 +1,143 @@
+package adhoc.aodv.pdu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.BadPduFormatException;
+
+/**
+ * Several user data packets to the same next hop carried in one frame.
+ * The layout is the pdu type followed by each packet as its length and its encoded bytes,
+ * so a packet is unpacked exactly as it would have been received on its own
+ */
+public class AggregatePacket implements Packet{
+	// pdu type, followed by a length field before each packet
+	public static final int HEADER_SIZE = 1;
+	public static final int PACKET_HEADER_SIZE = 4;
+
+	private byte pduType;
+	private int nextHop;
+	private ArrayList<byte[]> frames = new ArrayList<byte[]>();
+	private int encodedSize = HEADER_SIZE;
+	//the start and length of each packet in the parsed frame
+	private int[] offsets;
+	private int[] lengths;
+	private int numberOfPackets = 0;
+	private byte[] rawPdu;
+
+	public AggregatePacket(){
+
+	}
+
+	/**
+	 * @param nextHop the neighbour which the frame is sent to
+	 */
+	public AggregatePacket(int nextHop){
+		pduType = Constants.AGGREGATE_PDU;
+		this.nextHop = nextHop;
+	}
+
+	/**
+	 * Adds an encoded packet to the frame
+	 * @param frame the encoded packet, which must not be modified afterwards
+	 */
+	public void addFrame(byte[] frame){
+		frames.add(frame);
+		encodedSize += PACKET_HEADER_SIZE + frame.length;
+		numberOfPackets++;
+	}
+
+	/**
+	 * @return returns the encoded size of the frame if a packet of the given size were added
+	 */
+	public int getEncodedSizeWith(int frameLength){
+		return encodedSize + PACKET_HEADER_SIZE + frameLength;
+	}
+
+	public int getNumberOfPackets(){
+		return numberOfPackets;
+	}
+
+	/**
+	 * @param index the index of the packet in the frame
+	 * @return returns the encoded packet. A parsed packet is copied out of the received frame
+	 */
+	public byte[] getFrame(int index){
+		if(rawPdu == null){
+			return frames.get(index);
+		}
+		byte[] frame = new byte[lengths[index]];
+		System.arraycopy(rawPdu, offsets[index], frame, 0, lengths[index]);
+		return frame;
+	}
+
+	@Override
+	public int getDestinationAddress() {
+		return nextHop;
+	}
+
+	@Override
+	public byte[] toBytes() {
+		if(rawPdu != null){
+			return rawPdu;
+		}
+		byte[] bytes = new byte[encodedSize];
+		writeTo(ByteBuffer.wrap(bytes));
+		return bytes;
+	}
+
+	@Override
+	public int getEncodedSize() {
+		return encodedSize;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(pduType);
+		for(byte[] frame : frames){
+			buffer.putInt(frame.length);
+			buffer.put(frame);
+		}
+	}
+
+	@Override
+	public String toString(){
+		return pduType+";"+nextHop+";"+numberOfPackets;
+	}
+
+	@Override
+	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
+		if(rawPdu.length < HEADER_SIZE){
+			throw new BadPduFormatException("AggregatePacket: rawPdu is empty");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		pduType = buffer.get();
+		if(pduType != Constants.AGGREGATE_PDU){
+			throw new BadPduFormatException(	"AggregatePacket: pdu type did not match. " +
+												"Was expecting: "+Constants.AGGREGATE_PDU+
+												" but parsed: "+pduType	);
+		}
+		//every packet takes at least its length field and a type byte
+		int maxPackets = (rawPdu.length - HEADER_SIZE) / (PACKET_HEADER_SIZE + 1);
+		offsets = new int[maxPackets];
+		lengths = new int[maxPackets];
+		numberOfPackets = 0;
+		while(buffer.hasRemaining()){
+			if(buffer.remaining() < PACKET_HEADER_SIZE){
+				throw new BadPduFormatException("AggregatePacket: truncated length field at byte "+buffer.position());
+			}
+			int length = buffer.getInt();
+			if(length <= 0 || length > buffer.remaining()){
+				throw new BadPduFormatException(	"AggregatePacket: packet length "+length+
+													" does not fit in the remaining "+buffer.remaining()+" bytes"	);
+			}
+			offsets[numberOfPackets] = buffer.position();
+			lengths[numberOfPackets] = length;
+			numberOfPackets++;
+			buffer.position(buffer.position() + length);
+		}
+		encodedSize = rawPdu.length;
+		this.rawPdu = rawPdu;
+	}
+}
@@ -1,8 +1,13 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 
 
 public abstract class AodvPDU implements Packet{
+	// pdu type + source address + destination address + destination sequence number
+	protected static final int HEADER_SIZE = 1 + 4 + 4 + 4;
+	
 	protected byte pduType;
     protected int srcAddress, destAddress;
     protected int destSeqNum;
@@ -35,6 +40,35 @@ public abstract class AodvPDU implements Packet{
     	return pduType;
     }
     
+    @Override
+    public byte[] toBytes() {
+    	byte[] rawPdu = new byte[getEncodedSize()];
+    	writeTo(ByteBuffer.wrap(rawPdu));
+    	return rawPdu;
+    }
+    
+    /**
+     * Writes the fields that are common for RREQ and RREP messages
+     * @param buffer the buffer which to write into
+     */
+    protected void writeHeader(ByteBuffer buffer){
+    	buffer.put(pduType);
+    	buffer.putInt(srcAddress);
+    	buffer.putInt(destAddress);
+    	buffer.putInt(destSeqNum);
+    }
+    
+    /**
+     * Reads the fields that are common for RREQ and RREP messages. The pdu type is read but not validated
+     * @param buffer the buffer which to read from
+     */
+    protected void readHeader(ByteBuffer buffer){
+    	pduType = buffer.get();
+    	srcAddress = buffer.getInt();
+    	destAddress = buffer.getInt();
+    	destSeqNum = buffer.getInt();
+    }
+    
     @Override
     public String toString(){
     	return Byte.toString(pduType)+";"+srcAddress+";"+destAddress+";"+destSeqNum+";";
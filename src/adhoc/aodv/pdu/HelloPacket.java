@@ -1,9 +1,14 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.BadPduFormatException;
 
 public class HelloPacket implements Packet{
+	// pdu type + source address + source sequence number
+	private static final int ENCODED_SIZE = 1 + 4 + 4;
+	
 	private byte pduType;
 	private int sourceAddress;
 	private int sourceSeqNr;
@@ -34,7 +39,21 @@ public class HelloPacket implements Packet{
 
 	@Override
 	public byte[] toBytes() {
-		return toString().getBytes();
+		byte[] rawPdu = new byte[ENCODED_SIZE];
+		writeTo(ByteBuffer.wrap(rawPdu));
+		return rawPdu;
+	}
+	
+	@Override
+	public int getEncodedSize() {
+		return ENCODED_SIZE;
+	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(pduType);
+		buffer.putInt(sourceAddress);
+		buffer.putInt(sourceSeqNr);
 	}
 	
 	@Override
@@ -44,24 +63,19 @@ public class HelloPacket implements Packet{
 	
 	@Override
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
-		String[] s = new String(rawPdu).split(";",3);
-		if(s.length != 3){
-			throw new BadPduFormatException(	"HelloPacket: could not split " +
-												"the expected # of arguments from rawPdu. " +
-												"Expecteded 3 args but were given "+s.length	);
+		if(rawPdu.length != ENCODED_SIZE){
+			throw new BadPduFormatException(	"HelloPacket: rawPdu did not have the expected length. " +
+												"Expected "+ENCODED_SIZE+" bytes but were given "+rawPdu.length	);
 		}
-		try {
-			pduType = Byte.parseByte(s[0]);
-			if(pduType != Constants.HELLO_PDU){
-				throw new BadPduFormatException(	"HelloPacket: pdu type did not match. " +
-													"Was expecting: "+Constants.HELLO_PDU+
-													" but parsed: "+pduType	);
-			}
-			sourceAddress = Integer.parseInt(s[1]);
-			sourceSeqNr = Integer.parseInt(s[2]);
-		} catch (NumberFormatException e) {
-			throw new BadPduFormatException("HelloPacket: falied in parsing arguments to the desired types");
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		pduType = buffer.get();
+		if(pduType != Constants.HELLO_PDU){
+			throw new BadPduFormatException(	"HelloPacket: pdu type did not match. " +
+												"Was expecting: "+Constants.HELLO_PDU+
+												" but parsed: "+pduType	);
 		}
+		sourceAddress = buffer.getInt();
+		sourceSeqNr = buffer.getInt();
 	}
 
 }
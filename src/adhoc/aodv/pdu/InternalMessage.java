@@ -1,5 +1,7 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.exception.BadPduFormatException;
 import adhoc.etc.Debug;
 
@@ -23,5 +25,15 @@ public class InternalMessage extends AodvPDU{
 		Debug.print("DO NOT USE");
 		return null;
 	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		Debug.print("DO NOT USE");
+	}
+	
+	@Override
+	public int getEncodedSize() {
+		return 0;
+	}
 
 }
@@ -1,11 +1,28 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.exception.BadPduFormatException;
 
+/**
+ * A packet is encoded in a fixed binary layout: the first byte is always the pdu type,
+ * followed by the fields of the packet where every integer is written as 4 bytes in big-endian order.
+ */
 public interface Packet {
 		
 	public byte[] toBytes();
 	
+	/**
+	 * Encodes this packet at the current position of the given buffer
+	 * @param buffer the buffer which must have at least getEncodedSize() bytes remaining
+	 */
+	public void writeTo(ByteBuffer buffer);
+	
+	/**
+	 * @return returns the number of bytes this packet occupies when encoded
+	 */
+	public int getEncodedSize();
+	
 	public String toString();
 	
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException;
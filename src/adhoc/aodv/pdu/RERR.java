@@ -1,13 +1,23 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.BadPduFormatException;
 
+/**
+ * A route error message. One message may report several unreachable destinations, each given by its
+ * address and sequence number, so a broken link is reported to a precursor with a single message
+ */
 public class RERR extends AodvPDU {
-	private int unreachableNodeAddress;
-	private int unreachableNodeSequenceNumber;
+	// pdu type, followed by one or more pairs of unreachable node address + unreachable node sequence number
+	private static final int TYPE_SIZE = 1;
+	private static final int UNREACHABLE_NODE_SIZE = 4 + 4;
+	
+	private int[] unreachableNodeAddresses = new int[1];
+	private int[] unreachableNodeSequenceNumbers = new int[1];
+	private int numberOfUnreachableNodes = 0;
 	private ArrayList<Integer> destAddresses = new ArrayList<Integer>();
 
 	
@@ -16,6 +26,16 @@ public class RERR extends AodvPDU {
 		
 	}
 	
+	/**
+	 * Constructor of an empty route error message. Unreachable nodes are added with addUnreachableNode()
+	 * @param destinationAddresses the nodes which hopefully will receive this PDU packet
+	 */
+	public RERR(ArrayList<Integer> destinationAddresses){
+		pduType = Constants.RERR_PDU;
+		destAddresses = destinationAddresses;
+		destAddress = -1;
+	}
+	
 	/**
 	 * 
 	 * @param unreachableNodeAddress
@@ -23,11 +43,8 @@ public class RERR extends AodvPDU {
 	 * @param destinationAddresses
 	 */
     public RERR(int unreachableNodeAddress ,int unreachableNodeSequenceNumber, ArrayList<Integer> destinationAddresses) {
-    	this.unreachableNodeAddress = unreachableNodeAddress;
-    	this.unreachableNodeSequenceNumber = unreachableNodeSequenceNumber;
-    	pduType = Constants.RERR_PDU;
-        destAddresses = destinationAddresses;
-        destAddress = -1;
+    	this(destinationAddresses);
+    	addUnreachableNode(unreachableNodeAddress, unreachableNodeSequenceNumber);
     }
 
 	/**
@@ -37,18 +54,62 @@ public class RERR extends AodvPDU {
 	 * @param destinationAddress the node which hopefully will receive this PDU packet
 	 */
     public RERR(int unreachableNodeAddress ,int unreachableNodeSequenceNumber, int destinationAddress){
-    	this.unreachableNodeAddress = unreachableNodeAddress;
-    	this.unreachableNodeSequenceNumber = unreachableNodeSequenceNumber;
     	pduType = Constants.RERR_PDU;
+    	addUnreachableNode(unreachableNodeAddress, unreachableNodeSequenceNumber);
         destAddress = destinationAddress;
+        destAddresses.add(destinationAddress);
     }
     
+    /**
+     * Adds an unreachable destination to this message
+     * @param unreachableNodeAddress the node which can not be reached any longer
+     * @param unreachableNodeSequenceNumber the last known sequence number of the node
+     */
+    public void addUnreachableNode(int unreachableNodeAddress, int unreachableNodeSequenceNumber){
+    	if(numberOfUnreachableNodes == unreachableNodeAddresses.length){
+    		int[] addresses = new int[numberOfUnreachableNodes * 2];
+    		int[] sequenceNumbers = new int[numberOfUnreachableNodes * 2];
+    		System.arraycopy(unreachableNodeAddresses, 0, addresses, 0, numberOfUnreachableNodes);
+    		System.arraycopy(unreachableNodeSequenceNumbers, 0, sequenceNumbers, 0, numberOfUnreachableNodes);
+    		unreachableNodeAddresses = addresses;
+    		unreachableNodeSequenceNumbers = sequenceNumbers;
+    	}
+    	unreachableNodeAddresses[numberOfUnreachableNodes] = unreachableNodeAddress;
+    	unreachableNodeSequenceNumbers[numberOfUnreachableNodes] = unreachableNodeSequenceNumber;
+    	numberOfUnreachableNodes++;
+    }
+    
+    /**
+     * Adds a node which should receive this message, unless it is already added
+     * @param destinationAddress the node which hopefully will receive this PDU packet
+     */
+    public void addDestinationAddress(int destinationAddress){
+    	if(!destAddresses.contains(destinationAddress)){
+    		destAddresses.add(destinationAddress);
+    	}
+    }
+    
+    /**
+     * @return returns the first unreachable node of this message
+     */
 	public int getUnreachableNodeAddress(){
-		return unreachableNodeAddress;
+		return unreachableNodeAddresses[0];
 	}
 	
 	public int getUnreachableNodeSequenceNumber(){
-		return unreachableNodeSequenceNumber;
+		return unreachableNodeSequenceNumbers[0];
+	}
+	
+	public int getNumberOfUnreachableNodes(){
+		return numberOfUnreachableNodes;
+	}
+	
+	public int getUnreachableNodeAddress(int index){
+		return unreachableNodeAddresses[index];
+	}
+	
+	public int getUnreachableNodeSequenceNumber(int index){
+		return unreachableNodeSequenceNumbers[index];
 	}
 	
 	public ArrayList<Integer> getAllDestAddresses(){
@@ -56,34 +117,47 @@ public class RERR extends AodvPDU {
 	}
 	
 	@Override
-	public byte[] toBytes() {
-		return this.toString().getBytes();
+	public int getEncodedSize() {
+		return TYPE_SIZE + numberOfUnreachableNodes * UNREACHABLE_NODE_SIZE;
+	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(pduType);
+		for(int i = 0; i < numberOfUnreachableNodes; i++){
+			buffer.putInt(unreachableNodeAddresses[i]);
+			buffer.putInt(unreachableNodeSequenceNumbers[i]);
+		}
 	}
 	
 	@Override
 	public String toString() {
-		return Byte.toString(pduType)+";"+unreachableNodeAddress+";"+unreachableNodeSequenceNumber;
+		String returnString = Byte.toString(pduType);
+		for(int i = 0; i < numberOfUnreachableNodes; i++){
+			returnString += ";"+unreachableNodeAddresses[i]+";"+unreachableNodeSequenceNumbers[i];
+		}
+		return returnString;
 	}
 	
 	@Override
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
-		String[] s = new String(rawPdu).split(";",3);
-		if(s.length != 3){
-			throw new BadPduFormatException(	"RERR: could not split " +
-												"the expected # of arguments from rawPdu. " +
-												"Expecteded 3 args but were given "+s.length	);
+		if(rawPdu.length < TYPE_SIZE + UNREACHABLE_NODE_SIZE || (rawPdu.length - TYPE_SIZE) % UNREACHABLE_NODE_SIZE != 0){
+			throw new BadPduFormatException(	"RERR: rawPdu did not have the expected length. " +
+												"Expected "+TYPE_SIZE+" + n*"+UNREACHABLE_NODE_SIZE+" bytes but were given "+rawPdu.length	);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		pduType = buffer.get();
+		if(pduType != Constants.RERR_PDU){
+			throw new BadPduFormatException(	"RERR: pdu type did not match. " +
+												"Was expecting: "+Constants.RERR_PDU+
+												" but parsed: "+pduType	);
+		}
+		int count = (rawPdu.length - TYPE_SIZE) / UNREACHABLE_NODE_SIZE;
+		unreachableNodeAddresses = new int[count];
+		unreachableNodeSequenceNumbers = new int[count];
+		numberOfUnreachableNodes = 0;
+		for(int i = 0; i < count; i++){
+			addUnreachableNode(buffer.getInt(), buffer.getInt());
 		}
-		try {
-			pduType = Byte.parseByte(s[0]);
-			if(pduType != Constants.RERR_PDU){
-				throw new BadPduFormatException(	"RERR: pdu type did not match. " +
-													"Was expecting: "+Constants.RERR_PDU+
-													" but parsed: "+pduType	);
-			}
-			unreachableNodeAddress = Integer.parseInt(s[1]);
-			unreachableNodeSequenceNumber = Integer.parseInt(s[2]);
-		} catch (NumberFormatException e) {
-			throw new BadPduFormatException("RERR: falied in parsing arguments to the desired types");
-		}	
 	}
 }
@@ -1,9 +1,14 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.BadPduFormatException;
 
 public class RREP extends AodvPDU {
+	// header + source sequence number + hop count
+	private static final int ENCODED_SIZE = HEADER_SIZE + 4 + 4;
+	
     private int hopCount = 0;
     private int srcSeqNum;
 
@@ -46,8 +51,15 @@ public class RREP extends AodvPDU {
 	}
 
 	@Override
-	public byte[] toBytes() {
-		return this.toString().getBytes();
+	public int getEncodedSize() {
+		return ENCODED_SIZE;
+	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		writeHeader(buffer);
+		buffer.putInt(srcSeqNum);
+		buffer.putInt(hopCount);
 	}
 	
 	@Override
@@ -57,27 +69,18 @@ public class RREP extends AodvPDU {
 	
 	@Override
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
-		String[] s = new String(rawPdu).split(";",6);
-		if(s.length != 6){
-			throw new BadPduFormatException(	"RREP: could not split " +
-												"the expected # of arguments from rawPdu. " +
-												"Expecteded 6 args but were given "+s.length	);
+		if(rawPdu.length != ENCODED_SIZE){
+			throw new BadPduFormatException(	"RREP: rawPdu did not have the expected length. " +
+												"Expected "+ENCODED_SIZE+" bytes but were given "+rawPdu.length	);
 		}
-		try {
-			pduType = Byte.parseByte(s[0]);
-			if(pduType != Constants.RREP_PDU){
-				throw new BadPduFormatException(	"RREP: pdu type did not match. " +
-													"Was expecting: "+Constants.RREP_PDU+
-													" but parsed: "+pduType	);
-			}
-			srcAddress = Integer.parseInt(s[1]);
-			destAddress = Integer.parseInt(s[2]);
-			destSeqNum =Integer.parseInt(s[3]);
-			srcSeqNum = Integer.parseInt(s[4]);
-			hopCount = Integer.parseInt(s[5]);
-		} catch (NumberFormatException e) {
-			throw new BadPduFormatException("RREP: falied in parsing arguments to the desired types");
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		readHeader(buffer);
+		if(pduType != Constants.RREP_PDU){
+			throw new BadPduFormatException(	"RREP: pdu type did not match. " +
+												"Was expecting: "+Constants.RREP_PDU+
+												" but parsed: "+pduType	);
 		}
-		
+		srcSeqNum = buffer.getInt();
+		hopCount = buffer.getInt();
 	}
 }
@@ -1,10 +1,15 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.BadPduFormatException;
 
 
 public class RREQ extends AodvPDU {
+	// header + source sequence number + hop count + broadcast ID
+	private static final int ENCODED_SIZE = HEADER_SIZE + 4 + 4 + 4;
+	
     private int srcSeqNum;
     private int hopCount = 0;
     private int broadcastID;
@@ -49,8 +54,16 @@ public class RREQ extends AodvPDU {
 	}
 
 	@Override
-	public byte[] toBytes() {
-		return this.toString().getBytes();
+	public int getEncodedSize() {
+		return ENCODED_SIZE;
+	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		writeHeader(buffer);
+		buffer.putInt(srcSeqNum);
+		buffer.putInt(hopCount);
+		buffer.putInt(broadcastID);
 	}
 	
 	@Override
@@ -60,27 +73,19 @@ public class RREQ extends AodvPDU {
 	
 	@Override
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
-		String[] s = new String(rawPdu).split(";",7);
-		if(s.length != 7){
-			throw new BadPduFormatException(	"RREQ: could not split " +
-												"the expected # of arguments from rawPdu. " +
-												"Expecteded 7 args but were given "+s.length	);
+		if(rawPdu.length != ENCODED_SIZE){
+			throw new BadPduFormatException(	"RREQ: rawPdu did not have the expected length. " +
+												"Expected "+ENCODED_SIZE+" bytes but were given "+rawPdu.length	);
 		}
-		try {
-			pduType = Byte.parseByte(s[0]);
-			if(pduType != Constants.RREQ_PDU){
-				throw new BadPduFormatException(	"RREQ: pdu type did not match. " +
-													"Was expecting: "+Constants.RREQ_PDU+
-													" but parsed: "+pduType	);
-			}
-			srcAddress = Integer.parseInt(s[1]);
-			destAddress = Integer.parseInt(s[2]);
-			destSeqNum =Integer.parseInt(s[3]);
-			srcSeqNum = Integer.parseInt(s[4]);
-			hopCount = Integer.parseInt(s[5]);
-			broadcastID = Integer.parseInt(s[6]);
-		} catch (NumberFormatException e) {
-			throw new BadPduFormatException("RREQ: falied in parsing arguments to the desired types");
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		readHeader(buffer);
+		if(pduType != Constants.RREQ_PDU){
+			throw new BadPduFormatException(	"RREQ: pdu type did not match. " +
+												"Was expecting: "+Constants.RREQ_PDU+
+												" but parsed: "+pduType	);
 		}
+		srcSeqNum = buffer.getInt();
+		hopCount = buffer.getInt();
+		broadcastID = buffer.getInt();
 	}
 }
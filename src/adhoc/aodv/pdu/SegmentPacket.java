@@ -0,0 +1,121 @@
+package adhoc.aodv.pdu;
+
+import java.nio.ByteBuffer;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.BadPduFormatException;
+
+/**
+ * A part of a user message which is too large to be sent in one frame.
+ * The addresses are at the same place as in a UserDataPacket, so a node passing the segment on handles it
+ * like any other user packet. The destination puts the message back together from the message ID,
+ * the segment size and the index of each segment
+ */
+public class SegmentPacket extends UserDataPacket{
+	// pdu type + source address + destination address + message ID + message length + segment size + segment index
+	public static final int HEADER_SIZE = 1 + 4 + 4 + 4 + 4 + 4 + 4;
+
+	private int messageID;
+	private int messageLength;
+	private int segmentSize;
+	private int segmentIndex;
+
+	public SegmentPacket(){
+
+	}
+
+	/**
+	 * @param data the whole message, of which the segment is a slice. The array is not copied
+	 * @param messageID identifies the message among the messages from the source node
+	 * @param segmentSize the length of every segment of the message but the last
+	 * @param segmentIndex the index of this segment in the message
+	 */
+	public SegmentPacket(int packetIdentifier, int destinationAddress, byte[] data, int sourceAddress,
+							int messageID, int segmentSize, int segmentIndex){
+		super(	packetIdentifier, destinationAddress, data, segmentIndex * segmentSize,
+				Math.min(segmentSize, data.length - segmentIndex * segmentSize), sourceAddress	);
+		this.messageID = messageID;
+		messageLength = data.length;
+		this.segmentSize = segmentSize;
+		this.segmentIndex = segmentIndex;
+	}
+
+	public int getMessageID(){
+		return messageID;
+	}
+
+	public int getMessageLength(){
+		return messageLength;
+	}
+
+	public int getSegmentSize(){
+		return segmentSize;
+	}
+
+	public int getSegmentIndex(){
+		return segmentIndex;
+	}
+
+	/**
+	 * @return returns the number of segments the message is split into
+	 */
+	public int getNumberOfSegments(){
+		return (messageLength + segmentSize - 1) / segmentSize;
+	}
+
+	@Override
+	public int getEncodedSize() {
+		return HEADER_SIZE + getDataLength();
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(Constants.SEGMENT_PDU);
+		buffer.putInt(getSourceNodeAddress());
+		buffer.putInt(getDestinationAddress());
+		buffer.putInt(messageID);
+		buffer.putInt(messageLength);
+		buffer.putInt(segmentSize);
+		buffer.putInt(segmentIndex);
+		buffer.put(getDataArray(), getDataOffset(), getDataLength());
+	}
+
+	@Override
+	public String toString(){
+		return Constants.SEGMENT_PDU+";"+getSourceNodeAddress()+";"+getDestinationAddress()+";"+messageID+";"+segmentIndex+";"+getDataLength();
+	}
+
+	/**
+	 * Parses the header of the given frame. The payload is not copied but referenced as a slice of rawPdu
+	 */
+	@Override
+	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
+		if(rawPdu.length < HEADER_SIZE){
+			throw new BadPduFormatException(	"SegmentPacket: rawPdu is shorter than the header. " +
+												"Expected at least "+HEADER_SIZE+" bytes but were given "+rawPdu.length	);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		byte pduType = buffer.get();
+		if(pduType != Constants.SEGMENT_PDU){
+			throw new BadPduFormatException(	"SegmentPacket: pdu type did not match. " +
+												"Was expecting: "+Constants.SEGMENT_PDU+
+												" but parsed: "+pduType	);
+		}
+		int sourceAddress = buffer.getInt();
+		int destinationAddress = buffer.getInt();
+		messageID = buffer.getInt();
+		messageLength = buffer.getInt();
+		segmentSize = buffer.getInt();
+		segmentIndex = buffer.getInt();
+		if(messageLength <= 0 || segmentSize <= 0 || segmentIndex < 0 || segmentIndex >= getNumberOfSegments()){
+			throw new BadPduFormatException(	"SegmentPacket: segment "+segmentIndex+" of size "+segmentSize+
+												" does not fit a message of "+messageLength+" bytes"	);
+		}
+		int expectedLength = Math.min(segmentSize, messageLength - segmentIndex * segmentSize);
+		if(expectedLength != buffer.remaining()){
+			throw new BadPduFormatException(	"SegmentPacket: payload length did not match. " +
+												"Expected "+expectedLength+" bytes but the frame contained "+buffer.remaining()	);
+		}
+		setParsedFields(sourceAddress, destinationAddress, rawPdu, HEADER_SIZE, expectedLength);
+	}
+}
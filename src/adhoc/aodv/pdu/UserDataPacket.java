@@ -1,76 +1,209 @@
 package adhoc.aodv.pdu;
 
+import java.nio.ByteBuffer;
+
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.BadPduFormatException;
 
+/**
+ * A packet carrying application data. The payload is framed by a length field and kept as a slice
+ * (array, offset and length) so a received payload can be delivered or forwarded without being copied.
+ */
 public class UserDataPacket implements Packet{
+	// pdu type + source address + destination address + payload length, the payload follows the header
+	private static final int HEADER_SIZE = 1 + 4 + 4 + 4;
+	private static final int SOURCE_ADDRESS_OFFSET = 1;
+	private static final int DESTINATION_ADDRESS_OFFSET = 5;
+
 	private byte[] data;
+	private int dataOffset;
+	private int dataLength;
+	//the frame this packet were parsed from, if any. It is sent as is when the packet is forwarded
+	private byte[] rawPdu;
 	private int destAddress;
 	private byte pduType;
 	private int sourceAddress;
 	private int packetID;
-	
+
 	public UserDataPacket(){
-		
+
 	}
-	
+
 	public UserDataPacket(int packetIdentifier,int destinationAddress, byte[] data, int sourceAddress){
 		pduType = Constants.USER_DATA_PACKET_PDU;
 		packetID = packetIdentifier;
 		destAddress = destinationAddress;
 		this.data = data;
+		dataOffset = 0;
+		dataLength = data.length;
 		this.sourceAddress = sourceAddress;
 	}
-	
+
+	/**
+	 * Creates a packet whose payload is a slice of the given array. The array is not copied
+	 * @param offset the index in data where the payload starts
+	 * @param length the length of the payload
+	 */
+	public UserDataPacket(int packetIdentifier,int destinationAddress, byte[] data, int offset, int length, int sourceAddress){
+		this(packetIdentifier, destinationAddress, data, sourceAddress);
+		dataOffset = offset;
+		dataLength = length;
+	}
+
+	/**
+	 * Sets the fields of a packet parsed by a subclass, whose payload is a slice of the received frame
+	 */
+	protected void setParsedFields(int sourceAddress, int destinationAddress, byte[] rawPdu, int dataOffset, int dataLength){
+		this.sourceAddress = sourceAddress;
+		destAddress = destinationAddress;
+		data = rawPdu;
+		this.dataOffset = dataOffset;
+		this.dataLength = dataLength;
+		this.rawPdu = rawPdu;
+	}
+
+	/**
+	 * Returns the payload as a byte array of its exact length.
+	 * NOTE: a parsed packet shares its array with the received frame, so the payload is copied here.
+	 * Use getDataArray(), getDataOffset() and getDataLength() to avoid the copy
+	 * @return returns the payload of this packet
+	 */
 	public byte[] getData(){
+		if(dataOffset == 0 && dataLength == data.length){
+			return data;
+		}
+		byte[] copy = new byte[dataLength];
+		System.arraycopy(data, dataOffset, copy, 0, dataLength);
+		return copy;
+	}
+
+	/**
+	 * @return returns the array which holds the payload, starting at getDataOffset(). The array must not be modified
+	 */
+	public byte[] getDataArray(){
 		return data;
 	}
-	
+
+	public int getDataOffset(){
+		return dataOffset;
+	}
+
+	public int getDataLength(){
+		return dataLength;
+	}
+
 	public int getSourceNodeAddress(){
 		return sourceAddress;
 	}
-	
+
 	@Override
     public int getDestinationAddress() {
         return destAddress;
     }
-	
+
 	@Override
 	public byte[] toBytes() {
-		return toString().getBytes();
+		if(rawPdu != null){
+			//the packet is unchanged since it were received, so the received frame is reused
+			return rawPdu;
+		}
+		byte[] bytes = new byte[getEncodedSize()];
+		writeTo(ByteBuffer.wrap(bytes));
+		return bytes;
+	}
+
+	@Override
+	public int getEncodedSize() {
+		return HEADER_SIZE + dataLength;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(pduType);
+		buffer.putInt(sourceAddress);
+		buffer.putInt(destAddress);
+		buffer.putInt(dataLength);
+		buffer.put(data, dataOffset, dataLength);
 	}
 
 	@Override
 	public String toString(){
-		return pduType+";"+sourceAddress+";"+destAddress+";"+new String(data);
+		return pduType+";"+sourceAddress+";"+destAddress+";"+dataLength;
 	}
-	
+
+	/**
+	 * Reads the destination address of a received frame without parsing the rest of it
+	 * @param rawPdu a frame holding a user data packet
+	 * @return returns the destination address of the packet
+	 * @throws BadPduFormatException thrown if the frame is shorter than the header
+	 */
+	public static int readDestinationAddress(byte[] rawPdu) throws BadPduFormatException {
+		if(rawPdu.length < HEADER_SIZE){
+			throw new BadPduFormatException(	"UserDataPacket: rawPdu is shorter than the header. " +
+												"Expected at least "+HEADER_SIZE+" bytes but were given "+rawPdu.length	);
+		}
+		return readInt(rawPdu, DESTINATION_ADDRESS_OFFSET);
+	}
+
+	/**
+	 * Creates a packet which is to be forwarded to another node. Only the addresses are read from the frame,
+	 * the payload is neither checked nor copied, and the frame is sent on unchanged by toBytes()
+	 * @param rawPdu a frame holding a user data packet, whose header were checked by readDestinationAddress()
+	 * @return returns the packet to forward
+	 */
+	public static UserDataPacket createForwardedPacket(byte[] rawPdu){
+		UserDataPacket packet = new UserDataPacket();
+		packet.pduType = Constants.USER_DATA_PACKET_PDU;
+		packet.sourceAddress = readInt(rawPdu, SOURCE_ADDRESS_OFFSET);
+		packet.destAddress = readInt(rawPdu, DESTINATION_ADDRESS_OFFSET);
+		packet.data = rawPdu;
+		packet.dataOffset = HEADER_SIZE;
+		packet.dataLength = rawPdu.length - HEADER_SIZE;
+		packet.rawPdu = rawPdu;
+		return packet;
+	}
+
+	/**
+	 * Reads a big-endian integer, as written by ByteBuffer.putInt()
+	 */
+	private static int readInt(byte[] bytes, int offset){
+		return	(bytes[offset] << 24)
+				| ((bytes[offset+1] & 0xff) << 16)
+				| ((bytes[offset+2] & 0xff) << 8)
+				| (bytes[offset+3] & 0xff);
+	}
+
+	/**
+	 * Parses the header of the given frame. The payload is not copied but referenced as a slice of rawPdu,
+	 * so the array must not be modified afterwards
+	 */
 	@Override
 	public void parseBytes(byte[] rawPdu) throws BadPduFormatException {
-		String[] s = new String(rawPdu).split(";",4);
-		if(s.length != 4){
-			throw new BadPduFormatException(	"UserDataPacket: could not split " +
-												"the expected # of arguments from rawPdu. " +
-												"Expecteded 4 args but were given "+s.length	);
+		if(rawPdu.length < HEADER_SIZE){
+			throw new BadPduFormatException(	"UserDataPacket: rawPdu is shorter than the header. " +
+												"Expected at least "+HEADER_SIZE+" bytes but were given "+rawPdu.length	);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(rawPdu);
+		pduType = buffer.get();
+		if(pduType != Constants.USER_DATA_PACKET_PDU){
+			throw new BadPduFormatException(	"UserDataPacket: pdu type did not match. " +
+												"Was expecting: "+Constants.USER_DATA_PACKET_PDU+
+												" but parsed: "+pduType	);
 		}
-		try {
-			pduType = Byte.parseByte(s[0]);
-			if(pduType != Constants.USER_DATA_PACKET_PDU){
-				throw new BadPduFormatException(	"UserDataPacket: pdu type did not match. " +
-													"Was expecting: "+Constants.USER_DATA_PACKET_PDU+
-													" but parsed: "+pduType	);
-			}
-			sourceAddress = Integer.parseInt(s[1]);
-			destAddress = Integer.parseInt(s[2]);
-			data = s[3].getBytes();
-		} catch (NumberFormatException e) {
-			throw new BadPduFormatException(	"UserDataPacket: falied in parsing " +
-												"arguments to the desired types"	);
+		sourceAddress = buffer.getInt();
+		destAddress = buffer.getInt();
+		dataLength = buffer.getInt();
+		if(dataLength != buffer.remaining()){
+			throw new BadPduFormatException(	"UserDataPacket: payload length did not match. " +
+												"Header gave "+dataLength+" bytes but the frame contained "+buffer.remaining()	);
 		}
+		data = rawPdu;
+		dataOffset = HEADER_SIZE;
+		this.rawPdu = rawPdu;
 	}
 
 	public int getPacketID() {
 		return packetID;
 	}
 
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package adhoc.aodv.routes;
 
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import adhoc.aodv.Constants;
 import adhoc.aodv.exception.RouteNotValidException;
@@ -9,9 +10,12 @@ import adhoc.etc.Debug;
 
 public class ForwardRouteEntry extends RouteEntry {
 
-    private ArrayList<Integer> precursorNodes = new ArrayList<Integer>();
+    // the precursors as a set of 256 bits, one for each node address. Updated without locks
+    private final AtomicLongArray precursorBits = new AtomicLongArray((Constants.MAX_VALID_NODE_ADDRESS >> 6) + 1);
     private volatile boolean isValid = true;
     private int nextHop;
+    // the last time the route were looked up. It is written without any lock and only read when the route expires
+    private volatile long lastUsedTime = 0;
     
     public ForwardRouteEntry(int destAddress, int nextHopAddress, int hopCount, int destSeqNum, ArrayList<Integer>  precursorNodes) throws RouteNotValidException {
     	super(hopCount, destSeqNum, destAddress);
@@ -28,36 +32,130 @@ public class ForwardRouteEntry extends RouteEntry {
 	   	}
     }
     
+    /**
+     * Creates an entry without precursors. Use addPrecursorsOf() to take over the precursors of a route being updated
+     */
+    public ForwardRouteEntry(int destAddress, int nextHopAddress, int hopCount, int destSeqNum) throws RouteNotValidException {
+    	super(hopCount, destSeqNum, destAddress);
+    	if(nextHopAddress <= Constants.MAX_VALID_NODE_ADDRESS 
+    			&& nextHopAddress >= Constants.MIN_VALID_NODE_ADDRESS){
+	    	this.nextHop = nextHopAddress;
+	        resetAliveTimeLeft();
+	   	} else {
+	   		throw new RouteNotValidException("RouteEntry: invalid parameters given");
+	   	}
+    }
+    
     /**
      * Adds node as a precursor, so a RRER can be sent to this node in case of route failure
      * @param nodeAddress the address of the node which is using this forward route 
      * @return 
      */
     public boolean addPrecursorAddress(int nodeAddress){
-        synchronized (precursorNodes) {
-        	if(!precursorNodes.contains(nodeAddress)
-        			&& nodeAddress <= Constants.MAX_VALID_NODE_ADDRESS
-        			&& nodeAddress >= Constants.MIN_VALID_NODE_ADDRESS){
-        		precursorNodes.add(nodeAddress);
-        		return true;
-        	}
-        	return false;
-		}
+    	if(nodeAddress > Constants.MAX_VALID_NODE_ADDRESS || nodeAddress < Constants.MIN_VALID_NODE_ADDRESS){
+    		return false;
+    	}
+    	int word = nodeAddress >> 6;
+    	long bit = 1L << nodeAddress;
+    	long current;
+    	do{
+    		current = precursorBits.get(word);
+    		if((current & bit) != 0){
+    			return false;
+    		}
+    	} while(!precursorBits.compareAndSet(word, current, current | bit));
+    	return true;
+    }
+    
+    /**
+     * Adds every precursor of the given route as a precursor of this route, without copying them to a list
+     * @param route the route whose precursors to add
+     */
+    public void addPrecursorsOf(ForwardRouteEntry route){
+    	for(int word = 0; word < precursorBits.length(); word++){
+    		long bits = route.precursorBits.get(word);
+    		long current;
+    		do{
+    			current = precursorBits.get(word);
+    		} while((current | bits) != current && !precursorBits.compareAndSet(word, current, current | bits));
+    	}
+    }
+    
+    public boolean isPrecursor(int nodeAddress){
+    	if(nodeAddress > Constants.MAX_VALID_NODE_ADDRESS || nodeAddress < Constants.MIN_VALID_NODE_ADDRESS){
+    		return false;
+    	}
+    	return (precursorBits.get(nodeAddress >> 6) & (1L << nodeAddress)) != 0;
+    }
+    
+    /**
+     * Iterates the precursors in address order without copying them:
+     * for(int p = entry.nextPrecursor(0); p >= 0; p = entry.nextPrecursor(p+1))
+     * @param fromAddress the address which to start looking from, inclusive
+     * @return returns the lowest precursor address which is at least fromAddress, or -1 if there is none
+     */
+    public int nextPrecursor(int fromAddress){
+    	if(fromAddress < 0){
+    		fromAddress = 0;
+    	}
+    	int word = fromAddress >> 6;
+    	if(word >= precursorBits.length()){
+    		return -1;
+    	}
+    	long bits = precursorBits.get(word) & (-1L << fromAddress);
+    	while(bits == 0){
+    		if(++word == precursorBits.length()){
+    			return -1;
+    		}
+    		bits = precursorBits.get(word);
+    	}
+    	return (word << 6) + Long.numberOfTrailingZeros(bits);
     }
     
+    /**
+     * Prefer nextPrecursor() when only iterating the precursors
+     * @return returns a copy of the precursors, in address order
+     */
     public ArrayList<Integer> getPrecursors(){
     	ArrayList<Integer> copy = new ArrayList<Integer>();
-    	synchronized (precursorNodes) {
-    		for(int address: precursorNodes){
-    			copy.add(address);
-    		}
-		}
+    	for(int address = nextPrecursor(0); address >= 0; address = nextPrecursor(address + 1)){
+    		copy.add(address);
+    	}
     	return copy;
     }
     
-    public void resetAliveTimeLeft(){
+    public void resetAliveTimeLeft(long currentTime){
+    	synchronized (aliveTimeLock) {
+    		alivetimeLeft = Constants.ROUTE_ALIVETIME + currentTime;	
+		}
+    }
+    
+    /**
+     * Records that the route is in use, without touching the alive time or the expiry order of the table
+     * @param currentTime the current system time
+     */
+    public void markAsUsed(long currentTime){
+    	lastUsedTime = currentTime;
+    }
+    
+    public long getLastUsedTime(){
+    	return lastUsedTime;
+    }
+    
+    /**
+     * Used by the table when the route expires. If the route has been used since the alive time were set,
+     * the alive time is moved to ROUTE_ALIVETIME after the last use
+     * @param currentTime the current system time
+     * @return returns true if the route still is alive after the extension
+     */
+    boolean extendAliveTimeFromLastUse(long currentTime){
+    	long extendedAliveTime = lastUsedTime + Constants.ROUTE_ALIVETIME;
     	synchronized (aliveTimeLock) {
-    		alivetimeLeft = Constants.ROUTE_ALIVETIME + System.currentTimeMillis();	
+    		if(extendedAliveTime > alivetimeLeft && extendedAliveTime > currentTime){
+    			alivetimeLeft = extendedAliveTime;
+    			return true;
+    		}
+    		return false;
 		}
     }
     
@@ -70,7 +168,7 @@ public class ForwardRouteEntry extends RouteEntry {
     
     public void setValid(boolean valid){
     	if(isValid != valid){
-    		Debug.print("Forward Entry: isValid has changed to: "+valid);	
+    		Debug.print(Debug.DEBUG, valid ? "Forward Entry: isValid has changed to: true" : "Forward Entry: isValid has changed to: false");	
     	}
     	isValid = valid;
     }
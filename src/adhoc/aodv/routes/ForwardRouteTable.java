@@ -1,46 +1,74 @@
 package adhoc.aodv.routes;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import adhoc.aodv.Clock;
+import adhoc.aodv.Constants;
 import adhoc.aodv.Receiver;
 import adhoc.aodv.exception.NoSuchRouteException;
 import adhoc.aodv.exception.RouteNotValidException;
 import adhoc.aodv.pdu.RERR;
 import adhoc.etc.Debug;
 
+/**
+ * Holds the forward routes of a node. Routes are stored in an array indexed by the destination address,
+ * so a lookup takes no lock and allocates nothing. Only changes to the table are made while holding the table lock.
+ * The destinations are also indexed by the next hop of their route, so the routes broken by a lost neighbour are found without scanning the table.
+ */
 public class ForwardRouteTable {
 
-	private HashMap<Integer, ForwardRouteEntry> entries;
-	private LinkedList<ForwardRouteEntry> sortedEntries;
+	private AtomicReferenceArray<ForwardRouteEntry> entries;
+	//the destinations routed through each next hop, indexed by the next hop address. Guarded by the table lock
+	private BitSet[] destinationsByNextHop;
+	private int numberOfEntries = 0;
+	private TimingWheel<ForwardRouteEntry> expiryWheel;
 	private final Object tableLock = new Integer(0);
+	private final Clock clock;
 
 	public ForwardRouteTable() {
-		// contains known routes
-		entries = new HashMap<Integer, ForwardRouteEntry>();
+		this(Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock the clock which the alive times of the routes are set from
+	 */
+	public ForwardRouteTable(Clock clock) {
+		this.clock = clock;
+		// contains known routes, indexed by destination address
+		entries = new AtomicReferenceArray<ForwardRouteEntry>(Constants.MAX_VALID_NODE_ADDRESS + 1);
+		destinationsByNextHop = new BitSet[Constants.MAX_VALID_NODE_ADDRESS + 1];
 
-		// containing the known routes, sorted such that the route with the
-		// least 'aliveTimeLeft' is head
-		sortedEntries = new LinkedList<ForwardRouteEntry>();
+		// contains the known routes, indexed by the time they expire
+		expiryWheel = new TimingWheel<ForwardRouteEntry>();
 	}
 
 	/**
-	 * Adds the given entry to the forwardRoute table
+	 * Adds the given entry to the forwardRoute table. The alive time of the entry is reset from the clock of the table
 	 * @param forwardRouteEntry the entry to be stored
 	 * @return returns true if the route were added successfully. A successful add requires that no matching entry exists in the table
 	 */
 	public boolean addForwardRouteEntry(ForwardRouteEntry forwardRouteEntry) {
 		synchronized (tableLock) {
-			if(!entries.containsKey(forwardRouteEntry.getDestinationAddress())) {
-				entries.put(forwardRouteEntry.getDestinationAddress(), forwardRouteEntry);
-				sortedEntries.addLast(forwardRouteEntry);
-				Debug.print("ForwardRouteTable: Adding new forward route entry for dest: "+forwardRouteEntry.getDestinationAddress());
-				Debug.print(this.toString());
-				return true;
+			if(entries.get(forwardRouteEntry.getDestinationAddress()) != null) {
+				return false;
+			}
+			entries.set(forwardRouteEntry.getDestinationAddress(), forwardRouteEntry);
+			numberOfEntries++;
+			BitSet destinations = destinationsByNextHop[forwardRouteEntry.getNextHop()];
+			if(destinations == null){
+				destinations = new BitSet(Constants.MAX_VALID_NODE_ADDRESS + 1);
+				destinationsByNextHop[forwardRouteEntry.getNextHop()] = destinations;
 			}
-			return false;
+			destinations.set(forwardRouteEntry.getDestinationAddress());
+			forwardRouteEntry.resetAliveTimeLeft(clock.currentTimeMillis());
+			expiryWheel.schedule(forwardRouteEntry, forwardRouteEntry.getAliveTimeLeft());
 		}
+		Debug.print(Debug.DEBUG, "ForwardRouteTable: Adding new forward route entry for dest: ", forwardRouteEntry.getDestinationAddress());
+		Debug.print(Debug.TRACE, this);
+		return true;
 	}
 	
 	/**
@@ -50,22 +78,25 @@ public class ForwardRouteTable {
 	 */
 	public boolean removeEntry(int destAddress){
 		synchronized (tableLock) {
-			RouteEntry entry = entries.remove(destAddress);
-			if (entry != null) {
-				sortedEntries.remove(entry);
-				Debug.print("ForwardRouteTable: removing forward route entry for dest: "+destAddress);
-				Debug.print(this.toString());
-				return true;
+			ForwardRouteEntry entry = getEntry(destAddress);
+			if (entry == null) {
+				return false;
 			}
-			return false;
+			entries.set(destAddress, null);
+			numberOfEntries--;
+			destinationsByNextHop[entry.getNextHop()].clear(destAddress);
+			expiryWheel.cancel(entry);
 		}
+		Debug.print(Debug.DEBUG, "ForwardRouteTable: removing forward route entry for dest: ", destAddress);
+		Debug.print(Debug.TRACE, this);
+		return true;
 	}
 	
 	public boolean updateForwardRouteEntry(ForwardRouteEntry entry) throws NoSuchRouteException{
 		synchronized (tableLock) {
 			if(removeEntry(entry.getDestinationAddress())
 					&& addForwardRouteEntry(entry)){
-				Debug.print("updateForwardRouteEntry: Updating route for dest: "+entry.getDestinationAddress() );
+				Debug.print(Debug.DEBUG, "updateForwardRouteEntry: Updating route for dest: ", entry.getDestinationAddress());
 				return true;
 			}
 		}
@@ -79,7 +110,7 @@ public class ForwardRouteTable {
 	 * @throws NoSuchRouteException is thrown if no such exists
 	 */
 	public int getLastKnownDestSeqNumber(int destinationAddress) throws NoSuchRouteException{
-		RouteEntry entry = entries.get(destinationAddress);
+		RouteEntry entry = getEntry(destinationAddress);
 		if(entry != null){
 			return entry.getDestinationSequenceNumber();
 		}
@@ -87,35 +118,48 @@ public class ForwardRouteTable {
 	}
 	
 	public ArrayList<Integer> getPrecursors(int destinationAddress){
-		synchronized (tableLock) {
-			ForwardRouteEntry entry = entries.get(destinationAddress);
-			if(entry != null){
-				return entry.getPrecursors();
-			}
-			return new ArrayList<Integer>();
+		ForwardRouteEntry entry = getEntry(destinationAddress);
+		if(entry != null){
+			return entry.getPrecursors();
 		}
+		return new ArrayList<Integer>();
 	} 
 	
 	/**
 	 * Makes a forward route valid, updates it sequence number if necessary and resets the AliveTimeLeft
 	 * @param destinationAddress used to determine which forward route to set valid
 	 * @param newDestinationSeqNumber this destSeqNum is only set in the entry if it is greater that the existing destSeqNum
-	 * @throws NoSuchRouteException thrown if no table information is known about the destination
+	 * @return returns false if no table information is known about the destination
 	 */
-	public void setValid(int destinationAddress, int destinationSeqNumber, boolean validValue) throws NoSuchRouteException {
-		ForwardRouteEntry entry = entries.get(destinationAddress);
+	public boolean setValid(int destinationAddress, int destinationSeqNumber, boolean validValue) {
+		ForwardRouteEntry entry = getEntry(destinationAddress);
 		if(entry != null){
 			entry.setValid(validValue);
-			entry.resetAliveTimeLeft();
 			synchronized (tableLock) {
-				sortedEntries.remove(entry);
-				sortedEntries.addLast(entry);
+				entry.resetAliveTimeLeft(clock.currentTimeMillis());
+				if(entries.get(destinationAddress) == entry){
+					expiryWheel.schedule(entry, entry.getAliveTimeLeft());
+				}
 			}
 			entry.setSeqNum(	Receiver.getMaximumSeqNum(	destinationSeqNumber,
 															entry.getDestinationSequenceNumber()	)	);
-			return;
+			return true;
 		}
-		throw new NoSuchRouteException();
+		return false;
+	}
+
+	/**
+	 * Looks up a route without taking the table lock, and without throwing when no usable route exists.
+	 * The route is marked as used, which extends its alive time the next time the route would expire
+	 * @param destinationAddress the destination which to search for in the table
+	 * @return returns the entry whether it is valid or not, or null if no table information is known about the destination
+	 */
+	public ForwardRouteEntry lookupForwardRouteEntry(int destinationAddress) {
+		ForwardRouteEntry entry = getEntry(destinationAddress);
+		if (entry != null) {
+			entry.markAsUsed(clock.currentTimeMillis());
+		}
+		return entry;
 	}
 
 	/**
@@ -126,27 +170,22 @@ public class ForwardRouteTable {
 	 * @throws RouteNotValidException thrown if a route were found, but is marked as invalid
 	 */
 	public ForwardRouteEntry getForwardRouteEntry(int destinationAddress) throws NoSuchRouteException, RouteNotValidException {
-		ForwardRouteEntry entry = entries.get(destinationAddress);
-		if (entry != null) {
-			entry.resetAliveTimeLeft();
-			synchronized (tableLock) {	
-				sortedEntries.remove(entry);
-				sortedEntries.addLast(entry);
-			}
-			if (!(entry).isValid()) {
-				throw new RouteNotValidException();
-			}
-			return entry;
+		ForwardRouteEntry entry = lookupForwardRouteEntry(destinationAddress);
+		if (entry == null) {
+			throw new NoSuchRouteException();
 		}
-		throw new NoSuchRouteException();
+		if (!entry.isValid()) {
+			throw new RouteNotValidException();
+		}
+		return entry;
 	}
 	
 	/**
-	 * Method for knowing if the table (sorted list) contain any entries
-	 * @return true if the sortedlist is empty
+	 * Method for knowing if the table (timing wheel) contain any entries
+	 * @return true if no entry is waiting to expire
 	 */
 	public boolean isEmpty(){
-		return sortedEntries.isEmpty();	
+		return expiryWheel.isEmpty();	
 	}
 	
 	/**
@@ -156,7 +195,9 @@ public class ForwardRouteTable {
 	 */
 	public RouteEntry getNextRouteToExpire() throws NoSuchRouteException{
 		RouteEntry route = null;
-		route = sortedEntries.peek();	
+		synchronized (tableLock) {
+			route = expiryWheel.peekEarliest();
+		}
 		if(route != null){
 			return route;
 		}
@@ -164,56 +205,99 @@ public class ForwardRouteTable {
 	}
 	
 	/**
-	 * Searches the table for routes which match on the 'nextHopAddress'.
-	 * The destination node of the matching entries is then used in a RERR pdu for later processing.
+	 * Takes every entry whose alive time has passed out of the timing wheel. The entries are kept in the table,
+	 * and are scheduled again if they are set valid or invalid.
+	 * An entry which has been used since its alive time were set gets its alive time extended from the last use,
+	 * and is scheduled again instead of being returned
+	 * @param currentTime the current system time
+	 * @return returns the expired entries, ordered by the slot they expired in
+	 */
+	public List<ForwardRouteEntry> pollExpiredEntries(long currentTime){
+		List<ForwardRouteEntry> expired = new ArrayList<ForwardRouteEntry>();
+		synchronized (tableLock) {
+			expiryWheel.expire(currentTime, expired);
+			for(int i = expired.size()-1; i >= 0; i--){
+				ForwardRouteEntry entry = expired.get(i);
+				if(entry.extendAliveTimeFromLastUse(currentTime)){
+					expiryWheel.schedule(entry, entry.getAliveTimeLeft());
+					expired.remove(i);
+				}
+			}
+		}
+		return expired;
+	}
+	
+	/**
+	 * @return returns the entry for the destination, or null if it is unknown or outside the valid address interval
+	 */
+	private ForwardRouteEntry getEntry(int destinationAddress){
+		if(destinationAddress < Constants.MIN_VALID_NODE_ADDRESS || destinationAddress > Constants.MAX_VALID_NODE_ADDRESS){
+			return null;
+		}
+		return entries.get(destinationAddress);
+	}
+	
+	/**
+	 * Finds the routes which use the given node as next hop, by the index of destinations per next hop.
+	 * Every matching route is reported in a single RERR pdu for later processing, which is addressed to the precursors of all of them.
 	 * The state of matching route entries is set to invalid
-	 * @param brokenNodeAddress is the destination node which can not be reached any more
-	 * @return ArrayList<RERR> returns an ArrayList of RERR messages
+	 * @param brokenNodeAddress is the neighbour node which can not be reached any more
+	 * @return returns the RERR message, or null if no route used the broken node
 	 */
-	public ArrayList<RERR> findBrokenRoutes(int brokenNodeAddress){
-		ArrayList<RERR> brokenRoutes = new ArrayList<RERR>(); 
-		LinkedList<ForwardRouteEntry> currentEntries = new LinkedList<ForwardRouteEntry>();
+	public RERR findBrokenRoutes(int brokenNodeAddress){
+		if(brokenNodeAddress < Constants.MIN_VALID_NODE_ADDRESS || brokenNodeAddress > Constants.MAX_VALID_NODE_ADDRESS){
+			return null;
+		}
 		synchronized (tableLock) {
-			for(ForwardRouteEntry entry: sortedEntries){
-				currentEntries.add(entry);
+			BitSet destinations = destinationsByNextHop[brokenNodeAddress];
+			if(destinations == null || destinations.isEmpty()){
+				return null;
 			}
-			
-			for(ForwardRouteEntry entry : currentEntries){
-				if(entry.getNextHop() == brokenNodeAddress){
-					RERR rerr = new RERR(entry.getDestinationAddress(), entry.getDestinationSequenceNumber(), entry.getPrecursors());
-					brokenRoutes.add(rerr);
-					try {
-						setValid(entry.getDestinationAddress(), entry.getDestinationSequenceNumber(), false);
-					} catch (NoSuchRouteException e) {
-						Debug.print("RouteTableManager: NoSuchRouteException where thrown in findBrokenRoutes");
-					}
+			RERR rerr = new RERR(new ArrayList<Integer>());
+			for(int dest = destinations.nextSetBit(0); dest >= 0; dest = destinations.nextSetBit(dest+1)){
+				ForwardRouteEntry entry = entries.get(dest);
+				rerr.addUnreachableNode(dest, entry.getDestinationSequenceNumber());
+				for(int precursor = entry.nextPrecursor(0); precursor >= 0; precursor = entry.nextPrecursor(precursor + 1)){
+					rerr.addDestinationAddress(precursor);
 				}
+				setValid(dest, entry.getDestinationSequenceNumber(), false);
 			}
+			return rerr;
 		}
-		return brokenRoutes;
 	}
 	
 	/**
-	 * only used for debugging
+	 * only used for debugging. Prefer Debug.print(Debug.TRACE, table), which only builds the dump if it is printed
 	 */
 	public String toString(){
 		synchronized (tableLock) {
-			if(entries.size() != sortedEntries.size()){
-				Debug.print("ForwardRouteTable: FATAL ERROR - inconsistensy in this table");
+			if(numberOfEntries < expiryWheel.size()){
+				Debug.print(Debug.ERROR, "ForwardRouteTable: FATAL ERROR - inconsistensy in this table");
 			}
-			if(entries.isEmpty()){
+			if(numberOfEntries == 0){
 				return "Forward Table is empty\n";
 			}
-			String returnString = "---------------------\n"+
-								  "|Forward Route Table:\n"+
-								  "---------------------";
-			for(ForwardRouteEntry f :entries.values()){
-				returnString += "\n"+"|Dest: "+f.getDestinationAddress()+" destSeqN: "+f.getDestinationSequenceNumber()+" nextHop: "+f.getNextHop()+" hopCount: "+f.getHopCount()+" isValid: "+f.isValid()+" TTL: "+(f.getAliveTimeLeft()-System.currentTimeMillis())+" precursors: ";
-				for(int p  : f.getPrecursors()){
-					returnString += p+" ";
+			StringBuilder returnString = new StringBuilder(	"---------------------\n"+
+															"|Forward Route Table:\n"+
+															"---------------------");
+			long currentTime = clock.currentTimeMillis();
+			for(int i = 0; i < entries.length(); i++){
+				ForwardRouteEntry f = entries.get(i);
+				if(f == null){
+					continue;
+				}
+				returnString.append("\n|Dest: ").append(f.getDestinationAddress())
+							.append(" destSeqN: ").append(f.getDestinationSequenceNumber())
+							.append(" nextHop: ").append(f.getNextHop())
+							.append(" hopCount: ").append(f.getHopCount())
+							.append(" isValid: ").append(f.isValid())
+							.append(" TTL: ").append(f.getAliveTimeLeft()-currentTime)
+							.append(" precursors: ");
+				for(int p = f.nextPrecursor(0); p >= 0; p = f.nextPrecursor(p + 1)){
+					returnString.append(p).append(' ');
 				}
 			}	
-			return returnString+"\n---------------------\n";
+			return returnString.append("\n---------------------\n").toString();
 		}
 	}
 }
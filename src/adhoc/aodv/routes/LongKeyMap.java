@@ -0,0 +1,176 @@
+package adhoc.aodv.routes;
+
+import java.util.Collection;
+
+/**
+ * A hash map from primitive long keys to values, using open addressing with linear probing.
+ * Keys are kept in a long array, so neither looking up nor adding an entry allocates a key object.
+ * Removed entries are filled by shifting the entries behind them back, so no tombstones build up
+ * in a table which sees many short lived entries, like the route request table during a flood.
+ *
+ * NOTE: the map is not thread safe, the owning table must guard every call with its table lock
+ * @author Rabie
+ *
+ * @param <V> the type of values kept in the map
+ */
+public class LongKeyMap<V> {
+	//the table is grown when it gets more than half full, which keeps the probe sequences short
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	//a null value marks a free slot
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+
+	public LongKeyMap(){
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of entries the map should hold without growing
+	 */
+	public LongKeyMap(int expectedSize){
+		int capacity = MIN_CAPACITY;
+		while(capacity < expectedSize * 2){
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Creates a key from a pair of integers, e.g. a node address and a broadcast ID
+	 */
+	public static long key(int high, int low){
+		return ((long)high << 32) | (low & 0xffffffffL);
+	}
+
+	public boolean containsKey(long key){
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return returns the value of the key, or null if the map has no such key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		int index = indexOf(key);
+		return index < 0 ? null : (V)values[index];
+	}
+
+	/**
+	 * Maps the key to the value
+	 * @param value the value, which may not be null
+	 * @return returns the previous value of the key, or null if the key were not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value){
+		if(value == null){
+			throw new IllegalArgumentException("LongKeyMap: null values are not allowed");
+		}
+		int index = slotOf(key);
+		while(values[index] != null){
+			if(keys[index] == key){
+				V previous = (V)values[index];
+				values[index] = value;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		size++;
+		if(size * 2 > keys.length){
+			grow();
+		}
+		return null;
+	}
+
+	/**
+	 * @return returns the removed value, or null if the map had no such key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key){
+		int hole = indexOf(key);
+		if(hole < 0){
+			return null;
+		}
+		V removed = (V)values[hole];
+		//shift the following entries of the probe sequence back, unless they would be moved before their own slot
+		int index = hole;
+		while(true){
+			index = (index + 1) & mask;
+			if(values[index] == null){
+				break;
+			}
+			int slot = slotOf(keys[index]);
+			boolean inPlace = hole <= index ? (hole < slot && slot <= index) : (hole < slot || slot <= index);
+			if(!inPlace){
+				keys[hole] = keys[index];
+				values[hole] = values[index];
+				hole = index;
+			}
+		}
+		values[hole] = null;
+		size--;
+		return removed;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Adds every value of the map to the given collection, in no particular order
+	 * @param collection the collection which to add the values to
+	 */
+	@SuppressWarnings("unchecked")
+	public void valuesTo(Collection<? super V> collection){
+		for(Object value : values){
+			if(value != null){
+				collection.add((V)value);
+			}
+		}
+	}
+
+	private int indexOf(long key){
+		int index = slotOf(key);
+		while(values[index] != null){
+			if(keys[index] == key){
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slotOf(long key){
+		//spreads the address and broadcast ID bits over the whole table
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow(){
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldValues[i] != null){
+				int index = slotOf(oldKeys[i]);
+				while(values[index] != null){
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
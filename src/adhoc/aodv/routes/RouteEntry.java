@@ -10,6 +10,13 @@ public abstract class RouteEntry {
     protected int hopCount;
     protected final Object aliveTimeLock = new Integer(0);
     
+    // links used by the TimingWheel of the table holding this entry, guarded by the table lock
+    RouteEntry wheelPrevious, wheelNext;
+    long wheelDeadline;
+    long wheelTick;
+    long wheelSequence;
+    boolean isScheduled = false;
+    
     public RouteEntry(int hopCount, int destSeqNum, int destAddress) throws RouteNotValidException{
     	if(destAddress <= Constants.MAX_VALID_NODE_ADDRESS && destAddress >= Constants.MIN_VALID_NODE_ADDRESS
         		&& (destSeqNum <= Constants.MAX_SEQUENCE_NUMBER 
@@ -33,7 +40,18 @@ public abstract class RouteEntry {
     	}
     }
     
-    public abstract void resetAliveTimeLeft();
+    /**
+     * Sets the alive time relative to the system time
+     */
+    public void resetAliveTimeLeft(){
+    	resetAliveTimeLeft(System.currentTimeMillis());
+    }
+    
+    /**
+     * Sets the alive time relative to the given time, which is read from the clock of the table holding the entry
+     * @param currentTime the current time
+     */
+    public abstract void resetAliveTimeLeft(long currentTime);
     
     public int getDestinationSequenceNumber(){
         return destSeqNum;	
@@ -40,9 +40,9 @@ public class RouteRequestEntry extends RouteEntry{
 		return broadcastID;
 	}
 	
-	public void resetAliveTimeLeft(){
+	public void resetAliveTimeLeft(long currentTime){
 		synchronized (aliveTimeLock) {
-			alivetimeLeft = System.currentTimeMillis() + Constants.PATH_DESCOVERY_TIME;	
+			alivetimeLeft = currentTime + Constants.PATH_DESCOVERY_TIME;	
 		}
 	}
 	
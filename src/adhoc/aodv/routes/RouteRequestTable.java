@@ -1,29 +1,47 @@
 package adhoc.aodv.routes;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 
+import adhoc.aodv.Clock;
 import adhoc.aodv.exception.NoSuchRouteException;
 import adhoc.etc.Debug;
 
 public class RouteRequestTable {
 
-	private HashMap<EntryKey, RouteRequestEntry> entries;
-	private LinkedList<RouteRequestEntry> sortedEntries;
+	//keyed by LongKeyMap.key(sourceAddress, broadcastID), so a lookup does not allocate
+	private LongKeyMap<RouteRequestEntry> entries;
+	private TimingWheel<RouteRequestEntry> expiryWheel;
 	private final Object tableLock = new Integer(0);
+	private final Clock clock;
 	
 	public RouteRequestTable(){
+		this(Clock.SYSTEM);
+	}
+	
+	/**
+	 * @param clock the clock which the alive times of the entries are set from
+	 */
+	public RouteRequestTable(Clock clock){
+		this.clock = clock;
 		// contains known routes
-		entries = new HashMap<EntryKey, RouteRequestEntry>();
+		entries = new LongKeyMap<RouteRequestEntry>();
 
-		// containing the known routes, sorted such that the route with the
-		// least 'aliveTimeLeft' is head
-		sortedEntries = new LinkedList<RouteRequestEntry>();
+		// contains the entries which has a running timer, indexed by the time they expire
+		expiryWheel = new TimingWheel<RouteRequestEntry>();
 	}
 	
 	
+	/**
+	 * Checks if a RREQ has been seen before. Called for every received RREQ
+	 * @param sourceAddress the originator of the RREQ broadcast
+	 * @param broadcastID the ID of the RREQ broadcast
+	 * @return returns true if the table has an entry of the RREQ
+	 */
 	public boolean routeRequestEntryExists(int sourceAddress, int broadcastID){
-		return entries.containsKey(new EntryKey(sourceAddress, broadcastID));
+		synchronized (tableLock) {
+			return entries.containsKey(LongKeyMap.key(sourceAddress, broadcastID));
+		}
 	}
 	
 	/**
@@ -34,27 +52,28 @@ public class RouteRequestTable {
 	 */
 	public boolean addRouteRequestEntry(RouteRequestEntry rreqEntry, boolean setTimer){
 		synchronized (tableLock) {
-			EntryKey key = new EntryKey(rreqEntry.getSourceAddress(), rreqEntry.getBroadcastID());
-			if(!entries.containsKey(key)){
-				entries.put(key, rreqEntry);
-				Debug.print(toString());
-				if(setTimer){
-					sortedEntries.addLast(rreqEntry);
-				}
-				return true;
+			long key = LongKeyMap.key(rreqEntry.getSourceAddress(), rreqEntry.getBroadcastID());
+			if(entries.containsKey(key)){
+				return false;
+			}
+			entries.put(key, rreqEntry);
+			if(setTimer){
+				rreqEntry.resetAliveTimeLeft(clock.currentTimeMillis());
+				expiryWheel.schedule(rreqEntry, rreqEntry.getAliveTimeLeft());
 			}
-			return false;
 		}
+		Debug.print(Debug.TRACE, this);
+		return true;
 	}
 	
 	public void setRouteRequestTimer(int sourceAddres, int broadcastID) throws NoSuchRouteException{
-		RouteRequestEntry rreqEntry = entries.get(new EntryKey(sourceAddres, broadcastID));
-		if(rreqEntry != null){
-			rreqEntry.resetAliveTimeLeft();
-			synchronized (tableLock) {
-				sortedEntries.addLast(rreqEntry);
+		synchronized (tableLock) {
+			RouteRequestEntry rreqEntry = entries.get(LongKeyMap.key(sourceAddres, broadcastID));
+			if(rreqEntry != null){
+				rreqEntry.resetAliveTimeLeft(clock.currentTimeMillis());
+				expiryWheel.schedule(rreqEntry, rreqEntry.getAliveTimeLeft());
+				return;
 			}
-			return;
 		}
 		throw new NoSuchRouteException();
 	}
@@ -70,7 +89,7 @@ public class RouteRequestTable {
 	 */
 	public RouteEntry getRouteRequestEntry(int sourceAddress, int broadcastID, boolean removeEntry) throws NoSuchRouteException{
 		synchronized (tableLock) {
-			RouteRequestEntry entry = (RouteRequestEntry)entries.get(new EntryKey(sourceAddress, broadcastID));
+			RouteRequestEntry entry = entries.get(LongKeyMap.key(sourceAddress, broadcastID));
 			if (entry != null) {
 				if(removeEntry){
 					removeEntry(entry.getSourceAddress(), entry.getBroadcastID());
@@ -89,80 +108,69 @@ public class RouteRequestTable {
 	 */
 	public boolean removeEntry(int sourceAddress, int broadcastID) {
 		synchronized (tableLock) {
-			RouteEntry rreqEntry = entries.remove(new EntryKey(sourceAddress,broadcastID));
-			if (rreqEntry != null) {
-				sortedEntries.remove(rreqEntry);
-				Debug.print(toString());
-				return true;
+			RouteRequestEntry rreqEntry = entries.remove(LongKeyMap.key(sourceAddress, broadcastID));
+			if (rreqEntry == null) {
+				return false;
 			}
-			return false;
+			expiryWheel.cancel(rreqEntry);
 		}
+		Debug.print(Debug.TRACE, this);
+		return true;
 	}
 	
 	public RouteEntry getNextRouteToExpire() throws NoSuchRouteException{
-		RouteEntry route = sortedEntries.peek();
+		RouteEntry route = null;
+		synchronized (tableLock) {
+			route = expiryWheel.peekEarliest();
+		}
 		if(route != null){
 			return route;
 		}
 		throw new NoSuchRouteException();
 	}
 	
+	/**
+	 * Takes every entry whose timer has run out out of the timing wheel. The entries are kept in the table
+	 * @param currentTime the current system time
+	 * @return returns the expired entries
+	 */
+	public List<RouteRequestEntry> pollExpiredEntries(long currentTime){
+		List<RouteRequestEntry> expired = new ArrayList<RouteRequestEntry>();
+		synchronized (tableLock) {
+			expiryWheel.expire(currentTime, expired);
+		}
+		return expired;
+	}
+	
 	public boolean isEmpty(){
-		return sortedEntries.isEmpty();	
+		return expiryWheel.isEmpty();	
 	}
 	
 	
 	/**
-	 * A route request is uniquely defined by the tuple (nodeAddress, broadcastID).
-	 * This class is then used for generating a hashcode from this tuple so entries can be stored with an appropriate key
-	 * @author Rabie
-	 *
+	 * only used for debugging. Prefer Debug.print(Debug.TRACE, table), which only builds the dump if it is printed
 	 */
-	private class EntryKey{
-		private int nodeAddress;
-		private int broadcastID;
-		
-		public EntryKey(int nodeAddress, int broadcastID){
-			this.nodeAddress = nodeAddress;
-			this.broadcastID = broadcastID;
-		}
-		
-		@Override
-		public boolean equals(Object obj) {
-			EntryKey k = (EntryKey)obj;
-			if(k.getNodeAddress() == nodeAddress && k.getBroadcastID() == broadcastID){
-				return true;
-			}
-			return false;
-		}
-		
-		@Override
-		public int hashCode(){
-			return (Integer.toString(nodeAddress)+";"+Integer.toString(broadcastID)).hashCode();
-		}
-		
-		public int getNodeAddress(){
-			return nodeAddress;
-		}
-		
-		public int getBroadcastID(){
-			return broadcastID;
-		}
-	}
-	
 	public String toString(){
 		synchronized (tableLock) {
 			if(entries.isEmpty()){
 				return "RouteRequestTable is empty\n";
 			}
-			String returnString = "---------------------\n"+
-								  "|Route Request Table:\n"+
-								  "---------------------";
-			for(RouteRequestEntry f :entries.values()){
-				returnString += "\n"+"|Dest: "+f.getDestinationAddress()+" destSeqN: "+f.getDestinationSequenceNumber()+" src: "+f.getSourceAddress()+" broadID: "+f.getBroadcastID()+" retries left: "+f.getRetriesLeft()+" hopCount: "+f.getHopCount()+" TTL: "+(f.getAliveTimeLeft()-System.currentTimeMillis());
-
+			StringBuilder returnString = new StringBuilder(	"---------------------\n"+
+															"|Route Request Table:\n"+
+															"---------------------");
+			long currentTime = clock.currentTimeMillis();
+			List<RouteRequestEntry> values = new ArrayList<RouteRequestEntry>(entries.size());
+			entries.valuesTo(values);
+			for(RouteRequestEntry f :values){
+				returnString.append("\n|Dest: ").append(f.getDestinationAddress())
+							.append(" destSeqN: ").append(f.getDestinationSequenceNumber())
+							.append(" src: ").append(f.getSourceAddress())
+							.append(" broadID: ").append(f.getBroadcastID())
+							.append(" retries left: ").append(f.getRetriesLeft())
+							.append(" hopCount: ").append(f.getHopCount())
+							.append(" TTL: ").append(f.getAliveTimeLeft()-currentTime);
 			}	
-			return returnString+"\n---------------------\n";
+			return returnString.append("\n---------------------\n").toString();
 		}
 	}
 }
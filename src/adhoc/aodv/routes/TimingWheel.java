@@ -0,0 +1,216 @@
+package adhoc.aodv.routes;
+
+import java.util.List;
+
+/**
+ * A hashed timing wheel which keeps track of when route entries expire.
+ * Each slot covers one tick and holds a doubly linked list of the entries whose deadline falls in that tick,
+ * using the links stored in the entries themselves. Scheduling, rescheduling and cancelling an entry
+ * is therefore done in constant time and without allocation.
+ *
+ * Entries whose deadline lies more than one rotation ahead share the slot with nearer entries,
+ * and are skipped until their tick is reached.
+ *
+ * NOTE: the wheel is not thread safe, the owning table must guard every call with its table lock
+ * @author Rabie
+ *
+ * @param <E> the type of route entries kept in the wheel
+ */
+public class TimingWheel<E extends RouteEntry> {
+	// 128 slots of 32 ms covers both Constants.ROUTE_ALIVETIME and Constants.PATH_DESCOVERY_TIME in one rotation
+	public static final int DEFAULT_TICK_DURATION = 32;
+	public static final int DEFAULT_NUMBER_OF_SLOTS = 128;
+
+	private final long tickDuration;
+	private final RouteEntry[] slotHeads;
+	private final RouteEntry[] slotTails;
+	private final int mask;
+	//the next tick to be expired, or -1 if the wheel never has been advanced
+	private long currentTick = -1;
+	private volatile int size = 0;
+	//orders entries that share a deadline by the time they were scheduled
+	private long sequence = 0;
+
+	public TimingWheel(){
+		this(DEFAULT_TICK_DURATION, DEFAULT_NUMBER_OF_SLOTS);
+	}
+
+	/**
+	 * @param tickDuration the time in milliseconds covered by one slot
+	 * @param numberOfSlots the number of slots in the wheel. Must be a power of two
+	 */
+	public TimingWheel(long tickDuration, int numberOfSlots){
+		if(tickDuration <= 0 || numberOfSlots <= 0 || (numberOfSlots & (numberOfSlots - 1)) != 0){
+			throw new IllegalArgumentException("TimingWheel: tick duration must be positive and number of slots a power of two");
+		}
+		this.tickDuration = tickDuration;
+		slotHeads = new RouteEntry[numberOfSlots];
+		slotTails = new RouteEntry[numberOfSlots];
+		mask = numberOfSlots - 1;
+	}
+
+	/**
+	 * Schedules the entry to expire at the given time. An entry that already is scheduled is moved to its new deadline
+	 * @param entry the entry which to schedule
+	 * @param deadline the system time of when the entry expires
+	 */
+	public void schedule(E entry, long deadline){
+		if(entry.isScheduled){
+			unlink(entry);
+		} else {
+			size++;
+		}
+		long tick = deadline / tickDuration;
+		if(currentTick >= 0 && tick < currentTick){
+			//the deadline has already passed, so the entry is expired the next time the wheel advances
+			tick = currentTick;
+		}
+		entry.wheelDeadline = deadline;
+		entry.wheelTick = tick;
+		entry.isScheduled = true;
+		link(entry);
+	}
+
+	/**
+	 * Removes the entry from the wheel
+	 * @param entry the entry which should no longer expire
+	 * @return returns true if the entry were scheduled
+	 */
+	public boolean cancel(E entry){
+		if(entry.isScheduled){
+			unlink(entry);
+			entry.isScheduled = false;
+			size--;
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isScheduled(E entry){
+		return entry.isScheduled;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Advances the wheel to the given time. Every entry whose deadline has passed is removed from the wheel
+	 * @param now the current system time
+	 * @param expired the list which the expired entries are added to
+	 */
+	public void expire(long now, List<E> expired){
+		long nowTick = now / tickDuration;
+		if(currentTick < 0 || nowTick - currentTick >= slotHeads.length){
+			//a whole rotation has passed, so every slot is due
+			for(int i = 0; i < slotHeads.length; i++){
+				expireSlot(i, nowTick, now, expired);
+			}
+			if(nowTick > currentTick){
+				currentTick = nowTick;
+			}
+			return;
+		}
+		while(true){
+			expireSlot((int)(currentTick & mask), currentTick, now, expired);
+			if(currentTick >= nowTick){
+				break;
+			}
+			currentTick++;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void expireSlot(int slot, long tick, long now, List<E> expired){
+		RouteEntry entry = slotHeads[slot];
+		while(entry != null){
+			RouteEntry next = entry.wheelNext;
+			if(entry.wheelTick <= tick && entry.wheelDeadline <= now){
+				cancel((E)entry);
+				expired.add((E)entry);
+			}
+			entry = next;
+		}
+	}
+
+	/**
+	 * @return returns the entry with the earliest deadline, or null if the wheel is empty.
+	 * If several entries share the earliest deadline, the one scheduled first is returned
+	 */
+	@SuppressWarnings("unchecked")
+	public E peekEarliest(){
+		if(size == 0){
+			return null;
+		}
+		if(currentTick >= 0){
+			//the first slot, counted from the current tick, holding an entry of the current rotation contains the earliest deadline
+			for(int i = 0; i < slotHeads.length; i++){
+				long tick = currentTick + i;
+				RouteEntry earliest = null;
+				for(RouteEntry entry = slotHeads[(int)(tick & mask)]; entry != null; entry = entry.wheelNext){
+					if(entry.wheelTick <= tick && (earliest == null || entry.wheelDeadline < earliest.wheelDeadline)){
+						earliest = entry;
+					}
+				}
+				if(earliest != null){
+					return (E)earliest;
+				}
+			}
+		}
+		//all entries lie beyond the current rotation, or the wheel has not been advanced yet
+		RouteEntry earliest = null;
+		for(int i = 0; i < slotHeads.length; i++){
+			for(RouteEntry entry = slotHeads[i]; entry != null; entry = entry.wheelNext){
+				if(earliest == null || entry.wheelDeadline < earliest.wheelDeadline
+						|| (entry.wheelDeadline == earliest.wheelDeadline && entry.wheelSequence < earliest.wheelSequence)){
+					earliest = entry;
+				}
+			}
+		}
+		return (E)earliest;
+	}
+
+	/**
+	 * @return returns the earliest deadline in the wheel, or -1 if the wheel is empty
+	 */
+	public long getNextDeadline(){
+		E entry = peekEarliest();
+		if(entry == null){
+			return -1;
+		}
+		return entry.wheelDeadline;
+	}
+
+	private void link(RouteEntry entry){
+		int slot = (int)(entry.wheelTick & mask);
+		entry.wheelSequence = sequence++;
+		entry.wheelNext = null;
+		entry.wheelPrevious = slotTails[slot];
+		if(slotTails[slot] == null){
+			slotHeads[slot] = entry;
+		} else {
+			slotTails[slot].wheelNext = entry;
+		}
+		slotTails[slot] = entry;
+	}
+
+	private void unlink(RouteEntry entry){
+		int slot = (int)(entry.wheelTick & mask);
+		if(entry.wheelPrevious == null){
+			slotHeads[slot] = entry.wheelNext;
+		} else {
+			entry.wheelPrevious.wheelNext = entry.wheelNext;
+		}
+		if(entry.wheelNext == null){
+			slotTails[slot] = entry.wheelPrevious;
+		} else {
+			entry.wheelNext.wheelPrevious = entry.wheelPrevious;
+		}
+		entry.wheelNext = null;
+		entry.wheelPrevious = null;
+	}
+}
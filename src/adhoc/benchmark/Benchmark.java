@@ -0,0 +1,67 @@
+package adhoc.benchmark;
+
+import adhoc.aodv.exception.AodvException;
+
+/**
+ * A measured operation, e.g. a route lookup. The runner calls run() with a batch of operations and divides the
+ * time taken by the batch size, so the time of the call itself is spread over the batch.
+ * A benchmark may have one parameter, e.g. the number of entries in the table
+ * @author Rabie
+ *
+ */
+public abstract class Benchmark {
+	private final String name;
+	private final String parameterName;
+	private final String parameterValue;
+
+	protected Benchmark(String name){
+		this(name, null, null);
+	}
+
+	/**
+	 * @param name the name of the benchmark, e.g. ForwardRouteTable.get
+	 * @param parameterName the name of the parameter, or null if the benchmark has none
+	 * @param parameterValue the value of the parameter
+	 */
+	protected Benchmark(String name, String parameterName, Object parameterValue){
+		this.name = name;
+		this.parameterName = parameterName;
+		this.parameterValue = parameterValue == null ? null : parameterValue.toString();
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * @return returns the name of the parameter, or null if the benchmark has none
+	 */
+	public String getParameterName(){
+		return parameterName;
+	}
+
+	public String getParameterValue(){
+		return parameterValue;
+	}
+
+	/**
+	 * Prepares the state which the operations work on. Called once before the benchmark is run
+	 * @throws AodvException
+	 */
+	protected void setUp() throws AodvException {
+
+	}
+
+	/**
+	 * Runs the operation the given number of times. The state must be left so the operation can be run again
+	 * @param operations the number of operations to run
+	 * @return returns a value computed from the result of every operation, which keeps the compiler from removing the work
+	 * @throws AodvException
+	 */
+	protected abstract int run(int operations) throws AodvException;
+
+	@Override
+	public String toString(){
+		return parameterName == null ? name : name+" ("+parameterName+"="+parameterValue+")";
+	}
+}
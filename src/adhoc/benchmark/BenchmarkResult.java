@@ -0,0 +1,87 @@
+package adhoc.benchmark;
+
+/**
+ * The average time per operation of a benchmark, over the measurement iterations
+ * @author Rabie
+ *
+ */
+public class BenchmarkResult {
+	//the 99.95% quantiles of the t distribution for 1 to 30 degrees of freedom, giving a 99.9% confidence interval
+	private static final double[] T_QUANTILES = {
+		636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59,
+		4.44, 4.32, 4.22, 4.14, 4.07, 4.01, 3.97, 3.92, 3.88, 3.85,
+		3.82, 3.79, 3.77, 3.75, 3.73, 3.71, 3.69, 3.67, 3.66, 3.65
+	};
+	//the quantile of the normal distribution, used for more samples
+	private static final double Z_QUANTILE = 3.29;
+
+	private final String name;
+	private final String parameterName;
+	private final String parameterValue;
+	private final double[] samples;
+
+	/**
+	 * @param samples the time per operation in nanoseconds of each measurement iteration
+	 */
+	public BenchmarkResult(String name, String parameterName, String parameterValue, double[] samples){
+		this.name = name;
+		this.parameterName = parameterName;
+		this.parameterValue = parameterValue;
+		this.samples = samples.clone();
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * @return returns the name of the parameter, or null if the benchmark has none
+	 */
+	public String getParameterName(){
+		return parameterName;
+	}
+
+	public String getParameterValue(){
+		return parameterValue;
+	}
+
+	/**
+	 * @return returns the name and the parameter value, which identify the result when comparing with a baseline
+	 */
+	public String getKey(){
+		return parameterName == null ? name : name+":"+parameterName+"="+parameterValue;
+	}
+
+	public int getNumberOfSamples(){
+		return samples.length;
+	}
+
+	/**
+	 * @return returns the mean time per operation in nanoseconds
+	 */
+	public double getScore(){
+		double sum = 0;
+		for(double sample : samples){
+			sum += sample;
+		}
+		return sum / samples.length;
+	}
+
+	/**
+	 * @return returns the half width of the 99.9% confidence interval of the score, or NaN if there is a single sample
+	 */
+	public double getScoreError(){
+		int n = samples.length;
+		if(n < 2){
+			return Double.NaN;
+		}
+		double mean = getScore();
+		double sumOfSquares = 0;
+		for(double sample : samples){
+			sumOfSquares += (sample - mean) * (sample - mean);
+		}
+		double standardDeviation = Math.sqrt(sumOfSquares / (n - 1));
+		double quantile = n - 1 <= T_QUANTILES.length ? T_QUANTILES[n - 2] : Z_QUANTILE;
+		return quantile * standardDeviation / Math.sqrt(n);
+	}
+}
@@ -0,0 +1,280 @@
+package adhoc.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import adhoc.aodv.exception.AodvException;
+
+/**
+ * Runs benchmarks in the manner of JMH: every benchmark is warmed up, and then measured over a number of fixed time iterations
+ * giving the average time per operation. The results are written in the CSV format of JMH, so they can be read by the same tools,
+ * and may be compared with the results of an earlier run to catch performance regressions.
+ *
+ * Usage: BenchmarkRunner [-wi warmupIterations] [-i iterations] [-r iterationMillis] [-rff resultFile]
+ * [-baseline resultFile] [-threshold percent] [regexp]
+ * The regular expression selects the benchmarks to run by name. Without a result file the CSV is written to standard output.
+ * With a baseline the exit status is 1 if any benchmark got slower than the threshold allows
+ * @author Rabie
+ *
+ */
+public class BenchmarkRunner {
+	//the minimum time of a batch, so the clock is read rarely compared to the operations
+	private static final long MIN_BATCH_NANOS = 100000;
+	private static final int MAX_BATCH_SIZE = 1 << 24;
+
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long iterationMillis = 200;
+	private final PrintStream log;
+	//the results of the operations end here, so they can not be removed as dead code
+	private volatile int sink;
+
+	/**
+	 * @param log the stream which the progress is written to
+	 */
+	public BenchmarkRunner(PrintStream log){
+		this.log = log;
+	}
+
+	public void setWarmupIterations(int warmupIterations){
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setMeasurementIterations(int measurementIterations){
+		if(measurementIterations < 1){
+			throw new IllegalArgumentException("BenchmarkRunner: at least one measurement iteration is needed");
+		}
+		this.measurementIterations = measurementIterations;
+	}
+
+	/**
+	 * @param iterationMillis the time in milliseconds each warmup and measurement iteration runs
+	 */
+	public void setIterationTime(long iterationMillis){
+		this.iterationMillis = iterationMillis;
+	}
+
+	/**
+	 * @return returns every benchmark of the library
+	 */
+	public static List<Benchmark> getAllBenchmarks(){
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		RoutingBenchmarks.addTo(benchmarks);
+		PduBenchmarks.addTo(benchmarks);
+		return benchmarks;
+	}
+
+	/**
+	 * Runs the benchmark and measures its average time per operation
+	 * @throws AodvException if an operation of the benchmark fails
+	 */
+	public BenchmarkResult run(Benchmark benchmark) throws AodvException {
+		benchmark.setUp();
+		int batchSize = calibrate(benchmark);
+		for(int i = 0; i < warmupIterations; i++){
+			double score = measure(benchmark, batchSize);
+			log.println("# warmup "+(i + 1)+": "+format(score)+" ns/op");
+		}
+		double[] samples = new double[measurementIterations];
+		for(int i = 0; i < measurementIterations; i++){
+			samples[i] = measure(benchmark, batchSize);
+			log.println("iteration "+(i + 1)+": "+format(samples[i])+" ns/op");
+		}
+		BenchmarkResult result = new BenchmarkResult(benchmark.getName(), benchmark.getParameterName(), benchmark.getParameterValue(), samples);
+		log.println(benchmark+": "+format(result.getScore())+" +- "+format(result.getScoreError())+" ns/op");
+		return result;
+	}
+
+	/**
+	 * Runs the benchmarks whose name matches the pattern
+	 * @param filter the pattern which to find in the names, or null to run every benchmark
+	 */
+	public List<BenchmarkResult> runAll(List<Benchmark> benchmarks, Pattern filter) throws AodvException {
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for(Benchmark benchmark : benchmarks){
+			if(filter == null || filter.matcher(benchmark.getName()).find()){
+				log.println("# benchmark: "+benchmark);
+				results.add(run(benchmark));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Writes the results in the CSV format of JMH, with a column for each parameter name
+	 */
+	public static void writeCsv(List<BenchmarkResult> results, PrintStream out){
+		TreeSet<String> parameterNames = new TreeSet<String>();
+		for(BenchmarkResult result : results){
+			if(result.getParameterName() != null){
+				parameterNames.add(result.getParameterName());
+			}
+		}
+		StringBuilder line = new StringBuilder("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\"");
+		for(String parameterName : parameterNames){
+			line.append(",\"Param: ").append(parameterName).append('"');
+		}
+		out.println(line);
+		for(BenchmarkResult result : results){
+			line.setLength(0);
+			line.append('"').append(result.getName()).append("\",\"avgt\",1,").append(result.getNumberOfSamples())
+				.append(',').append(format(result.getScore())).append(',').append(format(result.getScoreError())).append(",\"ns/op\"");
+			for(String parameterName : parameterNames){
+				line.append(',');
+				if(parameterName.equals(result.getParameterName())){
+					line.append(result.getParameterValue());
+				}
+			}
+			out.println(line);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads the scores of a CSV file written by writeCsv()
+	 * @return returns the scores by the key of the results, see BenchmarkResult.getKey()
+	 */
+	public static Map<String, Double> readCsv(String fileName) throws IOException {
+		Map<String, Double> scores = new HashMap<String, Double>();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String[] header = splitCsvLine(reader.readLine());
+			String line;
+			while((line = reader.readLine()) != null){
+				String[] values = splitCsvLine(line);
+				if(values.length < 5){
+					continue;
+				}
+				String key = values[0];
+				for(int column = 7; column < values.length && column < header.length; column++){
+					if(values[column].length() > 0){
+						key += ":"+header[column].substring("Param: ".length())+"="+values[column];
+					}
+				}
+				scores.put(key, Double.valueOf(values[4]));
+			}
+		} finally {
+			reader.close();
+		}
+		return scores;
+	}
+
+	/**
+	 * Compares the results with the baseline, and reports every benchmark which got slower than the threshold allows
+	 * @param thresholdPercent the slowdown in percent which is accepted, to allow for the noise of the measurements
+	 * @return returns the number of regressions
+	 */
+	public int compare(List<BenchmarkResult> results, Map<String, Double> baseline, double thresholdPercent){
+		int regressions = 0;
+		for(BenchmarkResult result : results){
+			Double baselineScore = baseline.get(result.getKey());
+			if(baselineScore == null){
+				log.println("no baseline for: "+result.getKey());
+				continue;
+			}
+			double change = (result.getScore() - baselineScore) / baselineScore * 100;
+			if(change > thresholdPercent){
+				regressions++;
+				log.println("REGRESSION "+result.getKey()+": "+format(baselineScore)+" -> "+format(result.getScore())
+						+" ns/op ("+format(change)+"%)");
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * Finds a batch size which takes long enough that reading the clock does not count
+	 */
+	private int calibrate(Benchmark benchmark) throws AodvException {
+		int batchSize = 1;
+		while(batchSize < MAX_BATCH_SIZE){
+			long start = System.nanoTime();
+			sink ^= benchmark.run(batchSize);
+			if(System.nanoTime() - start >= MIN_BATCH_NANOS){
+				break;
+			}
+			batchSize <<= 1;
+		}
+		return batchSize;
+	}
+
+	/**
+	 * Runs batches for an iteration
+	 * @return returns the average time per operation in nanoseconds
+	 */
+	private double measure(Benchmark benchmark, int batchSize) throws AodvException {
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + iterationMillis * 1000000;
+		long now;
+		do {
+			sink ^= benchmark.run(batchSize);
+			operations += batchSize;
+			now = System.nanoTime();
+		} while(now < end);
+		return (double)(now - start) / operations;
+	}
+
+	private static String[] splitCsvLine(String line){
+		if(line == null){
+			return new String[0];
+		}
+		String[] values = line.split(",", -1);
+		for(int i = 0; i < values.length; i++){
+			values[i] = values[i].replace("\"", "").trim();
+		}
+		return values;
+	}
+
+	private static String format(double value){
+		return Double.isNaN(value) ? "NaN" : String.format("%.3f", value);
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner(System.err);
+		String resultFile = null;
+		String baselineFile = null;
+		double thresholdPercent = 10;
+		Pattern filter = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-wi")){
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if(args[i].equals("-i")){
+				runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+			} else if(args[i].equals("-r")){
+				runner.setIterationTime(Long.parseLong(args[++i]));
+			} else if(args[i].equals("-rff")){
+				resultFile = args[++i];
+			} else if(args[i].equals("-baseline")){
+				baselineFile = args[++i];
+			} else if(args[i].equals("-threshold")){
+				thresholdPercent = Double.parseDouble(args[++i]);
+			} else {
+				filter = Pattern.compile(args[i]);
+			}
+		}
+		List<BenchmarkResult> results = runner.runAll(getAllBenchmarks(), filter);
+		if(resultFile == null){
+			writeCsv(results, System.out);
+		} else {
+			PrintStream out = new PrintStream(new FileOutputStream(resultFile));
+			try {
+				writeCsv(results, out);
+			} finally {
+				out.close();
+			}
+		}
+		if(baselineFile != null && runner.compare(results, readCsv(baselineFile), thresholdPercent) > 0){
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package adhoc.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.exception.InvalidNodeAddressException;
+import adhoc.simulation.LatencyRecorder;
+import adhoc.simulation.Topology;
+import adhoc.transport.LoopbackNetwork;
+
+/**
+ * Measures a flow of user packets across several hops of real nodes, connected by a LoopbackNetwork and running on the system clock.
+ * The source is given packets at a fixed rate, and the benchmark reports the goodput at the destination, the one-way latency
+ * and the depths of the queues at every node, so it shows how the sender and receiver threads of the relays keep up with the load.
+ *
+ * Usage: MultiHopBenchmark chain hops | grid rows columns [-rate packetsPerSecond,...] [-payload bytes,...] [-warmup millis] [-time millis]
+ * Every combination of rate and payload size is run on a new network. A rate of 0 sends the packets as fast as the source takes them
+ * @author Rabie
+ *
+ */
+public class MultiHopBenchmark {
+	//the packets carry the time they were handed to the source, followed by their sequence number
+	private static final int PAYLOAD_HEADER_SIZE = 12;
+	private static final long SAMPLE_INTERVAL_MILLIS = 10;
+
+	private final LoopbackNetwork network = new LoopbackNetwork();
+	private final Node[] nodes;
+	private final int sourceAddress;
+	private final int destinationAddress;
+	private final int hops;
+	private final FlowListener flow = new FlowListener();
+	private boolean isStarted = false;
+
+	/**
+	 * Creates a node for every node of the topology
+	 * @param topology the nodes and links of the network
+	 * @param sourceAddress the node which sends the packets
+	 * @param destinationAddress the node which receives them
+	 * @throws InvalidNodeAddressException
+	 */
+	public MultiHopBenchmark(Topology topology, int sourceAddress, int destinationAddress) throws InvalidNodeAddressException {
+		hops = topology.getDistance(sourceAddress, destinationAddress);
+		if(hops <= 0){
+			throw new IllegalArgumentException("MultiHopBenchmark: the destination must be reachable from the source");
+		}
+		this.sourceAddress = sourceAddress;
+		this.destinationAddress = destinationAddress;
+		nodes = new Node[topology.getNumberOfNodes()];
+		for(int address = 0; address < nodes.length; address++){
+			nodes[address] = new Node(address, network.createTransport(address));
+		}
+		for(int[] link : topology.getLinks()){
+			network.link(link[0], link[1]);
+		}
+		nodes[sourceAddress].addListener(flow);
+		nodes[destinationAddress].addListener(flow);
+	}
+
+	/**
+	 * A chain where the packets are sent from the first node to the last
+	 */
+	public static MultiHopBenchmark chain(int hops) throws InvalidNodeAddressException {
+		return new MultiHopBenchmark(Topology.chain(hops + 1), 0, hops);
+	}
+
+	/**
+	 * A grid where the packets are sent from one corner to the opposite corner
+	 */
+	public static MultiHopBenchmark grid(int rows, int columns) throws InvalidNodeAddressException {
+		return new MultiHopBenchmark(Topology.grid(rows, columns), 0, rows * columns - 1);
+	}
+
+	public Node getNode(int address){
+		return nodes[address];
+	}
+
+	/**
+	 * Sends packets for the warmup time, which also lets the route be discovered, and then measures for the given time.
+	 * The nodes are started by the first run
+	 * @param rate the packets per second handed to the source, or 0 to hand them over as fast as the source takes them
+	 * @param payloadSize the size of each packet, at least 12 bytes to hold the send time and sequence number
+	 * @param warmupMillis the time to send before measuring
+	 * @param durationMillis the time to measure
+	 * @return returns the measured goodput, latency and queue depths
+	 * @throws InterruptedException
+	 */
+	public MultiHopResult run(int rate, int payloadSize, long warmupMillis, long durationMillis) throws InterruptedException {
+		if(rate < 0 || durationMillis <= 0){
+			throw new IllegalArgumentException("MultiHopBenchmark: the rate can not be negative and the duration must be positive");
+		}
+		if(!isStarted){
+			isStarted = true;
+			for(Node node : nodes){
+				node.startThread();
+			}
+		}
+		int size = Math.max(PAYLOAD_HEADER_SIZE, payloadSize);
+		long startTime = System.nanoTime();
+		long measureStartTime = startTime + warmupMillis * 1000000;
+		long endTime = measureStartTime + durationMillis * 1000000;
+		flow.reset(measureStartTime, endTime);
+		QueueSampler sampler = new QueueSampler();
+		Thread samplerThread = null;
+		long period = rate == 0 ? 0 : 1000000000L / rate;
+		long nextSendTime = startTime;
+		int sequenceNumber = 0;
+		long packetsSent = 0;
+		while(true){
+			long now = System.nanoTime();
+			if(now >= endTime){
+				break;
+			}
+			if(samplerThread == null && now >= measureStartTime){
+				samplerThread = new Thread(sampler, "QueueSampler");
+				samplerThread.start();
+			}
+			if(now < nextSendTime){
+				LockSupport.parkNanos(nextSendTime - now);
+				continue;
+			}
+			//a late packet is sent at once, so the offered load is kept even if the source falls behind
+			nextSendTime += period;
+			ByteBuffer payload = ByteBuffer.allocate(size);
+			payload.putLong(System.nanoTime());
+			payload.putInt(sequenceNumber);
+			nodes[sourceAddress].sendData(sequenceNumber++, destinationAddress, payload.array());
+			if(now >= measureStartTime){
+				packetsSent++;
+			}
+		}
+		if(samplerThread != null){
+			sampler.stop();
+			samplerThread.join();
+		}
+		return new MultiHopResult(hops, rate, size, durationMillis, packetsSent, flow.packetsDelivered.get(), flow.packetsDropped.get(),
+				flow.bytesDelivered.get(), flow.latency, sampler.getQueueDepths());
+	}
+
+	/**
+	 * Stops the threads of every node
+	 */
+	public void stop(){
+		for(Node node : nodes){
+			node.stopThread();
+		}
+	}
+
+	/**
+	 * Counts the packets delivered to the destination and dropped by the source while the benchmark measures.
+	 * Called by the receiver thread of the destination and the sender thread of the source
+	 */
+	private static class FlowListener extends NodeAdapter {
+		private volatile long measureStartTime = Long.MAX_VALUE;
+		private volatile long endTime = Long.MAX_VALUE;
+		private volatile LatencyRecorder latency = new LatencyRecorder();
+		private final AtomicLong packetsDelivered = new AtomicLong();
+		private final AtomicLong packetsDropped = new AtomicLong();
+		private final AtomicLong bytesDelivered = new AtomicLong();
+
+		void reset(long measureStartTime, long endTime){
+			this.measureStartTime = measureStartTime;
+			this.endTime = endTime;
+			latency = new LatencyRecorder();
+			packetsDelivered.set(0);
+			packetsDropped.set(0);
+			bytesDelivered.set(0);
+		}
+
+		@Override
+		public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+			long now = System.nanoTime();
+			if(data.remaining() < PAYLOAD_HEADER_SIZE || now >= endTime){
+				return;
+			}
+			long sendTime = data.getLong(data.position());
+			//only the packets sent while measuring count, so the route discovery is left out
+			if(sendTime >= measureStartTime){
+				latency.record(now - sendTime);
+				packetsDelivered.incrementAndGet();
+				bytesDelivered.addAndGet(data.remaining());
+			}
+		}
+
+		@Override
+		public void onDataDropped(int packetIdentifier) {
+			if(System.nanoTime() >= measureStartTime){
+				packetsDropped.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Samples the queues of every node until it is stopped
+	 */
+	private class QueueSampler implements Runnable {
+		private volatile boolean keepRunning = true;
+		private int samples = 0;
+		private final long[] forwardQueueSums = new long[nodes.length];
+		private final int[] forwardQueueMaxima = new int[nodes.length];
+		private final long[] userQueueSums = new long[nodes.length];
+		private final int[] userQueueMaxima = new int[nodes.length];
+		private final int[] controlQueueMaxima = new int[nodes.length];
+		private final long[] receiveBacklogSums = new long[nodes.length];
+		private final int[] receiveBacklogMaxima = new int[nodes.length];
+
+		void stop(){
+			keepRunning = false;
+		}
+
+		public void run(){
+			while(keepRunning){
+				for(int i = 0; i < nodes.length; i++){
+					int forwardQueue = nodes[i].getForwardQueue().size();
+					int userQueue = nodes[i].getUserQueue().size();
+					int receiveBacklog = nodes[i].getReceiveBacklog();
+					forwardQueueSums[i] += forwardQueue;
+					forwardQueueMaxima[i] = Math.max(forwardQueueMaxima[i], forwardQueue);
+					userQueueSums[i] += userQueue;
+					userQueueMaxima[i] = Math.max(userQueueMaxima[i], userQueue);
+					controlQueueMaxima[i] = Math.max(controlQueueMaxima[i], nodes[i].getControlQueue().size());
+					receiveBacklogSums[i] += receiveBacklog;
+					receiveBacklogMaxima[i] = Math.max(receiveBacklogMaxima[i], receiveBacklog);
+				}
+				samples++;
+				try {
+					Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * @return returns the queue depths of every node. Only used after the sampler thread has stopped
+		 */
+		MultiHopResult.QueueDepth[] getQueueDepths(){
+			MultiHopResult.QueueDepth[] depths = new MultiHopResult.QueueDepth[nodes.length];
+			double count = Math.max(1, samples);
+			for(int i = 0; i < nodes.length; i++){
+				depths[i] = new MultiHopResult.QueueDepth(	i, forwardQueueSums[i] / count, forwardQueueMaxima[i],
+															userQueueSums[i] / count, userQueueMaxima[i], controlQueueMaxima[i],
+															receiveBacklogSums[i] / count, receiveBacklogMaxima[i]	);
+			}
+			return depths;
+		}
+	}
+
+	private static List<Integer> parseList(String value){
+		List<Integer> values = new ArrayList<Integer>();
+		for(String item : value.split(",")){
+			values.add(Integer.valueOf(item.trim()));
+		}
+		return values;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2){
+			System.err.println("Usage: MultiHopBenchmark chain hops | grid rows columns [-rate packetsPerSecond,...] [-payload bytes,...] "
+								+"[-warmup millis] [-time millis]");
+			System.exit(2);
+		}
+		int argument = 0;
+		String topology = args[argument++];
+		int first = Integer.parseInt(args[argument++]);
+		int second = topology.equals("grid") ? Integer.parseInt(args[argument++]) : 0;
+		List<Integer> rates = parseList("1000");
+		List<Integer> payloadSizes = parseList("256");
+		long warmupMillis = 2000;
+		long durationMillis = 5000;
+		for(; argument < args.length; argument++){
+			if(args[argument].equals("-rate")){
+				rates = parseList(args[++argument]);
+			} else if(args[argument].equals("-payload")){
+				payloadSizes = parseList(args[++argument]);
+			} else if(args[argument].equals("-warmup")){
+				warmupMillis = Long.parseLong(args[++argument]);
+			} else if(args[argument].equals("-time")){
+				durationMillis = Long.parseLong(args[++argument]);
+			} else {
+				throw new IllegalArgumentException("MultiHopBenchmark: unknown option: "+args[argument]);
+			}
+		}
+		for(int payloadSize : payloadSizes){
+			for(int rate : rates){
+				MultiHopBenchmark benchmark = topology.equals("grid") ? grid(first, second) : chain(first);
+				try {
+					System.out.println(benchmark.run(rate, payloadSize, warmupMillis, durationMillis));
+				} finally {
+					benchmark.stop();
+				}
+			}
+		}
+	}
+}
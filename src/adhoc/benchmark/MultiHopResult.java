@@ -0,0 +1,191 @@
+package adhoc.benchmark;
+
+import adhoc.simulation.LatencyRecorder;
+
+/**
+ * The outcome of a MultiHopBenchmark run: the goodput and one-way latency of the flow, and the queue depths seen at every node
+ * @author Rabie
+ *
+ */
+public class MultiHopResult {
+	private final int hops;
+	private final int rate;
+	private final int payloadSize;
+	private final long durationMillis;
+	private final long packetsSent;
+	private final long packetsDelivered;
+	private final long packetsDropped;
+	private final long bytesDelivered;
+	//the latencies in nanoseconds
+	private final LatencyRecorder latency;
+	private final QueueDepth[] queueDepths;
+
+	/**
+	 * The depths of the queues of a node, sampled while the benchmark ran
+	 */
+	public static class QueueDepth {
+		private final int nodeAddress;
+		private final double meanForwardQueue;
+		private final int maxForwardQueue;
+		private final double meanUserQueue;
+		private final int maxUserQueue;
+		private final int maxControlQueue;
+		private final double meanReceiveBacklog;
+		private final int maxReceiveBacklog;
+
+		QueueDepth(	int nodeAddress, double meanForwardQueue, int maxForwardQueue, double meanUserQueue, int maxUserQueue,
+					int maxControlQueue, double meanReceiveBacklog, int maxReceiveBacklog	){
+			this.nodeAddress = nodeAddress;
+			this.meanForwardQueue = meanForwardQueue;
+			this.maxForwardQueue = maxForwardQueue;
+			this.meanUserQueue = meanUserQueue;
+			this.maxUserQueue = maxUserQueue;
+			this.maxControlQueue = maxControlQueue;
+			this.meanReceiveBacklog = meanReceiveBacklog;
+			this.maxReceiveBacklog = maxReceiveBacklog;
+		}
+
+		public int getNodeAddress(){
+			return nodeAddress;
+		}
+
+		public double getMeanForwardQueue(){
+			return meanForwardQueue;
+		}
+
+		public int getMaxForwardQueue(){
+			return maxForwardQueue;
+		}
+
+		public double getMeanUserQueue(){
+			return meanUserQueue;
+		}
+
+		public int getMaxUserQueue(){
+			return maxUserQueue;
+		}
+
+		public int getMaxControlQueue(){
+			return maxControlQueue;
+		}
+
+		public double getMeanReceiveBacklog(){
+			return meanReceiveBacklog;
+		}
+
+		public int getMaxReceiveBacklog(){
+			return maxReceiveBacklog;
+		}
+
+		/**
+		 * @return returns true if any queue of the node held a packet
+		 */
+		public boolean isUsed(){
+			return maxForwardQueue > 0 || maxUserQueue > 0 || maxControlQueue > 0 || maxReceiveBacklog > 0;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("node=%d forwardQueue.mean=%.2f forwardQueue.max=%d userQueue.mean=%.2f userQueue.max=%d "
+					+"controlQueue.max=%d receiveBacklog.mean=%.2f receiveBacklog.max=%d",
+					nodeAddress, meanForwardQueue, maxForwardQueue, meanUserQueue, maxUserQueue,
+					maxControlQueue, meanReceiveBacklog, maxReceiveBacklog);
+		}
+	}
+
+	MultiHopResult(int hops, int rate, int payloadSize, long durationMillis, long packetsSent, long packetsDelivered,
+			long packetsDropped, long bytesDelivered, LatencyRecorder latency, QueueDepth[] queueDepths){
+		this.hops = hops;
+		this.rate = rate;
+		this.payloadSize = payloadSize;
+		this.durationMillis = durationMillis;
+		this.packetsSent = packetsSent;
+		this.packetsDelivered = packetsDelivered;
+		this.packetsDropped = packetsDropped;
+		this.bytesDelivered = bytesDelivered;
+		this.latency = latency;
+		this.queueDepths = queueDepths;
+	}
+
+	public int getHops(){
+		return hops;
+	}
+
+	/**
+	 * @return returns the offered load in packets per second, or 0 if the packets were sent as fast as the node took them
+	 */
+	public int getRate(){
+		return rate;
+	}
+
+	public int getPayloadSize(){
+		return payloadSize;
+	}
+
+	public long getPacketsSent(){
+		return packetsSent;
+	}
+
+	public long getPacketsDelivered(){
+		return packetsDelivered;
+	}
+
+	/**
+	 * @return returns the number of packets the source reported as dropped
+	 */
+	public long getPacketsDropped(){
+		return packetsDropped;
+	}
+
+	/**
+	 * @return returns the delivered packets per second
+	 */
+	public double getGoodputPackets(){
+		return packetsDelivered * 1000.0 / durationMillis;
+	}
+
+	/**
+	 * @return returns the delivered payload bytes per second
+	 */
+	public double getGoodputBytes(){
+		return bytesDelivered * 1000.0 / durationMillis;
+	}
+
+	/**
+	 * @return returns the one-way latencies from handing a packet to the source until it is received by the destination, in nanoseconds
+	 */
+	public LatencyRecorder getLatency(){
+		return latency;
+	}
+
+	/**
+	 * @return returns the queue depths of every node, indexed by the node address
+	 */
+	public QueueDepth[] getQueueDepths(){
+		return queueDepths.clone();
+	}
+
+	/**
+	 * Writes the result as key=value pairs, one line for the flow and one for each node whose queues were used.
+	 * The latencies are written in microseconds and the goodput per second
+	 */
+	@Override
+	public String toString(){
+		StringBuilder result = new StringBuilder(String.format(
+				"hops=%d rate=%d payload=%d duration=%d sent=%d delivered=%d dropped=%d goodput.packets=%.1f goodput.bytes=%.1f "
+				+"latency.p50=%.1f latency.p99=%.1f latency.p999=%.1f latency.max=%.1f",
+				hops, rate, payloadSize, durationMillis, packetsSent, packetsDelivered, packetsDropped,
+				getGoodputPackets(), getGoodputBytes(), micros(latency.getPercentile(50)), micros(latency.getPercentile(99)),
+				micros(latency.getPercentile(99.9)), micros(latency.getMax())));
+		for(QueueDepth depth : queueDepths){
+			if(depth.isUsed()){
+				result.append('\n').append(depth);
+			}
+		}
+		return result.toString();
+	}
+
+	private static double micros(long nanos){
+		return nanos / 1000.0;
+	}
+}
@@ -0,0 +1,180 @@
+package adhoc.benchmark;
+
+import java.util.List;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.pdu.AggregatePacket;
+import adhoc.aodv.pdu.HelloPacket;
+import adhoc.aodv.pdu.Packet;
+import adhoc.aodv.pdu.RERR;
+import adhoc.aodv.pdu.RREP;
+import adhoc.aodv.pdu.RREQ;
+import adhoc.aodv.pdu.SegmentPacket;
+import adhoc.aodv.pdu.UserDataPacket;
+
+/**
+ * Benchmarks of encoding and decoding every PDU type which is sent between nodes.
+ * The internal messages are left out, since they never leave the node
+ * @author Rabie
+ *
+ */
+public class PduBenchmarks {
+	private static final int[] PAYLOAD_SIZES = {64, 1024};
+	//the number of unreachable nodes in the RERR, and of packets in the aggregate
+	private static final int ITEMS = 4;
+
+	public static void addTo(List<Benchmark> benchmarks){
+		addPair(benchmarks, "RREQ", null, new PacketFactory() {
+			public Packet create(){
+				return new RREQ();
+			}
+			public Packet create(int payloadSize){
+				RREQ rreq = new RREQ(1, 2, Constants.FIRST_SEQUENCE_NUMBER, Constants.UNKNOWN_SEQUENCE_NUMBER, 3);
+				rreq.incrementHopCount();
+				return rreq;
+			}
+		});
+		addPair(benchmarks, "RREP", null, new PacketFactory() {
+			public Packet create(){
+				return new RREP();
+			}
+			public Packet create(int payloadSize){
+				return new RREP(1, 2, Constants.FIRST_SEQUENCE_NUMBER, Constants.FIRST_SEQUENCE_NUMBER, 3);
+			}
+		});
+		addPair(benchmarks, "RERR", null, new PacketFactory() {
+			public Packet create(){
+				return new RERR();
+			}
+			public Packet create(int payloadSize){
+				RERR rerr = new RERR(1, Constants.FIRST_SEQUENCE_NUMBER, 2);
+				for(int i = 1; i < ITEMS; i++){
+					rerr.addUnreachableNode(1 + i, Constants.FIRST_SEQUENCE_NUMBER);
+				}
+				return rerr;
+			}
+		});
+		addPair(benchmarks, "HelloPacket", null, new PacketFactory() {
+			public Packet create(){
+				return new HelloPacket();
+			}
+			public Packet create(int payloadSize){
+				return new HelloPacket(1, Constants.FIRST_SEQUENCE_NUMBER);
+			}
+		});
+		for(int payloadSize : PAYLOAD_SIZES){
+			addPair(benchmarks, "UserDataPacket", payloadSize, new PacketFactory() {
+				public Packet create(){
+					return new UserDataPacket();
+				}
+				public Packet create(int payloadSize){
+					return new UserDataPacket(1, 2, new byte[payloadSize], 3);
+				}
+			});
+			addPair(benchmarks, "SegmentPacket", payloadSize, new PacketFactory() {
+				public Packet create(){
+					return new SegmentPacket();
+				}
+				public Packet create(int payloadSize){
+					//the second segment of a message of two full segments
+					return new SegmentPacket(1, 2, new byte[2 * payloadSize], 3, 4, payloadSize, 1);
+				}
+			});
+			addPair(benchmarks, "AggregatePacket", payloadSize, new PacketFactory() {
+				public Packet create(){
+					return new AggregatePacket();
+				}
+				public Packet create(int payloadSize){
+					AggregatePacket aggregate = new AggregatePacket(2);
+					byte[] frame = new UserDataPacket(1, 2, new byte[payloadSize / ITEMS], 3).toBytes();
+					for(int i = 0; i < ITEMS; i++){
+						aggregate.addFrame(frame);
+					}
+					return aggregate;
+				}
+			});
+		}
+	}
+
+	private static void addPair(List<Benchmark> benchmarks, String type, Integer payloadSize, PacketFactory factory){
+		benchmarks.add(new Encode(type, payloadSize, factory));
+		benchmarks.add(new Decode(type, payloadSize, factory));
+	}
+
+	private interface PacketFactory {
+		/**
+		 * @return returns an empty packet which to parse into
+		 */
+		Packet create();
+
+		/**
+		 * @param payloadSize the size of the user data, for the packets which carry any
+		 * @return returns a packet ready to be encoded
+		 */
+		Packet create(int payloadSize);
+	}
+
+	private static abstract class PduBenchmark extends Benchmark {
+		protected final PacketFactory factory;
+		protected final int payloadSize;
+
+		PduBenchmark(String name, Integer payloadSize, PacketFactory factory){
+			super(name, payloadSize == null ? null : "payloadSize", payloadSize);
+			this.factory = factory;
+			this.payloadSize = payloadSize == null ? 0 : payloadSize;
+		}
+	}
+
+	/**
+	 * Encodes the packet into a new array, as done for every packet sent
+	 */
+	private static class Encode extends PduBenchmark {
+		private Packet packet;
+
+		Encode(String type, Integer payloadSize, PacketFactory factory){
+			super(type+".encode", payloadSize, factory);
+		}
+
+		@Override
+		protected void setUp() {
+			packet = factory.create(payloadSize);
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				result += packet.toBytes().length;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Parses the encoded packet into a new packet, as done for every packet received
+	 */
+	private static class Decode extends PduBenchmark {
+		private byte[] encoded;
+
+		Decode(String type, Integer payloadSize, PacketFactory factory){
+			super(type+".decode", payloadSize, factory);
+		}
+
+		@Override
+		protected void setUp() {
+			encoded = factory.create(payloadSize).toBytes();
+		}
+
+		@Override
+		protected int run(int operations) throws AodvException {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				Packet packet = factory.create();
+				packet.parseBytes(encoded);
+				result += packet.hashCode();
+			}
+			return result;
+		}
+	}
+}
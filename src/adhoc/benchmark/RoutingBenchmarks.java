@@ -0,0 +1,285 @@
+package adhoc.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Receiver;
+import adhoc.aodv.VirtualClock;
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.pdu.RERR;
+import adhoc.aodv.routes.ForwardRouteEntry;
+import adhoc.aodv.routes.ForwardRouteTable;
+import adhoc.aodv.routes.RouteRequestEntry;
+import adhoc.aodv.routes.RouteRequestTable;
+
+/**
+ * Benchmarks of the forward route table, the route request table and the comparison of route information.
+ * The tables use a clock which stands still, so no entry expires while it is measured
+ * @author Rabie
+ *
+ */
+public class RoutingBenchmarks {
+	private static final int[] TABLE_SIZES = {10, 100, 250};
+	//the routes of a table are spread over this many neighbours
+	private static final int NEIGHBOURS = 8;
+
+	public static void addTo(List<Benchmark> benchmarks){
+		for(int size : TABLE_SIZES){
+			benchmarks.add(new ForwardTableAdd(size));
+			benchmarks.add(new ForwardTableGet(size));
+			benchmarks.add(new ForwardTableUpdate(size));
+			benchmarks.add(new ForwardTableSetValid(size));
+			benchmarks.add(new ForwardTableFindBrokenRoutes(size));
+		}
+		for(int size : TABLE_SIZES){
+			benchmarks.add(new RequestTableDuplicateCheck(size, true));
+			benchmarks.add(new RequestTableDuplicateCheck(size, false));
+		}
+		benchmarks.add(new IncomingRouteInfoBetter());
+	}
+
+	/**
+	 * Creates the route to a destination. The first destinations are the neighbours, and the others are reached through them
+	 */
+	private static ForwardRouteEntry createRoute(int destination, int sequenceNumber) throws AodvException {
+		int nextHop = destination < NEIGHBOURS ? destination : destination % NEIGHBOURS;
+		ForwardRouteEntry route = new ForwardRouteEntry(destination, nextHop, nextHop == destination ? 1 : 2, sequenceNumber);
+		route.addPrecursorAddress((destination + 1) % Constants.MAX_VALID_NODE_ADDRESS);
+		return route;
+	}
+
+	/**
+	 * A forward route table holding the routes to the destinations 0 to entries-1
+	 */
+	private static abstract class ForwardTableBenchmark extends Benchmark {
+		protected final int entries;
+		protected ForwardRouteTable table;
+
+		ForwardTableBenchmark(String operation, int entries){
+			super("ForwardRouteTable."+operation, "entries", entries);
+			this.entries = entries;
+		}
+
+		@Override
+		protected void setUp() throws AodvException {
+			table = new ForwardRouteTable(new VirtualClock(0));
+			for(int destination = 0; destination < entries; destination++){
+				table.addForwardRouteEntry(createRoute(destination, Constants.FIRST_SEQUENCE_NUMBER));
+			}
+		}
+	}
+
+	/**
+	 * Adds a route to the table and removes it again, so the table keeps its size
+	 */
+	private static class ForwardTableAdd extends ForwardTableBenchmark {
+		private ForwardRouteEntry route;
+
+		ForwardTableAdd(int entries){
+			super("add", entries);
+		}
+
+		@Override
+		protected void setUp() throws AodvException {
+			super.setUp();
+			route = createRoute(entries - 1, Constants.FIRST_SEQUENCE_NUMBER);
+			table.removeEntry(entries - 1);
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				if(table.addForwardRouteEntry(route) && table.removeEntry(entries - 1)){
+					result++;
+				}
+			}
+			return result;
+		}
+	}
+
+	private static class ForwardTableGet extends ForwardTableBenchmark {
+		ForwardTableGet(int entries){
+			super("get", entries);
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			int destination = 0;
+			for(int i = 0; i < operations; i++){
+				result += table.lookupForwardRouteEntry(destination).getNextHop();
+				if(++destination == entries){
+					destination = 0;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Replaces the routes with routes of a newer sequence number, alternating between two sets of routes
+	 */
+	private static class ForwardTableUpdate extends ForwardTableBenchmark {
+		private ForwardRouteEntry[][] routes;
+		private int next = 0;
+
+		ForwardTableUpdate(int entries){
+			super("update", entries);
+		}
+
+		@Override
+		protected void setUp() throws AodvException {
+			super.setUp();
+			routes = new ForwardRouteEntry[2][entries];
+			for(int destination = 0; destination < entries; destination++){
+				routes[0][destination] = createRoute(destination, Constants.FIRST_SEQUENCE_NUMBER + 1);
+				routes[1][destination] = createRoute(destination, Constants.FIRST_SEQUENCE_NUMBER + 2);
+			}
+		}
+
+		@Override
+		protected int run(int operations) throws AodvException {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				if(table.updateForwardRouteEntry(routes[(next / entries) & 1][next % entries])){
+					result++;
+				}
+				if(++next == 2 * entries){
+					next = 0;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Invalidates the routes one after another, and then makes them valid again
+	 */
+	private static class ForwardTableSetValid extends ForwardTableBenchmark {
+		private int next = 0;
+
+		ForwardTableSetValid(int entries){
+			super("setValid", entries);
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				boolean isValid = next >= entries;
+				if(table.setValid(next % entries, Constants.FIRST_SEQUENCE_NUMBER, isValid)){
+					result++;
+				}
+				if(++next == 2 * entries){
+					next = 0;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Finds the routes through each of the neighbours in turn, as done when a neighbour is lost
+	 */
+	private static class ForwardTableFindBrokenRoutes extends ForwardTableBenchmark {
+		ForwardTableFindBrokenRoutes(int entries){
+			super("findBrokenRoutes", entries);
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				RERR rerr = table.findBrokenRoutes(i % NEIGHBOURS);
+				if(rerr != null){
+					result += rerr.getNumberOfUnreachableNodes();
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Checks whether a RREQ has been seen before, for RREQs which are in the table or for new ones
+	 */
+	private static class RequestTableDuplicateCheck extends Benchmark {
+		private final int entries;
+		private final boolean isDuplicate;
+		private RouteRequestTable table;
+
+		RequestTableDuplicateCheck(int entries, boolean isDuplicate){
+			super(isDuplicate ? "RouteRequestTable.duplicateCheck" : "RouteRequestTable.newRequestCheck", "entries", entries);
+			this.entries = entries;
+			this.isDuplicate = isDuplicate;
+		}
+
+		@Override
+		protected void setUp() throws AodvException {
+			table = new RouteRequestTable(new VirtualClock(0));
+			for(int i = 0; i < entries; i++){
+				//a few sources, each with a run of broadcast IDs
+				table.addRouteRequestEntry(new RouteRequestEntry(i / NEIGHBOURS, i % NEIGHBOURS, Constants.UNKNOWN_SEQUENCE_NUMBER, 1, 0), true);
+			}
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			int next = 0;
+			//the broadcast IDs after the ones in the table are new
+			int broadcastIdOffset = isDuplicate ? 0 : entries;
+			for(int i = 0; i < operations; i++){
+				if(table.routeRequestEntryExists(next % NEIGHBOURS, next / NEIGHBOURS + broadcastIdOffset)){
+					result++;
+				}
+				if(++next == entries){
+					next = 0;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Compares route information with sequence numbers near each other and across the wrap around of the sequence numbers
+	 */
+	private static class IncomingRouteInfoBetter extends Benchmark {
+		private static final int CASES = 256;
+		private final int[] incomingSequenceNumbers = new int[CASES];
+		private final int[] currentSequenceNumbers = new int[CASES];
+		private final int[] incomingHopCounts = new int[CASES];
+		private final int[] currentHopCounts = new int[CASES];
+
+		IncomingRouteInfoBetter(){
+			super("Receiver.isIncomingRouteInfoBetter");
+		}
+
+		@Override
+		protected void setUp() {
+			Random random = new Random(1);
+			for(int i = 0; i < CASES; i++){
+				int current = random.nextInt(Constants.MAX_SEQUENCE_NUMBER);
+				int difference = i % 4 == 0 ? Constants.SEQUENCE_NUMBER_INTERVAL + random.nextInt(1000) : random.nextInt(5) - 2;
+				currentSequenceNumbers[i] = current;
+				incomingSequenceNumbers[i] = (int)(((long)current + difference) % Constants.MAX_SEQUENCE_NUMBER);
+				currentHopCounts[i] = 1 + random.nextInt(8);
+				incomingHopCounts[i] = 1 + random.nextInt(8);
+			}
+		}
+
+		@Override
+		protected int run(int operations) {
+			int result = 0;
+			for(int i = 0; i < operations; i++){
+				int index = i & (CASES - 1);
+				if(Receiver.isIncomingRouteInfoBetter(	incomingSequenceNumbers[index], currentSequenceNumbers[index],
+														incomingHopCounts[index], currentHopCounts[index]	)){
+					result++;
+				}
+			}
+			return result;
+		}
+	}
+}
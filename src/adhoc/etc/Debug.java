@@ -2,16 +2,88 @@ package adhoc.etc;
 
 import java.io.PrintStream;
 
+/**
+ * Leveled debug output of the library. Nothing is printed unless a stream is set,
+ * and messages below the current level are discarded.
+ * A message is only turned into text when its level is enabled, so the methods taking an object or an int
+ * should be used on frequent paths instead of concatenating the message at the call site.
+ * Dumps of the route tables are printed at the TRACE level, by passing the table itself as the message
+ * @author Rabie
+ *
+ */
 public class Debug {
-	static private PrintStream debugStream = null;
-	
+	public static final int TRACE = 0;
+	public static final int DEBUG = 1;
+	public static final int INFO = 2;
+	public static final int WARN = 3;
+	public static final int ERROR = 4;
+
+	static private volatile PrintStream debugStream = null;
+	static private volatile int level = DEBUG;
+
 	static public void setDebugStream( PrintStream printstream){
 		debugStream = printstream;
 	}
-		
+
+	/**
+	 * @param minimumLevel messages below this level are discarded
+	 */
+	static public void setLevel(int minimumLevel){
+		level = minimumLevel;
+	}
+
+	static public int getLevel(){
+		return level;
+	}
+
+	/**
+	 * @param messageLevel the level of a message which is about to be printed
+	 * @return returns true if a message of the given level would be printed
+	 */
+	static public boolean isEnabled(int messageLevel){
+		return debugStream != null && messageLevel >= level;
+	}
+
 	static public void print(String s){
-		if(debugStream != null){
-			debugStream.println(s);
+		print(DEBUG, s);
+	}
+
+	static public void print(int messageLevel, String s){
+		PrintStream stream = debugStream;
+		if(stream != null && messageLevel >= level){
+			stream.println(s);
+		}
+	}
+
+	/**
+	 * The message is converted by its toString() method only if the level is enabled
+	 * @param messageLevel the level of the message
+	 * @param message the object which describes the message, e.g. a route table
+	 */
+	static public void print(int messageLevel, Object message){
+		PrintStream stream = debugStream;
+		if(stream != null && messageLevel >= level){
+			stream.println(message);
+		}
+	}
+
+	/**
+	 * Prints the message followed by the value. The two are only concatenated if the level is enabled
+	 */
+	static public void print(int messageLevel, String message, int value){
+		PrintStream stream = debugStream;
+		if(stream != null && messageLevel >= level){
+			stream.println(message+value);
+		}
+	}
+
+	/**
+	 * Prints the messages each followed by its value. The parts are only concatenated if the level is enabled
+	 */
+	static public void print(int messageLevel, String message, int value, String secondMessage, int secondValue){
+		PrintStream stream = debugStream;
+		if(stream != null && messageLevel >= level){
+			stream.println(message+value+secondMessage+secondValue);
 		}
 	}
 }
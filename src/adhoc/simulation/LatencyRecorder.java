@@ -0,0 +1,61 @@
+package adhoc.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples and computes their percentiles. The samples are kept, so the percentiles are exact
+ * @author Rabie
+ *
+ */
+public class LatencyRecorder {
+	//guarded by this
+	private long[] samples = new long[64];
+	private int count = 0;
+
+	public synchronized void record(long latency){
+		if(count == samples.length){
+			samples = Arrays.copyOf(samples, count * 2);
+		}
+		samples[count++] = latency;
+	}
+
+	public synchronized int getCount(){
+		return count;
+	}
+
+	/**
+	 * @return returns the mean of the samples, or 0 if there are none
+	 */
+	public synchronized double getMean(){
+		if(count == 0){
+			return 0;
+		}
+		double sum = 0;
+		for(int i = 0; i < count; i++){
+			sum += samples[i];
+		}
+		return sum / count;
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100, e.g. 99.9
+	 * @return returns the smallest sample which is not exceeded by the given percentage of the samples, or 0 if there are none
+	 */
+	public synchronized long getPercentile(double percentile){
+		if(count == 0){
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		int rank = (int)Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(0, Math.min(count, rank) - 1)];
+	}
+
+	public synchronized long getMax(){
+		long max = 0;
+		for(int i = 0; i < count; i++){
+			max = Math.max(max, samples[i]);
+		}
+		return max;
+	}
+}
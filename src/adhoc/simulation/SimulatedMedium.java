@@ -0,0 +1,285 @@
+package adhoc.simulation;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import adhoc.aodv.Clock;
+import adhoc.aodv.Constants;
+
+/**
+ * A radio medium connecting the nodes of a simulation. Every link has its own loss probability and latency,
+ * and can be broken and restored while the simulation runs. A sent packet is kept until the simulation reaches
+ * its arrival time, and is lost if the link is down by then or the loss draw fails.
+ * The packets arriving at the same time are delivered in the order of their sender and receiver address and then their contents,
+ * and the losses are drawn in delivery order, so a simulation is repeated exactly by using the same seed.
+ * A node sending several packets at once may hand them over in any order, since its threads run concurrently,
+ * so the packets sent at the same time are ordered by what they hold rather than by the order they were sent.
+ * The transmissions are counted by PDU type, where a broadcast counts as one transmission
+ * @author Rabie
+ *
+ */
+public class SimulatedMedium {
+	private final Clock clock;
+	private final Random random;
+	private final SimulatedTransport[] transports = new SimulatedTransport[Constants.MAX_VALID_NODE_ADDRESS + 1];
+	//the links from each node, indexed by the sending and the receiving node. Guarded by this
+	private final Link[][] links = new Link[Constants.MAX_VALID_NODE_ADDRESS + 1][];
+	//the packets on their way, ordered by arrival. Guarded by this
+	private final PriorityQueue<Transmission> transmissions = new PriorityQueue<Transmission>();
+	private long sequence = 0;
+	private double defaultLossProbability = 0;
+	private long defaultLatency = 1;
+	private final long[] transmissionsByType = new long[256];
+	private long lostPackets = 0;
+
+	/**
+	 * @param clock the clock of the simulation, which the arrival times are read from
+	 * @param seed the seed of the loss draws
+	 */
+	public SimulatedMedium(Clock clock, long seed){
+		this.clock = clock;
+		random = new Random(seed);
+	}
+
+	/**
+	 * Creates the transport for a node attached to this medium
+	 * @param nodeAddress the address of the node which will use the transport
+	 * @return returns the new transport
+	 */
+	public synchronized SimulatedTransport createTransport(int nodeAddress){
+		if(transports[nodeAddress] != null){
+			throw new IllegalArgumentException("SimulatedMedium: a transport already exists for address: "+nodeAddress);
+		}
+		transports[nodeAddress] = new SimulatedTransport(this, nodeAddress);
+		return transports[nodeAddress];
+	}
+
+	/**
+	 * Sets the quality of the links which are created after this call
+	 * @param lossProbability the probability that a packet on the link is lost, between 0 and 1
+	 * @param latency the time in milliseconds a packet takes across the link
+	 */
+	public synchronized void setDefaultLinkQuality(double lossProbability, long latency){
+		checkLinkQuality(lossProbability, latency);
+		defaultLossProbability = lossProbability;
+		defaultLatency = latency;
+	}
+
+	/**
+	 * Makes the two nodes neighbours, in both directions, with the default link quality
+	 */
+	public synchronized void link(int firstNodeAddress, int secondNodeAddress){
+		link(firstNodeAddress, secondNodeAddress, defaultLossProbability, defaultLatency);
+	}
+
+	/**
+	 * Makes the two nodes neighbours, in both directions. An existing link gets the new quality and is restored if it were broken
+	 * @param lossProbability the probability that a packet on the link is lost, between 0 and 1
+	 * @param latency the time in milliseconds a packet takes across the link
+	 */
+	public synchronized void link(int firstNodeAddress, int secondNodeAddress, double lossProbability, long latency){
+		checkLinkQuality(lossProbability, latency);
+		setLink(firstNodeAddress, secondNodeAddress, lossProbability, latency);
+		setLink(secondNodeAddress, firstNodeAddress, lossProbability, latency);
+	}
+
+	/**
+	 * Breaks the link between the two nodes, in both directions. The packets on their way across the link are lost
+	 */
+	public synchronized void breakLink(int firstNodeAddress, int secondNodeAddress){
+		setUp(firstNodeAddress, secondNodeAddress, false);
+		setUp(secondNodeAddress, firstNodeAddress, false);
+	}
+
+	/**
+	 * Restores a broken link, with the quality it had before
+	 */
+	public synchronized void restoreLink(int firstNodeAddress, int secondNodeAddress){
+		setUp(firstNodeAddress, secondNodeAddress, true);
+		setUp(secondNodeAddress, firstNodeAddress, true);
+	}
+
+	public synchronized boolean isLinked(int firstNodeAddress, int secondNodeAddress){
+		Link link = getLink(firstNodeAddress, secondNodeAddress);
+		return link != null && link.isUp;
+	}
+
+	/**
+	 * @return returns the arrival time of the next packet, or Long.MAX_VALUE if no packet is on its way
+	 */
+	public synchronized long getNextArrivalTime(){
+		Transmission next = transmissions.peek();
+		return next == null ? Long.MAX_VALUE : next.arrivalTime;
+	}
+
+	/**
+	 * Delivers the next packet which has arrived by the given time. A lost packet is counted and skipped
+	 * @param currentTime the current time of the simulation
+	 * @return returns false if no more packets have arrived by the time
+	 */
+	public boolean deliverNext(long currentTime){
+		while(true){
+			Transmission transmission;
+			SimulatedTransport receiver;
+			synchronized (this) {
+				transmission = transmissions.peek();
+				if(transmission == null || transmission.arrivalTime > currentTime){
+					return false;
+				}
+				transmissions.poll();
+				Link link = getLink(transmission.senderNodeAddress, transmission.receiverNodeAddress);
+				if(link == null || !link.isUp || random.nextDouble() < link.lossProbability){
+					lostPackets++;
+					continue;
+				}
+				receiver = transports[transmission.receiverNodeAddress];
+			}
+			if(receiver != null){
+				receiver.deliver(transmission.senderNodeAddress, transmission.data);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @param pduType one of the PDU types in Constants, e.g. Constants.RREQ_PDU
+	 * @return returns the number of packets of the type sent since the medium were created
+	 */
+	public synchronized long getTransmissions(int pduType){
+		return transmissionsByType[pduType & 0xff];
+	}
+
+	/**
+	 * @return returns the number of packets lost to broken links and loss draws
+	 */
+	public synchronized long getLostPackets(){
+		return lostPackets;
+	}
+
+	/**
+	 * Called by the transports when a node sends a packet
+	 */
+	synchronized void transmit(int senderNodeAddress, int destinationNodeAddress, byte[] data){
+		if(data.length > 0){
+			transmissionsByType[data[0] & 0xff]++;
+		}
+		Link[] outgoing = links[senderNodeAddress];
+		if(outgoing == null){
+			if(destinationNodeAddress != Constants.BROADCAST_ADDRESS){
+				lostPackets++;
+			}
+			return;
+		}
+		long currentTime = clock.currentTimeMillis();
+		if(destinationNodeAddress == Constants.BROADCAST_ADDRESS){
+			for(int neighbour = 0; neighbour < outgoing.length; neighbour++){
+				addTransmission(senderNodeAddress, neighbour, outgoing[neighbour], data, currentTime);
+			}
+		} else if(destinationNodeAddress >= 0 && destinationNodeAddress < outgoing.length){
+			//as on a radio link, a packet to a node out of range is lost without notice to the sender
+			if(!addTransmission(senderNodeAddress, destinationNodeAddress, outgoing[destinationNodeAddress], data, currentTime)){
+				lostPackets++;
+			}
+		}
+	}
+
+	/**
+	 * Puts the packet on its way across the link, or counts it as lost if the link is broken
+	 * @return returns false if there is no link
+	 */
+	private boolean addTransmission(int senderNodeAddress, int receiverNodeAddress, Link link, byte[] data, long currentTime){
+		if(link == null){
+			return false;
+		}
+		if(link.isUp){
+			transmissions.add(new Transmission(currentTime + link.latency, senderNodeAddress, receiverNodeAddress, data, sequence++));
+		} else {
+			lostPackets++;
+		}
+		return true;
+	}
+
+	private void setLink(int from, int to, double lossProbability, long latency){
+		if(links[from] == null){
+			links[from] = new Link[Constants.MAX_VALID_NODE_ADDRESS + 1];
+		}
+		links[from][to] = new Link(lossProbability, latency);
+	}
+
+	private void setUp(int from, int to, boolean isUp){
+		Link link = getLink(from, to);
+		if(link == null){
+			throw new IllegalArgumentException("SimulatedMedium: no link from "+from+" to "+to);
+		}
+		link.isUp = isUp;
+	}
+
+	private Link getLink(int from, int to){
+		Link[] outgoing = links[from];
+		return outgoing == null ? null : outgoing[to];
+	}
+
+	private static void checkLinkQuality(double lossProbability, long latency){
+		if(lossProbability < 0 || lossProbability > 1 || latency < 0){
+			throw new IllegalArgumentException("SimulatedMedium: the loss probability must be within 0 and 1, and the latency not negative");
+		}
+	}
+
+	private static class Link {
+		private final double lossProbability;
+		private final long latency;
+		private boolean isUp = true;
+
+		Link(double lossProbability, long latency){
+			this.lossProbability = lossProbability;
+			this.latency = latency;
+		}
+	}
+
+	/**
+	 * A packet on its way to a neighbour
+	 */
+	private static class Transmission implements Comparable<Transmission> {
+		private final long arrivalTime;
+		private final int senderNodeAddress;
+		private final int receiverNodeAddress;
+		private final byte[] data;
+		private final long sequence;
+
+		Transmission(long arrivalTime, int senderNodeAddress, int receiverNodeAddress, byte[] data, long sequence){
+			this.arrivalTime = arrivalTime;
+			this.senderNodeAddress = senderNodeAddress;
+			this.receiverNodeAddress = receiverNodeAddress;
+			this.data = data;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Transmission other) {
+			if(arrivalTime != other.arrivalTime){
+				return arrivalTime < other.arrivalTime ? -1 : 1;
+			}
+			if(senderNodeAddress != other.senderNodeAddress){
+				return senderNodeAddress < other.senderNodeAddress ? -1 : 1;
+			}
+			if(receiverNodeAddress != other.receiverNodeAddress){
+				return receiverNodeAddress < other.receiverNodeAddress ? -1 : 1;
+			}
+			int contentOrder = compareContents(data, other.data);
+			if(contentOrder != 0){
+				return contentOrder;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+
+		private static int compareContents(byte[] first, byte[] second){
+			int length = Math.min(first.length, second.length);
+			for(int i = 0; i < length; i++){
+				if(first[i] != second[i]){
+					return first[i] < second[i] ? -1 : 1;
+				}
+			}
+			return first.length - second.length;
+		}
+	}
+}
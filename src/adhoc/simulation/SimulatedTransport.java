@@ -0,0 +1,67 @@
+package adhoc.simulation;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.transport.PacketListener;
+import adhoc.transport.Transport;
+
+/**
+ * A transport which hands the sent packets to a SimulatedMedium. The medium delivers them when the simulation
+ * reaches their arrival time, so no threads are added per node
+ * @author Rabie
+ *
+ */
+public class SimulatedTransport implements Transport {
+	private SimulatedMedium medium;
+	private int nodeAddress;
+	private volatile PacketListener listener;
+	private volatile boolean isRunning = false;
+
+	SimulatedTransport(SimulatedMedium medium, int nodeAddress){
+		this.medium = medium;
+		this.nodeAddress = nodeAddress;
+	}
+
+	public int getNodeAddress(){
+		return nodeAddress;
+	}
+
+	@Override
+	public void setPacketListener(PacketListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public boolean sendPacket(int destinationNodeID, byte[] data) throws DataExceedsMaxSizeException {
+		if(data.length > Constants.MAX_PACKAGE_SIZE){
+			throw new DataExceedsMaxSizeException();
+		}
+		medium.transmit(nodeAddress, destinationNodeID, data);
+		return true;
+	}
+
+	@Override
+	public boolean broadcastPacket(byte[] data) throws DataExceedsMaxSizeException {
+		return sendPacket(Constants.BROADCAST_ADDRESS, data);
+	}
+
+	@Override
+	public void startThread() {
+		isRunning = true;
+	}
+
+	@Override
+	public void stopThread() {
+		isRunning = false;
+	}
+
+	/**
+	 * Called by the medium when a packet arrives. Packets are dropped while the transport is stopped
+	 */
+	void deliver(int senderNodeAddress, byte[] data){
+		PacketListener currentListener = listener;
+		if(isRunning && currentListener != null){
+			currentListener.packetReceived(senderNodeAddress, data);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package adhoc.simulation;
+
+import adhoc.aodv.Constants;
+
+/**
+ * The outcome of a simulation run: the delivery of the user packets, the route discovery latency and the
+ * number of control packets the nodes sent. All times are in virtual milliseconds
+ * @author Rabie
+ *
+ */
+public class SimulationReport {
+	private final int numberOfNodes;
+	private final long duration;
+	private final int packetsSubmitted;
+	private final int packetsDelivered;
+	private final int failedDiscoveries;
+	private final LatencyRecorder discoveryLatency;
+	private final LatencyRecorder deliveryLatency;
+	private final long rreqTransmissions;
+	private final long rrepTransmissions;
+	private final long rerrTransmissions;
+	private final long helloTransmissions;
+	private final long dataTransmissions;
+	private final long lostPackets;
+
+	SimulationReport(int numberOfNodes, long duration, int packetsSubmitted, int packetsDelivered, int failedDiscoveries,
+			LatencyRecorder discoveryLatency, LatencyRecorder deliveryLatency, SimulatedMedium medium){
+		this.numberOfNodes = numberOfNodes;
+		this.duration = duration;
+		this.packetsSubmitted = packetsSubmitted;
+		this.packetsDelivered = packetsDelivered;
+		this.failedDiscoveries = failedDiscoveries;
+		this.discoveryLatency = discoveryLatency;
+		this.deliveryLatency = deliveryLatency;
+		rreqTransmissions = medium.getTransmissions(Constants.RREQ_PDU);
+		rrepTransmissions = medium.getTransmissions(Constants.RREP_PDU);
+		rerrTransmissions = medium.getTransmissions(Constants.RERR_PDU);
+		helloTransmissions = medium.getTransmissions(Constants.HELLO_PDU);
+		dataTransmissions = medium.getTransmissions(Constants.USER_DATA_PACKET_PDU)
+							+ medium.getTransmissions(Constants.AGGREGATE_PDU)
+							+ medium.getTransmissions(Constants.SEGMENT_PDU);
+		lostPackets = medium.getLostPackets();
+	}
+
+	public int getNumberOfNodes(){
+		return numberOfNodes;
+	}
+
+	/**
+	 * @return returns the virtual time the simulation has run
+	 */
+	public long getDuration(){
+		return duration;
+	}
+
+	public int getPacketsSubmitted(){
+		return packetsSubmitted;
+	}
+
+	public int getPacketsDelivered(){
+		return packetsDelivered;
+	}
+
+	/**
+	 * @return returns the share of the submitted packets which reached their destination, or 0 if none were submitted
+	 */
+	public double getDeliveryRatio(){
+		return packetsSubmitted == 0 ? 0 : (double)packetsDelivered / packetsSubmitted;
+	}
+
+	/**
+	 * @return returns the number of packets given up because no route to their destination could be found
+	 */
+	public int getFailedDiscoveries(){
+		return failedDiscoveries;
+	}
+
+	/**
+	 * @return returns the time from submitting a packet to a destination without a route, until the packet is sent on the found route
+	 */
+	public LatencyRecorder getDiscoveryLatency(){
+		return discoveryLatency;
+	}
+
+	/**
+	 * @return returns the time from submitting a packet until it is received by its destination
+	 */
+	public LatencyRecorder getDeliveryLatency(){
+		return deliveryLatency;
+	}
+
+	public long getRreqTransmissions(){
+		return rreqTransmissions;
+	}
+
+	public long getRrepTransmissions(){
+		return rrepTransmissions;
+	}
+
+	public long getRerrTransmissions(){
+		return rerrTransmissions;
+	}
+
+	public long getHelloTransmissions(){
+		return helloTransmissions;
+	}
+
+	/**
+	 * @return returns the number of user data frames sent, counting every hop
+	 */
+	public long getDataTransmissions(){
+		return dataTransmissions;
+	}
+
+	/**
+	 * @return returns the number of packets lost on the links
+	 */
+	public long getLostPackets(){
+		return lostPackets;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder report = new StringBuilder();
+		report.append("nodes: ").append(numberOfNodes).append(", duration: ").append(duration).append(" ms\n");
+		report.append("packets submitted: ").append(packetsSubmitted).append(", delivered: ").append(packetsDelivered)
+				.append(", delivery ratio: ").append(String.format("%.3f", getDeliveryRatio())).append('\n');
+		report.append("route discoveries: ").append(discoveryLatency.getCount()).append(", failed: ").append(failedDiscoveries)
+				.append(", latency p50/p99/max: ").append(discoveryLatency.getPercentile(50)).append('/')
+				.append(discoveryLatency.getPercentile(99)).append('/').append(discoveryLatency.getMax()).append(" ms\n");
+		report.append("delivery latency p50/p99/max: ").append(deliveryLatency.getPercentile(50)).append('/')
+				.append(deliveryLatency.getPercentile(99)).append('/').append(deliveryLatency.getMax()).append(" ms\n");
+		report.append("transmissions RREQ: ").append(rreqTransmissions).append(", RREP: ").append(rrepTransmissions)
+				.append(", RERR: ").append(rerrTransmissions).append(", HELLO: ").append(helloTransmissions)
+				.append(", data: ").append(dataTransmissions).append(", lost: ").append(lostPackets);
+		return report.toString();
+	}
+}
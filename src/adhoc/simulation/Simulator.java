@@ -0,0 +1,302 @@
+package adhoc.simulation;
+
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.SendFuture.SendCallback;
+import adhoc.aodv.TimerScheduler;
+import adhoc.aodv.VirtualClock;
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.exception.InvalidNodeAddressException;
+import adhoc.aodv.exception.RouteEstablishmentFailureException;
+
+/**
+ * A discrete event simulation of a mesh of nodes. The nodes are the real protocol implementation, connected through a
+ * SimulatedMedium and sharing a TimerScheduler with a virtual clock. The simulator moves the clock from one event to the
+ * next: a due timer, the arrival of a packet or a scripted event such as a link break or a packet to send.
+ * Before moving on, it waits until every node has handled the previous events, so the clock never passes a node
+ * which still is working and a run with the same seed gives the same result, however fast the machine is.
+ *
+ * A simulation is used by one thread, which runs it by calling run()
+ * @author Rabie
+ *
+ */
+public class Simulator {
+	//the user packets carry the time they were submitted, followed by their sequence number
+	private static final int PAYLOAD_HEADER_SIZE = 12;
+
+	private final VirtualClock clock = new VirtualClock(0);
+	private final TimerScheduler timers = new TimerScheduler(clock);
+	private final SimulatedMedium medium;
+	private final Node[] nodes;
+	private final Random random;
+	//the scripted events, ordered by time and then by the order they were added
+	private final PriorityQueue<ScriptedEvent> script = new PriorityQueue<ScriptedEvent>();
+	private long scriptSequence = 0;
+	private boolean isStarted = false;
+	private long startTime = 0;
+
+	private int packetsSubmitted = 0;
+	private final AtomicInteger packetsDelivered = new AtomicInteger(0);
+	private final AtomicInteger failedDiscoveries = new AtomicInteger(0);
+	private final LatencyRecorder discoveryLatency = new LatencyRecorder();
+	private final LatencyRecorder deliveryLatency = new LatencyRecorder();
+
+	/**
+	 * Creates a node for every node of the topology, linked with the default link quality
+	 * @param topology the nodes and links to simulate
+	 * @param seed the seed of the link losses and the random traffic
+	 */
+	public Simulator(Topology topology, long seed){
+		this(topology, seed, 0, 1);
+	}
+
+	/**
+	 * Creates a node for every node of the topology
+	 * @param topology the nodes and links to simulate
+	 * @param seed the seed of the link losses and the random traffic
+	 * @param lossProbability the loss probability of every link, which can be changed per link through getMedium()
+	 * @param latency the latency in milliseconds of every link
+	 */
+	public Simulator(Topology topology, long seed, double lossProbability, long latency){
+		medium = new SimulatedMedium(clock, seed);
+		random = new Random(seed);
+		medium.setDefaultLinkQuality(lossProbability, latency);
+		nodes = new Node[topology.getNumberOfNodes()];
+		DeliveryListener listener = new DeliveryListener();
+		for(int address = 0; address < nodes.length; address++){
+			try {
+				nodes[address] = new Node(address, medium.createTransport(address), timers);
+			} catch (InvalidNodeAddressException e) {
+				//the topology only holds valid addresses
+				throw new IllegalArgumentException("Simulator: invalid node address: "+address);
+			}
+			//the deliveries are recorded at the virtual time they happen, and are covered by waiting for the nodes to become idle
+			nodes[address].setDispatchExecutor(Node.DIRECT_DISPATCH);
+			nodes[address].addListener(listener);
+		}
+		for(int[] link : topology.getLinks()){
+			medium.link(link[0], link[1]);
+		}
+	}
+
+	public SimulatedMedium getMedium(){
+		return medium;
+	}
+
+	public VirtualClock getClock(){
+		return clock;
+	}
+
+	public Node getNode(int address){
+		return nodes[address];
+	}
+
+	public int getNumberOfNodes(){
+		return nodes.length;
+	}
+
+	/**
+	 * Breaks the link between the two nodes at the given virtual time
+	 */
+	public void breakLink(long time, final int firstNodeAddress, final int secondNodeAddress){
+		addEvent(time, new Runnable() {
+			@Override
+			public void run() {
+				medium.breakLink(firstNodeAddress, secondNodeAddress);
+			}
+		});
+	}
+
+	/**
+	 * Restores the link between the two nodes at the given virtual time
+	 */
+	public void restoreLink(long time, final int firstNodeAddress, final int secondNodeAddress){
+		addEvent(time, new Runnable() {
+			@Override
+			public void run() {
+				medium.restoreLink(firstNodeAddress, secondNodeAddress);
+			}
+		});
+	}
+
+	/**
+	 * Submits a user packet to the source node at the given virtual time
+	 * @param payloadSize the size of the packet, which is at least 12 bytes to hold the submission time and sequence number
+	 */
+	public void send(long time, final int sourceAddress, final int destinationAddress, final int payloadSize){
+		addEvent(time, new Runnable() {
+			@Override
+			public void run() {
+				submit(sourceAddress, destinationAddress, payloadSize);
+			}
+		});
+	}
+
+	/**
+	 * Submits a packet from a random node to another random node every interval, within the given time
+	 * @param startTime the virtual time of the first packet
+	 * @param endTime the virtual time after which no more packets are submitted
+	 * @param interval the virtual time between two packets
+	 * @param payloadSize the size of each packet
+	 */
+	public void sendRandomTraffic(long startTime, long endTime, long interval, int payloadSize){
+		if(nodes.length < 2 || interval <= 0){
+			throw new IllegalArgumentException("Simulator: random traffic needs two nodes and a positive interval");
+		}
+		for(long time = startTime; time <= endTime; time += interval){
+			int source = random.nextInt(nodes.length);
+			int destination = random.nextInt(nodes.length - 1);
+			if(destination >= source){
+				destination++;
+			}
+			send(time, source, destination, payloadSize);
+		}
+	}
+
+	/**
+	 * Runs the simulation for the given virtual time. The nodes are started by the first run, and may be run again for a further period
+	 * @param duration the virtual time in milliseconds to run
+	 * @return returns the report of the simulation, counted from the start of the first run
+	 */
+	public SimulationReport run(long duration){
+		if(!isStarted){
+			isStarted = true;
+			startTime = clock.currentTimeMillis();
+			for(Node node : nodes){
+				node.startThread();
+			}
+		}
+		long endTime = clock.currentTimeMillis() + duration;
+		while(true){
+			waitUntilIdle();
+			long nextTime = Math.min(medium.getNextArrivalTime(), Math.min(timers.getNextDueTime(), getNextEventTime()));
+			if(nextTime > endTime){
+				break;
+			}
+			//the timers are run first, then the scripted events and last the packets arriving at the same time.
+			//The packets are handled one at a time, since a node handling two at once could answer them in either order
+			timers.advanceTo(nextTime);
+			waitUntilIdle();
+			runScriptedEvents(nextTime);
+			waitUntilIdle();
+			while(medium.deliverNext(nextTime)){
+				waitUntilIdle();
+			}
+		}
+		timers.advanceTo(endTime);
+		return getReport();
+	}
+
+	public SimulationReport getReport(){
+		return new SimulationReport(nodes.length, clock.currentTimeMillis() - startTime, packetsSubmitted, packetsDelivered.get(),
+				failedDiscoveries.get(), discoveryLatency, deliveryLatency, medium);
+	}
+
+	/**
+	 * Stops the threads of every node
+	 */
+	public void stop(){
+		for(Node node : nodes){
+			node.stopThread();
+		}
+	}
+
+	private void addEvent(long time, Runnable action){
+		if(time < clock.currentTimeMillis()){
+			throw new IllegalArgumentException("Simulator: an event can not be scheduled in the past: "+time);
+		}
+		script.add(new ScriptedEvent(time, scriptSequence++, action));
+	}
+
+	private long getNextEventTime(){
+		ScriptedEvent next = script.peek();
+		return next == null ? Long.MAX_VALUE : next.time;
+	}
+
+	private void runScriptedEvents(long currentTime){
+		while(!script.isEmpty() && script.peek().time <= currentTime){
+			script.poll().action.run();
+		}
+	}
+
+	/**
+	 * Waits until every node has handled all its pending work. The work only passes between nodes through the medium
+	 * and the timers, which are both driven by this thread, so a single pass finding every node idle is enough
+	 */
+	private void waitUntilIdle(){
+		int index = 0;
+		while(index < nodes.length){
+			if(nodes[index].isIdle()){
+				index++;
+			} else {
+				Thread.yield();
+				index = 0;
+			}
+		}
+	}
+
+	private void submit(int sourceAddress, int destinationAddress, int payloadSize){
+		final long submitTime = clock.currentTimeMillis();
+		ByteBuffer payload = ByteBuffer.allocate(Math.max(PAYLOAD_HEADER_SIZE, payloadSize));
+		payload.putLong(submitTime);
+		payload.putInt(packetsSubmitted++);
+		SendFuture future = nodes[sourceAddress].sendAsync(destinationAddress, payload.array());
+		future.setCallback(new SendCallback() {
+			@Override
+			public void onSent(SendFuture future) {
+				//a packet with a known route is sent at once, so any virtual time it waited was spent finding the route
+				long waitingTime = clock.currentTimeMillis() - submitTime;
+				if(waitingTime > 0){
+					discoveryLatency.record(waitingTime);
+				}
+			}
+
+			@Override
+			public void onFailure(SendFuture future, AodvException reason) {
+				if(reason instanceof RouteEstablishmentFailureException){
+					failedDiscoveries.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Counts the user packets reaching their destination. Called by the receiver threads of the nodes
+	 */
+	private class DeliveryListener extends NodeAdapter {
+		@Override
+		public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+			if(data.remaining() < PAYLOAD_HEADER_SIZE){
+				return;
+			}
+			packetsDelivered.incrementAndGet();
+			deliveryLatency.record(clock.currentTimeMillis() - data.getLong(data.position()));
+		}
+	}
+
+	private static class ScriptedEvent implements Comparable<ScriptedEvent> {
+		private final long time;
+		private final long sequence;
+		private final Runnable action;
+
+		ScriptedEvent(long time, long sequence, Runnable action){
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override
+		public int compareTo(ScriptedEvent other) {
+			if(time != other.time){
+				return time < other.time ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
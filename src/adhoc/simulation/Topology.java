@@ -0,0 +1,139 @@
+package adhoc.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import adhoc.aodv.Constants;
+
+/**
+ * The nodes of a simulation and the links between them. The nodes are given the addresses 0 to n-1,
+ * and every link connects two nodes in both directions
+ * @author Rabie
+ *
+ */
+public class Topology {
+	private final int numberOfNodes;
+	private final List<int[]> links = new ArrayList<int[]>();
+
+	/**
+	 * Creates a topology of unconnected nodes
+	 * @param numberOfNodes the number of nodes, which all must have a valid node address
+	 */
+	public Topology(int numberOfNodes){
+		if(numberOfNodes < 1 || numberOfNodes > Constants.MAX_VALID_NODE_ADDRESS + 1){
+			throw new IllegalArgumentException("Topology: the number of nodes must be within 1 and "+(Constants.MAX_VALID_NODE_ADDRESS + 1));
+		}
+		this.numberOfNodes = numberOfNodes;
+	}
+
+	/**
+	 * Nodes in a line, where each node only reaches the node before and after it
+	 * @param numberOfNodes the number of nodes in the chain
+	 */
+	public static Topology chain(int numberOfNodes){
+		Topology topology = new Topology(numberOfNodes);
+		for(int i = 1; i < numberOfNodes; i++){
+			topology.addLink(i - 1, i);
+		}
+		return topology;
+	}
+
+	/**
+	 * Nodes in rows and columns, where each node reaches the nodes above, below and beside it.
+	 * The node in row r and column c has the address r*columns+c
+	 */
+	public static Topology grid(int rows, int columns){
+		Topology topology = new Topology(rows * columns);
+		for(int row = 0; row < rows; row++){
+			for(int column = 0; column < columns; column++){
+				int address = row * columns + column;
+				if(column + 1 < columns){
+					topology.addLink(address, address + 1);
+				}
+				if(row + 1 < rows){
+					topology.addLink(address, address + columns);
+				}
+			}
+		}
+		return topology;
+	}
+
+	/**
+	 * Nodes placed at random in the unit square, where two nodes are linked if they are within the radius of each other.
+	 * The graph is not necessarily connected
+	 * @param numberOfNodes the number of nodes to place
+	 * @param radius the radio range of the nodes, in units of the square side
+	 * @param seed the seed of the placement, so the same seed gives the same topology
+	 */
+	public static Topology randomGeometric(int numberOfNodes, double radius, long seed){
+		Topology topology = new Topology(numberOfNodes);
+		Random random = new Random(seed);
+		double[] x = new double[numberOfNodes];
+		double[] y = new double[numberOfNodes];
+		for(int i = 0; i < numberOfNodes; i++){
+			x[i] = random.nextDouble();
+			y[i] = random.nextDouble();
+		}
+		double radiusSquared = radius * radius;
+		for(int i = 0; i < numberOfNodes; i++){
+			for(int j = i + 1; j < numberOfNodes; j++){
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				if(dx * dx + dy * dy <= radiusSquared){
+					topology.addLink(i, j);
+				}
+			}
+		}
+		return topology;
+	}
+
+	public void addLink(int firstNodeAddress, int secondNodeAddress){
+		if(firstNodeAddress == secondNodeAddress || !isNode(firstNodeAddress) || !isNode(secondNodeAddress)){
+			throw new IllegalArgumentException("Topology: invalid link from "+firstNodeAddress+" to "+secondNodeAddress);
+		}
+		links.add(new int[]{firstNodeAddress, secondNodeAddress});
+	}
+
+	public int getNumberOfNodes(){
+		return numberOfNodes;
+	}
+
+	/**
+	 * @return returns the number of hops on the shortest path between the two nodes, or -1 if there is no path
+	 */
+	public int getDistance(int fromNodeAddress, int toNodeAddress){
+		int[] distances = new int[numberOfNodes];
+		Arrays.fill(distances, -1);
+		distances[fromNodeAddress] = 0;
+		//breadth first search from the first node
+		int[] pending = new int[numberOfNodes];
+		int head = 0;
+		int tail = 0;
+		pending[tail++] = fromNodeAddress;
+		while(head < tail){
+			int node = pending[head++];
+			for(int[] link : links){
+				int neighbour = link[0] == node ? link[1] : (link[1] == node ? link[0] : -1);
+				if(neighbour >= 0 && distances[neighbour] < 0){
+					distances[neighbour] = distances[node] + 1;
+					pending[tail++] = neighbour;
+				}
+			}
+		}
+		return distances[toNodeAddress];
+	}
+
+	/**
+	 * @return returns the links as pairs of node addresses
+	 */
+	public List<int[]> getLinks(){
+		return Collections.unmodifiableList(links);
+	}
+
+	private boolean isNode(int address){
+		return address >= 0 && address < numberOfNodes;
+	}
+}
@@ -0,0 +1,171 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.ReceiveBuffer;
+import adhoc.aodv.ReceivedPacket;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.aodv.exception.PacketDroppedException;
+import adhoc.transport.LoopbackNetwork;
+import adhoc.transport.PacketListener;
+import adhoc.transport.Transport;
+
+public class AggregationTest {
+	LoopbackNetwork network;
+	CountingTransport transport;
+	Node sender, receiver;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		transport = new CountingTransport(network.createTransport(1));
+		sender = new Node(1, transport);
+		receiver = new Node(2, network.createTransport(2));
+		network.link(1, 2);
+		receiver.enableReceiveBuffer(100, ReceiveBuffer.BLOCK);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		receiver.stopThread();
+	}
+	
+	/**
+	 * Testing that small packets to the same next hop share frames, and are received in order
+	 */
+	@Test public void aggregationTest() throws Exception{
+		sender.enableAggregation(1400, 50);
+		sender.startThread();
+		receiver.startThread();
+		sender.sendAsync(2, new byte[]{0}).get(5, TimeUnit.SECONDS);
+		assertTrue(receiver.receive(5000) != null);
+		
+		SendFuture last = null;
+		for(int i = 1; i <= 20; i++){
+			last = sender.sendAsync(2, new byte[]{(byte)i, 0, 0, 0, 0, 0, 0, 0});
+		}
+		last.get(5, TimeUnit.SECONDS);
+		for(int i = 1; i <= 20; i++){
+			ReceivedPacket packet = receiver.receive(5000);
+			assertTrue(packet != null);
+			assertEquals(i, packet.getData().get(0));
+		}
+		assertTrue(transport.aggregateFrames.get() > 0);
+		assertTrue(transport.userDataFrames.get() + transport.aggregateFrames.get() < 20);
+	}
+	
+	/**
+	 * Testing that a packet too large to share a frame is sent after the packets before it
+	 */
+	@Test public void largePacketTest() throws Exception{
+		sender.enableAggregation(100, 1000);
+		sender.startThread();
+		receiver.startThread();
+		sender.sendAsync(2, new byte[]{0}).get(5, TimeUnit.SECONDS);
+		assertTrue(receiver.receive(5000) != null);
+		
+		sender.sendData(1, 2, new byte[]{1});
+		sender.sendData(2, 2, new byte[200]);
+		ReceivedPacket first = receiver.receive(500);
+		ReceivedPacket second = receiver.receive(500);
+		assertTrue(first != null && second != null);
+		assertEquals(1, first.getDataLength());
+		assertEquals(200, second.getDataLength());
+	}
+	
+	/**
+	 * Testing that the packets of a frame are only reported once the frame is sent, and fail when it can not be sent
+	 */
+	@Test public void failedFrameTest() throws Exception{
+		sender.enableAggregation(1400, 50);
+		sender.startThread();
+		receiver.startThread();
+		sender.sendAsync(2, new byte[]{0}).get(5, TimeUnit.SECONDS);
+		assertTrue(receiver.receive(5000) != null);
+		
+		transport.isFailing = true;
+		List<SendFuture> futures = new ArrayList<SendFuture>();
+		for(int i = 1; i <= 5; i++){
+			futures.add(sender.sendAsync(2, new byte[]{(byte)i}));
+		}
+		for(SendFuture future : futures){
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				assertTrue(false);
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof PacketDroppedException);
+			}
+		}
+		assertTrue(receiver.receive(100) == null);
+		
+		transport.isFailing = false;
+		sender.sendAsync(2, new byte[]{6}).get(5, TimeUnit.SECONDS);
+		assertEquals(6, receiver.receive(5000).getData().get(0));
+	}
+	
+	/**
+	 * A transport which counts the user data frames sent, on their own or aggregated.
+	 * While it is set to fail the user data frames are not sent
+	 */
+	private static class CountingTransport implements Transport {
+		private final Transport transport;
+		final AtomicInteger userDataFrames = new AtomicInteger();
+		final AtomicInteger aggregateFrames = new AtomicInteger();
+		volatile boolean isFailing = false;
+		
+		CountingTransport(Transport transport){
+			this.transport = transport;
+		}
+
+		@Override
+		public void setPacketListener(PacketListener listener) {
+			transport.setPacketListener(listener);
+		}
+
+		@Override
+		public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException {
+			if(data[0] == Constants.USER_DATA_PACKET_PDU){
+				userDataFrames.incrementAndGet();
+			} else if(data[0] == Constants.AGGREGATE_PDU){
+				aggregateFrames.incrementAndGet();
+			} else {
+				return transport.sendPacket(destinationNodeID, data);
+			}
+			if(isFailing){
+				throw new IOException("the network is unreachable");
+			}
+			return transport.sendPacket(destinationNodeID, data);
+		}
+
+		@Override
+		public boolean broadcastPacket(byte[] data) throws IOException, DataExceedsMaxSizeException {
+			return transport.broadcastPacket(data);
+		}
+
+		@Override
+		public void startThread() {
+			transport.startThread();
+		}
+
+		@Override
+		public void stopThread() {
+			transport.stopThread();
+		}
+	}
+}
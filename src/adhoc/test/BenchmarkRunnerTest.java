@@ -0,0 +1,124 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import adhoc.benchmark.Benchmark;
+import adhoc.benchmark.BenchmarkResult;
+import adhoc.benchmark.BenchmarkRunner;
+import adhoc.benchmark.MultiHopBenchmark;
+import adhoc.benchmark.MultiHopResult;
+
+public class BenchmarkRunnerTest {
+	private PrintStream quiet = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+	
+	private BenchmarkRunner createRunner(){
+		BenchmarkRunner runner = new BenchmarkRunner(quiet);
+		runner.setWarmupIterations(0);
+		runner.setMeasurementIterations(2);
+		runner.setIterationTime(5);
+		return runner;
+	}
+	
+	/**
+	 * Testing that every library benchmark runs, and that the results survive a round trip through the CSV file
+	 */
+	@Test public void runAndReadBackTest() throws Exception{
+		List<BenchmarkResult> results = createRunner().runAll(BenchmarkRunner.getAllBenchmarks(), null);
+		assertEquals(BenchmarkRunner.getAllBenchmarks().size(), results.size());
+		File file = File.createTempFile("benchmark", ".csv");
+		try {
+			PrintStream out = new PrintStream(new FileOutputStream(file));
+			BenchmarkRunner.writeCsv(results, out);
+			out.close();
+			Map<String, Double> scores = BenchmarkRunner.readCsv(file.getPath());
+			assertEquals(results.size(), scores.size());
+			for(BenchmarkResult result : results){
+				assertTrue(result.getScore() > 0);
+				assertEquals(result.getScore(), scores.get(result.getKey()).doubleValue(), 0.001);
+			}
+			assertTrue(scores.containsKey("ForwardRouteTable.findBrokenRoutes:entries=250"));
+			assertTrue(scores.containsKey("RERR.decode"));
+			assertTrue(scores.containsKey("UserDataPacket.encode:payloadSize=1024"));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Testing that a benchmark slower than its baseline is reported only beyond the threshold
+	 */
+	@Test public void regressionTest() throws Exception{
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("spin", "work", 100) {
+			@Override
+			protected int run(int operations) {
+				int result = 0;
+				for(int i = 0; i < operations * 100; i++){
+					result += i * i;
+				}
+				return result;
+			}
+		});
+		BenchmarkRunner runner = createRunner();
+		List<BenchmarkResult> results = runner.runAll(benchmarks, Pattern.compile("^spin$"));
+		assertEquals(1, results.size());
+		assertEquals("spin:work=100", results.get(0).getKey());
+		double score = results.get(0).getScore();
+		Map<String, Double> baseline = new HashMap<String, Double>();
+		baseline.put("spin:work=100", score / 2);
+		assertEquals(1, runner.compare(results, baseline, 50));
+		baseline.put("spin:work=100", score);
+		assertEquals(0, runner.compare(results, baseline, 50));
+		assertEquals(0, runner.runAll(benchmarks, Pattern.compile("other")).size());
+	}
+	
+	/**
+	 * Testing the confidence interval of the score
+	 */
+	@Test public void scoreErrorTest(){
+		BenchmarkResult result = new BenchmarkResult("test", null, null, new double[]{1, 3});
+		assertEquals(2, result.getScore(), 0);
+		//the t quantile for one degree of freedom, times the standard deviation of sqrt(2) over the square root of the two samples
+		assertEquals(636.62, result.getScoreError(), 0.01);
+		assertTrue(Double.isNaN(new BenchmarkResult("test", null, null, new double[]{1}).getScoreError()));
+		assertEquals("test", result.getKey());
+	}
+	
+	/**
+	 * Testing that the multi-hop benchmark measures the packets sent after the warmup, and samples the queues of every node
+	 */
+	@Test public void multiHopTest() throws Exception{
+		MultiHopBenchmark benchmark = MultiHopBenchmark.chain(2);
+		try {
+			MultiHopResult result = benchmark.run(500, 64, 500, 500);
+			assertEquals(2, result.getHops());
+			assertEquals(64, result.getPayloadSize());
+			assertTrue(result.getPacketsSent() > 0);
+			assertTrue(result.getPacketsDelivered() > 0);
+			assertTrue(result.getPacketsDelivered() <= result.getPacketsSent());
+			assertEquals(result.getPacketsDelivered(), result.getLatency().getCount());
+			assertEquals(result.getPacketsDelivered() * 64 * 2, Math.round(result.getGoodputBytes()));
+			assertEquals(3, result.getQueueDepths().length);
+			assertTrue(result.toString().startsWith("hops=2 rate=500 payload=64"));
+		} finally {
+			benchmark.stop();
+		}
+	}
+}
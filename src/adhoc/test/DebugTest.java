@@ -0,0 +1,62 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import adhoc.etc.Debug;
+
+public class DebugTest {
+	private int timesConverted = 0;
+	
+	private Object message = new Object(){
+		@Override
+		public String toString(){
+			timesConverted++;
+			return "table dump";
+		}
+	};
+
+	@After
+	public void tearDown() throws Exception {
+		Debug.setDebugStream(null);
+		Debug.setLevel(Debug.DEBUG);
+	}
+	
+	/**
+	 * Testing that a message is not converted to text when no stream is set
+	 */
+	@Test public void noStreamTest(){
+		Debug.setLevel(Debug.TRACE);
+		assertFalse(Debug.isEnabled(Debug.ERROR));
+		Debug.print(Debug.ERROR, message);
+		assertEquals(0, timesConverted);
+	}
+	
+	/**
+	 * Testing that messages below the level are discarded without being converted to text
+	 */
+	@Test public void levelTest(){
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Debug.setDebugStream(new PrintStream(out));
+		Debug.setLevel(Debug.DEBUG);
+		
+		Debug.print(Debug.TRACE, message);
+		assertEquals(0, timesConverted);
+		assertEquals(0, out.size());
+		
+		Debug.print(Debug.DEBUG, "dest: ", 7);
+		assertTrue(out.toString().startsWith("dest: 7"));
+		
+		Debug.setLevel(Debug.TRACE);
+		Debug.print(Debug.TRACE, message);
+		assertEquals(1, timesConverted);
+		assertTrue(out.toString().contains("table dump"));
+	}
+}
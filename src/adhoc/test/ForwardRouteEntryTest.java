@@ -5,6 +5,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Before;
@@ -122,4 +123,29 @@ public class ForwardRouteEntryTest {
 		assertTrue(copy.isEmpty());
 		assertFalse(f1.getPrecursors().isEmpty());
 	}
+	
+	/**
+	 * Testing that the precursors are iterated in address order across the whole address range,
+	 * and are taken over by an updated route
+	 */
+	@Test public void iteratePrecursorsTest() throws RouteNotValidException{
+		f1.addPrecursorAddress(Constants.MAX_VALID_NODE_ADDRESS);
+		f1.addPrecursorAddress(64);
+		f1.addPrecursorAddress(63);
+		f1.addPrecursorAddress(0);
+		ArrayList<Integer> iterated = new ArrayList<Integer>();
+		for(int p = f1.nextPrecursor(0); p >= 0; p = f1.nextPrecursor(p + 1)){
+			iterated.add(p);
+		}
+		assertEquals(Arrays.asList(0, 63, 64, Constants.MAX_VALID_NODE_ADDRESS), iterated);
+		assertEquals(-1, f1.nextPrecursor(Constants.MAX_VALID_NODE_ADDRESS + 1));
+		assertTrue(f1.isPrecursor(63));
+		assertFalse(f1.isPrecursor(62));
+		
+		ForwardRouteEntry updated = new ForwardRouteEntry(1, 2, 3, 4);
+		assertEquals(-1, updated.nextPrecursor(0));
+		updated.addPrecursorAddress(7);
+		updated.addPrecursorsOf(f1);
+		assertEquals(Arrays.asList(0, 7, 63, 64, Constants.MAX_VALID_NODE_ADDRESS), updated.getPrecursors());
+	}
 }
@@ -13,6 +13,7 @@ import org.junit.Test;
 import adhoc.aodv.exception.AodvException;
 import adhoc.aodv.exception.NoSuchRouteException;
 import adhoc.aodv.exception.RouteNotValidException;
+import adhoc.aodv.pdu.RERR;
 import adhoc.aodv.routes.ForwardRouteEntry;
 import adhoc.aodv.routes.ForwardRouteTable;
 
@@ -89,6 +90,47 @@ public class ForwardTableTest {
 		}
 	}
 
+	/**
+	 * Testing that lookupForwardRouteEntry() and setValid() report a missing or invalid route without throwing
+	 */
+	@Test public void lookupForwardRouteEntryTest(){
+		assertTrue(ft.lookupForwardRouteEntry(0) == null);
+		assertTrue(ft.lookupForwardRouteEntry(-1) == null);
+		assertFalse(ft.setValid(0, 1, false));
+		
+		ft.addForwardRouteEntry(fe1);
+		assertTrue(ft.lookupForwardRouteEntry(0) == fe1);
+		assertTrue(ft.setValid(0, 5, false));
+		assertTrue(ft.lookupForwardRouteEntry(0) == fe1);
+		assertFalse(ft.lookupForwardRouteEntry(0).isValid());
+		assertEquals(5, ft.lookupForwardRouteEntry(0).getDestinationSequenceNumber());
+	}
+
+	/**
+	 * Testing that findBrokenRoutes() reports every route through the broken next hop in one RERR
+	 */
+	@Test public void findBrokenRoutesTest() throws AodvException{
+		assertTrue(ft.findBrokenRoutes(0) == null);
+		ArrayList<Integer> otherPrecursors = new ArrayList<Integer>();
+		otherPrecursors.add(5);
+		ft.addForwardRouteEntry(fe1);
+		ft.addForwardRouteEntry(fe2);
+		ft.addForwardRouteEntry(new ForwardRouteEntry(2, 0, 2, 3, otherPrecursors));
+		ft.addForwardRouteEntry(new ForwardRouteEntry(3, 1, 2, 3, otherPrecursors));
+		
+		RERR rerr = ft.findBrokenRoutes(0);
+		assertEquals(3, rerr.getNumberOfUnreachableNodes());
+		assertEquals(2, rerr.getAllDestAddresses().size());
+		assertFalse(ft.lookupForwardRouteEntry(2).isValid());
+		assertTrue(ft.lookupForwardRouteEntry(3).isValid());
+		
+		//a removed route is no longer indexed by its next hop
+		ft.removeEntry(1);
+		ft.removeEntry(2);
+		assertEquals(1, ft.findBrokenRoutes(0).getNumberOfUnreachableNodes());
+		assertTrue(ft.findBrokenRoutes(3) == null);
+	}
+
 	/**
 	 * Testing the getForwardRouteEntry() method of the forward table
 	 */
@@ -0,0 +1,63 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import adhoc.aodv.routes.LongKeyMap;
+
+public class LongKeyMapTest {
+
+	@Test public void putGetRemoveTest(){
+		LongKeyMap<String> map = new LongKeyMap<String>();
+		assertTrue(map.isEmpty());
+		assertEquals(null, map.put(LongKeyMap.key(1, 2), "a"));
+		assertEquals(null, map.put(LongKeyMap.key(2, 1), "b"));
+		assertEquals(null, map.put(LongKeyMap.key(1, -1), "c"));
+		assertEquals("a", map.put(LongKeyMap.key(1, 2), "d"));
+		assertEquals(3, map.size());
+		
+		assertEquals("d", map.get(LongKeyMap.key(1, 2)));
+		assertEquals("b", map.get(LongKeyMap.key(2, 1)));
+		assertEquals("c", map.get(LongKeyMap.key(1, -1)));
+		assertFalse(map.containsKey(LongKeyMap.key(2, 2)));
+		
+		assertEquals("b", map.remove(LongKeyMap.key(2, 1)));
+		assertEquals(null, map.remove(LongKeyMap.key(2, 1)));
+		assertFalse(map.containsKey(LongKeyMap.key(2, 1)));
+		assertEquals(2, map.size());
+		
+		ArrayList<String> values = new ArrayList<String>();
+		map.valuesTo(values);
+		assertEquals(2, values.size());
+		assertTrue(values.contains("c") && values.contains("d"));
+	}
+	
+	/**
+	 * Testing that the map agrees with a HashMap through growing and many removals, which move entries back
+	 */
+	@Test public void randomOperationsTest(){
+		LongKeyMap<Integer> map = new LongKeyMap<Integer>(4);
+		HashMap<Long, Integer> reference = new HashMap<Long, Integer>();
+		Random random = new Random(42);
+		for(int i = 0; i < 20000; i++){
+			long key = LongKeyMap.key(random.nextInt(16), random.nextInt(64));
+			if(random.nextBoolean()){
+				assertEquals(reference.put(key, i), map.put(key, i));
+			} else {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+		for(Map.Entry<Long, Integer> entry : reference.entrySet()){
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.ReceiveBuffer;
+import adhoc.transport.LoopbackNetwork;
+
+public class NodeListenerTest {
+	LoopbackNetwork network;
+	Node sender, receiver;
+	ExecutorService executor;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		sender = new Node(1, network.createTransport(1));
+		receiver = new Node(2, network.createTransport(2));
+		network.link(1, 2);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		receiver.stopThread();
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Testing that received data and the send result are delivered to the listeners
+	 */
+	@Test public void dataReceivedTest() throws Exception{
+		final CountDownLatch received = new CountDownLatch(1);
+		final CountDownLatch sent = new CountDownLatch(1);
+		final int[] source = new int[1];
+		final byte[] payload = new byte[3];
+		receiver.addListener(new NodeAdapter(){
+			@Override
+			public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+				source[0] = senderNodeAddress;
+				data.get(payload);
+				received.countDown();
+			}
+		});
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onDataSent(int packetIdentifier) {
+				if(packetIdentifier == 42){
+					sent.countDown();
+				}
+			}
+		});
+		sender.startThread();
+		receiver.startThread();
+		sender.sendData(42, 2, new byte[]{1, 2, 3});
+		
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertTrue(sent.await(5, TimeUnit.SECONDS));
+		assertEquals(1, source[0]);
+		assertEquals(3, payload[2]);
+	}
+	
+	/**
+	 * Testing that a blocked listener with its own queue does not hold up the other listeners
+	 */
+	@Test public void slowListenerTest() throws Exception{
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch fastReceived = new CountDownLatch(2);
+		final CountDownLatch slowReceived = new CountDownLatch(2);
+		receiver.setDispatchExecutor(executor);
+		receiver.addListener(new NodeAdapter(){
+			@Override
+			public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					
+				}
+				slowReceived.countDown();
+			}
+		}, true);
+		receiver.addListener(new NodeAdapter(){
+			@Override
+			public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+				fastReceived.countDown();
+			}
+		}, true);
+		sender.startThread();
+		receiver.startThread();
+		sender.sendData(1, 2, new byte[]{1});
+		sender.sendData(2, 2, new byte[]{2});
+		
+		assertTrue(fastReceived.await(5, TimeUnit.SECONDS));
+		assertEquals(2, slowReceived.getCount());
+		release.countDown();
+		assertTrue(slowReceived.await(5, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Testing that a blocked listener is called by the dispatch thread of the node by default,
+	 * so the receiver thread keeps handling packets
+	 */
+	@Test public void dispatchThreadTest() throws Exception{
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received = new CountDownLatch(2);
+		receiver.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST);
+		receiver.addListener(new NodeAdapter(){
+			@Override
+			public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					
+				}
+				received.countDown();
+			}
+		});
+		sender.startThread();
+		receiver.startThread();
+		sender.sendData(1, 2, new byte[]{1});
+		sender.sendData(2, 2, new byte[]{2});
+		
+		assertTrue(receiver.receive(5000) != null);
+		assertTrue(receiver.receive(5000) != null);
+		assertEquals(2, received.getCount());
+		release.countDown();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Testing that the received data is delivered to a listener which is blocked by a route notification
+	 */
+	@Test public void dataLaneTest() throws Exception{
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received = new CountDownLatch(1);
+		receiver.addListener(new NodeAdapter(){
+			@Override
+			public void onRouteCreated(int destinationAddress) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					
+				}
+			}
+			@Override
+			public void onDataReceived(int senderNodeAddress, ByteBuffer data) {
+				received.countDown();
+			}
+		});
+		sender.startThread();
+		receiver.startThread();
+		sender.sendData(1, 2, new byte[]{1});
+		
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+	
+	/**
+	 * Testing that the hello timer keeps the route to a neighbour alive, and that the expiry timer
+	 * invalidates it once the neighbour is out of range
+	 */
+	@Test public void routeExpiryTest() throws Exception{
+		final CountDownLatch invalid = new CountDownLatch(1);
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onRouteInvalid(int destinationAddress) {
+				if(destinationAddress == 2){
+					invalid.countDown();
+				}
+			}
+		});
+		sender.startThread();
+		receiver.startThread();
+		sender.sendAsync(2, new byte[]{1}).get(5, TimeUnit.SECONDS);
+		
+		//the hellos refresh the route for longer than its alive time
+		assertTrue(!invalid.await(Constants.ROUTE_ALIVETIME + Constants.BROADCAST_INTERVAL, TimeUnit.MILLISECONDS));
+		network.unlink(1, 2);
+		assertTrue(invalid.await(Constants.ROUTE_ALIVETIME + 2 * Constants.BROADCAST_INTERVAL, TimeUnit.MILLISECONDS));
+	}
+}
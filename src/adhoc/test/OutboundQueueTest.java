@@ -0,0 +1,169 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.OutboundQueue;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.exception.PacketDroppedException;
+import adhoc.aodv.pdu.UserDataPacket;
+import adhoc.transport.LoopbackNetwork;
+
+public class OutboundQueueTest {
+	LoopbackNetwork network;
+	Node sender, receiver;
+	List<Integer> droppedPackets;
+	boolean isStarted;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		sender = new Node(1, network.createTransport(1));
+		receiver = new Node(2, network.createTransport(2));
+		network.link(1, 2);
+		isStarted = false;
+		droppedPackets = new ArrayList<Integer>();
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onDataDropped(int packetIdentifier) {
+				synchronized (droppedPackets) {
+					droppedPackets.add(packetIdentifier);
+				}
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(isStarted){
+			sender.stopThread();
+			receiver.stopThread();
+		}
+	}
+	
+	private void start(){
+		sender.startThread();
+		receiver.startThread();
+		isStarted = true;
+	}
+	
+	/**
+	 * Testing that a packet which does not fit is rejected and reported, while the queued packets are kept
+	 */
+	@Test public void rejectTest() throws Exception{
+		OutboundQueue<UserDataPacket> queue = sender.getUserQueue();
+		queue.setLimits(2, 1000, OutboundQueue.REJECT, 0);
+		sender.sendData(1, 2, new byte[10]);
+		sender.sendData(2, 2, new byte[10]);
+		sender.sendData(3, 2, new byte[10]);
+		SendFuture future = sender.sendAsync(2, new byte[10]);
+		
+		assertEquals(1, droppedPackets.size());
+		assertEquals(3, (int)droppedPackets.get(0));
+		assertTrue(future.isDone());
+		try {
+			future.get();
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PacketDroppedException);
+		}
+		assertEquals(2, queue.size());
+		assertEquals(2, queue.getRejectedPacketCount());
+		assertEquals(2, queue.getHighWatermark());
+	}
+	
+	/**
+	 * Testing that the byte bound is kept independently of the packet bound
+	 */
+	@Test public void byteBoundTest() throws Exception{
+		OutboundQueue<UserDataPacket> queue = sender.getUserQueue();
+		queue.setLimits(100, 200, OutboundQueue.REJECT, 0);
+		sender.sendData(1, 2, new byte[100]);
+		sender.sendData(2, 2, new byte[100]);
+		sender.sendData(3, 2, new byte[10]);
+		
+		assertEquals(1, droppedPackets.size());
+		assertEquals(2, (int)droppedPackets.get(0));
+		assertEquals(2, queue.size());
+		assertTrue(queue.getQueuedBytes() <= 200);
+	}
+	
+	/**
+	 * Testing that the oldest packets are dropped to make room, and that the forward queue has a budget of its own
+	 */
+	@Test public void dropOldestTest() throws Exception{
+		OutboundQueue<UserDataPacket> queue = sender.getUserQueue();
+		queue.setLimits(2, 1000, OutboundQueue.DROP_OLDEST, 0);
+		sender.sendData(1, 2, new byte[10]);
+		sender.sendData(2, 2, new byte[10]);
+		sender.sendData(3, 2, new byte[10]);
+		sender.sendData(4, 2, new byte[10]);
+		
+		assertEquals(2, droppedPackets.size());
+		assertEquals(1, (int)droppedPackets.get(0));
+		assertEquals(2, (int)droppedPackets.get(1));
+		assertEquals(2, queue.getDroppedPacketCount());
+		assertEquals(2, queue.size());
+		assertEquals(0, sender.getForwardQueue().size());
+	}
+	
+	/**
+	 * Testing that packets which waited longer than the maximum queueing time are dropped instead of sent
+	 */
+	@Test public void dropExpiredTest() throws Exception{
+		final List<Integer> sentPackets = new ArrayList<Integer>();
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onDataSent(int packetIdentifier) {
+				synchronized (sentPackets) {
+					sentPackets.add(packetIdentifier);
+				}
+			}
+		});
+		OutboundQueue<UserDataPacket> queue = sender.getUserQueue();
+		queue.setLimits(10, 1000, OutboundQueue.DROP_EXPIRED, 50);
+		sender.sendData(1, 2, new byte[10]);
+		Thread.sleep(100);
+		start();
+		SendFuture future = sender.sendAsync(2, new byte[10]);
+		future.get(5, TimeUnit.SECONDS);
+		
+		synchronized (droppedPackets) {
+			assertEquals(1, droppedPackets.size());
+			assertEquals(1, (int)droppedPackets.get(0));
+		}
+		assertEquals(1, queue.getDroppedPacketCount());
+		assertTrue(sentPackets.isEmpty());
+	}
+	
+	/**
+	 * Testing that a blocking queue holds the caller back until the sender has made room, without losing packets
+	 */
+	@Test public void blockTest() throws Exception{
+		OutboundQueue<UserDataPacket> queue = sender.getUserQueue();
+		queue.setLimits(1, 1000, OutboundQueue.BLOCK, 0);
+		start();
+		//the route is discovered first, so none of the packets below is held back besides the queued ones
+		sender.sendAsync(2, new byte[10]).get(5, TimeUnit.SECONDS);
+		SendFuture last = null;
+		for(int i = 0; i < 20; i++){
+			last = sender.sendAsync(2, new byte[10]);
+		}
+		last.get(5, TimeUnit.SECONDS);
+		
+		assertTrue(droppedPackets.isEmpty());
+		assertEquals(0, queue.getRejectedPacketCount());
+		assertEquals(1, queue.getHighWatermark());
+	}
+}
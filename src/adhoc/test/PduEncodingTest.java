@@ -0,0 +1,224 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.BadPduFormatException;
+import adhoc.aodv.pdu.AggregatePacket;
+import adhoc.aodv.pdu.HelloPacket;
+import adhoc.aodv.pdu.RERR;
+import adhoc.aodv.pdu.RREP;
+import adhoc.aodv.pdu.RREQ;
+import adhoc.aodv.pdu.SegmentPacket;
+import adhoc.aodv.pdu.UserDataPacket;
+
+public class PduEncodingTest {
+
+	/**
+	 * Testing that a RREQ survives an encode/decode round trip, including large sequence numbers
+	 */
+	@Test public void rreqRoundTripTest() throws BadPduFormatException{
+		RREQ rreq = new RREQ(1, 2, Constants.MAX_SEQUENCE_NUMBER, 4, 5);
+		rreq.incrementHopCount();
+		byte[] raw = rreq.toBytes();
+		assertEquals(rreq.getEncodedSize(), raw.length);
+		assertEquals(Constants.RREQ_PDU, raw[0]);
+		
+		RREQ parsed = new RREQ();
+		parsed.parseBytes(raw);
+		assertEquals(1, parsed.getSourceAddress());
+		assertEquals(2, parsed.getDestinationAddress());
+		assertEquals(Constants.MAX_SEQUENCE_NUMBER, parsed.getSourceSequenceNumber());
+		assertEquals(4, parsed.getDestinationSequenceNumber());
+		assertEquals(5, parsed.getBroadcastId());
+		assertEquals(1, parsed.getHopCount());
+	}
+	
+	@Test public void rrepRoundTripTest() throws BadPduFormatException{
+		RREP rrep = new RREP(1, 2, 3, 4, 5);
+		RREP parsed = new RREP();
+		parsed.parseBytes(rrep.toBytes());
+		assertEquals(1, parsed.getSourceAddress());
+		assertEquals(2, parsed.getDestinationAddress());
+		assertEquals(4, parsed.getDestinationSequenceNumber());
+		assertEquals(5, parsed.getHopCount());
+		assertEquals(Constants.RREP_PDU, parsed.getType());
+	}
+	
+	@Test public void rerrRoundTripTest() throws BadPduFormatException{
+		RERR rerr = new RERR(7, Constants.UNKNOWN_SEQUENCE_NUMBER, 3);
+		RERR parsed = new RERR();
+		parsed.parseBytes(rerr.toBytes());
+		assertEquals(7, parsed.getUnreachableNodeAddress());
+		assertEquals(Constants.UNKNOWN_SEQUENCE_NUMBER, parsed.getUnreachableNodeSequenceNumber());
+	}
+
+	@Test public void aggregatedRerrRoundTripTest() throws BadPduFormatException{
+		RERR rerr = new RERR(new ArrayList<Integer>());
+		rerr.addUnreachableNode(7, 2);
+		rerr.addUnreachableNode(9, 5);
+		rerr.addUnreachableNode(11, Constants.UNKNOWN_SEQUENCE_NUMBER);
+		byte[] bytes = rerr.toBytes();
+		assertEquals(rerr.getEncodedSize(), bytes.length);
+		RERR parsed = new RERR();
+		parsed.parseBytes(bytes);
+		assertEquals(3, parsed.getNumberOfUnreachableNodes());
+		assertEquals(9, parsed.getUnreachableNodeAddress(1));
+		assertEquals(5, parsed.getUnreachableNodeSequenceNumber(1));
+		assertEquals(11, parsed.getUnreachableNodeAddress(2));
+		assertEquals(Constants.UNKNOWN_SEQUENCE_NUMBER, parsed.getUnreachableNodeSequenceNumber(2));
+	}
+	
+	@Test public void helloRoundTripTest() throws BadPduFormatException{
+		HelloPacket hello = new HelloPacket(9, 42);
+		HelloPacket parsed = new HelloPacket();
+		parsed.parseBytes(hello.toBytes());
+		assertEquals(9, parsed.getSourceAddress());
+		assertEquals(42, parsed.getSourceSeqNr());
+	}
+	
+	/**
+	 * Testing that a payload containing the old field delimiter and non-text bytes is kept intact
+	 */
+	@Test public void userDataRoundTripTest() throws BadPduFormatException{
+		byte[] data = new byte[]{';', 0, (byte)0xff, (byte)0x80, ';'};
+		UserDataPacket packet = new UserDataPacket(1, 2, data, 3);
+		UserDataPacket parsed = new UserDataPacket();
+		parsed.parseBytes(packet.toBytes());
+		assertEquals(3, parsed.getSourceNodeAddress());
+		assertEquals(2, parsed.getDestinationAddress());
+		assertTrue(java.util.Arrays.equals(data, parsed.getData()));
+	}
+	
+	/**
+	 * Testing that a parsed payload references the received frame, and that the frame is reused when the packet is sent on
+	 */
+	@Test public void userDataSliceTest() throws BadPduFormatException{
+		byte[] raw = new UserDataPacket(1, 2, new byte[]{1, 2, 3}, 3).toBytes();
+		UserDataPacket parsed = new UserDataPacket();
+		parsed.parseBytes(raw);
+		assertTrue(raw == parsed.getDataArray());
+		assertEquals(3, parsed.getDataLength());
+		assertEquals(raw[parsed.getDataOffset()], 1);
+		assertTrue(raw == parsed.toBytes());
+	}
+	
+	/**
+	 * Testing that a packet passed through a node only has its addresses read, and is sent on as the received frame
+	 */
+	@Test public void forwardedUserDataTest() throws BadPduFormatException{
+		byte[] raw = new UserDataPacket(1, 200, new byte[]{1, 2, 3}, 3).toBytes();
+		assertEquals(200, UserDataPacket.readDestinationAddress(raw));
+		UserDataPacket forwarded = UserDataPacket.createForwardedPacket(raw);
+		assertEquals(200, forwarded.getDestinationAddress());
+		assertEquals(3, forwarded.getSourceNodeAddress());
+		assertEquals(raw.length, forwarded.getEncodedSize());
+		assertTrue(raw == forwarded.toBytes());
+		try {
+			UserDataPacket.readDestinationAddress(new byte[]{Constants.USER_DATA_PACKET_PDU, 0, 0, 0, 3});
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+	
+	/**
+	 * Testing that the packets of an aggregate frame are unpacked as they were added
+	 */
+	@Test public void aggregateRoundTripTest() throws BadPduFormatException{
+		byte[] first = new UserDataPacket(1, 2, new byte[]{1, 2, 3}, 3).toBytes();
+		byte[] second = new UserDataPacket(2, 4, new byte[]{4}, 3).toBytes();
+		AggregatePacket aggregate = new AggregatePacket(5);
+		aggregate.addFrame(first);
+		aggregate.addFrame(second);
+		byte[] raw = aggregate.toBytes();
+		assertEquals(aggregate.getEncodedSize(), raw.length);
+		
+		AggregatePacket parsed = new AggregatePacket();
+		parsed.parseBytes(raw);
+		assertEquals(2, parsed.getNumberOfPackets());
+		assertTrue(Arrays.equals(first, parsed.getFrame(0)));
+		assertTrue(Arrays.equals(second, parsed.getFrame(1)));
+		
+		byte[] truncated = Arrays.copyOf(raw, raw.length - 1);
+		try {
+			new AggregatePacket().parseBytes(truncated);
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+	
+	/**
+	 * Testing that a segment carries its slice of the message, and keeps the address offsets of a user data packet
+	 */
+	@Test public void segmentRoundTripTest() throws BadPduFormatException{
+		byte[] message = new byte[10];
+		for(int i = 0; i < message.length; i++){
+			message[i] = (byte)i;
+		}
+		byte[] raw = new SegmentPacket(1, 2, message, 3, 7, 4, 2).toBytes();
+		assertEquals(Constants.SEGMENT_PDU, raw[0]);
+		assertEquals(2, UserDataPacket.readDestinationAddress(raw));
+		
+		SegmentPacket parsed = new SegmentPacket();
+		parsed.parseBytes(raw);
+		assertEquals(3, parsed.getSourceNodeAddress());
+		assertEquals(2, parsed.getDestinationAddress());
+		assertEquals(7, parsed.getMessageID());
+		assertEquals(10, parsed.getMessageLength());
+		assertEquals(3, parsed.getNumberOfSegments());
+		assertEquals(2, parsed.getSegmentIndex());
+		assertTrue(Arrays.equals(new byte[]{8, 9}, parsed.getData()));
+		
+		try {
+			new SegmentPacket().parseBytes(Arrays.copyOf(raw, raw.length - 1));
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+	
+	@Test public void userDataLengthMismatchTest(){
+		byte[] raw = new UserDataPacket(1, 2, new byte[]{1, 2, 3}, 3).toBytes();
+		byte[] truncated = new byte[raw.length-1];
+		System.arraycopy(raw, 0, truncated, 0, truncated.length);
+		try {
+			new UserDataPacket().parseBytes(truncated);
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+	
+	@Test public void wrongLengthTest(){
+		try {
+			new RREQ().parseBytes(new RREP(1, 2, 3, 4).toBytes());
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+		try {
+			new UserDataPacket().parseBytes(new byte[]{Constants.USER_DATA_PACKET_PDU});
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+	
+	@Test public void wrongTypeTest(){
+		try {
+			//RERR and hello packets have the same length, so only the type can tell them apart
+			new RERR().parseBytes(new HelloPacket(1, 1).toBytes());
+			assertTrue(false);
+		} catch (BadPduFormatException e) {
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.Node.MessageToObserver;
+import adhoc.aodv.Node.PacketToObserver;
+import adhoc.aodv.ObserverConst;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.aodv.exception.PacketDroppedException;
+import adhoc.transport.LoopbackNetwork;
+import adhoc.transport.PacketListener;
+import adhoc.transport.Transport;
+
+public class PendingMessagesTest {
+	LoopbackNetwork network;
+	FailingTransport transport;
+	Node sender, receiver, otherReceiver;
+	Recorder sent, received, otherReceived;
+
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		transport = new FailingTransport(network.createTransport(1));
+		sender = new Node(1, transport);
+		receiver = new Node(2, network.createTransport(2));
+		otherReceiver = new Node(3, network.createTransport(3));
+		network.link(1, 2);
+		network.link(1, 3);
+		sent = new Recorder(sender);
+		received = new Recorder(receiver);
+		otherReceived = new Recorder(otherReceiver);
+		sender.startThread();
+		receiver.startThread();
+		otherReceiver.startThread();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		receiver.stopThread();
+		otherReceiver.stopThread();
+	}
+
+	/**
+	 * Testing that the packets held back for several destinations at once are sent in order when their routes are created,
+	 * while the packets to a destination which can not be reached are released when the discovery fails
+	 */
+	@Test public void parallelDiscoveryTest() throws Exception{
+		for(int i = 0; i < 3; i++){
+			sender.sendData(i, 2, new byte[]{(byte)i});
+			sender.sendData(10 + i, 3, new byte[]{(byte)i});
+			sender.sendData(20 + i, 4, new byte[]{(byte)i});
+		}
+		for(int i = 0; i < 3; i++){
+			assertEquals(i, received.nextData(5000));
+			assertEquals(i, otherReceived.nextData(5000));
+		}
+		assertEquals(4, sent.next(ObserverConst.ROUTE_ESTABLISHMENT_FAILURE,
+				Constants.PATH_DESCOVERY_TIME * (Constants.MAX_NUMBER_OF_RREQ_RETRIES + 2)));
+	}
+
+	/**
+	 * Testing that a packet which the transport fails to send is given up instead of waiting for a route,
+	 * so the later packets to the destination are not held back
+	 */
+	@Test public void sendFailureTest() throws Exception{
+		sender.sendData(0, 2, new byte[]{0});
+		assertEquals(0, sent.next(ObserverConst.DATA_SENT_SUCCESS, 5000));
+		assertEquals(0, received.nextData(5000));
+
+		transport.failNextUserPackets(1);
+		sender.sendData(1, 2, new byte[]{1});
+		sender.sendData(2, 2, new byte[]{2});
+		assertEquals(2, sent.next(ObserverConst.DATA_SENT_SUCCESS, 5000));
+		assertEquals(2, received.nextData(5000));
+	}
+
+	/**
+	 * Testing that the packets which are waiting for a route or queued when the node is stopped are reported as dropped
+	 */
+	@Test public void stopTest() throws Exception{
+		List<SendFuture> futures = new ArrayList<SendFuture>();
+		for(int i = 0; i < 3; i++){
+			futures.add(sender.sendAsync(4, new byte[]{(byte)i}));
+		}
+		sender.stopThread();
+		for(SendFuture future : futures){
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				assertTrue(false);
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof PacketDroppedException);
+			}
+		}
+		assertEquals(0, sender.getUserQueue().size());
+		assertEquals(0, sender.getUserQueue().getHeldPacketCount());
+	}
+
+	/**
+	 * Records the notifications of a node
+	 */
+	private static class Recorder implements Observer {
+		private final BlockingQueue<MessageToObserver> messages = new LinkedBlockingQueue<MessageToObserver>();
+
+		Recorder(Node node){
+			node.addObserver(this);
+		}
+
+		@Override
+		public void update(Observable o, Object arg) {
+			messages.add((MessageToObserver)arg);
+		}
+
+		/**
+		 * Waits for a notification of the given type, skipping the other ones
+		 * @return returns the value of the notification
+		 */
+		int next(int type, long timeout) throws InterruptedException{
+			long deadline = System.currentTimeMillis() + timeout;
+			while(true){
+				MessageToObserver message = messages.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				assertTrue(message != null);
+				if(message.getMessageType() == type){
+					return (Integer)message.getContainedData();
+				}
+			}
+		}
+
+		/**
+		 * Waits for received data
+		 * @return returns the first byte of the data
+		 */
+		int nextData(long timeout) throws InterruptedException{
+			long deadline = System.currentTimeMillis() + timeout;
+			while(true){
+				MessageToObserver message = messages.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				assertTrue(message != null);
+				if(message.getMessageType() == ObserverConst.DATA_RECEIVED){
+					return ((PacketToObserver)message).getData().get();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A transport which fails to send a given number of user packets. Protocol messages are always sent
+	 */
+	private static class FailingTransport implements Transport {
+		private final Transport transport;
+		private final AtomicInteger packetsToFail = new AtomicInteger(0);
+
+		FailingTransport(Transport transport){
+			this.transport = transport;
+		}
+
+		void failNextUserPackets(int count){
+			packetsToFail.set(count);
+		}
+
+		private boolean fails(byte[] data){
+			if(data[0] != Constants.USER_DATA_PACKET_PDU){
+				return false;
+			}
+			int count = packetsToFail.get();
+			while(count > 0){
+				if(packetsToFail.compareAndSet(count, count - 1)){
+					return true;
+				}
+				count = packetsToFail.get();
+			}
+			return false;
+		}
+
+		@Override
+		public void setPacketListener(PacketListener listener) {
+			transport.setPacketListener(listener);
+		}
+
+		@Override
+		public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException {
+			if(fails(data)){
+				throw new IOException("the network is unreachable");
+			}
+			return transport.sendPacket(destinationNodeID, data);
+		}
+
+		@Override
+		public boolean broadcastPacket(byte[] data) throws IOException, DataExceedsMaxSizeException {
+			if(fails(data)){
+				return false;
+			}
+			return transport.broadcastPacket(data);
+		}
+
+		@Override
+		public void startThread() {
+			transport.startThread();
+		}
+
+		@Override
+		public void stopThread() {
+			transport.stopThread();
+		}
+	}
+}
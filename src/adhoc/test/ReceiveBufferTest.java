@@ -0,0 +1,230 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.PacketSubscriber;
+import adhoc.aodv.PacketSubscription;
+import adhoc.aodv.ReceiveBuffer;
+import adhoc.aodv.ReceivedPacket;
+import adhoc.transport.LoopbackNetwork;
+
+public class ReceiveBufferTest {
+	
+	private ReceivedPacket packet(int senderNodeAddress){
+		return new ReceivedPacket(senderNodeAddress, new byte[]{(byte)senderNodeAddress}, 0, 1);
+	}
+	
+	/**
+	 * Testing that the newest packets are dropped when the buffer is full
+	 */
+	@Test public void dropNewestTest() throws InterruptedException{
+		ReceiveBuffer buffer = new ReceiveBuffer(2, ReceiveBuffer.DROP_NEWEST);
+		buffer.add(packet(1));
+		buffer.add(packet(2));
+		buffer.add(packet(3));
+		assertEquals(1, buffer.getDroppedPacketCount());
+		assertEquals(1, buffer.receive(0).getSenderNodeAddress());
+		assertEquals(2, buffer.receive(0).getSenderNodeAddress());
+		assertTrue(buffer.receive(10) == null);
+	}
+	
+	/**
+	 * Testing that the oldest packets are dropped when the buffer is full
+	 */
+	@Test public void dropOldestTest() throws InterruptedException{
+		ReceiveBuffer buffer = new ReceiveBuffer(2, ReceiveBuffer.DROP_OLDEST);
+		buffer.add(packet(1));
+		buffer.add(packet(2));
+		buffer.add(packet(3));
+		assertEquals(1, buffer.getDroppedPacketCount());
+		ArrayList<ReceivedPacket> drained = new ArrayList<ReceivedPacket>();
+		assertEquals(2, buffer.drainTo(drained, 10));
+		assertEquals(2, drained.get(0).getSenderNodeAddress());
+		assertEquals(3, drained.get(1).getSenderNodeAddress());
+		assertEquals(3, drained.get(1).getData().get());
+	}
+	
+	/**
+	 * Testing that the publisher delivers no more packets than requested
+	 */
+	@Test public void publisherDemandTest() throws InterruptedException{
+		ReceiveBuffer buffer = new ReceiveBuffer(10, ReceiveBuffer.BLOCK);
+		final ArrayList<ReceivedPacket> delivered = new ArrayList<ReceivedPacket>();
+		final PacketSubscription[] subscription = new PacketSubscription[1];
+		final boolean[] completed = new boolean[1];
+		buffer.subscribe(new PacketSubscriber() {
+			public void onSubscribe(PacketSubscription s) {
+				subscription[0] = s;
+			}
+			public void onNext(ReceivedPacket packet) {
+				delivered.add(packet);
+			}
+			public void onError(Throwable error) {
+				assertTrue(false);
+			}
+			public void onComplete() {
+				completed[0] = true;
+			}
+		});
+		buffer.add(packet(1));
+		assertEquals(0, delivered.size());
+		subscription[0].request(2);
+		assertEquals(1, delivered.size());
+		buffer.add(packet(2));
+		buffer.add(packet(3));
+		assertEquals(2, delivered.size());
+		assertEquals(1, buffer.size());
+		
+		//a second subscriber is rejected
+		final Throwable[] error = new Throwable[1];
+		buffer.subscribe(new PacketSubscriber() {
+			public void onSubscribe(PacketSubscription s) {
+			}
+			public void onNext(ReceivedPacket packet) {
+			}
+			public void onError(Throwable e) {
+				error[0] = e;
+			}
+			public void onComplete() {
+			}
+		});
+		assertTrue(error[0] != null);
+		
+		subscription[0].cancel();
+		subscription[0].request(5);
+		assertEquals(2, delivered.size());
+		assertEquals(3, buffer.receive(0).getSenderNodeAddress());
+		assertTrue(!completed[0]);
+	}
+	
+	/**
+	 * @return returns a latch which is counted down when the node reports the packet as sent
+	 */
+	private CountDownLatch sentLatch(Node node, final int packetIdentifier){
+		final CountDownLatch sent = new CountDownLatch(1);
+		node.addListener(new NodeAdapter(){
+			@Override
+			public void onDataSent(int identifier) {
+				if(identifier == packetIdentifier){
+					sent.countDown();
+				}
+			}
+		});
+		return sent;
+	}
+	
+	/**
+	 * Testing that a node whose buffer is full with the BLOCK policy keeps handling the routing messages,
+	 * and that the data waiting for room is neither lost nor queued without a bound
+	 */
+	@Test public void blockTest() throws Exception{
+		LoopbackNetwork network = new LoopbackNetwork();
+		Node sender = new Node(1, network.createTransport(1));
+		Node relay = new Node(2, network.createTransport(2));
+		Node receiver = new Node(3, network.createTransport(3));
+		network.link(1, 2);
+		network.link(2, 3);
+		relay.enableReceiveBuffer(1, ReceiveBuffer.BLOCK);
+		receiver.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST);
+		final CountDownLatch routeCreated = new CountDownLatch(1);
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onRouteCreated(int destinationAddress) {
+				if(destinationAddress == 3){
+					routeCreated.countDown();
+				}
+			}
+		});
+		CountDownLatch[] sent = new CountDownLatch[3];
+		for(int i = 0; i < 3; i++){
+			sent[i] = sentLatch(sender, i);
+		}
+		CountDownLatch forwarded = sentLatch(sender, 9);
+		sender.startThread();
+		relay.startThread();
+		receiver.startThread();
+		try {
+			//the first packet fills the buffer, the second waits for room and the third fills the data queue of the relay
+			for(int i = 0; i < 3; i++){
+				sender.sendData(i, 2, new byte[]{(byte)i});
+				assertTrue(sent[i].await(5, TimeUnit.SECONDS));
+			}
+			//the relay has to answer the route discovery while its buffer is full
+			sender.sendData(9, 3, new byte[]{9});
+			assertTrue(routeCreated.await(5, TimeUnit.SECONDS));
+			//the forwarded packet waits in the sender for room in the data queue of the relay
+			assertTrue(!forwarded.await(200, TimeUnit.MILLISECONDS));
+			
+			for(int i = 0; i < 3; i++){
+				assertEquals(i, relay.receive(5000).getData().get());
+			}
+			assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+			assertEquals(9, receiver.receive(5000).getData().get());
+			assertTrue(relay.receive(100) == null);
+		} finally {
+			sender.stopThread();
+			relay.stopThread();
+			receiver.stopThread();
+		}
+	}
+	
+	/**
+	 * Testing that the subscriber of a node is not called by its receiver thread,
+	 * so a slow subscriber does not hold up the routing messages and the forwarding
+	 */
+	@Test public void subscriberThreadTest() throws Exception{
+		LoopbackNetwork network = new LoopbackNetwork();
+		Node sender = new Node(1, network.createTransport(1));
+		Node relay = new Node(2, network.createTransport(2));
+		Node receiver = new Node(3, network.createTransport(3));
+		network.link(1, 2);
+		network.link(2, 3);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch delivered = new CountDownLatch(1);
+		relay.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST).subscribe(new PacketSubscriber() {
+			public void onSubscribe(PacketSubscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+			public void onNext(ReceivedPacket packet) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					
+				}
+				delivered.countDown();
+			}
+			public void onError(Throwable error) {
+			}
+			public void onComplete() {
+			}
+		});
+		receiver.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST);
+		CountDownLatch sent = sentLatch(sender, 1);
+		sender.startThread();
+		relay.startThread();
+		receiver.startThread();
+		try {
+			sender.sendData(1, 2, new byte[]{1});
+			assertTrue(sent.await(5, TimeUnit.SECONDS));
+			//the route discovery and the forwarding go on while the subscriber is blocked
+			sender.sendData(2, 3, new byte[]{2});
+			assertEquals(2, receiver.receive(5000).getData().get());
+			assertEquals(1, delivered.getCount());
+			release.countDown();
+			assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		} finally {
+			sender.stopThread();
+			relay.stopThread();
+			receiver.stopThread();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.ReceiveBuffer;
+import adhoc.aodv.ReceivedPacket;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.exception.AodvException;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.transport.LoopbackNetwork;
+
+public class SegmentationTest {
+	LoopbackNetwork network;
+	Node sender, relay, receiver;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		sender = new Node(1, network.createTransport(1));
+		relay = new Node(2, network.createTransport(2));
+		receiver = new Node(3, network.createTransport(3));
+		network.link(1, 2);
+		network.link(2, 3);
+		relay.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST);
+		receiver.enableReceiveBuffer(10, ReceiveBuffer.DROP_NEWEST);
+		sender.enableSegmentation(1400);
+		sender.startThread();
+		relay.startThread();
+		receiver.startThread();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		relay.stopThread();
+		receiver.stopThread();
+	}
+	
+	private static byte[] createMessage(int length){
+		byte[] message = new byte[length];
+		for(int i = 0; i < length; i++){
+			message[i] = (byte)(i * 31);
+		}
+		return message;
+	}
+	
+	private static void assertReceived(byte[] expected, int senderAddress, ReceivedPacket packet){
+		assertTrue(packet != null);
+		assertEquals(senderAddress, packet.getSenderNodeAddress());
+		assertEquals(ByteBuffer.wrap(expected), packet.getData());
+	}
+	
+	/**
+	 * Testing that a message larger than the MTU is received whole, and is reported as sent once
+	 */
+	@Test public void neighbourTest() throws Exception{
+		byte[] message = createMessage(100 * 1024);
+		final AtomicInteger completions = new AtomicInteger(0);
+		SendFuture future = sender.sendAsync(2, message);
+		future.setCallback(new SendFuture.SendCallback() {
+			@Override
+			public void onSent(SendFuture future) {
+				completions.incrementAndGet();
+			}
+			@Override
+			public void onFailure(SendFuture future, AodvException reason) {
+				completions.incrementAndGet();
+			}
+		});
+		future.get(5, TimeUnit.SECONDS);
+		assertReceived(message, 1, relay.receive(5000));
+		assertEquals(1, completions.get());
+		assertTrue(relay.receive(100) == null);
+	}
+	
+	/**
+	 * Testing that the segments are forwarded unchanged by a node which does not split messages itself
+	 */
+	@Test public void multiHopTest() throws Exception{
+		byte[] message = createMessage(20000);
+		sender.sendAsync(3, message).get(10, TimeUnit.SECONDS);
+		assertReceived(message, 1, receiver.receive(5000));
+		
+		byte[] small = createMessage(10);
+		sender.sendAsync(3, small).get(5, TimeUnit.SECONDS);
+		assertReceived(small, 1, receiver.receive(5000));
+	}
+	
+	/**
+	 * Testing that a message exceeding the maximum message size is given up before any segment is sent
+	 */
+	@Test public void tooLargeTest() throws Exception{
+		try {
+			sender.sendAsync(2, new byte[Constants.MAX_MESSAGE_SIZE + 1]).get(5, TimeUnit.SECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof DataExceedsMaxSizeException);
+		}
+		assertEquals(0, sender.getUserQueue().size());
+	}
+	
+	/**
+	 * Testing that a broadcast larger than the MTU is rejected instead of being split into segments,
+	 * while a broadcast within the MTU is still received
+	 */
+	@Test public void broadcastTest() throws Exception{
+		try {
+			sender.sendAsync(Constants.BROADCAST_ADDRESS, createMessage(2000)).get(5, TimeUnit.SECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof DataExceedsMaxSizeException);
+		}
+		assertEquals(0, sender.getUserQueue().size());
+		
+		byte[] small = createMessage(100);
+		sender.sendAsync(Constants.BROADCAST_ADDRESS, small).get(5, TimeUnit.SECONDS);
+		assertReceived(small, 1, relay.receive(5000));
+		assertTrue(relay.receive(100) == null);
+	}
+}
@@ -0,0 +1,86 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.aodv.exception.InvalidNodeAddressException;
+import adhoc.aodv.exception.RouteEstablishmentFailureException;
+import adhoc.transport.LoopbackNetwork;
+
+public class SendAsyncTest {
+	LoopbackNetwork network;
+	Node sender, receiver;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		sender = new Node(1, network.createTransport(1));
+		receiver = new Node(2, network.createTransport(2));
+		network.link(1, 2);
+		sender.startThread();
+		receiver.startThread();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		receiver.stopThread();
+	}
+	
+	/**
+	 * Testing that the future is completed when the data is sent
+	 */
+	@Test public void sentTest() throws Exception{
+		SendFuture future = sender.sendAsync(2, new byte[]{1, 2, 3});
+		future.get(5, TimeUnit.SECONDS);
+		assertTrue(future.isSent());
+		assertTrue(future.getFailure() == null);
+	}
+	
+	/**
+	 * Testing that the future fails when the packet can not be sent
+	 */
+	@Test public void invalidPacketTest() throws Exception{
+		SendFuture ownAddress = sender.sendAsync(1, new byte[]{1});
+		SendFuture tooLarge = sender.sendAsync(2, new byte[Constants.MAX_PACKAGE_SIZE]);
+		try {
+			ownAddress.get(5, TimeUnit.SECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof InvalidNodeAddressException);
+		}
+		try {
+			tooLarge.get(5, TimeUnit.SECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof DataExceedsMaxSizeException);
+		}
+		assertTrue(!tooLarge.isSent());
+	}
+	
+	/**
+	 * Testing that the future fails with a distinct exception when no route can be established
+	 */
+	@Test public void routeEstablishmentFailureTest() throws Exception{
+		SendFuture unreachable = sender.sendAsync(3, new byte[]{1});
+		SendFuture reachable = sender.sendAsync(2, new byte[]{1});
+		reachable.get(5, TimeUnit.SECONDS);
+		assertTrue(!unreachable.isDone());
+		try {
+			unreachable.get(Constants.PATH_DESCOVERY_TIME * (Constants.MAX_NUMBER_OF_RREQ_RETRIES + 2), TimeUnit.MILLISECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RouteEstablishmentFailureException);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.transport.LoopbackNetwork;
+import adhoc.transport.PacketListener;
+import adhoc.transport.Transport;
+
+public class SenderSchedulingTest {
+	LoopbackNetwork network;
+	GatedTransport gate;
+	Node sender, receiver, otherReceiver;
+	List<Integer> sentPackets;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		gate = new GatedTransport(network.createTransport(1));
+		sender = new Node(1, gate);
+		receiver = new Node(2, network.createTransport(2));
+		otherReceiver = new Node(3, network.createTransport(3));
+		network.link(1, 2);
+		network.link(1, 3);
+		sentPackets = new ArrayList<Integer>();
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onDataSent(int packetIdentifier) {
+				synchronized (sentPackets) {
+					sentPackets.add(packetIdentifier);
+					sentPackets.notifyAll();
+				}
+			}
+		});
+		sender.startThread();
+		receiver.startThread();
+		otherReceiver.startThread();
+		//establish the routes before the sender is held up
+		sender.sendAsync(2, new byte[1]).get(5, TimeUnit.SECONDS);
+		sender.sendAsync(3, new byte[1]).get(5, TimeUnit.SECONDS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		gate.open();
+		sender.stopThread();
+		receiver.stopThread();
+		otherReceiver.stopThread();
+	}
+	
+	private void awaitSentPackets(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		synchronized (sentPackets) {
+			while(sentPackets.size() < count && System.currentTimeMillis() < deadline){
+				sentPackets.wait(100);
+			}
+			assertEquals(count, sentPackets.size());
+		}
+	}
+	
+	/**
+	 * Testing that a destination with a backlog does not hold up the packets to another destination
+	 */
+	@Test public void fairQueuingTest() throws Exception{
+		gate.close();
+		sender.sendData(100, 2, new byte[10]);
+		assertTrue(gate.awaitBlockedSender());
+		for(int i = 101; i <= 110; i++){
+			sender.sendData(i, 2, new byte[10]);
+		}
+		sender.sendData(200, 3, new byte[10]);
+		gate.open();
+		awaitSentPackets(12);
+		
+		synchronized (sentPackets) {
+			assertTrue(sentPackets.indexOf(200) <= 2);
+			//the packets to the same destination keep their order
+			for(int i = 101; i < 110; i++){
+				assertTrue(sentPackets.indexOf(i) < sentPackets.indexOf(i+1));
+			}
+		}
+	}
+	
+	/**
+	 * Testing that protocol messages are sent before a backlog of user data
+	 */
+	@Test public void controlPriorityTest() throws Exception{
+		gate.close();
+		sender.sendData(100, 2, new byte[10]);
+		assertTrue(gate.awaitBlockedSender());
+		for(int i = 101; i <= 110; i++){
+			sender.sendData(i, 2, new byte[10]);
+		}
+		//a hello message is queued meanwhile
+		Thread.sleep(Constants.BROADCAST_INTERVAL + 200);
+		gate.open();
+		awaitSentPackets(11);
+		
+		List<Byte> types = gate.getSentTypes();
+		int firstHello = types.indexOf(Constants.HELLO_PDU);
+		int lastUserData = types.lastIndexOf(Constants.USER_DATA_PACKET_PDU);
+		assertTrue(firstHello >= 0);
+		assertTrue(firstHello < lastUserData);
+		//only the packet being sent when the sender were held up may come before the hello message
+		assertTrue(firstHello <= 1);
+	}
+	
+	/**
+	 * A transport which holds up the sending thread while the gate is closed, and records the type of the packets sent
+	 */
+	private static class GatedTransport implements Transport {
+		private final Transport transport;
+		private final List<Byte> sentTypes = new ArrayList<Byte>();
+		private volatile CountDownLatch gate = null;
+		private CountDownLatch blocked;
+		
+		GatedTransport(Transport transport){
+			this.transport = transport;
+		}
+		
+		void close(){
+			blocked = new CountDownLatch(1);
+			gate = new CountDownLatch(1);
+		}
+		
+		void open(){
+			CountDownLatch current = gate;
+			gate = null;
+			if(current != null){
+				current.countDown();
+			}
+		}
+		
+		boolean awaitBlockedSender() throws InterruptedException {
+			return blocked.await(5, TimeUnit.SECONDS);
+		}
+		
+		List<Byte> getSentTypes(){
+			synchronized (sentTypes) {
+				return new ArrayList<Byte>(sentTypes);
+			}
+		}
+		
+		private void pass(byte[] data) throws IOException {
+			CountDownLatch current = gate;
+			if(current != null){
+				synchronized (sentTypes) {
+					sentTypes.clear();
+					sentTypes.add(data[0]);
+				}
+				blocked.countDown();
+				try {
+					current.await();
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted");
+				}
+			} else {
+				synchronized (sentTypes) {
+					sentTypes.add(data[0]);
+				}
+			}
+		}
+
+		@Override
+		public void setPacketListener(PacketListener listener) {
+			transport.setPacketListener(listener);
+		}
+
+		@Override
+		public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException {
+			pass(data);
+			return transport.sendPacket(destinationNodeID, data);
+		}
+
+		@Override
+		public boolean broadcastPacket(byte[] data) throws IOException, DataExceedsMaxSizeException {
+			pass(data);
+			return transport.broadcastPacket(data);
+		}
+
+		@Override
+		public void startThread() {
+			transport.startThread();
+		}
+
+		@Override
+		public void stopThread() {
+			transport.stopThread();
+		}
+	}
+}
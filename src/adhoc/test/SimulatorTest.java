@@ -0,0 +1,103 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.simulation.SimulationReport;
+import adhoc.simulation.Simulator;
+import adhoc.simulation.Topology;
+
+public class SimulatorTest {
+	Simulator simulator;
+	
+	@After
+	public void tearDown() throws Exception {
+		if(simulator != null){
+			simulator.stop();
+		}
+	}
+	
+	/**
+	 * Testing the topologies hold the expected links
+	 */
+	@Test public void topologyTest(){
+		assertEquals(4, Topology.chain(5).getLinks().size());
+		assertEquals(12, Topology.grid(3, 3).getLinks().size());
+		assertEquals(Topology.randomGeometric(20, 0.3, 7).getLinks().size(), Topology.randomGeometric(20, 0.3, 7).getLinks().size());
+		assertEquals(0, Topology.randomGeometric(20, 0, 7).getLinks().size());
+		assertEquals(4, Topology.chain(5).getDistance(0, 4));
+		assertEquals(4, Topology.grid(3, 3).getDistance(0, 8));
+		assertEquals(-1, new Topology(2).getDistance(0, 1));
+	}
+	
+	/**
+	 * Testing that a packet across a chain is delivered after a route discovery, in virtual time
+	 */
+	@Test public void chainDeliveryTest() throws Exception{
+		simulator = new Simulator(Topology.chain(5), 1, 0, 5);
+		simulator.send(2000, 0, 4, 32);
+		simulator.send(2500, 0, 4, 32);
+		long startTime = System.currentTimeMillis();
+		SimulationReport report = simulator.run(10000);
+		assertTrue(System.currentTimeMillis() - startTime < 10000);
+		assertEquals(10000, report.getDuration());
+		assertEquals(2, report.getPacketsSubmitted());
+		assertEquals(2, report.getPacketsDelivered());
+		assertTrue(report.getDeliveryRatio() == 1.0);
+		//only the first packet waited for the route, which took at least a round trip to a neighbour
+		assertEquals(1, report.getDiscoveryLatency().getCount());
+		assertTrue(report.getDiscoveryLatency().getMax() >= 2 * 5);
+		assertTrue(report.getDiscoveryLatency().getMax() < Constants.PATH_DESCOVERY_TIME);
+		assertTrue(report.getRreqTransmissions() > 0);
+		assertTrue(report.getRrepTransmissions() > 0);
+		//the second packet went straight across the four hops
+		assertEquals(4 * 5, report.getDeliveryLatency().getPercentile(50));
+		assertEquals(0, report.getLostPackets());
+	}
+	
+	/**
+	 * Testing that no packets get through a broken link, and that the route is not found again while it is broken
+	 */
+	@Test public void linkBreakTest() throws Exception{
+		simulator = new Simulator(Topology.chain(4), 1);
+		for(long time = 1000; time <= 6000; time += 500){
+			simulator.send(time, 0, 3, 16);
+		}
+		simulator.breakLink(3200, 2, 3);
+		SimulationReport report = simulator.run(10000);
+		//the packets sent before the break
+		assertEquals(5, report.getPacketsDelivered());
+		assertTrue(report.getLostPackets() > 0);
+		simulator.send(10000, 0, 3, 16);
+		report = simulator.run(20000);
+		assertEquals(12, report.getPacketsSubmitted());
+		assertEquals(5, report.getPacketsDelivered());
+		assertEquals(1, report.getFailedDiscoveries());
+		simulator.restoreLink(30000, 2, 3);
+		simulator.send(35000, 0, 3, 16);
+		report = simulator.run(10000);
+		assertEquals(6, report.getPacketsDelivered());
+	}
+	
+	/**
+	 * Testing that a run with lossy links is repeated exactly by using the same seed
+	 */
+	@Test public void repeatableLossTest() throws Exception{
+		String[] reports = new String[2];
+		for(int i = 0; i < reports.length; i++){
+			simulator = new Simulator(Topology.grid(3, 3), 42, 0.2, 2);
+			simulator.sendRandomTraffic(1000, 20000, 250, 64);
+			SimulationReport report = simulator.run(30000);
+			simulator.stop();
+			assertTrue(report.getLostPackets() > 0);
+			assertTrue(report.getPacketsDelivered() > 0);
+			reports[i] = report.toString();
+		}
+		simulator = null;
+		assertEquals(reports[0], reports[1]);
+	}
+}
@@ -9,7 +9,23 @@ import org.junit.runners.Suite;
 	ForwardRouteEntryTest.class,
 	ForwardTableTest.class,
 	RouteRequestTableTest.class,
-	SequenceNumberTests.class
+	SequenceNumberTests.class,
+	PduEncodingTest.class,
+	TimingWheelTest.class,
+	LongKeyMapTest.class,
+	DebugTest.class,
+	NodeListenerTest.class,
+	ReceiveBufferTest.class,
+	SendAsyncTest.class,
+	OutboundQueueTest.class,
+	SenderSchedulingTest.class,
+	AggregationTest.class,
+	SegmentationTest.class,
+	VirtualTimeTest.class,
+	TimerSchedulerTest.class,
+	SimulatorTest.class,
+	BenchmarkRunnerTest.class,
+	PendingMessagesTest.class
 })
 
 public class TestAll {
@@ -0,0 +1,125 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.TimerScheduler;
+import adhoc.aodv.VirtualClock;
+
+public class TimerSchedulerTest {
+	VirtualClock clock;
+	TimerScheduler timers;
+
+	@Before
+	public void setUp() throws Exception {
+		clock = new VirtualClock(0);
+		timers = new TimerScheduler(clock);
+	}
+
+	/**
+	 * A timer which records the times it is run at, and is due again after its period
+	 */
+	private static class RecordingTask implements TimerScheduler.TimerTask {
+		final List<Long> runs = new ArrayList<Long>();
+		private final long period;
+
+		RecordingTask(long period){
+			this.period = period;
+		}
+
+		@Override
+		public long run(long currentTime) {
+			runs.add(currentTime);
+			if(period == TimerScheduler.NEVER){
+				return TimerScheduler.NEVER;
+			}
+			return currentTime + period;
+		}
+	}
+
+	/**
+	 * Testing that scheduling a timer only moves it earlier
+	 */
+	@Test public void scheduleEarlierTest(){
+		RecordingTask task = new RecordingTask(TimerScheduler.NEVER);
+		timers.schedule(task, 100);
+		timers.schedule(task, 200);
+		assertEquals(100, timers.getNextDueTime());
+		timers.schedule(task, 50);
+		assertEquals(50, timers.getNextDueTime());
+
+		timers.advanceTo(300);
+		assertEquals(1, task.runs.size());
+		assertEquals(50, (long)task.runs.get(0));
+		assertEquals(TimerScheduler.NEVER, timers.getNextDueTime());
+		assertEquals(300, clock.currentTimeMillis());
+	}
+
+	/**
+	 * Testing that a cancelled timer is not run
+	 */
+	@Test public void cancelTest(){
+		RecordingTask cancelled = new RecordingTask(100);
+		RecordingTask kept = new RecordingTask(TimerScheduler.NEVER);
+		timers.schedule(cancelled, 100);
+		timers.schedule(kept, 100);
+		timers.cancel(cancelled);
+		//cancelling a timer which is not scheduled does nothing
+		timers.cancel(new RecordingTask(100));
+
+		timers.advanceTo(500);
+		assertEquals(0, cancelled.runs.size());
+		assertEquals(1, kept.runs.size());
+	}
+
+	/**
+	 * Testing that the timers which are due at the same time are run in one wakeup, and the later ones are not
+	 */
+	@Test public void dueTimersTest(){
+		RecordingTask first = new RecordingTask(TimerScheduler.NEVER);
+		RecordingTask second = new RecordingTask(TimerScheduler.NEVER);
+		RecordingTask later = new RecordingTask(TimerScheduler.NEVER);
+		timers.schedule(first, 100);
+		timers.schedule(second, 100);
+		timers.schedule(later, 150);
+
+		timers.advanceTo(120);
+		assertEquals(1, first.runs.size());
+		assertEquals(1, second.runs.size());
+		assertEquals(100, (long)first.runs.get(0));
+		assertEquals(100, (long)second.runs.get(0));
+		assertEquals(0, later.runs.size());
+		assertEquals(150, timers.getNextDueTime());
+
+		timers.advanceTo(150);
+		assertEquals(1, later.runs.size());
+		assertEquals(1, first.runs.size());
+	}
+
+	/**
+	 * Testing that a failing timer does not stop the other timers
+	 */
+	@Test public void failingTimerTest(){
+		TimerScheduler.TimerTask failing = new TimerScheduler.TimerTask() {
+			@Override
+			public long run(long currentTime) {
+				throw new IllegalStateException("failing timer");
+			}
+		};
+		RecordingTask periodic = new RecordingTask(100);
+		timers.schedule(failing, 100);
+		timers.schedule(periodic, 100);
+
+		timers.advanceTo(300);
+		assertEquals(3, periodic.runs.size());
+		assertEquals(300, (long)periodic.runs.get(2));
+		//the failing timer is not run again
+		assertEquals(400, timers.getNextDueTime());
+		assertEquals(300, clock.currentTimeMillis());
+	}
+}
@@ -0,0 +1,109 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.routes.ForwardRouteEntry;
+import adhoc.aodv.routes.TimingWheel;
+
+public class TimingWheelTest {
+	TimingWheel<ForwardRouteEntry> wheel;
+	ForwardRouteEntry fe1, fe2, fe3;
+	ArrayList<ForwardRouteEntry> expired;
+
+	@Before
+	public void setUp() throws Exception {
+		//8 slots of 10 ms, so one rotation covers 80 ms
+		wheel = new TimingWheel<ForwardRouteEntry>(10, 8);
+		fe1 = new ForwardRouteEntry(1, 1, 1, 1, new ArrayList<Integer>());
+		fe2 = new ForwardRouteEntry(2, 1, 1, 1, new ArrayList<Integer>());
+		fe3 = new ForwardRouteEntry(3, 1, 1, 1, new ArrayList<Integer>());
+		expired = new ArrayList<ForwardRouteEntry>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		wheel = null;
+		fe1 = null; fe2 = null; fe3 = null;
+	}
+
+	@Test public void expireInDeadlineOrderTest(){
+		wheel.expire(1000, expired);
+		wheel.schedule(fe1, 1015);
+		wheel.schedule(fe2, 1045);
+		assertEquals(2, wheel.size());
+		wheel.expire(1014, expired);
+		assertTrue(expired.isEmpty());
+		wheel.expire(1015, expired);
+		assertEquals(1, expired.size());
+		assertEquals(fe1, expired.get(0));
+		assertFalse(wheel.isScheduled(fe1));
+		wheel.expire(1100, expired);
+		assertEquals(2, expired.size());
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test public void rescheduleTest(){
+		wheel.expire(1000, expired);
+		wheel.schedule(fe1, 1015);
+		wheel.schedule(fe1, 1055);
+		assertEquals(1, wheel.size());
+		wheel.expire(1030, expired);
+		assertTrue(expired.isEmpty());
+		wheel.expire(1055, expired);
+		assertEquals(fe1, expired.get(0));
+	}
+
+	@Test public void cancelTest(){
+		wheel.schedule(fe1, 1015);
+		assertTrue(wheel.cancel(fe1));
+		assertFalse(wheel.cancel(fe1));
+		wheel.expire(2000, expired);
+		assertTrue(expired.isEmpty());
+	}
+
+	/**
+	 * Testing that entries more than one rotation ahead are not expired when their slot is passed
+	 */
+	@Test public void beyondOneRotationTest(){
+		wheel.expire(1000, expired);
+		wheel.schedule(fe1, 1005 + 80);
+		wheel.schedule(fe2, 1005);
+		wheel.expire(1010, expired);
+		assertEquals(1, expired.size());
+		assertEquals(fe2, expired.get(0));
+		assertEquals(fe1, wheel.peekEarliest());
+		wheel.expire(1085, expired);
+		assertEquals(2, expired.size());
+	}
+
+	@Test public void pastDeadlineTest(){
+		wheel.expire(1000, expired);
+		wheel.schedule(fe1, 500);
+		wheel.expire(1000, expired);
+		assertEquals(fe1, expired.get(0));
+	}
+
+	@Test public void peekEarliestTest(){
+		assertEquals(null, wheel.peekEarliest());
+		assertEquals(-1, wheel.getNextDeadline());
+		wheel.schedule(fe3, 1300);
+		wheel.schedule(fe1, 1020);
+		wheel.schedule(fe2, 1020);
+		//ties are resolved by the order the entries were scheduled in
+		assertEquals(fe1, wheel.peekEarliest());
+		wheel.expire(1000, expired);
+		assertEquals(fe1, wheel.peekEarliest());
+		wheel.cancel(fe1);
+		assertEquals(fe2, wheel.peekEarliest());
+		wheel.cancel(fe2);
+		assertEquals(1300, wheel.getNextDeadline());
+	}
+}
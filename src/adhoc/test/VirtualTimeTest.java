@@ -0,0 +1,102 @@
+package adhoc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.Node;
+import adhoc.aodv.NodeAdapter;
+import adhoc.aodv.SendFuture;
+import adhoc.aodv.TimerScheduler;
+import adhoc.aodv.VirtualClock;
+import adhoc.aodv.exception.RouteEstablishmentFailureException;
+import adhoc.transport.LoopbackNetwork;
+
+public class VirtualTimeTest {
+	//the virtual time is advanced in steps, which gives the node threads time to handle the packets of each step
+	private static final long STEP = 50;
+	LoopbackNetwork network;
+	VirtualClock clock;
+	TimerScheduler timers;
+	Node sender, receiver;
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new LoopbackNetwork();
+		clock = new VirtualClock(0);
+		timers = new TimerScheduler(clock);
+		sender = new Node(1, network.createTransport(1), timers);
+		receiver = new Node(2, network.createTransport(2), timers);
+		network.link(1, 2);
+		sender.startThread();
+		receiver.startThread();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.stopThread();
+		receiver.stopThread();
+	}
+	
+	private void advance(long duration) throws InterruptedException{
+		long end = clock.currentTimeMillis() + duration;
+		while(clock.currentTimeMillis() < end){
+			timers.advanceTo(Math.min(end, clock.currentTimeMillis() + STEP));
+			Thread.sleep(2);
+		}
+	}
+	
+	/**
+	 * Testing that the route discovery gives up after all retries in virtual time, without waiting for them in real time
+	 */
+	@Test public void routeDiscoveryFailureTest() throws Exception{
+		SendFuture future = sender.sendAsync(9, new byte[]{1});
+		long startTime = System.currentTimeMillis();
+		long virtualStartTime = clock.currentTimeMillis();
+		while(!future.isDone() && clock.currentTimeMillis() - virtualStartTime < 10 * Constants.PATH_DESCOVERY_TIME){
+			advance(STEP);
+		}
+		try {
+			future.get(0, TimeUnit.MILLISECONDS);
+			assertTrue(false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RouteEstablishmentFailureException);
+		}
+		assertTrue(clock.currentTimeMillis() - virtualStartTime >= Constants.PATH_DESCOVERY_TIME);
+		assertTrue(System.currentTimeMillis() - startTime < Constants.PATH_DESCOVERY_TIME);
+	}
+	
+	/**
+	 * Testing that a route to a neighbour which has gone out of range expires by the virtual clock
+	 */
+	@Test public void routeExpiryTest() throws Exception{
+		final CountDownLatch invalid = new CountDownLatch(1);
+		sender.addListener(new NodeAdapter(){
+			@Override
+			public void onRouteInvalid(int destinationAddress) {
+				if(destinationAddress == 2){
+					invalid.countDown();
+				}
+			}
+		});
+		sender.sendAsync(2, new byte[]{1}).get(5, TimeUnit.SECONDS);
+		network.unlink(1, 2);
+		
+		long startTime = System.currentTimeMillis();
+		long virtualStartTime = clock.currentTimeMillis();
+		while(invalid.getCount() > 0 && clock.currentTimeMillis() - virtualStartTime < 10 * Constants.ROUTE_ALIVETIME){
+			advance(STEP);
+		}
+		assertEquals(0, invalid.getCount());
+		assertTrue(clock.currentTimeMillis() - virtualStartTime >= Constants.ROUTE_ALIVETIME);
+		assertTrue(System.currentTimeMillis() - startTime < Constants.ROUTE_ALIVETIME);
+	}
+}
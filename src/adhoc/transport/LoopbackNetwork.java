@@ -0,0 +1,99 @@
+package adhoc.transport;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * An in-memory network connecting LoopbackTransport instances, so that many nodes can run inside one JVM.
+ * Packets are only delivered between nodes that are linked, which makes it possible to build multi-hop topologies
+ * and to break links while the nodes are running.
+ * @author Rabie
+ *
+ */
+public class LoopbackNetwork {
+	private ConcurrentHashMap<Integer, LoopbackTransport> transports;
+	private ConcurrentHashMap<Integer, Set<Integer>> neighbours;
+	
+	public LoopbackNetwork(){
+		transports = new ConcurrentHashMap<Integer, LoopbackTransport>();
+		neighbours = new ConcurrentHashMap<Integer, Set<Integer>>();
+	}
+	
+	/**
+	 * Creates the transport for a node attached to this network
+	 * @param nodeAddress the address of the node which will use the transport
+	 * @return returns the new transport
+	 * @throws IllegalArgumentException is thrown if a transport already exists for the address
+	 */
+	public LoopbackTransport createTransport(int nodeAddress){
+		LoopbackTransport transport = new LoopbackTransport(this, nodeAddress);
+		if(transports.putIfAbsent(nodeAddress, transport) != null){
+			throw new IllegalArgumentException("LoopbackNetwork: a transport already exists for address: "+nodeAddress);
+		}
+		neighbours.putIfAbsent(nodeAddress, new CopyOnWriteArraySet<Integer>());
+		return transport;
+	}
+	
+	/**
+	 * Makes the two nodes neighbours, in both directions
+	 */
+	public void link(int firstNodeAddress, int secondNodeAddress){
+		getNeighbourSet(firstNodeAddress).add(secondNodeAddress);
+		getNeighbourSet(secondNodeAddress).add(firstNodeAddress);
+	}
+	
+	/**
+	 * Breaks the link between the two nodes, in both directions
+	 */
+	public void unlink(int firstNodeAddress, int secondNodeAddress){
+		getNeighbourSet(firstNodeAddress).remove(secondNodeAddress);
+		getNeighbourSet(secondNodeAddress).remove(firstNodeAddress);
+	}
+	
+	public boolean isLinked(int firstNodeAddress, int secondNodeAddress){
+		return getNeighbourSet(firstNodeAddress).contains(secondNodeAddress);
+	}
+	
+	/**
+	 * @return returns a read-only view of the current neighbours of the node
+	 */
+	public Set<Integer> getNeighbours(int nodeAddress){
+		return Collections.unmodifiableSet(getNeighbourSet(nodeAddress));
+	}
+	
+	private Set<Integer> getNeighbourSet(int nodeAddress){
+		Set<Integer> set = neighbours.get(nodeAddress);
+		if(set == null){
+			neighbours.putIfAbsent(nodeAddress, new CopyOnWriteArraySet<Integer>());
+			set = neighbours.get(nodeAddress);
+		}
+		return set;
+	}
+	
+	/**
+	 * Hands the packet to the destination if it is a neighbour of the sender.
+	 * As on a radio link, a packet to a node out of range is silently lost
+	 */
+	void unicast(int senderNodeAddress, int destinationNodeAddress, byte[] data){
+		if(getNeighbourSet(senderNodeAddress).contains(destinationNodeAddress)){
+			LoopbackTransport transport = transports.get(destinationNodeAddress);
+			if(transport != null){
+				transport.deliver(senderNodeAddress, data);
+			}
+		}
+	}
+	
+	/**
+	 * Hands the packet to every neighbour of the sender. All neighbours share the same array
+	 */
+	void broadcast(int senderNodeAddress, byte[] data){
+		for(int neighbour: getNeighbourSet(senderNodeAddress)){
+			LoopbackTransport transport = transports.get(neighbour);
+			if(transport != null){
+				transport.deliver(senderNodeAddress, data);
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package adhoc.transport;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+
+/**
+ * A transport that exchanges packets through a LoopbackNetwork instead of a network interface.
+ * A sent packet is handed straight to the packet listener of the receiving node, which queues it
+ * for its own receiver thread, so no threads are added per node.
+ * @author Rabie
+ *
+ */
+public class LoopbackTransport implements Transport {
+	private LoopbackNetwork network;
+	private int nodeAddress;
+	private volatile PacketListener listener;
+	private volatile boolean isRunning = false;
+	
+	LoopbackTransport(LoopbackNetwork network, int nodeAddress){
+		this.network = network;
+		this.nodeAddress = nodeAddress;
+	}
+	
+	public int getNodeAddress(){
+		return nodeAddress;
+	}
+
+	@Override
+	public void setPacketListener(PacketListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public boolean sendPacket(int destinationNodeID, byte[] data) throws DataExceedsMaxSizeException {
+		if(data.length > Constants.MAX_PACKAGE_SIZE){
+			throw new DataExceedsMaxSizeException();
+		}
+		if(destinationNodeID == Constants.BROADCAST_ADDRESS){
+			network.broadcast(nodeAddress, data);
+		} else {
+			network.unicast(nodeAddress, destinationNodeID, data);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean broadcastPacket(byte[] data) throws DataExceedsMaxSizeException {
+		return sendPacket(Constants.BROADCAST_ADDRESS, data);
+	}
+
+	@Override
+	public void startThread() {
+		isRunning = true;
+	}
+
+	@Override
+	public void stopThread() {
+		isRunning = false;
+	}
+	
+	/**
+	 * Called by the network when a neighbour has sent a packet to this node. Packets are dropped while the transport is stopped
+	 */
+	void deliver(int senderNodeAddress, byte[] data){
+		PacketListener currentListener = listener;
+		if(isRunning && currentListener != null){
+			currentListener.packetReceived(senderNodeAddress, data);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package adhoc.transport;
+
+/**
+ * Callback used by a transport to hand received packets to the routing protocol
+ * @author Rabie
+ *
+ */
+public interface PacketListener {
+	
+	/**
+	 * Called for every packet received from a neighbour
+	 * @param senderNodeAddress the address of the neighbour which sent the packet
+	 * @param data the received packet. The array is owned by the listener from this point on
+	 */
+	public void packetReceived(int senderNodeAddress, byte[] data);
+}
@@ -0,0 +1,50 @@
+package adhoc.transport;
+
+import java.io.IOException;
+
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+
+/**
+ * Defines the network layer which a node uses to exchange packets with its neighbours.
+ * The default implementation is adhoc.udp.UdpTransport which sends over the ad-hoc interface,
+ * while LoopbackTransport lets several nodes exchange packets inside one JVM.
+ * @author Rabie
+ *
+ */
+public interface Transport {
+	
+	/**
+	 * Sets the listener which every received packet is handed to. Must be set before the transport is started
+	 * @param listener the listener which receives the packets
+	 */
+	public void setPacketListener(PacketListener listener);
+	
+	/**
+	 * Sends a packet to a single neighbour
+	 * @param destinationNodeID the address of the neighbour which should receive the packet
+	 * @param data the encoded packet. The array must not be modified after it is handed to the transport
+	 * @return returns true if the packet were handed to the network
+	 * @throws IOException
+	 * @throws DataExceedsMaxSizeException is thrown if the length of the data exceeds Constants.MAX_PACKAGE_SIZE
+	 */
+	public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException;
+	
+	/**
+	 * Sends a packet to all neighbours
+	 * @param data the encoded packet. The array must not be modified after it is handed to the transport
+	 * @return returns true if the packet were handed to the network
+	 * @throws IOException
+	 * @throws DataExceedsMaxSizeException is thrown if the length of the data exceeds Constants.MAX_PACKAGE_SIZE
+	 */
+	public boolean broadcastPacket(byte[] data) throws IOException, DataExceedsMaxSizeException;
+	
+	/**
+	 * Starts delivering received packets to the listener
+	 */
+	public void startThread();
+	
+	/**
+	 * Stops delivering received packets
+	 */
+	public void stopThread();
+}
@@ -2,111 +2,120 @@ package adhoc.udp;
 
 import java.io.IOException;
 import java.net.BindException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
 
-import adhoc.aodv.Receiver;
+import adhoc.aodv.Constants;
+import adhoc.transport.PacketListener;
 
 
 /**
  * Class running as a separate thread, and responsible for receiving data packets over the UDP protocol.
+ * Both the unicast and the broadcast port are served by a single thread which waits on a selector,
+ * and every datagram is read into the same buffer.
  * @author Rabie
  *
  */
 public class UdpReceiver implements Runnable{
-	private Receiver parent;
-	private DatagramSocket datagramSocket;
-	private UdpBroadcastReceiver udpBroadcastReceiver;
+	private volatile PacketListener parent;
+	private Selector selector;
+	private DatagramChannel unicastChannel;
+	private DatagramChannel broadcastChannel;
+	private ByteBuffer receiveBuffer;
 	private volatile boolean keepRunning = true;
 	private Thread udpReceiverthread;
-	
-	public UdpReceiver(Receiver parent, int nodeAddress) throws SocketException, UnknownHostException, BindException{
-		this.parent = parent;
-		datagramSocket = new DatagramSocket(new InetSocketAddress("192.168.2."+nodeAddress ,8888));
-		datagramSocket.setBroadcast(true);
-		udpBroadcastReceiver = new UdpBroadcastReceiver(8888);
+
+	public UdpReceiver(int nodeAddress, String subNet) throws SocketException, UnknownHostException, BindException{
+		receiveBuffer = ByteBuffer.allocateDirect(Constants.MAX_PACKAGE_SIZE);
+		try {
+			selector = Selector.open();
+			unicastChannel = openChannel(new InetSocketAddress(subNet+nodeAddress ,8888));
+			unicastChannel.socket().setBroadcast(true);
+			broadcastChannel = openChannel(new InetSocketAddress(8888+1));
+		} catch (SocketException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new SocketException("UdpReceiver: failed to open the datagram channels: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Opens a non-blocking channel bound to the given address and registers it for reading
+	 * @param address the local address which to bind the channel to
+	 * @return returns the registered channel
+	 * @throws IOException
+	 */
+	private DatagramChannel openChannel(InetSocketAddress address) throws IOException{
+		DatagramChannel channel = DatagramChannel.open();
+		channel.socket().bind(address);
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ);
+		return channel;
+	}
+
+	public void setPacketListener(PacketListener listener){
+		parent = listener;
 	}
-	
+
 	public void startThread(){
 		keepRunning = true;
-		udpBroadcastReceiver.startBroadcastReceiverthread();
 		udpReceiverthread = new Thread(this);
 		udpReceiverthread.start();
 	}
-	
+
+	/**
+	 * Stops the receiver thread. The selector is woken instead of interrupting the thread,
+	 * since an interrupt would close the channels.
+	 */
 	public void stopThread(){
 		keepRunning = false;
-		udpBroadcastReceiver.stopBroadcastThread();
-		udpReceiverthread.interrupt();
+		selector.wakeup();
 	}
-	
+
 	public void run(){
 		while(keepRunning){
 			try {
-				// 52kb buffer
-				byte[] buffer = new byte[52000];
-				DatagramPacket receivePacket = new DatagramPacket(buffer,buffer.length);
-	
-				datagramSocket.receive(receivePacket);
-			    byte[] result = new byte[receivePacket.getLength()];
-			    System.arraycopy(receivePacket.getData(), 0, result, 0, receivePacket.getLength());
-			    
-			    String[] ip = receivePacket.getAddress().toString().split("\\.");
-			    
-			    int address = -1;
-			    address = Integer.parseInt(ip[ip.length-1]);
-			    parent.addMessage(address,result);
+				if(selector.select() == 0){
+					continue;
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(key.isValid() && key.isReadable()){
+						receiveDatagrams((DatagramChannel)key.channel());
+					}
+				}
 			} catch (IOException e) {
 
 			}
 		}
 	}
-	
-	private class UdpBroadcastReceiver implements Runnable{
-		private DatagramSocket brodcastDatagramSocket;
-		private volatile boolean keepBroadcasting = true;
-		private Thread udpBroadcastReceiverThread;
-		
-		public UdpBroadcastReceiver( int receiverPort) throws SocketException, BindException{
-			brodcastDatagramSocket = new DatagramSocket(receiverPort+1);
-		}
-		
-		public void startBroadcastReceiverthread(){
-			keepBroadcasting = true;
-			udpBroadcastReceiverThread = new Thread(this);
-			udpBroadcastReceiverThread.start();
-		}
-		
-		private void stopBroadcastThread(){
-			keepBroadcasting = false;
-			udpBroadcastReceiverThread.interrupt();
-		}
-		
-		public void run(){
-			while(keepBroadcasting){
-				try {
-					// 52kb buffer
-					byte[] buffer = new byte[52000];
-					DatagramPacket brodcastReceivePacket = new DatagramPacket(buffer,buffer.length);
-	
-					brodcastDatagramSocket.receive(brodcastReceivePacket);
-	
-				    byte[] result = new byte[brodcastReceivePacket.getLength()];
-				    System.arraycopy(brodcastReceivePacket.getData(), 0, result, 0, brodcastReceivePacket.getLength());
-				    
-				    String[] ip = brodcastReceivePacket.getAddress().toString().split("\\.");
-				    
-				    int address = -1;
-				    address = Integer.parseInt(ip[ip.length-1]);
-				    parent.addMessage(address,result);
-				} catch (IOException e) {
-					
-				}
-			}
+
+	/**
+	 * Reads every datagram currently queued on the channel and hands a copy of exactly the received length to the parent
+	 * @param channel the channel which is ready for reading
+	 * @throws IOException
+	 */
+	private void receiveDatagrams(DatagramChannel channel) throws IOException{
+		receiveBuffer.clear();
+		InetSocketAddress source = (InetSocketAddress)channel.receive(receiveBuffer);
+		while(source != null){
+			receiveBuffer.flip();
+			byte[] result = new byte[receiveBuffer.remaining()];
+			receiveBuffer.get(result);
+
+			byte[] ip = source.getAddress().getAddress();
+			parent.packetReceived(ip[ip.length-1] & 0xff, result);
+
+			receiveBuffer.clear();
+			source = (InetSocketAddress)channel.receive(receiveBuffer);
 		}
 	}
-	
 }
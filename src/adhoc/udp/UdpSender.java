@@ -16,10 +16,15 @@ import adhoc.aodv.exception.DataExceedsMaxSizeException;
 public class UdpSender {
 	private DatagramSocket datagramSocket;
 	private int receiverPort = 8888;
-	private String subNet = "192.168.2.";
+	private String subNet;
+	//the resolved address of each node, indexed by node address. Only used by the sender thread
+	private InetAddress[] nodeAddresses = new InetAddress[Constants.BROADCAST_ADDRESS + 1];
+	private boolean isBroadcastEnabled = false;
 	
-	public UdpSender() throws SocketException, UnknownHostException, BindException{
+	public UdpSender(String subNet) throws SocketException, UnknownHostException, BindException{
+		this.subNet = subNet;
 	    datagramSocket = new DatagramSocket(8881);
+	    isBroadcastEnabled = datagramSocket.getBroadcast();
 	}
 
 	/**
@@ -31,14 +36,14 @@ public class UdpSender {
 	 */
 	public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException{
 		if(data.length <= Constants.MAX_PACKAGE_SIZE){
-				InetAddress IPAddress = InetAddress.getByName(subNet+destinationNodeID);
+				InetAddress IPAddress = getInetAddress(destinationNodeID);
 				//do we have a packet to be broadcasted?
 				DatagramPacket sendPacket;
 				if(destinationNodeID == Constants.BROADCAST_ADDRESS){
-					datagramSocket.setBroadcast(true);
+					setBroadcast(true);
 					sendPacket = new DatagramPacket(data, data.length, IPAddress, receiverPort+1);
 				}else {
-					datagramSocket.setBroadcast(false);
+					setBroadcast(false);
 					sendPacket = new DatagramPacket(data, data.length, IPAddress, receiverPort);
 				}
 				
@@ -49,6 +54,31 @@ public class UdpSender {
 			}
 	}
 	
+	/**
+	 * The address of a node is resolved the first time a packet is sent to it, instead of for every packet
+	 */
+	private InetAddress getInetAddress(int destinationNodeID) throws UnknownHostException {
+		if(destinationNodeID < 0 || destinationNodeID >= nodeAddresses.length){
+			return InetAddress.getByName(subNet+destinationNodeID);
+		}
+		InetAddress address = nodeAddresses[destinationNodeID];
+		if(address == null){
+			address = InetAddress.getByName(subNet+destinationNodeID);
+			nodeAddresses[destinationNodeID] = address;
+		}
+		return address;
+	}
+	
+	/**
+	 * The socket option is only changed when it differs from the previous packet
+	 */
+	private void setBroadcast(boolean enabled) throws SocketException {
+		if(isBroadcastEnabled != enabled){
+			datagramSocket.setBroadcast(enabled);
+			isBroadcastEnabled = enabled;
+		}
+	}
+	
 	public void closeSoket(){
 		datagramSocket.close();
 	}
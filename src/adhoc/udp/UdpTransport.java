@@ -0,0 +1,65 @@
+package adhoc.udp;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+
+import adhoc.aodv.Constants;
+import adhoc.aodv.exception.DataExceedsMaxSizeException;
+import adhoc.transport.PacketListener;
+import adhoc.transport.Transport;
+
+/**
+ * The default transport, which exchanges packets as UDP datagrams over the ad-hoc network interface.
+ * A node address is mapped to the last part of an IPv4 address in the given subnet.
+ * @author Rabie
+ *
+ */
+public class UdpTransport implements Transport {
+	public static final String DEFAULT_SUBNET = "192.168.2.";
+	
+	private UdpSender udpSender;
+	private UdpReceiver udpReceiver;
+	
+	public UdpTransport(int nodeAddress) throws SocketException, UnknownHostException, BindException{
+		this(nodeAddress, DEFAULT_SUBNET);
+	}
+	
+	/**
+	 * @param nodeAddress the address of this node
+	 * @param subNet the first three parts of the IPv4 addresses used in the ad-hoc network, including the trailing dot
+	 * @throws SocketException is cast if the ports to the ad-hoc network could not be opened
+	 * @throws UnknownHostException
+	 * @throws BindException is thrown if the network interface already is connected to another network
+	 */
+	public UdpTransport(int nodeAddress, String subNet) throws SocketException, UnknownHostException, BindException{
+		udpSender = new UdpSender(subNet);
+		udpReceiver = new UdpReceiver(nodeAddress, subNet);
+	}
+
+	@Override
+	public void setPacketListener(PacketListener listener) {
+		udpReceiver.setPacketListener(listener);
+	}
+
+	@Override
+	public boolean sendPacket(int destinationNodeID, byte[] data) throws IOException, DataExceedsMaxSizeException {
+		return udpSender.sendPacket(destinationNodeID, data);
+	}
+
+	@Override
+	public boolean broadcastPacket(byte[] data) throws IOException, DataExceedsMaxSizeException {
+		return udpSender.sendPacket(Constants.BROADCAST_ADDRESS, data);
+	}
+
+	@Override
+	public void startThread() {
+		udpReceiver.startThread();
+	}
+
+	@Override
+	public void stopThread() {
+		udpReceiver.stopThread();
+	}
+}